@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+
+###############################################################################
+# (C) Copyright IBM Corp. 2021
+#
+# SPDX-License-Identifier: Apache-2.0
+###############################################################################
+set -ex
+
+# The persistence layer tests which need a PostgreSQL database run against the
+# FHIRDATA schema deployed by pre-integration-test.sh
+echo "Executing the PostgreSQL persistence tests"
+mvn -B test -f fhir-persistence-jdbc -Dsurefire.suiteXmlFiles=src/test/java/testng-postgres.xml --no-transfer-progress
+
+echo "Executing the default integration tests"
+mvn -B test -DskipTests=false -f fhir-server-test -DskipWebSocketTest=true --no-transfer-progress
+
+# EOF
+###############################################################################
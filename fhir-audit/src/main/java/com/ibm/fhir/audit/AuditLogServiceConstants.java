@@ -21,6 +21,12 @@ public final class AuditLogServiceConstants {
     public static final String PROPERTY_AUDIT_KAFKA_BOOTSTRAPSERVERS = "kafkaServers";
     public static final String PROPERTY_AUDIT_KAFKA_APIKEY = "kafkaApiKey";
     public static final String PROPERTY_AUDIT_MAPPER = "mapper";
+    public static final String PROPERTY_AUDIT_ASYNC = "async";
+    public static final String PROPERTY_AUDIT_QUEUE_SIZE = "queueSize";
+    public static final String PROPERTY_AUDIT_BATCH_SIZE = "batchSize";
+    public static final String PROPERTY_AUDIT_LINGER_MS = "lingerMs";
+    public static final String PROPERTY_AUDIT_OVERFLOW_POLICY = "overflowPolicy";
+    public static final String PROPERTY_AUDIT_SPILL_FILE = "spillFile";
 
     public static final String DEFAULT_MAPPER = "cadf";
 
@@ -28,6 +34,11 @@ public final class AuditLogServiceConstants {
 
     public static final String DEFAULT_AUDIT_KAFKA_TOPIC = "FHIR_AUDIT";
 
+    public static final int DEFAULT_AUDIT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_AUDIT_BATCH_SIZE = 100;
+    public static final int DEFAULT_AUDIT_LINGER_MS = 5;
+    public static final String DEFAULT_AUDIT_OVERFLOW_POLICY = "block";
+
     // These are intentional defaults and accurately describing the state of the
     // Audit as it doesn't know where it is running, and users should set it.
     public static final String DEFAULT_AUDIT_GEO_CITY = "UnknownCity";
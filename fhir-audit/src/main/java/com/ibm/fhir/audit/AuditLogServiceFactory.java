@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -97,6 +97,20 @@ public class AuditLogServiceFactory {
         log.exiting(CLASSNAME, METHODNAME);
     }
 
+    /**
+     * Stops the cached audit log service, if one was created, so that it can send any events it is still holding.
+     */
+    public static synchronized void stopService() {
+        if (serviceInstance != null) {
+            try {
+                serviceInstance.stop(FHIRConfigHelper.getPropertyGroup(FHIRConfiguration.PROPERTY_AUDIT_SERVICE_PROPERTIES));
+            } catch (Exception e) {
+                log.warning("Failure stopping audit log service: " + e.getMessage());
+            }
+            serviceInstance = null;
+        }
+    }
+
     /**
      * Resets the singleton instance of the audit logger service object that is cached by this factory class,
      * then creates, caches, and returns a new service object instance.
@@ -0,0 +1,595 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.audit.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+
+/**
+ * Publishes serialized audit events to Kafka from a dedicated worker thread so that the request
+ * which generated the event does not wait for the broker to acknowledge it.
+ * Events are held in a bounded queue and sent in batches; a batch is sent once it reaches the batch size
+ * or once the linger time has passed since its first event was taken from the queue.
+ * When the queue is full, the configured {@link OverflowPolicy} decides what happens to a new event.
+ *
+ * <p>If a spill file is configured, events which the broker did not accept are appended to it and sent again
+ * once the broker accepts a batch, at startup, and periodically while the publisher is idle.
+ * The spill file is read and sent one batch at a time; the offset of the first event which has not been
+ * acknowledged is kept in a file next to the spill file, and the spill file is only deleted once every
+ * event in it has been acknowledged.
+ * Spilled events are delivered at least once, but not necessarily in the order in which they were published.
+ *
+ * <p>The queue depth, the sent, failed, dropped and spilled counts and the latency of the most recent batch
+ * are logged at INFO level periodically while events are being published, and once more at shutdown.
+ */
+public class AsyncAuditPublisher {
+    private static final Logger log = Logger.getLogger(AsyncAuditPublisher.class.getName());
+
+    // How often to retry the spill file while no new events are being published
+    private static final long SPILL_RETRY_MILLIS = 30000;
+
+    // How often the worker logs the publisher statistics while events are being published
+    private static final long STATISTICS_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * What to do with a new event when the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * wait for the worker to make space in the queue (back-pressure on the publishing thread)
+         */
+        BLOCK,
+        /**
+         * discard the new event
+         */
+        DROP,
+        /**
+         * append the new event to the spill file
+         */
+        SPILL;
+
+        public static OverflowPolicy from(String value) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid audit overflow policy: '" + value + "'");
+        }
+    }
+
+    private final Producer<String, String> producer;
+    private final String topic;
+    private final BlockingQueue<String> queue;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final Path spillOffsetFile;
+    private final Object spillLock = new Object();
+    private final Thread worker;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private volatile long sendLatencyMillis = 0;
+    private volatile boolean spillPending = false;
+    private volatile boolean running = true;
+    private long lastSpillRetry = 0;
+
+    // Only accessed by the worker thread, apart from the constructor
+    private long spillOffset = 0;
+    private long statisticsLoggedAt = System.currentTimeMillis();
+    private long statisticsLoggedCount = 0;
+
+    /**
+     * Public constructor. Starts the worker thread, which first sends any events left in the spill file.
+     * @param producer the producer used to send the events; the caller remains responsible for closing it
+     * @param topic the topic to send the events to
+     * @param queueSize the maximum number of events waiting to be sent
+     * @param batchSize the maximum number of events sent in one batch
+     * @param lingerMillis how long to wait for more events before sending a batch which is not full
+     * @param overflowPolicy what to do with a new event when the queue is full
+     * @param spillFile the file which holds events the broker did not accept, or null to discard those events
+     */
+    public AsyncAuditPublisher(Producer<String, String> producer, String topic, int queueSize, int batchSize, long lingerMillis,
+            OverflowPolicy overflowPolicy, Path spillFile) {
+        if (overflowPolicy == OverflowPolicy.SPILL && spillFile == null) {
+            throw new IllegalArgumentException("The audit overflow policy 'spill' requires a spill file");
+        }
+        this.producer = producer;
+        this.topic = topic;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = spillFile;
+        this.spillOffsetFile = (spillFile != null) ? spillFile.resolveSibling(spillFile.getFileName() + ".offset") : null;
+        if (spillFile != null && Files.exists(spillFile)) {
+            this.spillOffset = openSpillFile();
+            this.spillPending = true;
+        }
+        this.worker = new Thread(() -> run(), "fhir-audit-publisher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queue the event to be sent to the broker
+     * @param event the serialized audit event
+     */
+    public void publish(String event) {
+        if (!running) {
+            // too late to queue it, but it may still be kept
+            spillOrDrop(Collections.singletonList(event));
+            return;
+        }
+        switch (overflowPolicy) {
+        case BLOCK:
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped();
+            }
+            break;
+        case SPILL:
+            if (!queue.offer(event)) {
+                spill(Collections.singletonList(event));
+            }
+            break;
+        default:
+            if (!queue.offer(event)) {
+                dropped();
+            }
+            break;
+        }
+    }
+
+    /**
+     * Stop the worker thread after it has sent the events which are already queued.
+     * Events which could not be sent within the timeout are appended to the spill file, if there is one.
+     * @param timeout the maximum time to wait for the queued events to be sent
+     * @param unit the unit of the timeout
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        try {
+            worker.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<String> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            spillOrDrop(remaining);
+        }
+        log.info(getStatistics());
+    }
+
+    /**
+     * @return the number of events waiting to be sent
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events acknowledged by the broker
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of attempts to send an event which the broker did not acknowledge
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the number of events discarded, either because the queue was full or because they could not be sent
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of events appended to the spill file
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * @return the time in milliseconds between sending the most recent batch and its acknowledgement by the broker
+     */
+    public long getSendLatencyMillis() {
+        return sendLatencyMillis;
+    }
+
+    /**
+     * @return true if the spill file holds events which have not been sent yet
+     */
+    public boolean isSpillPending() {
+        return spillPending;
+    }
+
+    /**
+     * @return a summary of the queue depth, counts and send latency, as written to the log
+     */
+    public String getStatistics() {
+        return "Audit publisher for topic '" + topic + "'"
+                + ": queueDepth=" + getQueueDepth()
+                + ", sent=" + getSentCount()
+                + ", failed=" + getFailedCount()
+                + ", dropped=" + getDroppedCount()
+                + ", spilled=" + getSpilledCount()
+                + ", spillPending=" + isSpillPending()
+                + ", sendLatencyMillis=" + getSendLatencyMillis();
+    }
+
+    private void run() {
+        retrySpillFile();
+        List<String> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    if (System.currentTimeMillis() - lastSpillRetry >= SPILL_RETRY_MILLIS) {
+                        retrySpillFile();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                if (send(batch)) {
+                    retrySpillFile();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                spillOrDrop(batch);
+                break;
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Unexpected error while publishing audit events", e);
+                spillOrDrop(batch);
+            } finally {
+                batch.clear();
+            }
+            logStatistics();
+        }
+    }
+
+    /**
+     * Log the statistics at most once per interval, and only if events were sent, failed, dropped or spilled
+     * since the last time
+     */
+    private void logStatistics() {
+        long now = System.currentTimeMillis();
+        if (now - statisticsLoggedAt < STATISTICS_INTERVAL_MILLIS) {
+            return;
+        }
+        long count = sentCount.get() + failedCount.get() + droppedCount.get() + spilledCount.get();
+        if (count != statisticsLoggedCount) {
+            log.info(getStatistics());
+            statisticsLoggedCount = count;
+        }
+        statisticsLoggedAt = now;
+    }
+
+    /**
+     * Add queued events to the batch until it is full or the linger time has passed
+     */
+    private void fill(List<String> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            String next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Send the batch and wait for the broker to acknowledge it. Events which were not acknowledged
+     * are appended to the spill file or dropped.
+     * @return true if every event in the batch was acknowledged
+     */
+    private boolean send(List<String> batch) {
+        List<String> failed = sendBatch(batch);
+        spillOrDrop(failed);
+        return failed.isEmpty();
+    }
+
+    /**
+     * Send the batch and wait for the broker to acknowledge it.
+     * @return the events which were not acknowledged
+     */
+    private List<String> sendBatch(List<String> batch) {
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        long start = System.nanoTime();
+        for (String event : batch) {
+            try {
+                producer.send(new ProducerRecord<>(topic, event), (metadata, exception) -> {
+                    if (exception != null) {
+                        failed.add(event);
+                    }
+                });
+            } catch (KafkaException e) {
+                failed.add(event);
+            }
+        }
+        try {
+            producer.flush();
+        } catch (KafkaException e) {
+            log.log(Level.FINE, "Unable to flush audit events", e);
+        }
+        sendLatencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        sentCount.addAndGet(batch.size() - failed.size());
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Sent " + batch.size() + " audit event(s) to topic '" + topic + "' in " + sendLatencyMillis + "ms, "
+                    + failed.size() + " failed, queue depth " + queue.size());
+        }
+        if (failed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long count = failedCount.addAndGet(failed.size());
+        // Avoid flooding the log while the broker is unavailable
+        if (count == failed.size() || count / 1000 != (count - failed.size()) / 1000) {
+            log.warning("Unable to send " + failed.size() + " audit event(s) to topic '" + topic + "'; "
+                    + count + " failed attempt(s) so far");
+        }
+        return new ArrayList<>(failed);
+    }
+
+    /**
+     * Send the events from the spill file again, one batch at a time, starting at the offset of the first event
+     * which has not been acknowledged. The offset is moved past a batch, and saved, only once the broker has
+     * acknowledged it, so events are not lost if the server stops while they are being sent. The worker is the
+     * only thread which reads the spill file; events appended while it is being sent are sent in the same retry.
+     * Once every event has been acknowledged, the spill file is deleted.
+     */
+    private void retrySpillFile() {
+        lastSpillRetry = System.currentTimeMillis();
+        if (!spillPending) {
+            return;
+        }
+        long sent = 0;
+        while (running) {
+            List<String> events = new ArrayList<>(batchSize);
+            long nextOffset;
+            synchronized (spillLock) {
+                try {
+                    nextOffset = readSpillFile(spillOffset, events);
+                    if (events.isEmpty()) {
+                        // every event in the spill file has been acknowledged
+                        Files.deleteIfExists(spillOffsetFile);
+                        Files.deleteIfExists(spillFile);
+                        spillOffset = 0;
+                        spillPending = false;
+                        break;
+                    }
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Unable to read audit spill file '" + spillFile + "'", e);
+                    break;
+                }
+            }
+            List<String> failed = sendBatch(events);
+            if (failed.size() == events.size()) {
+                // the broker is still unavailable; start from the same offset next time
+                break;
+            }
+            // events which were not acknowledged are appended again, so the offset can move past the batch
+            spill(failed);
+            saveSpillOffset(nextOffset);
+            sent += events.size() - failed.size();
+            if (!failed.isEmpty()) {
+                break;
+            }
+        }
+        if (sent > 0) {
+            log.info("Sent " + sent + " audit event(s) from spill file '" + spillFile + "'");
+        }
+    }
+
+    /**
+     * Read up to batchSize events from the spill file
+     * @param offset the offset of the first event to read
+     * @param events the list to add the events to
+     * @return the offset of the first event which was not read
+     */
+    private long readSpillFile(long offset, List<String> events) throws IOException {
+        if (!Files.exists(spillFile)) {
+            return offset;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(spillFile).position(offset);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            while (events.size() < batchSize) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                try {
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    // openSpillFile removes a partially written event, so this can only be the result of a failed write
+                    log.warning("Ignoring a truncated event at the end of audit spill file '" + spillFile + "'");
+                    break;
+                }
+                events.add(new String(bytes, StandardCharsets.UTF_8));
+                offset += Integer.BYTES + length;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Remove an event which was only partially written at the end of the spill file (e.g. because the server was
+     * killed), so that the events appended from now on can be read, and read the saved offset of the first event
+     * which has not been acknowledged. Called before the worker thread starts.
+     * @return the offset, or 0 if it was not saved or does not match the spill file
+     */
+    private long openSpillFile() {
+        long savedOffset = 0;
+        try {
+            if (Files.exists(spillOffsetFile)) {
+                byte[] bytes = Files.readAllBytes(spillOffsetFile);
+                if (bytes.length == Long.BYTES) {
+                    savedOffset = ByteBuffer.wrap(bytes).getLong();
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to read audit spill offset file '" + spillOffsetFile + "'", e);
+        }
+
+        long offset = 0;
+        synchronized (spillLock) {
+            try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                boolean offsetFound = savedOffset == 0;
+                long position = 0;
+                while (position + Integer.BYTES <= size) {
+                    int length = readInt(channel, position);
+                    long next = position + Integer.BYTES + length;
+                    if (length < 0 || next > size) {
+                        break;
+                    }
+                    position = next;
+                    if (position == savedOffset) {
+                        offsetFound = true;
+                    }
+                }
+                if (position < size) {
+                    log.warning("Removing a truncated event at the end of audit spill file '" + spillFile + "'");
+                    channel.truncate(position);
+                }
+                if (offsetFound) {
+                    offset = savedOffset;
+                } else {
+                    log.warning("Ignoring audit spill offset " + savedOffset + " which does not match spill file '" + spillFile
+                            + "'; its events will be sent again");
+                }
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Unable to check audit spill file '" + spillFile + "'", e);
+            }
+        }
+        return offset;
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.getInt(0);
+    }
+
+    /**
+     * Save the offset of the first event in the spill file which has not been acknowledged. The offset is written to
+     * a temporary file which then atomically replaces the offset file; if it can't be saved, the acknowledged events
+     * are sent again after a restart.
+     */
+    private void saveSpillOffset(long offset) {
+        spillOffset = offset;
+        Path tempFile = spillOffsetFile.resolveSibling(spillOffsetFile.getFileName() + ".tmp");
+        try {
+            Files.write(tempFile, ByteBuffer.allocate(Long.BYTES).putLong(offset).array());
+            Files.move(tempFile, spillOffsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to save audit spill offset file '" + spillOffsetFile + "'", e);
+        }
+    }
+
+    private void spillOrDrop(List<String> events) {
+        if (spillFile != null) {
+            spill(events);
+        } else {
+            for (int i = 0; i < events.size(); i++) {
+                dropped();
+            }
+        }
+    }
+
+    /**
+     * Append the events to the spill file, each as its length in bytes followed by its UTF-8 encoding
+     */
+    private void spill(List<String> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        synchronized (spillLock) {
+            try (OutputStream os = Files.newOutputStream(spillFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                writeEvents(out, events);
+                spilledCount.addAndGet(events.size());
+                spillPending = true;
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Unable to write " + events.size() + " audit event(s) to spill file '" + spillFile + "'", e);
+                for (int i = 0; i < events.size(); i++) {
+                    dropped();
+                }
+            }
+        }
+    }
+
+    private void writeEvents(DataOutputStream out, List<String> events) throws IOException {
+        for (String event : events) {
+            byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private void dropped() {
+        long count = droppedCount.incrementAndGet();
+        // Avoid flooding the log while the broker is unavailable
+        if (count == 1 || count % 1000 == 0) {
+            log.warning("Audit event(s) discarded; " + count + " event(s) dropped so far");
+        }
+    }
+}
@@ -1,13 +1,24 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.audit.impl;
 
+import static com.ibm.fhir.audit.AuditLogServiceConstants.DEFAULT_AUDIT_BATCH_SIZE;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.DEFAULT_AUDIT_LINGER_MS;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.DEFAULT_AUDIT_OVERFLOW_POLICY;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.DEFAULT_AUDIT_QUEUE_SIZE;
 import static com.ibm.fhir.audit.AuditLogServiceConstants.IGNORED_AUDIT_EVENT_TYPE;
-
+import static com.ibm.fhir.audit.AuditLogServiceConstants.PROPERTY_AUDIT_ASYNC;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.PROPERTY_AUDIT_BATCH_SIZE;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.PROPERTY_AUDIT_LINGER_MS;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.PROPERTY_AUDIT_OVERFLOW_POLICY;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.PROPERTY_AUDIT_QUEUE_SIZE;
+import static com.ibm.fhir.audit.AuditLogServiceConstants.PROPERTY_AUDIT_SPILL_FILE;
+
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +30,7 @@ import org.apache.kafka.common.errors.InterruptException;
 
 import com.ibm.fhir.audit.AuditLogService;
 import com.ibm.fhir.audit.beans.AuditLogEntry;
+import com.ibm.fhir.audit.impl.AsyncAuditPublisher.OverflowPolicy;
 import com.ibm.fhir.audit.configuration.ConfigurationTranslator;
 import com.ibm.fhir.audit.mapper.MapperFactory;
 import com.ibm.fhir.audit.mapper.MapperType;
@@ -37,6 +49,7 @@ public class KafkaService implements AuditLogService {
 
     private final ConfigurationTranslator translator = new ConfigurationTranslator();
     private KafkaProducer<String, String> producer = null;
+    private AsyncAuditPublisher publisher = null;
     private String topic = "FHIR_AUDIT";
 
     private MapperType mapperType = null;
@@ -65,6 +78,17 @@ public class KafkaService implements AuditLogService {
 
         this.auditLogProperties = auditLogProperties;
 
+        if (auditLogProperties.getBooleanProperty(PROPERTY_AUDIT_ASYNC, Boolean.FALSE)) {
+            String spillFile = auditLogProperties.getStringProperty(PROPERTY_AUDIT_SPILL_FILE, null);
+            this.publisher = new AsyncAuditPublisher(producer, topic,
+                    auditLogProperties.getIntProperty(PROPERTY_AUDIT_QUEUE_SIZE, DEFAULT_AUDIT_QUEUE_SIZE),
+                    auditLogProperties.getIntProperty(PROPERTY_AUDIT_BATCH_SIZE, DEFAULT_AUDIT_BATCH_SIZE),
+                    auditLogProperties.getIntProperty(PROPERTY_AUDIT_LINGER_MS, DEFAULT_AUDIT_LINGER_MS),
+                    OverflowPolicy.from(auditLogProperties.getStringProperty(PROPERTY_AUDIT_OVERFLOW_POLICY, DEFAULT_AUDIT_OVERFLOW_POLICY)),
+                    spillFile == null ? null : Paths.get(spillFile));
+            logger.info("Audit events are published asynchronously");
+        }
+
         logger.exiting(CLASSNAME, METHODNAME);
     }
 
@@ -86,11 +110,16 @@ public class KafkaService implements AuditLogService {
                 if (logger.isLoggable(Level.FINE)) {
                     logger.fine("Sending to Topic '" + topic + "'" + size(eventString));
                 }
-                ProducerRecord<String, String> record = new ProducerRecord<>(topic, eventString);
-                // Block till the message is sent to kafka server.
-                RecordMetadata metadata = this.producer.send(record).get();
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine(" Record Produced to Topic '" + metadata.topic() + "' at time " + metadata.timestamp());
+                if (publisher != null) {
+                    // Sent from the publisher's worker thread
+                    publisher.publish(eventString);
+                } else {
+                    ProducerRecord<String, String> record = new ProducerRecord<>(topic, eventString);
+                    // Block till the message is sent to kafka server.
+                    RecordMetadata metadata = this.producer.send(record).get();
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine(" Record Produced to Topic '" + metadata.topic() + "' at time " + metadata.timestamp());
+                    }
                 }
             }
         }
@@ -100,6 +129,11 @@ public class KafkaService implements AuditLogService {
 
     @Override
     public void stop(PropertyGroup auditLogProperties) throws Exception {
+        if (this.publisher != null) {
+            // Send or spill the queued events before closing the producer
+            this.publisher.shutdown(30, TimeUnit.SECONDS);
+            this.publisher = null;
+        }
         try{
             this.producer.close(30, TimeUnit.SECONDS);
         } catch(InterruptException ie) {
@@ -107,6 +141,13 @@ public class KafkaService implements AuditLogService {
         }
     }
 
+    /**
+     * @return the publisher which sends the audit events asynchronously, or null if they are sent synchronously
+     */
+    public AsyncAuditPublisher getPublisher() {
+        return publisher;
+    }
+
     /*
      * calculates the length of the eventString and the null is treated as -1
      */
@@ -0,0 +1,292 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.audit.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.audit.impl.AsyncAuditPublisher.OverflowPolicy;
+
+/**
+ * AsyncAuditPublisher Tests
+ */
+public class AsyncAuditPublisherTest {
+
+    @Test
+    public void testBatches() throws Exception {
+        TestProducer producer = new TestProducer();
+        AsyncAuditPublisher publisher = new AsyncAuditPublisher(producer, "FHIR_AUDIT", 100, 10, 50, OverflowPolicy.BLOCK, null);
+        try {
+            for (int i = 0; i < 25; i++) {
+                publisher.publish("event-" + i);
+            }
+            waitFor(() -> publisher.getSentCount() == 25);
+            List<String> sent = producer.sentValues();
+            for (int i = 0; i < 25; i++) {
+                assertEquals(sent.get(i), "event-" + i);
+                assertEquals(producer.history().get(i).topic(), "FHIR_AUDIT");
+            }
+            // each batch is acknowledged before the next one is sent
+            assertTrue(producer.flushCount >= 3);
+            assertEquals(publisher.getQueueDepth(), 0);
+            assertEquals(publisher.getFailedCount(), 0);
+        } finally {
+            publisher.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        TestProducer producer = new TestProducer();
+        producer.blocked = new CountDownLatch(1);
+        AsyncAuditPublisher publisher = new AsyncAuditPublisher(producer, "FHIR_AUDIT", 1, 1, 0, OverflowPolicy.DROP, null);
+        try {
+            // the first event occupies the worker, the second fills the queue
+            publisher.publish("1");
+            waitFor(() -> publisher.getQueueDepth() == 0 && producer.history().size() == 1);
+            publisher.publish("2");
+            publisher.publish("3");
+            publisher.publish("4");
+            assertEquals(publisher.getQueueDepth(), 1);
+            assertEquals(publisher.getDroppedCount(), 2);
+        } finally {
+            producer.blocked.countDown();
+            publisher.shutdown(10, TimeUnit.SECONDS);
+        }
+        assertEquals(producer.sentValues().size(), 2);
+    }
+
+    @Test
+    public void testSpillWhenUnavailable() throws Exception {
+        Path spillFile = Files.createTempFile("audit", ".spill");
+        Files.delete(spillFile);
+        TestProducer producer = new TestProducer();
+        producer.available = false;
+        AsyncAuditPublisher publisher = new AsyncAuditPublisher(producer, "FHIR_AUDIT", 100, 10, 0, OverflowPolicy.BLOCK, spillFile);
+        try {
+            publisher.publish("spilled-1");
+            publisher.publish("spilled-é\n2");
+            waitFor(() -> publisher.getSpilledCount() == 2);
+            assertTrue(publisher.isSpillPending());
+            assertTrue(Files.exists(spillFile));
+            assertEquals(publisher.getSentCount(), 0);
+            assertEquals(publisher.getDroppedCount(), 0);
+
+            // the spilled events are sent once the broker accepts a new batch
+            producer.available = true;
+            publisher.publish("new");
+            waitFor(() -> publisher.getSentCount() == 3);
+            assertFalse(publisher.isSpillPending());
+            assertFalse(Files.exists(spillFile));
+            assertEquals(producer.sentValues().subList(1, 3), Arrays.asList("spilled-1", "spilled-é\n2"));
+        } finally {
+            publisher.shutdown(10, TimeUnit.SECONDS);
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    @Test
+    public void testSpillFileSentAtStartup() throws Exception {
+        Path spillFile = Files.createTempFile("audit", ".spill");
+        Files.delete(spillFile);
+        TestProducer producer = new TestProducer();
+        producer.available = false;
+        AsyncAuditPublisher publisher = new AsyncAuditPublisher(producer, "FHIR_AUDIT", 1, 1, 0, OverflowPolicy.SPILL, spillFile);
+        for (int i = 0; i < 5; i++) {
+            publisher.publish("event-" + i);
+        }
+        // events which are still queued are spilled when the publisher is stopped
+        publisher.shutdown(10, TimeUnit.SECONDS);
+        assertEquals(publisher.getSpilledCount(), 5);
+        assertEquals(publisher.getDroppedCount(), 0);
+
+        TestProducer restarted = new TestProducer();
+        AsyncAuditPublisher next = new AsyncAuditPublisher(restarted, "FHIR_AUDIT", 1, 2, 0, OverflowPolicy.SPILL, spillFile);
+        try {
+            waitFor(() -> next.getSentCount() == 5);
+            assertEquals(restarted.sentValues().stream().sorted().collect(Collectors.toList()),
+                    Arrays.asList("event-0", "event-1", "event-2", "event-3", "event-4"));
+            assertFalse(Files.exists(spillFile));
+        } finally {
+            next.shutdown(10, TimeUnit.SECONDS);
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    @Test
+    public void testSpillFileKeptUntilAcknowledged() throws Exception {
+        Path spillFile = Files.createTempFile("audit", ".spill");
+        Files.delete(spillFile);
+        TestProducer producer = new TestProducer();
+        producer.available = false;
+        AsyncAuditPublisher publisher = new AsyncAuditPublisher(producer, "FHIR_AUDIT", 1, 1, 0, OverflowPolicy.SPILL, spillFile);
+        for (int i = 0; i < 5; i++) {
+            publisher.publish("event-" + i);
+        }
+        publisher.shutdown(10, TimeUnit.SECONDS);
+        assertEquals(publisher.getSpilledCount(), 5);
+        long spillFileSize = Files.size(spillFile);
+
+        // the broker accepts the first batch of 2 and then becomes unavailable
+        TestProducer restarted = new TestProducer();
+        restarted.blocked = new CountDownLatch(1);
+        restarted.acceptLimit = 2;
+        AsyncAuditPublisher next = new AsyncAuditPublisher(restarted, "FHIR_AUDIT", 1, 2, 0, OverflowPolicy.SPILL, spillFile);
+        try {
+            // while the first batch waits for its acknowledgement, the spill file still holds every event
+            waitFor(() -> restarted.history().size() == 2);
+            assertEquals(Files.size(spillFile), spillFileSize);
+            restarted.blocked.countDown();
+            waitFor(() -> next.getFailedCount() > 0);
+        } finally {
+            next.shutdown(10, TimeUnit.SECONDS);
+        }
+        assertEquals(next.getSentCount(), 2);
+        assertTrue(next.isSpillPending());
+
+        // only the events which were not acknowledged are sent after the next restart
+        TestProducer last = new TestProducer();
+        AsyncAuditPublisher third = new AsyncAuditPublisher(last, "FHIR_AUDIT", 1, 2, 0, OverflowPolicy.SPILL, spillFile);
+        try {
+            waitFor(() -> third.getSentCount() == 3);
+            List<String> sent = new ArrayList<>(restarted.sentValues());
+            sent.addAll(last.sentValues());
+            assertEquals(sent.stream().sorted().collect(Collectors.toList()),
+                    Arrays.asList("event-0", "event-1", "event-2", "event-3", "event-4"));
+            waitFor(() -> !Files.exists(spillFile));
+        } finally {
+            third.shutdown(10, TimeUnit.SECONDS);
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    @Test
+    public void testTruncatedSpillEventRemovedAtStartup() throws Exception {
+        Path spillFile = Files.createTempFile("audit", ".spill");
+        Files.delete(spillFile);
+        TestProducer producer = new TestProducer();
+        producer.available = false;
+        AsyncAuditPublisher publisher = new AsyncAuditPublisher(producer, "FHIR_AUDIT", 1, 1, 0, OverflowPolicy.SPILL, spillFile);
+        publisher.publish("event-0");
+        publisher.publish("event-1");
+        publisher.shutdown(10, TimeUnit.SECONDS);
+        assertEquals(publisher.getSpilledCount(), 2);
+
+        // the server was killed while it was appending an event
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(spillFile, StandardOpenOption.APPEND))) {
+            out.writeInt(100);
+            out.write(new byte[3]);
+        }
+
+        TestProducer restarted = new TestProducer();
+        restarted.available = false;
+        AsyncAuditPublisher next = new AsyncAuditPublisher(restarted, "FHIR_AUDIT", 10, 2, 0, OverflowPolicy.BLOCK, spillFile);
+        try {
+            // events appended after the truncated event can be read back
+            next.publish("event-2");
+            waitFor(() -> next.getSpilledCount() == 1);
+            restarted.available = true;
+            next.publish("event-3");
+            waitFor(() -> next.getSentCount() == 4);
+            assertEquals(restarted.sentValues().stream().sorted().collect(Collectors.toList()),
+                    Arrays.asList("event-0", "event-1", "event-2", "event-3"));
+            waitFor(() -> !Files.exists(spillFile));
+        } finally {
+            next.shutdown(10, TimeUnit.SECONDS);
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSpillPolicyRequiresFile() {
+        new AsyncAuditPublisher(new TestProducer(), "FHIR_AUDIT", 1, 1, 0, OverflowPolicy.SPILL, null);
+    }
+
+    @Test
+    public void testOverflowPolicyFrom() {
+        assertEquals(OverflowPolicy.from("spill"), OverflowPolicy.SPILL);
+        assertEquals(OverflowPolicy.from("Block"), OverflowPolicy.BLOCK);
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A stand-in for the broker which acknowledges each record immediately, unless it is unavailable
+     */
+    private static class TestProducer extends MockProducer<String, String> {
+        private volatile boolean available = true;
+        private volatile int acceptLimit = Integer.MAX_VALUE;
+        private volatile CountDownLatch blocked;
+        private volatile int flushCount = 0;
+
+        private TestProducer() {
+            super(true, new StringSerializer(), new StringSerializer());
+        }
+
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+            if (history().size() >= acceptLimit) {
+                available = false;
+            }
+            if (!available) {
+                TimeoutException e = new TimeoutException("broker unavailable");
+                callback.onCompletion(null, e);
+                CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+            return super.send(record, callback);
+        }
+
+        @Override
+        public void flush() {
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.flush();
+            flushCount++;
+        }
+
+        private List<String> sentValues() {
+            return history().stream().map(ProducerRecord::value).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceTokenValueRec;
+import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
+
+/**
+ * Measures the contention on the shared maps of {@link CommonTokenValuesCacheImpl} when many
+ * ingestion threads resolve token values and publish their staged values at the same time.
+ * Run with increasing thread counts to see how throughput scales.
+ */
+public class CommonTokenValuesCacheBenchmark {
+    private static final int CODE_SYSTEM_COUNT = 100;
+    private static final int TOKEN_VALUE_COUNT = 100000;
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        CommonTokenValuesCacheImpl cache;
+
+        // the number of token values resolved per simulated resource
+        @Param({"20"})
+        public int batchSize;
+
+        @Setup
+        public void setUp() {
+            cache = new CommonTokenValuesCacheImpl(1000, TOKEN_VALUE_COUNT, 1000);
+
+            Map<String, Integer> codeSystems = new HashMap<>();
+            for (int i = 0; i < CODE_SYSTEM_COUNT; i++) {
+                codeSystems.put(codeSystem(i), i);
+            }
+            cache.prefillCodeSystems(codeSystems);
+
+            // populate the shared token values cache the same way the persistence layer does
+            for (int i = 0; i < TOKEN_VALUE_COUNT; i++) {
+                cache.addTokenValue(new CommonTokenValue(i % CODE_SYSTEM_COUNT, tokenValue(i)), i);
+            }
+            cache.updateSharedMaps();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+        List<ResourceTokenValueRec> batch;
+        List<ResourceTokenValueRec> misses;
+
+        @Setup
+        public void setUp(CacheState cacheState) {
+            batch = new ArrayList<>(cacheState.batchSize);
+            misses = new ArrayList<>(cacheState.batchSize);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < cacheState.batchSize; i++) {
+                // include some values which aren't cached to exercise the publish path
+                int value = random.nextInt(TOKEN_VALUE_COUNT + TOKEN_VALUE_COUNT / 10);
+                ResourceTokenValueRec rec = new ResourceTokenValueRec(1, "Observation", 1, i,
+                        codeSystem(value % CODE_SYSTEM_COUNT), tokenValue(value), null, false);
+                rec.setCodeSystemValueId(value % CODE_SYSTEM_COUNT);
+                batch.add(rec);
+            }
+        }
+    }
+
+    @Benchmark
+    public int benchmarkResolveTokenValues(CacheState cacheState, BatchState batchState) {
+        CommonTokenValuesCacheImpl cache = cacheState.cache;
+        List<ResourceTokenValueRec> misses = batchState.misses;
+        misses.clear();
+
+        cache.resolveCodeSystems(batchState.batch, misses);
+        cache.resolveTokenValues(batchState.batch, misses);
+
+        // simulate the database assigning ids to the misses, followed by a commit
+        for (ResourceTokenValueRec miss : misses) {
+            cache.addTokenValue(new CommonTokenValue(miss.getCodeSystemValueId(), miss.getTokenValue()), miss.getLogicalResourceId());
+        }
+        cache.updateSharedMaps();
+        return misses.size();
+    }
+
+    @Benchmark
+    public Long benchmarkGetCommonTokenValueId(CacheState cacheState) {
+        int value = ThreadLocalRandom.current().nextInt(TOKEN_VALUE_COUNT);
+        Long result = cacheState.cache.getCommonTokenValueId(codeSystem(value % CODE_SYSTEM_COUNT), tokenValue(value));
+        cacheState.cache.clearLocalMaps();
+        return result;
+    }
+
+    private static String codeSystem(int i) {
+        return "http://example.com/system/" + i;
+    }
+
+    private static String tokenValue(int i) {
+        return "value-" + i;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[] { 1, 8, 64 }) {
+            Options opt = new OptionsBuilder()
+                    .include(".*" + CommonTokenValuesCacheBenchmark.class.getSimpleName() + ".*")
+                    .jvmArgsPrepend("-Xms2g", "-Xmx2g")
+                    .verbosity(VerboseMode.NORMAL)
+                    .warmupIterations(1)
+                    .warmupTime(TimeValue.seconds(10))
+                    .measurementIterations(2)
+                    .measurementTime(TimeValue.seconds(10))
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * Measures FHIRConfigHelper lookups of frequently used properties when requests are spread across many tenants.
+ * Each tenant overrides some of the properties, so the other lookups fall back to the default configuration.
+ */
+public class FHIRConfigHelperBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ConfigState {
+        Path configHome;
+        FHIRRequestContext[] contexts;
+
+        @Param({"1", "100"})
+        public int tenantCount;
+
+        @Setup
+        public void setUp() throws Exception {
+            configHome = Files.createTempDirectory("fhir-config-benchmark");
+            writeConfig("default", "{\"fhirServer\":{\"core\":{\"defaultPageSize\":10,\"maxPageSize\":1000,"
+                    + "\"defaultHandling\":\"strict\",\"extendedCodeableConceptValidation\":true},"
+                    + "\"search\":{\"useBoundingRadius\":false},"
+                    + "\"persistence\":{\"datasources\":{\"default\":{\"type\":\"derby\"}}}}}");
+            contexts = new FHIRRequestContext[tenantCount];
+            for (int i = 0; i < tenantCount; i++) {
+                String tenantId = "tenant" + i;
+                writeConfig(tenantId, "{\"fhirServer\":{\"core\":{\"maxPageSize\":" + (500 + i) + "},"
+                        + "\"persistence\":{\"datasources\":{\"default\":{\"type\":\"derby\"}}}}}");
+                contexts[i] = new FHIRRequestContext(tenantId);
+            }
+            FHIRConfiguration.setConfigHome(configHome.toString());
+            FHIRConfiguration.getInstance().clearConfiguration();
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            FHIRRequestContext.remove();
+            try (Stream<Path> paths = Files.walk(configHome)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+
+        private void writeConfig(String tenantId, String json) throws Exception {
+            Path dir = configHome.resolve(FHIRConfiguration.CONFIG_LOCATION).resolve(tenantId);
+            Files.createDirectories(dir);
+            Files.write(dir.resolve(FHIRConfiguration.CONFIG_FILE_BASENAME), json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public void benchmarkTypedLookups(ConfigState state, Blackhole bh) {
+        FHIRRequestContext.set(state.contexts[ThreadLocalRandom.current().nextInt(state.tenantCount)]);
+
+        // tenant-specific
+        bh.consume(FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_MAX_PAGE_SIZE, 1000));
+        // falls back to the default configuration
+        bh.consume(FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_DEFAULT_PAGE_SIZE, 10));
+        bh.consume(FHIRConfigHelper.getStringProperty(FHIRConfiguration.PROPERTY_DEFAULT_HANDLING, "strict"));
+        bh.consume(FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION, true));
+        // not configured anywhere
+        bh.consume(FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_CHECK_REFERENCE_TYPES, true));
+    }
+
+    @Benchmark
+    public void benchmarkPropertyGroupLookup(ConfigState state, Blackhole bh) {
+        FHIRRequestContext.set(state.contexts[ThreadLocalRandom.current().nextInt(state.tenantCount)]);
+        bh.consume(FHIRConfigHelper.getPropertyGroup(FHIRConfiguration.PROPERTY_DATASOURCES + "/default"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[] { 1, 8 }) {
+            Options opt = new OptionsBuilder()
+                    .include(".*" + FHIRConfigHelperBenchmark.class.getSimpleName() + ".*")
+                    .jvmArgsPrepend("-Xms2g", "-Xmx2g")
+                    .verbosity(VerboseMode.NORMAL)
+                    .warmupIterations(1)
+                    .warmupTime(TimeValue.seconds(10))
+                    .measurementIterations(2)
+                    .measurementTime(TimeValue.seconds(10))
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.openjdk.jmh.annotations.State;
 import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
 import com.ibm.fhir.benchmark.util.BenchmarkUtil;
 import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.resource.Resource;
 
@@ -30,7 +31,13 @@ public class FHIRParserBenchmark {
     @State(Scope.Thread)
     public static class FHIRParsers {
         FHIRParser jsonParser = FHIRParser.parser(Format.JSON);
+        FHIRParser streamingJsonParser = FHIRParser.parser(Format.JSON);
         FHIRParser xmlParser = FHIRParser.parser(Format.XML);
+
+        @Setup
+        public void setUp() {
+            streamingJsonParser.setProperty(FHIRJsonParser.PROPERTY_STREAMING, true);
+        }
     }
 
     @State(Scope.Benchmark)
@@ -64,6 +71,18 @@ public class FHIRParserBenchmark {
         return parsers.jsonParser.parse(new StringReader(state.JSON_SPEC_EXAMPLE));
     }
 
+    @Benchmark
+    public Resource benchmarkStreamingJsonParser(FHIRParsers parsers, FHIRParserState state) throws Exception {
+        parsers.streamingJsonParser.setValidating(true);
+        return parsers.streamingJsonParser.parse(new StringReader(state.JSON_SPEC_EXAMPLE));
+    }
+
+    @Benchmark
+    public Resource benchmarkStreamingJsonParserNonValidating(FHIRParsers parsers, FHIRParserState state) throws Exception {
+        parsers.streamingJsonParser.setValidating(false);
+        return parsers.streamingJsonParser.parse(new StringReader(state.JSON_SPEC_EXAMPLE));
+    }
+
     @Benchmark
     public Resource benchmarkXMLParser(FHIRParsers parsers, FHIRParserState state) throws Exception {
         parsers.xmlParser.setValidating(true);
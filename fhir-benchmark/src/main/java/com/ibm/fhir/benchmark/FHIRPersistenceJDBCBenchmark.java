@@ -0,0 +1,322 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.common.JdbcConnectionProvider;
+import com.ibm.fhir.database.utils.common.JdbcPropertyAdapter;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.database.utils.postgres.PostgresPropertyAdapter;
+import com.ibm.fhir.database.utils.postgres.PostgresTranslator;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Identifier;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.FHIRPersistenceJDBCCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.IdNameCache;
+import com.ibm.fhir.persistence.jdbc.cache.NameIdCache;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.schema.derby.DerbyFhirDatabase;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Measures the main interactions of {@link FHIRPersistenceJDBCImpl} against a real database: create and update
+ * (including search parameter extraction, the batched parameter inserts and the common token values upsert),
+ * read and a handful of typical search shapes.
+ *
+ * <p>By default an embedded Derby database is bootstrapped with {@link DerbyFhirDatabase} for each trial. To run
+ * against a local PostgreSQL database instead, set the {@code database} parameter to {@code postgresql} and point
+ * {@code connectionProperties} at a properties file holding the {@link JdbcPropertyAdapter} keys (db.host, db.port,
+ * db.database, db.user, db.password and db.default.schema). The schema must already have been deployed with
+ * fhir-persistence-schema.
+ *
+ * <p>Each trial loads a synthetic dataset built from the spec examples in fhir-examples before measuring.
+ * Run with the GC profiler to see the allocation rate alongside the throughput.
+ */
+public class FHIRPersistenceJDBCBenchmark {
+    private static final String[] DATASET_EXAMPLES = {
+            "patient-example", "observation-example", "encounter-example", "condition-example" };
+
+    @State(Scope.Benchmark)
+    public static class PersistenceState {
+        Path workDir;
+        AutoCloseable connections;
+        FHIRPersistenceJDBCCache cache;
+        FHIRPersistenceJDBCImpl persistence;
+        Map<String, Resource> examples = new HashMap<>();
+        Map<String, List<String>> logicalIds = new HashMap<>();
+
+        // "derby" for an embedded database or "postgresql" for the database described by connectionProperties
+        @Param({"derby"})
+        public String database;
+
+        @Param({""})
+        public String connectionProperties;
+
+        // the number of copies of each example loaded before measuring
+        @Param({"250"})
+        public int datasetSize;
+
+        @Setup
+        public void setUp() throws Exception {
+            workDir = Files.createTempDirectory("fhir-persistence-benchmark");
+            writeConfig();
+
+            Properties configProps = new Properties();
+            configProps.setProperty("updateCreateEnabled", "true");
+            IConnectionProvider cp;
+            if ("derby".equals(database)) {
+                DerbyFhirDatabase derby = new DerbyFhirDatabase(workDir.resolve("fhirDB").toString());
+                connections = derby;
+                cp = derby;
+                configProps.setProperty("schemaName", "FHIRDATA");
+            } else if ("postgresql".equals(database)) {
+                Properties dbProps = new Properties();
+                try (InputStream in = Files.newInputStream(Paths.get(connectionProperties))) {
+                    dbProps.load(in);
+                }
+                JdbcPropertyAdapter adapter = new PostgresPropertyAdapter(dbProps);
+                if (adapter.getDefaultSchema() == null) {
+                    adapter.setDefaultSchema("fhirdata");
+                }
+                PoolConnectionProvider pool = new PoolConnectionProvider(new JdbcConnectionProvider(new PostgresTranslator(), adapter), 10);
+                connections = pool::close;
+                cp = pool;
+                configProps.setProperty("schemaName", adapter.getDefaultSchema());
+            } else {
+                throw new IllegalArgumentException("Unsupported database: " + database);
+            }
+
+            cache = new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new IdNameCache<Integer>(),
+                    new NameIdCache<Integer>(), new CommonTokenValuesCacheImpl(1000, 10000, 1000));
+            persistence = new FHIRPersistenceJDBCImpl(configProps, cp, cache);
+
+            for (String exampleName : DATASET_EXAMPLES) {
+                Resource example = FHIRParser.parser(Format.JSON)
+                        .parse(new StringReader(BenchmarkUtil.getSpecExample(Format.JSON, exampleName)));
+                examples.put(example.getClass().getSimpleName(), example);
+            }
+            for (Resource example : examples.values()) {
+                List<String> ids = new ArrayList<>(datasetSize);
+                for (int i = 0; i < datasetSize; i++) {
+                    ids.add(create(example).getResource().getId());
+                }
+                logicalIds.put(example.getClass().getSimpleName(), ids);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            connections.close();
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+
+        SingleResourceResult<Resource> create(Resource resource) throws Exception {
+            return inTransaction(() -> persistence.create(newContext(), resource));
+        }
+
+        /**
+         * Run the action in its own transaction, publishing the thread-local cache entries on
+         * commit and discarding them on rollback the same way the server does.
+         */
+        <T> T inTransaction(Callable<T> action) throws Exception {
+            FHIRPersistenceTransaction tx = persistence.getTransaction();
+            tx.begin();
+            T result;
+            try {
+                result = action.call();
+            } catch (Exception e) {
+                tx.setRollbackOnly();
+                try {
+                    tx.end();
+                } finally {
+                    cache.transactionRolledBack();
+                }
+                throw e;
+            }
+            try {
+                tx.end();
+            } catch (Exception e) {
+                cache.transactionRolledBack();
+                throw e;
+            }
+            cache.transactionCommitted();
+            return result;
+        }
+
+        String randomLogicalId(String resourceType) {
+            List<String> ids = logicalIds.get(resourceType);
+            return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        private void writeConfig() throws Exception {
+            Path dir = workDir.resolve(FHIRConfiguration.CONFIG_LOCATION).resolve(FHIRConfiguration.DEFAULT_TENANT_ID);
+            Files.createDirectories(dir);
+            String json = "{\"fhirServer\":{\"core\":{\"defaultPageSize\":10},"
+                    + "\"persistence\":{\"datasources\":{\"default\":{\"type\":\"" + database + "\"}}}}}";
+            Files.write(dir.resolve(FHIRConfiguration.CONFIG_FILE_BASENAME), json.getBytes(StandardCharsets.UTF_8));
+            FHIRConfiguration.setConfigHome(workDir.toString());
+            FHIRConfiguration.getInstance().clearConfiguration();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CreateState {
+        Resource resource;
+
+        @Param({"Patient", "Observation"})
+        public String resourceType;
+
+        // when true, every resource carries a new identifier so that the common token values upsert is
+        // exercised; otherwise all the token values are served from the cache
+        @Param({"false", "true"})
+        public boolean uniqueTokens;
+
+        @Setup
+        public void setUp(PersistenceState state) {
+            resource = state.examples.get(resourceType);
+        }
+
+        Resource next() {
+            if (!uniqueTokens) {
+                return resource;
+            }
+            Identifier identifier = Identifier.builder()
+                    .system(Uri.of("http://example.com/benchmark"))
+                    .value(com.ibm.fhir.model.type.String.of(UUID.randomUUID().toString()))
+                    .build();
+            if (resource instanceof Patient) {
+                return ((Patient) resource).toBuilder().identifier(identifier).build();
+            }
+            return ((Observation) resource).toBuilder().identifier(identifier).build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SearchState {
+        Class<? extends Resource> resourceType;
+        Map<String, List<String>> queryParameters = new LinkedHashMap<>();
+
+        // resource type and query string of the search, matched against the loaded dataset
+        @Param({
+            "Patient?family=Chalmers",
+            "Observation?code=http://loinc.org|29463-7",
+            "Observation?subject=Patient/example",
+            "Observation?date=ge2016-01-01&_sort=-date",
+            "Observation?value-quantity=gt100",
+            "Encounter?_lastUpdated=gt2000-01-01"
+        })
+        public String query;
+
+        @Setup
+        public void setUp() {
+            int index = query.indexOf('?');
+            resourceType = ModelSupport.getResourceType(query.substring(0, index));
+            for (String parameter : query.substring(index + 1).split("&")) {
+                int split = parameter.indexOf('=');
+                queryParameters.computeIfAbsent(parameter.substring(0, split), k -> new ArrayList<>())
+                        .add(parameter.substring(split + 1));
+            }
+        }
+    }
+
+    @Benchmark
+    public SingleResourceResult<Resource> benchmarkCreate(PersistenceState state, CreateState createState) throws Exception {
+        return state.create(createState.next());
+    }
+
+    @Benchmark
+    public SingleResourceResult<Resource> benchmarkUpdate(PersistenceState state) throws Exception {
+        String logicalId = state.randomLogicalId("Observation");
+        Resource resource = state.examples.get("Observation").toBuilder().id(logicalId).build();
+        return state.inTransaction(() -> state.persistence.update(newContext(), logicalId, resource));
+    }
+
+    @Benchmark
+    public SingleResourceResult<Observation> benchmarkRead(PersistenceState state) throws Exception {
+        String logicalId = state.randomLogicalId("Observation");
+        return state.inTransaction(() -> state.persistence.read(newContext(), Observation.class, logicalId));
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearch(PersistenceState state, SearchState searchState) throws Exception {
+        return state.inTransaction(() -> {
+            FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(searchState.resourceType, searchState.queryParameters);
+            FHIRPersistenceContext context = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+            return state.persistence.search(context, searchState.resourceType);
+        });
+    }
+
+    private static FHIRPersistenceContext newContext() {
+        return FHIRPersistenceContextFactory.createPersistenceContext(null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // the non-JEE transaction adapter used outside the server is not thread-safe, so keep to a single thread
+        Options opt = new OptionsBuilder()
+                .include(".*" + FHIRPersistenceJDBCBenchmark.class.getSimpleName() + ".*")
+                .jvmArgsPrepend("-Xms2g", "-Xmx2g")
+                .addProfiler(GCProfiler.class)
+                .verbosity(VerboseMode.NORMAL)
+                .warmupIterations(1)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementIterations(2)
+                .measurementTime(TimeValue.seconds(10))
+                .forks(1)
+                .threads(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.validation.FHIRValidator;
+
+/**
+ * Measures the cold start cost of the model: each fork is a new JVM and runs a single invocation, so
+ * the time includes the initialization of ModelSupport and the classes it loads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ModelSupportStartupBenchmark {
+    @State(Scope.Benchmark)
+    public static class ExampleState {
+        public String json;
+
+        @Setup
+        public void setUp() {
+            // reading the example only touches the examples jar, so the model is still cold
+            json = BenchmarkUtil.getSpecExample(Format.JSON, "patient-example");
+        }
+    }
+
+    @Benchmark
+    public void benchmarkModelSupportInit(Blackhole bh) {
+        bh.consume(ModelSupport.getModelClasses().size());
+    }
+
+    /**
+     * Approximates the time to the first request by parsing and validating a resource in a cold JVM
+     */
+    @Benchmark
+    public void benchmarkFirstParseAndValidate(ExampleState state, Blackhole bh) throws Exception {
+        Resource resource = FHIRParser.parser(Format.JSON).parse(new StringReader(state.json));
+        bh.consume(FHIRValidator.validator().validate(resource));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(".*" + ModelSupportStartupBenchmark.class.getSimpleName() + ".*")
+                .verbosity(VerboseMode.NORMAL)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.jdbc.util.PayloadCompression;
+
+/**
+ * Compares the CPU cost of writing and reading a resource payload with each {@link PayloadCompression} codec.
+ * The compressed size for each codec is printed during setup.
+ */
+public class PayloadCompressionBenchmark {
+    private static final byte[] BUFFER = new byte[8192];
+
+    @State(Scope.Benchmark)
+    public static class PayloadCompressionState {
+        Resource resource;
+        PayloadCompression compression;
+        byte[] compressed;
+
+        // JMH will inject the value into the annotated field before any Setup method is called.
+        @Param({"Observation-1"})
+        public String exampleName;
+
+        @Param({"gzip", "deflate", "deflate-dict", "none"})
+        public String codec;
+
+        @Setup
+        public void setUp() throws Exception {
+            if (exampleName == null) {
+                System.err.println("exampleName is null; if you're in Eclipse then make sure annotation processing is on and you've ran 'mvn clean package'.");
+                System.exit(1);
+            }
+            String resourceText = BenchmarkUtil.getSpecExample(Format.JSON, exampleName);
+            resource = FHIRParser.parser(Format.JSON).parse(new StringReader(resourceText));
+            compression = PayloadCompression.from(codec);
+            compressed = write(this);
+            System.out.println("Compressed " + exampleName + " with " + codec + ": " + compressed.length + " bytes");
+        }
+    }
+
+    @Benchmark
+    public byte[] benchmarkWrite(PayloadCompressionState state) throws Exception {
+        return write(state);
+    }
+
+    @Benchmark
+    public int benchmarkRead(PayloadCompressionState state) throws Exception {
+        int total = 0;
+        try (InputStream in = PayloadCompression.decompress(new ByteArrayInputStream(state.compressed))) {
+            int len;
+            while ((len = in.read(BUFFER)) > 0) {
+                total += len;
+            }
+        }
+        return total;
+    }
+
+    private static byte[] write(PayloadCompressionState state) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = state.compression.compress(bytes)) {
+            FHIRGenerator.generator(Format.JSON, false).generate(state.resource, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(PayloadCompressionBenchmark.class)
+                .run(BenchmarkUtil.getRandomSpecExampleName());
+    }
+}
@@ -10,6 +10,7 @@ import static com.ibm.fhir.model.type.String.string;
 
 import java.io.Serializable;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -17,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.AbstractItemWriter;
@@ -54,6 +56,8 @@ import com.ibm.fhir.operation.bulkdata.model.type.BulkDataContext;
 import com.ibm.fhir.operation.bulkdata.model.type.OperationFields;
 import com.ibm.fhir.operation.bulkdata.model.type.StorageType;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.ResourceVersionMetadata;
+import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
@@ -185,6 +189,12 @@ public class ChunkWriter extends AbstractItemWriter {
             // Get the Skippable Update status
             boolean skip = adapter.enableSkippableUpdates();
             Map<String,SaltHash> localCache = new HashMap<>();
+            // Creates and updates are collected and written in batches, so that the persistence layer
+            // can store them with far fewer database round-trips
+            List<Resource> creates = new ArrayList<>();
+            List<FHIRPersistenceContext> createContexts = new ArrayList<>();
+            List<Resource> updates = new ArrayList<>();
+            List<FHIRPersistenceContext> updateContexts = new ArrayList<>();
             try {
                 for (Object objResJsonList : arg0) {
                     @SuppressWarnings("unchecked")
@@ -198,17 +208,9 @@ public class ChunkWriter extends AbstractItemWriter {
                             if (failValidationIds.contains(id)) {
                                 continue;
                             }
-                            OperationOutcome operationOutcome;
                             if (id == null) {
-                                long startTime = System.currentTimeMillis();
-                                FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null);
-                                operationOutcome =
-                                        fhirPersistence.create(persistenceContext, fhirResource).getOutcome();
-                                if (auditLogger.shouldLog()) {
-                                    long endTime = System.currentTimeMillis();
-                                    String location = "@source:" + ctx.getSource() + "/" + ctx.getImportPartitionWorkitem();
-                                    auditLogger.logCreateOnImport(fhirResource, new Date(startTime), new Date(endTime), Response.Status.CREATED, location, "BulkDataOperator");
-                                }
+                                creates.add(fhirResource);
+                                createContexts.add(FHIRPersistenceContextFactory.createPersistenceContext(null));
                             } else {
                                 Map<String, Object> props = new HashMap<>();
                                 props.put(FHIRPersistenceEvent.PROPNAME_PERSISTENCE_IMPL, fhirPersistence);
@@ -218,20 +220,18 @@ public class ChunkWriter extends AbstractItemWriter {
                                 FHIRPersistenceEvent event = new FHIRPersistenceEvent(fhirResource, props);
 
                                 FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(event);
-                                long startTime = System.currentTimeMillis();
-                                operationOutcome = conditionalFingerprintUpdate(chunkData, skip, localCache, fhirPersistence, persistenceContext, id, fhirResource);
-                                if (auditLogger.shouldLog()) {
-                                    long endTime = System.currentTimeMillis();
-                                    String location = "@source:" + ctx.getSource() + "/" + ctx.getImportPartitionWorkitem();
-                                    auditLogger.logUpdateOnImport(null, fhirResource, new Date(startTime), new Date(endTime), Response.Status.OK, location, "BulkDataOperator");
+                                OperationOutcome operationOutcome = checkSkippableUpdate(chunkData, skip, localCache, fhirPersistence, persistenceContext, id, fhirResource);
+                                if (operationOutcome == null) {
+                                    updates.add(fhirResource);
+                                    updateContexts.add(persistenceContext);
+                                } else {
+                                    succeededNum++;
+                                    if (collectImportOperationOutcomes) {
+                                        FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
+                                        chunkData.getBufferStreamForImport().write(NDJSON_LINESEPERATOR);
+                                    }
                                 }
                             }
-
-                            succeededNum++;
-                            if (collectImportOperationOutcomes && operationOutcome != null) {
-                                FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
-                                chunkData.getBufferStreamForImport().write(NDJSON_LINESEPERATOR);
-                            }
                         } catch (FHIROperationException e) {
                             logger.warning("Failed to import '" + fhirResource.getId() + "' due to error: " + e.getMessage());
                             failedNum++;
@@ -243,6 +243,14 @@ public class ChunkWriter extends AbstractItemWriter {
                         }
                     }
                 }
+
+                String location = "@source:" + ctx.getSource() + "/" + ctx.getImportPartitionWorkitem();
+                int[] counts = writeBatch(chunkData, fhirPersistence, createContexts, creates, false, collectImportOperationOutcomes, location);
+                succeededNum += counts[0];
+                failedNum += counts[1];
+                counts = writeBatch(chunkData, fhirPersistence, updateContexts, updates, true, collectImportOperationOutcomes, location);
+                succeededNum += counts[0];
+                failedNum += counts[1];
             } finally {
                 // Release the DB connection.
                 // This doesn't really commit the transaction, because the transaction was started and will be committed
@@ -279,13 +287,95 @@ public class ChunkWriter extends AbstractItemWriter {
     }
 
     /**
-     * conditional update checks to see if our cache contains the key, if not reads from the db, and calculates the cache.
+     * Write a batch of resources using a single call to the persistence layer, logging each one
+     * to the audit log and collecting its outcome.
+     *
+     * <p>A resource which the persistence layer could not store is reported by its own result, and only that resource
+     * is counted as failed. If the persistence layer fails the batch as a whole (e.g. because the connection was lost
+     * or the database aborted the transaction), none of it is stored, so every resource in it is counted as failed and
+     * a single batch-level OperationOutcome is collected.
+     *
+     * @param chunkData the transient user data holding the outcome streams
+     * @param persistence used to facilitate the calls to the underlying db
+     * @param contexts the persistence context of each of the resources
+     * @param resources the resources to write
+     * @param update true to update the resources, false to create them
+     * @param collectImportOperationOutcomes true if outcomes should be written to the outcome streams
+     * @param location the source location used in the audit log
+     * @return the number of resources which succeeded and failed
+     * @throws Exception
+     */
+    private int[] writeBatch(ImportTransientUserData chunkData, FHIRPersistence persistence, List<FHIRPersistenceContext> contexts,
+            List<Resource> resources, boolean update, boolean collectImportOperationOutcomes, String location) throws Exception {
+        int[] counts = new int[2];
+        if (resources.isEmpty()) {
+            return counts;
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<SingleResourceResult<Resource>> results;
+        try {
+            results = update ? persistence.updateBatch(contexts, resources) : persistence.createBatch(contexts, resources);
+        } catch (FHIROperationException e) {
+            String description = "Failed to import a batch of " + resources.size() + " resources"
+                    + (update ? " with ids " + resources.stream().map(Resource::getId).collect(Collectors.toList()) : "")
+                    + "; the whole batch is counted as failed";
+            logger.warning(description + ": " + e.getMessage());
+            counts[1] = resources.size();
+            if (collectImportOperationOutcomes) {
+                OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false).toBuilder()
+                        .issue(Issue.builder()
+                            .severity(IssueSeverity.ERROR)
+                            .code(IssueType.EXCEPTION)
+                            .details(CodeableConcept.builder()
+                                .text(string(description))
+                                .build())
+                            .build())
+                        .build();
+                FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
+                chunkData.getBufferStreamForImportError().write(NDJSON_LINESEPERATOR);
+            }
+            return counts;
+        }
+        long endTime = System.currentTimeMillis();
+
+        for (int i = 0; i < resources.size(); i++) {
+            Resource resource = resources.get(i);
+            SingleResourceResult<Resource> result = results.get(i);
+            OperationOutcome operationOutcome = result.getOutcome();
+            if (result.isSuccess()) {
+                counts[0]++;
+                if (auditLogger.shouldLog()) {
+                    if (update) {
+                        auditLogger.logUpdateOnImport(null, resource, new Date(startTime), new Date(endTime), Response.Status.OK, location, "BulkDataOperator");
+                    } else {
+                        auditLogger.logCreateOnImport(resource, new Date(startTime), new Date(endTime), Response.Status.CREATED, location, "BulkDataOperator");
+                    }
+                }
+                if (collectImportOperationOutcomes && operationOutcome != null) {
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
+                    chunkData.getBufferStreamForImport().write(NDJSON_LINESEPERATOR);
+                }
+            } else {
+                logger.warning("Failed to import '" + resource.getId() + "'");
+                counts[1]++;
+                if (collectImportOperationOutcomes && operationOutcome != null) {
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImportError());
+                    chunkData.getBufferStreamForImportError().write(NDJSON_LINESEPERATOR);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * skippable update checks to see if our cache contains the key, if not reads from the db, and calculates the cache.
      * The cache is saved within the context of this particular execution, and then destroyed.
      *
      * @implNote considered using a shared cache, a few things with that to consider:
      * 1 - the shared cache would have to be updated at the end of a transaction (we don't control it).
      * 2 - we would have to use a transaction sync registry to control the synchronization of the cache.
-     * 3 - Instead, we're doing a read then update.
+     * 3 - Instead, we're doing a read, and the update is written later as part of a batch.
      *
      * @param chunkData the transient user data used increment the number of skips
      * @param skip should skip the resource if it matches
@@ -294,11 +384,11 @@ public class ChunkWriter extends AbstractItemWriter {
      * @param context used in db calls
      * @param logicalId the logical id of the FHIR resource (e.g. 1-2-3-4)
      * @param resource the FHIR Resource
-     * @return outcomes including information or warnings
+     * @return an informational outcome if the update can be skipped, or null if the resource needs to be updated
      * @throws FHIRPersistenceException
      */
-    public OperationOutcome conditionalFingerprintUpdate(ImportTransientUserData chunkData, boolean skip, Map<String, SaltHash> localCache, FHIRPersistence persistence, FHIRPersistenceContext context, String logicalId, Resource resource) throws FHIRPersistenceException {
-        OperationOutcome oo;
+    public OperationOutcome checkSkippableUpdate(ImportTransientUserData chunkData, boolean skip, Map<String, SaltHash> localCache, FHIRPersistence persistence, FHIRPersistenceContext context, String logicalId, Resource resource) throws FHIRPersistenceException {
+        OperationOutcome oo = null;
         if (skip) {
             // Key is scoped to the ResourceType.
             String key = resourceType + "/" + logicalId;
@@ -306,7 +396,21 @@ public class ChunkWriter extends AbstractItemWriter {
 
             Resource oldResource = null;
             ResourceFingerprintVisitor fp = new ResourceFingerprintVisitor();
-            if (oldBaseLine == null) {
+            boolean readRequired = oldBaseLine == null;
+            if (oldBaseLine == null && persistence.isVersionMetadataSupported()) {
+                // Use the fingerprint stored with the current version, if there is one, to avoid
+                // reading and fingerprinting the payload
+                ResourceVersionMetadata metadata = persistence.readCurrentVersionMetadata(context, resource.getClass(), logicalId);
+                if (metadata == null || metadata.isDeleted()) {
+                    readRequired = false;
+                } else if (metadata.getFingerprint() != null) {
+                    oldBaseLine = metadata.getFingerprint();
+                    fp = new ResourceFingerprintVisitor(oldBaseLine);
+                    readRequired = false;
+                }
+            }
+
+            if (readRequired) {
                 // Go get the latest resource in the database and fingerprint the resource.
                 // If the resource exists, then we need to fingerprint.
                 try {
@@ -314,7 +418,7 @@ public class ChunkWriter extends AbstractItemWriter {
                     // the resource deleted exception.
                     oldResource = persistence.read(context, resource.getClass(), logicalId).getResource();
                 } catch (FHIRPersistenceResourceDeletedException fpde) {
-                    logger.throwing("ChunkWriter", "conditionalFingerprintUpdate", fpde);
+                    logger.throwing("ChunkWriter", "checkSkippableUpdate", fpde);
                 }
                 if (oldResource != null) {
                     ResourceFingerprintVisitor fpOld = new ResourceFingerprintVisitor();
@@ -342,17 +446,10 @@ public class ChunkWriter extends AbstractItemWriter {
                         .build())
                     .build();
             } else {
-                // We need to update the db and update the local cache
-                if (oldResource != null) {
-                    // Old Resource is set so we avoid an extra read
-                    context.getPersistenceEvent().setPrevFhirResource(oldResource);
-                }
-                oo = persistence.update(context, logicalId, resource).getOutcome();
+                // The update will be written with the rest of the batch, so record what it will leave in the db
                 localCache.put(key, newBaseLine);
             }
-        } else {
-            oo = persistence.update(context, logicalId, resource).getOutcome();
         }
         return oo;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+
+/**
+ * An immutable view of the configuration for one tenant, with the fallback to the "default" configuration
+ * already applied. Every property and property group is indexed by its hierarchical name
+ * (e.g. "fhirServer/core/defaultPageSize"), so a lookup is a single hash lookup instead of a walk
+ * through the tenant configuration and then the default configuration.
+ *
+ * <p>A snapshot is built from the JsonObjects held by the tenant and default PropertyGroups. The configuration
+ * files are checked for changes at most once per check interval; when either configuration has been reloaded,
+ * it no longer matches the snapshot and a new snapshot replaces it.
+ */
+class ConfigurationSnapshot {
+    // Distinguishes a cached null conversion result from a missing one
+    private static final Object NULL = new Object();
+
+    private final JsonObject tenantJsonObj;
+    private final JsonObject defaultJsonObj;
+    private final Map<String, JsonValue> values;
+    private final Map<String, Object> convertedValues = new ConcurrentHashMap<>();
+    private final AtomicLong nextCheck;
+
+    /**
+     * @param tenantConfig the configuration of the tenant, or null if it doesn't have one
+     * @param defaultConfig the default configuration, or null if the tenant is the default tenant or there isn't one
+     * @param nextCheck the {@link System#nanoTime()} value after which the configuration should be checked for changes
+     */
+    ConfigurationSnapshot(PropertyGroup tenantConfig, PropertyGroup defaultConfig, long nextCheck) {
+        this.nextCheck = new AtomicLong(nextCheck);
+        this.tenantJsonObj = tenantConfig != null ? tenantConfig.getJsonObj() : null;
+        this.defaultJsonObj = defaultConfig != null ? defaultConfig.getJsonObj() : null;
+
+        Map<String, JsonValue> values = new HashMap<>();
+        if (defaultJsonObj != null) {
+            Map<String, JsonValue> defaultValues = new HashMap<>();
+            index(null, defaultJsonObj, defaultValues);
+            for (Map.Entry<String, JsonValue> entry : defaultValues.entrySet()) {
+                // Issue #639. Prevent datasource lookups from falling back to
+                // the default datasource which breaks tenant isolation.
+                if (!entry.getKey().startsWith(FHIRConfiguration.PROPERTY_DATASOURCES)) {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (tenantJsonObj != null) {
+            index(null, tenantJsonObj, values);
+        }
+        this.values = values;
+    }
+
+    /**
+     * Claims the next check of the configuration for changes. At most one caller per check interval gets true;
+     * every other caller keeps using this snapshot without touching the configuration files.
+     *
+     * @param now the current {@link System#nanoTime()} value
+     * @param checkInterval the check interval in nanoseconds
+     * @return true if the check is due and the caller should perform it
+     */
+    boolean claimCheck(long now, long checkInterval) {
+        long next = nextCheck.get();
+        return now - next >= 0 && nextCheck.compareAndSet(next, now + checkInterval);
+    }
+
+    /**
+     * @return true if this snapshot was built from the specified configurations
+     */
+    boolean isSnapshotOf(PropertyGroup tenantConfig, PropertyGroup defaultConfig) {
+        return tenantJsonObj == (tenantConfig != null ? tenantConfig.getJsonObj() : null)
+                && defaultJsonObj == (defaultConfig != null ? defaultConfig.getJsonObj() : null);
+    }
+
+    /**
+     * @param propertyName the hierarchical name of the property
+     * @return the JsonValue of the property or null if it wasn't found in either configuration
+     */
+    JsonValue getJsonValue(String propertyName) {
+        return values.get(propertyName);
+    }
+
+    /**
+     * Returns the value of the property converted by {@link PropertyGroup#convertJsonValue(JsonValue)}.
+     * The conversion is done once per property; list values are copied so that callers can't change the snapshot.
+     *
+     * @param propertyName the hierarchical name of the property
+     * @return the converted value of the property or null if it wasn't found in either configuration
+     * @throws Exception if the value could not be converted
+     */
+    Object getConvertedValue(String propertyName) throws Exception {
+        Object result = convertedValues.get(propertyName);
+        if (result == null) {
+            JsonValue jsonValue = values.get(propertyName);
+            if (jsonValue == null) {
+                return null;
+            }
+            result = PropertyGroup.convertJsonValue(jsonValue);
+            convertedValues.put(propertyName, result != null ? result : NULL);
+        }
+        if (result instanceof List) {
+            return Arrays.asList(((List<?>) result).toArray());
+        }
+        return result != NULL ? result : null;
+    }
+
+    /**
+     * Add each member of the JsonObject, and recursively the members of its JsonObject members,
+     * to the map under its hierarchical name. Members whose names contain the path separator can't
+     * be reached through a hierarchical name and are skipped.
+     */
+    private static void index(String prefix, JsonObject jsonObj, Map<String, JsonValue> values) {
+        for (Map.Entry<String, JsonValue> entry : jsonObj.entrySet()) {
+            if (entry.getKey().contains(PropertyGroup.PATH_ELEMENT_SEPARATOR)) {
+                continue;
+            }
+            String name = prefix == null ? entry.getKey() : prefix + PropertyGroup.PATH_ELEMENT_SEPARATOR + entry.getKey();
+            values.put(name, entry.getValue());
+            if (entry.getValue().getValueType() == JsonValue.ValueType.OBJECT) {
+                index(name, (JsonObject) entry.getValue(), values);
+            }
+        }
+    }
+}
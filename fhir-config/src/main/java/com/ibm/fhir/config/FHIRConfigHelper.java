@@ -7,10 +7,6 @@
 package com.ibm.fhir.config;
 
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import jakarta.json.JsonValue;
 
 /**
  * This class contains a set of static helper methods related to configuration parameters.
@@ -18,7 +14,6 @@ import jakarta.json.JsonValue;
  * tenant's configuration, then (if not found) look in the "default" configuration.
  */
 public class FHIRConfigHelper {
-    private static final Logger log = Logger.getLogger(FHIRConfigHelper.class.getName());
 
     public static String getStringProperty(String propertyName, String defaultValue) {
         return getTypedProperty(String.class, propertyName, defaultValue);
@@ -45,54 +40,6 @@ public class FHIRConfigHelper {
         return getTypedProperty(PropertyGroup.class, propertyName, null);
     }
 
-    /**
-     * This function retrieves the specified property as a generic JsonValue. First we try to retrieve the property from
-     * the current tenant's config, and then if not found we'll also look in the "default" config.
-     *
-     * @param propertyName
-     *            the hierarchical name of the property to be retrieved (e.g. "level1/level2/prop1")
-     * @return a JsonValue representing the property's value or null if it wasn't found in either config
-     */
-    private static JsonValue getPropertyFromTenantOrDefault(String propertyName) {
-        JsonValue result = null;
-
-        PropertyGroup pg = null;
-        String tenantId = FHIRRequestContext.get().getTenantId();
-
-        // First, try to retrieve the configuration (property group) associated with the
-        // current thread's tenant-id.
-        try {
-            pg = FHIRConfiguration.getInstance().loadConfigurationForTenant(tenantId);
-            if (pg != null) {
-                result = pg.getJsonValue(propertyName);
-            }
-        } catch (Exception e) {
-            log.log(Level.WARNING, "Error loading configuration for tenant-id '" + tenantId + "': " + e.getMessage());
-        }
-
-        // If we didn't find the property in the tenant-specific config, then
-        // let's try to find it in the default config.
-        if (result == null && !FHIRConfiguration.DEFAULT_TENANT_ID.equals(tenantId)) {
-            try {
-                if (propertyName.startsWith(FHIRConfiguration.PROPERTY_DATASOURCES)) {
-                    // Issue #639. Prevent datasource lookups from falling back to 
-                    // the default datasource which breaks tenant isolation.
-                    result = null;
-                } else {
-                    // Non-datasource property, which we allow to fall back to default
-                    pg = FHIRConfiguration.getInstance().loadConfiguration();
-                    if (pg != null) {
-                        result = pg.getJsonValue(propertyName);
-                    }
-                }
-            } catch (Exception e) {
-                log.log(Level.WARNING, "Error loading default configuration: " + e.getMessage());
-            }
-        }
-
-        return result;
-    }
-
     /**
      * This generic function will perform the work of retrieving a property from either the tenant-specific config, or
      * the default config, and then converting the resulting value to the appropriate type.
@@ -107,14 +54,16 @@ public class FHIRConfigHelper {
     private static <T> T getTypedProperty(Class<T> expectedDataType, String propertyName, T defaultValue) {
         T result = null;
 
-        // Find the property as a generic JsonValue from either the current tenant's config or the default config.
-        JsonValue jsonValue = getPropertyFromTenantOrDefault(propertyName);
+        // Find the property from either the current tenant's config or the default config.
+        // The snapshot has already resolved the fallback and converts each value only once.
+        String tenantId = FHIRRequestContext.get().getTenantId();
+        ConfigurationSnapshot snapshot = FHIRConfiguration.getInstance().getConfigurationSnapshot(tenantId);
 
         // If found, then convert the value to the expected type.
-        if (jsonValue != null) {
+        if (snapshot.getJsonValue(propertyName) != null) {
             Object obj = null;
             try {
-                obj = PropertyGroup.convertJsonValue(jsonValue);
+                obj = snapshot.getConvertedValue(propertyName);
                 if (obj != null) {
                     // If the property was of the expected type, then just do the assignment.
                     // Otherwise, we'll try to do some simple conversions (e.g. String --> Boolean).
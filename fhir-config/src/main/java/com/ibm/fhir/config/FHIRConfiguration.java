@@ -9,6 +9,10 @@ package com.ibm.fhir.config;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -41,6 +45,8 @@ public class FHIRConfiguration {
     public static final String PROPERTY_MAX_PAGE_SIZE = "fhirServer/core/maxPageSize";
     public static final String PROPERTY_MAX_PAGE_INCLUDE_COUNT = "fhirServer/core/maxPageIncludeCount";
     public static final String PROPERTY_CAPABILITIES_URL = "fhirServer/core/capabilitiesUrl";
+    public static final String PROPERTY_BATCH_PARALLELISM = "fhirServer/core/batchParallelism";
+    public static final String PROPERTY_STREAM_SEARCH_RESPONSES = "fhirServer/core/streamSearchResponses";
 
     // Validation properties
     public static final String PROPERTY_VALIDATION_FAIL_FAST = "fhirServer/validation/failFast";
@@ -91,6 +97,9 @@ public class FHIRConfiguration {
     public static final String PROPERTY_NOTIFICATION_RESOURCE_TYPES = "fhirServer/notifications/common/includeResourceTypes";
     public static final String PROPERTY_NOTIFICATION_NOTIFICATION_SIZE_BEHAVIOR = "fhirServer/notifications/common/maxNotificationSizeBehavior";
     public static final String PROPERTY_NOTIFICATION_MAX_SIZE = "fhirServer/notifications/common/maxNotificationSizeBytes";
+    public static final String PROPERTY_NOTIFICATION_ASYNC = "fhirServer/notifications/common/async";
+    public static final String PROPERTY_NOTIFICATION_QUEUE_SIZE = "fhirServer/notifications/common/queueSize";
+    public static final String PROPERTY_NOTIFICATION_OVERFLOW_POLICY = "fhirServer/notifications/common/overflowPolicy";
     public static final String PROPERTY_WEBSOCKET_ENABLED = "fhirServer/notifications/websocket/enabled";
     public static final String PROPERTY_KAFKA_ENABLED = "fhirServer/notifications/kafka/enabled";
     public static final String PROPERTY_KAFKA_TOPICNAME = "fhirServer/notifications/kafka/topicName";
@@ -117,6 +126,11 @@ public class FHIRConfiguration {
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
     public static final String PROPERTY_JDBC_EXTERNAL_REF_SYSTEM_CACHE_SIZE = "fhirServer/persistence/jdbc/externalRefSystemCacheSize";
     public static final String PROPERTY_JDBC_EXTERNAL_REF_VALUE_CACHE_SIZE = "fhirServer/persistence/jdbc/externalRefValueCacheSize";
+    public static final String PROPERTY_JDBC_PAYLOAD_COMPRESSION = "fhirServer/persistence/jdbc/payloadCompression";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_ENABLED = "fhirServer/persistence/jdbc/resourceCache/enabled";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_MAX_SIZE = "fhirServer/persistence/jdbc/resourceCache/maxSize";
+    public static final String PROPERTY_JDBC_REINDEX_PARALLELISM = "fhirServer/persistence/jdbc/reindexParallelism";
+    public static final String PROPERTY_JDBC_INCLUDE_PARALLELISM = "fhirServer/persistence/jdbc/includeParallelism";
 
     // Optimizer options within a datasource definition
     public static final String PROPERTY_JDBC_SEARCH_OPTIMIZER_OPTIONS = "searchOptimizerOptions";
@@ -173,6 +187,16 @@ public class FHIRConfiguration {
      */
     private TenantSpecificPropertyGroupCache configCache = new TenantSpecificPropertyGroupCache();
 
+    /**
+     * The configuration snapshots used by FHIRConfigHelper, keyed by tenant-id.
+     */
+    private final Map<String, ConfigurationSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * The minimum time between two checks of a tenant's configuration files for changes.
+     */
+    private static final long SNAPSHOT_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     /**
      * This method is used to configure an explicit top-level directory where FHIR Server configuration
      * information is expected to reside.
@@ -235,6 +259,53 @@ public class FHIRConfiguration {
         synchronized (configCache) {
             configCache.clearCache();
         }
+        snapshots.clear();
+    }
+
+    /**
+     * Returns the configuration snapshot for the specified tenant. The tenant and default configurations are
+     * checked for changes at most once per check interval, and only by a single caller; all other lookups are
+     * served from the current snapshot. If the cache has reloaded either configuration, a new snapshot is built
+     * and atomically replaces the old one.
+     *
+     * @param tenantId
+     *            a shortname representing the tenant
+     * @return the configuration snapshot for the tenant; never null
+     */
+    ConfigurationSnapshot getConfigurationSnapshot(String tenantId) {
+        long now = System.nanoTime();
+        ConfigurationSnapshot snapshot = snapshots.get(tenantId);
+        if (snapshot != null && !snapshot.claimCheck(now, SNAPSHOT_CHECK_INTERVAL_NANOS)) {
+            return snapshot;
+        }
+
+        PropertyGroup tenantConfig = null;
+        try {
+            tenantConfig = loadConfigurationForTenant(tenantId);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Error loading configuration for tenant-id '" + tenantId + "': " + e.getMessage());
+        }
+
+        PropertyGroup defaultConfig = null;
+        if (!DEFAULT_TENANT_ID.equals(tenantId)) {
+            try {
+                defaultConfig = loadConfiguration();
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Error loading default configuration: " + e.getMessage());
+            }
+        }
+
+        if (snapshot != null && snapshot.isSnapshotOf(tenantConfig, defaultConfig)) {
+            return snapshot;
+        }
+
+        ConfigurationSnapshot newSnapshot = new ConfigurationSnapshot(tenantConfig, defaultConfig, now + SNAPSHOT_CHECK_INTERVAL_NANOS);
+        if (snapshot == null) {
+            snapshot = snapshots.putIfAbsent(tenantId, newSnapshot);
+            return snapshot != null ? snapshot : newSnapshot;
+        }
+        snapshots.replace(tenantId, snapshot, newSnapshot);
+        return newSnapshot;
     }
 
     /**
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -295,6 +295,16 @@ public class FHIRConfigHelperTest {
         assertEquals(expectedList1, l);
     }
 
+    @Test
+    public void testListPropertyIsCopied() throws Exception {
+        List<String> l = FHIRConfigHelper.getStringListProperty("collection/groupB/stringList1");
+        assertEquals(expectedList1, l);
+
+        // Changing the returned list must not change the cached configuration
+        l.set(0, "changed");
+        assertEquals(expectedList1, FHIRConfigHelper.getStringListProperty("collection/groupB/stringList1"));
+    }
+
     @Test
     public void testGetConfiguredTenants() {
         List<String> tenants = FHIRConfiguration.getInstance().getConfiguredTenants();
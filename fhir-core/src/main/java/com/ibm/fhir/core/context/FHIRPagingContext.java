@@ -109,6 +109,28 @@ public interface FHIRPagingContext {
      */
     void setMatchCount(int matchCount);
 
+    /**
+     * @return the opaque continuation token that was passed with the request, or null if the request did not include one
+     * @implNote persistence implementations may use a continuation token that matches the current page number
+     *           to seek directly to the start of the page instead of skipping all rows on the preceding pages
+     */
+    String getPageToken();
+
+    /**
+     * @return an opaque continuation token for the page after the current one, or null if none is available
+     */
+    String getNextPageToken();
+
+    /**
+     * @param pageToken the opaque continuation token that was passed with the request
+     */
+    void setPageToken(String pageToken);
+
+    /**
+     * @param nextPageToken an opaque continuation token for the page after the current one
+     */
+    void setNextPageToken(String nextPageToken);
+
     /**
      * @return whether the request should be handled with leniency
      */
@@ -19,6 +19,8 @@ public class FHIRPagingContextImpl implements FHIRPagingContext {
     protected int maxPageIncludeCount;
     protected Integer totalCount;
     protected int matchCount;
+    protected String pageToken;
+    protected String nextPageToken;
     protected boolean lenient = true;
 
     /**
@@ -109,6 +111,26 @@ public class FHIRPagingContextImpl implements FHIRPagingContext {
         this.matchCount = matchCount;
     }
 
+    @Override
+    public String getPageToken() {
+        return pageToken;
+    }
+
+    @Override
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    @Override
+    public void setPageToken(String pageToken) {
+        this.pageToken = pageToken;
+    }
+
+    @Override
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+
     @Override
     public boolean isLenient() {
         return lenient;
@@ -34,6 +34,7 @@ import jakarta.json.JsonReader;
 import jakarta.json.JsonReaderFactory;
 import jakarta.json.JsonString;
 import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
 
 import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.*;
@@ -49,6 +50,11 @@ import net.jcip.annotations.NotThreadSafe;
 @Generated("com.ibm.fhir.tools.CodeGenerator")
 public class FHIRJsonParser extends FHIRAbstractParser {
     public static boolean DEBUG = false;
+    /**
+     * Property name for a property that controls whether the parser reads JSON events straight into the model builders
+     * instead of first reading the input into a JsonObject
+     */
+    public static final java.lang.String PROPERTY_STREAMING = "com.ibm.fhir.model.parser.json.streaming";
     private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(Collections.singletonMap(JsonConfig.REJECT_DUPLICATE_KEYS, true));
 
     private final Stack<java.lang.String> stack = new Stack<>();
@@ -63,6 +69,15 @@ public class FHIRJsonParser extends FHIRAbstractParser {
     }
 
     public <T extends Resource> T parseAndFilter(InputStream in, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
+        if (elementsToInclude == null && isStreaming()) {
+            try (JsonParser jsonParser = FHIRJsonStreamingParser.JSON_PARSER_FACTORY.createParser(nonClosingInputStream(in), StandardCharsets.UTF_8)) {
+                return parse(jsonParser);
+            } catch (FHIRParserException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new FHIRParserException(e.getMessage(), getPath(), e);
+            }
+        }
         try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingInputStream(in), StandardCharsets.UTF_8)) {
             JsonObject jsonObject = jsonReader.readObject();
             return parseAndFilter(jsonObject, elementsToInclude);
@@ -79,6 +94,15 @@ public class FHIRJsonParser extends FHIRAbstractParser {
     }
 
     public <T extends Resource> T parseAndFilter(Reader reader, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
+        if (elementsToInclude == null && isStreaming()) {
+            try (JsonParser jsonParser = FHIRJsonStreamingParser.JSON_PARSER_FACTORY.createParser(nonClosingReader(reader))) {
+                return parse(jsonParser);
+            } catch (FHIRParserException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new FHIRParserException(e.getMessage(), getPath(), e);
+            }
+        }
         try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingReader(reader))) {
             JsonObject jsonObject = jsonReader.readObject();
             return parseAndFilter(jsonObject, elementsToInclude);
@@ -89,6 +113,24 @@ public class FHIRJsonParser extends FHIRAbstractParser {
         }
     }
 
+    public <T extends Resource> T parse(JsonParser jsonParser) throws FHIRParserException {
+        try {
+            reset();
+            return new FHIRJsonStreamingParser(stack, validating, ignoringUnrecognizedElements).parse(jsonParser);
+        } catch (Exception e) {
+            throw new FHIRParserException(e.getMessage(), getPath(), e);
+        }
+    }
+
+    @Override
+    public boolean isPropertySupported(java.lang.String name) {
+        return PROPERTY_STREAMING.equals(name);
+    }
+
+    private boolean isStreaming() {
+        return getPropertyOrDefault(PROPERTY_STREAMING, java.lang.Boolean.FALSE, java.lang.Boolean.class);
+    }
+
     public <T extends Resource> T parse(JsonObject jsonObject) throws FHIRParserException {
         return parseAndFilter(jsonObject, null);
     }
@@ -0,0 +1,667 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.parser;
+
+import static com.ibm.fhir.model.util.JsonSupport.getResourceType;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.glassfish.json.api.JsonConfig;
+
+import jakarta.json.Json;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParser.Event;
+import jakarta.json.stream.JsonParserFactory;
+
+import com.ibm.fhir.model.builder.AbstractBuilder;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Base64Binary;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.type.Time;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A pull parser that reads {@link JsonParser} events straight into the fhir-model builders without materializing an
+ * intermediate {@link JsonObject} for the resource.
+ *
+ * <p>This class is the engine behind the streaming mode of {@link FHIRJsonParser} (see
+ * {@link FHIRJsonParser#PROPERTY_STREAMING}) and applies the same checks as the DOM-based parser: unrecognized and
+ * duplicate keys, JSON value types, choice element consistency and primitive extension ({@code _element}) alignment.
+ * Element metadata and builder methods are looked up once per model class and cached.
+ *
+ * <p>Resource objects that do not start with the {@code resourceType} key are buffered and replayed once their type
+ * is known.
+ */
+@NotThreadSafe
+final class FHIRJsonStreamingParser {
+    static final JsonParserFactory JSON_PARSER_FACTORY = Json.createParserFactory(null);
+    private static final JsonBuilderFactory JSON_BUILDER_FACTORY = Json.createBuilderFactory(Collections.singletonMap(JsonConfig.REJECT_DUPLICATE_KEYS, true));
+    private static final Map<Class<?>, TypeInfo> TYPE_INFO_MAP = new ConcurrentHashMap<>();
+
+    private final Stack<java.lang.String> stack;
+    private final boolean validating;
+    private final boolean ignoringUnrecognizedElements;
+
+    /**
+     * @param stack
+     *     the element path stack of the calling parser; used for error reporting
+     * @param validating
+     *     the validating builder indicator
+     * @param ignoringUnrecognizedElements
+     *     the ignoring unrecognized elements indicator
+     */
+    FHIRJsonStreamingParser(Stack<java.lang.String> stack, boolean validating, boolean ignoringUnrecognizedElements) {
+        this.stack = stack;
+        this.validating = validating;
+        this.ignoringUnrecognizedElements = ignoringUnrecognizedElements;
+    }
+
+    /**
+     * Parse the next JSON object from the passed parser into a resource
+     *
+     * @param parser
+     *     a JSON parser positioned before the START_OBJECT event of the resource
+     * @return
+     *     the parsed resource
+     * @throws IllegalArgumentException
+     *     if the JSON is not a valid representation of a FHIR resource
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Resource> T parse(JsonParser parser) {
+        Event event = parser.hasNext() ? parser.next() : null;
+        if (event != Event.START_OBJECT) {
+            throw new IllegalArgumentException("Expected: JsonObject but found: " + valueType(event));
+        }
+        return (T) parseResource(parser, null, -1);
+    }
+
+    /**
+     * Parse a resource whose START_OBJECT event has just been consumed
+     */
+    private Resource parseResource(JsonParser parser, java.lang.String elementName, int elementIndex) {
+        Event event = parser.next();
+        if (event == Event.KEY_NAME && "resourceType".equals(parser.getString())) {
+            event = parser.next();
+            if (event != Event.VALUE_STRING) {
+                throw new IllegalArgumentException("Expected: JsonString but found: " + valueType(event) + " for element: resourceType");
+            }
+            Class<?> resourceType = ModelSupport.getResourceType(parser.getString());
+            if (resourceType == null) {
+                throw new IllegalArgumentException("Invalid resource type: '" + parser.getString() + "'");
+            }
+            return (Resource) parseObject(parser, getTypeInfo(resourceType), resourceName(elementName, resourceType), elementIndex, true);
+        }
+
+        // resourceType is not the first key; buffer the rest of the object and replay it once the type is known
+        JsonObjectBuilder builder = JSON_BUILDER_FACTORY.createObjectBuilder();
+        while (event == Event.KEY_NAME) {
+            java.lang.String key = parser.getString();
+            parser.next();
+            builder.add(key, parser.getValue());
+            event = parser.next();
+        }
+        JsonObject jsonObject = builder.build();
+        Class<?> resourceType = getResourceType(jsonObject);
+        try (JsonParser replay = JSON_PARSER_FACTORY.createParser(new StringReader(jsonObject.toString()))) {
+            replay.next();
+            return (Resource) parseObject(replay, getTypeInfo(resourceType), resourceName(elementName, resourceType), elementIndex, false);
+        }
+    }
+
+    private java.lang.String resourceName(java.lang.String elementName, Class<?> resourceType) {
+        return (elementName != null) ? elementName : resourceType.getSimpleName();
+    }
+
+    /**
+     * Parse an object of the passed type whose START_OBJECT event (and possibly resourceType key) has been consumed
+     */
+    private Object parseObject(JsonParser parser, TypeInfo typeInfo, java.lang.String elementName, int elementIndex, boolean resourceTypeSeen) {
+        stackPush(elementName, elementIndex);
+        AbstractBuilder<?> builder = typeInfo.builder();
+        builder.setValidating(validating);
+        parseMembers(parser, typeInfo, builder, resourceTypeSeen);
+        Object result = builder.build();
+        stackPop();
+        return result;
+    }
+
+    /**
+     * Parse the members of the current object into the passed builder, up to and including the END_OBJECT event
+     */
+    private void parseMembers(JsonParser parser, TypeInfo typeInfo, AbstractBuilder<?> builder, boolean resourceTypeSeen) {
+        Set<java.lang.String> keys = new HashSet<>();
+        if (resourceTypeSeen) {
+            keys.add("resourceType");
+        }
+        Slot[] slots = null;
+
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            java.lang.String key = parser.getString();
+            if (!keys.add(key)) {
+                throw new IllegalArgumentException("Duplicate key '" + key + "' is not allowed");
+            }
+            KeyInfo keyInfo = typeInfo.keyInfoMap.get(key);
+            if (keyInfo == null) {
+                if (!ignoringUnrecognizedElements && !"resourceType".equals(key) && !"fhir_comments".equals(key)) {
+                    throw new IllegalArgumentException("Unrecognized element: '" + key + "'");
+                }
+                skipValue(parser);
+                continue;
+            }
+
+            event = parser.next();
+            switch (keyInfo.kind) {
+            case JAVA_STRING:
+                if (event != Event.VALUE_STRING) {
+                    throw new IllegalArgumentException("Expected: JsonString but found: " + valueType(event) + " for element: " + key);
+                }
+                stackPush(key, -1);
+                invoke(keyInfo.setter, builder, parser.getString());
+                stackPop();
+                break;
+            case PRIMITIVE:
+                if (slots == null) {
+                    slots = new Slot[typeInfo.slotCount];
+                }
+                parsePrimitive(parser, event, keyInfo, key, slot(slots, keyInfo));
+                break;
+            case COMPLEX:
+            case RESOURCE:
+                if (keyInfo.choice) {
+                    if (slots == null) {
+                        slots = new Slot[typeInfo.slotCount];
+                    }
+                    checkChoice(slot(slots, keyInfo), keyInfo);
+                }
+                if (keyInfo.repeating) {
+                    if (event != Event.START_ARRAY) {
+                        throw new IllegalArgumentException("Expected: JsonArray but found: " + valueType(event) + " for element: " + key);
+                    }
+                    List<Object> values = new ArrayList<>();
+                    while ((event = parser.next()) != Event.END_ARRAY) {
+                        values.add(parseComplex(parser, event, keyInfo, key, values.size()));
+                    }
+                    invoke(keyInfo.setter, builder, values);
+                } else {
+                    invoke(keyInfo.setter, builder, parseComplex(parser, event, keyInfo, key, -1));
+                }
+                break;
+            }
+        }
+
+        if (slots != null) {
+            for (Slot slot : slots) {
+                if (slot != null) {
+                    completeSlot(slot, builder);
+                }
+            }
+        }
+    }
+
+    private Object parseComplex(JsonParser parser, Event event, KeyInfo keyInfo, java.lang.String key, int elementIndex) {
+        if (event != Event.START_OBJECT) {
+            throw new IllegalArgumentException("Expected: JsonObject but found: " + valueType(event) + " for element: " + key);
+        }
+        if (keyInfo.kind == Kind.RESOURCE) {
+            return parseResource(parser, key, elementIndex);
+        }
+        return parseObject(parser, keyInfo.valueTypeInfo(), key, elementIndex, false);
+    }
+
+    private Slot slot(Slot[] slots, KeyInfo keyInfo) {
+        Slot slot = slots[keyInfo.slotIndex];
+        if (slot == null) {
+            slot = new Slot();
+            slots[keyInfo.slotIndex] = slot;
+        }
+        return slot;
+    }
+
+    private void checkChoice(Slot slot, KeyInfo keyInfo) {
+        if (keyInfo.underscore) {
+            if (slot.underscoreKey != null) {
+                throw new IllegalArgumentException("Only one choice element key of the form: _" + keyInfo.elementName + "[x] is allowed");
+            }
+            slot.underscoreKey = keyInfo;
+        } else {
+            if (slot.valueKey != null) {
+                throw new IllegalArgumentException("Only one choice element key of the form: " + keyInfo.elementName + "[x] is allowed");
+            }
+            slot.valueKey = keyInfo;
+        }
+        if (slot.valueKey != null && slot.underscoreKey != null && slot.valueKey.valueType != slot.underscoreKey.valueType) {
+            throw new IllegalArgumentException("Choice element keys: " + slot.valueKey.key + " and " + slot.underscoreKey.key + " are not consistent");
+        }
+    }
+
+    private void parsePrimitive(JsonParser parser, Event event, KeyInfo keyInfo, java.lang.String key, Slot slot) {
+        java.lang.String name = keyInfo.underscore ? key.substring(1) : key;
+        if (keyInfo.choice) {
+            checkChoice(slot, keyInfo);
+        } else if (keyInfo.underscore) {
+            slot.underscoreKey = keyInfo;
+        } else {
+            slot.valueKey = keyInfo;
+        }
+        if (!keyInfo.repeating) {
+            if (slot.builder == null) {
+                slot.builder = keyInfo.valueTypeInfo().builder();
+                slot.builder.setValidating(validating);
+                slot.name = name;
+            }
+            if (keyInfo.underscore) {
+                parsePrimitiveExtension(parser, event, name, slot.builder, -1);
+            } else {
+                parsePrimitiveValue(parser, event, keyInfo, name, slot.builder, -1);
+            }
+            return;
+        }
+
+        if (event != Event.START_ARRAY) {
+            throw new IllegalArgumentException("Expected: JsonArray but found: " + valueType(event) + " for element: " + key);
+        }
+        if (slot.builders == null) {
+            slot.builders = new ArrayList<>();
+            slot.name = name;
+        }
+        int index = 0;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (index == slot.builders.size()) {
+                AbstractBuilder<?> builder = keyInfo.valueTypeInfo().builder();
+                builder.setValidating(validating);
+                slot.builders.add(builder);
+            }
+            if (keyInfo.underscore) {
+                parsePrimitiveExtension(parser, event, name, slot.builders.get(index), index);
+            } else {
+                parsePrimitiveValue(parser, event, keyInfo, name, slot.builders.get(index), index);
+            }
+            index++;
+        }
+        if (keyInfo.underscore) {
+            slot.underscoreCount = index;
+        } else {
+            slot.valueCount = index;
+        }
+    }
+
+    private void parsePrimitiveExtension(JsonParser parser, Event event, java.lang.String name, AbstractBuilder<?> builder, int elementIndex) {
+        stackPush(name, elementIndex);
+        if (event == Event.START_OBJECT) {
+            parseMembers(parser, TypeInfo.ELEMENT, builder, false);
+        } else if (event != Event.VALUE_NULL || elementIndex == -1) {
+            throw new IllegalArgumentException("Expected: OBJECT but found: " + valueType(event) + " for element: _" + name);
+        }
+        stackPop();
+    }
+
+    private void parsePrimitiveValue(JsonParser parser, Event event, KeyInfo keyInfo, java.lang.String name, AbstractBuilder<?> builder, int elementIndex) {
+        stackPush(name, elementIndex);
+        switch (keyInfo.primitiveKind) {
+        case BOOLEAN:
+            if (event == Event.VALUE_TRUE || event == Event.VALUE_FALSE) {
+                ((Boolean.Builder) builder).value(event == Event.VALUE_TRUE ? java.lang.Boolean.TRUE : java.lang.Boolean.FALSE);
+            } else if (event != Event.VALUE_NULL || elementIndex == -1) {
+                throw new IllegalArgumentException("Expected: TRUE or FALSE but found: " + valueType(event) + " for element: " + name);
+            }
+            break;
+        case INTEGER:
+            if (event == Event.VALUE_NUMBER) {
+                ((Integer.Builder) builder).value(parser.getBigDecimal().intValueExact());
+            } else if (event != Event.VALUE_NULL || elementIndex == -1) {
+                throw new IllegalArgumentException("Expected: NUMBER but found: " + valueType(event) + " for element: " + name);
+            }
+            break;
+        case DECIMAL:
+            if (event == Event.VALUE_NUMBER) {
+                ((Decimal.Builder) builder).value(parser.getBigDecimal());
+            } else if (event != Event.VALUE_NULL || elementIndex == -1) {
+                throw new IllegalArgumentException("Expected: NUMBER but found: " + valueType(event) + " for element: " + name);
+            }
+            break;
+        default:
+            if (event == Event.VALUE_STRING) {
+                setStringValue(keyInfo.primitiveKind, builder, parser.getString());
+            } else if (elementIndex == -1 && !keyInfo.choice) {
+                throw new IllegalArgumentException("Expected: JsonString but found: " + valueType(event) + " for element: " + name);
+            } else if (event != Event.VALUE_NULL || elementIndex == -1) {
+                throw new IllegalArgumentException("Expected: STRING but found: " + valueType(event) + " for element: " + name);
+            }
+            break;
+        }
+        stackPop();
+    }
+
+    private void setStringValue(PrimitiveKind primitiveKind, AbstractBuilder<?> builder, java.lang.String value) {
+        switch (primitiveKind) {
+        case BASE64_BINARY:
+            ((Base64Binary.Builder) builder).value(value);
+            break;
+        case DATE:
+            ((Date.Builder) builder).value(value);
+            break;
+        case DATE_TIME:
+            ((DateTime.Builder) builder).value(value);
+            break;
+        case INSTANT:
+            ((Instant.Builder) builder).value(value);
+            break;
+        case TIME:
+            ((Time.Builder) builder).value(value);
+            break;
+        case URI:
+            ((Uri.Builder) builder).value(value);
+            break;
+        case XHTML:
+            ((Xhtml.Builder) builder).value(value);
+            break;
+        default:
+            ((String.Builder) builder).value(value);
+            break;
+        }
+    }
+
+    /**
+     * Build the primitive value(s) collected for a slot and pass them to the builder of the enclosing object
+     */
+    private void completeSlot(Slot slot, AbstractBuilder<?> builder) {
+        // complex choice elements are set as soon as they are parsed; their slot is only used for the choice checks
+        if (slot.builder != null) {
+            stackPush(slot.name, -1);
+            Object value = slot.builder.build();
+            stackPop();
+            invoke(slot.setter(), builder, value);
+        } else if (slot.builders != null) {
+            if (slot.valueCount == -1) {
+                throw new IllegalArgumentException("Found array with key '_" + slot.name + "' but could not find matching array with key: '" + slot.name + "'");
+            }
+            if (slot.underscoreCount != -1 && slot.underscoreCount < slot.valueCount) {
+                throw new IllegalArgumentException("Could not find element at index: " + slot.underscoreCount);
+            }
+            List<Object> values = new ArrayList<>(slot.valueCount);
+            for (int i = 0; i < slot.valueCount; i++) {
+                stackPush(slot.name, i);
+                values.add(slot.builders.get(i).build());
+                stackPop();
+            }
+            invoke(slot.setter(), builder, values);
+        }
+    }
+
+    private void skipValue(JsonParser parser) {
+        Event event = parser.next();
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    private void invoke(Method setter, Object builder, Object value) {
+        try {
+            setter.invoke(builder, value);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonValue.ValueType valueType(Event event) {
+        if (event == null) {
+            return null;
+        }
+        switch (event) {
+        case START_OBJECT:
+            return JsonValue.ValueType.OBJECT;
+        case START_ARRAY:
+            return JsonValue.ValueType.ARRAY;
+        case VALUE_STRING:
+            return JsonValue.ValueType.STRING;
+        case VALUE_NUMBER:
+            return JsonValue.ValueType.NUMBER;
+        case VALUE_TRUE:
+            return JsonValue.ValueType.TRUE;
+        case VALUE_FALSE:
+            return JsonValue.ValueType.FALSE;
+        case VALUE_NULL:
+            return JsonValue.ValueType.NULL;
+        default:
+            return null;
+        }
+    }
+
+    private void stackPush(java.lang.String elementName, int elementIndex) {
+        if (elementIndex != -1) {
+            stack.push(elementName + "[" + elementIndex + "]");
+        } else {
+            stack.push(elementName);
+        }
+    }
+
+    private void stackPop() {
+        stack.pop();
+    }
+
+    private static TypeInfo getTypeInfo(Class<?> type) {
+        return TYPE_INFO_MAP.computeIfAbsent(type, TypeInfo::new);
+    }
+
+    private enum Kind {
+        JAVA_STRING,
+        PRIMITIVE,
+        COMPLEX,
+        RESOURCE
+    }
+
+    private enum PrimitiveKind {
+        BASE64_BINARY,
+        BOOLEAN,
+        DATE,
+        DATE_TIME,
+        DECIMAL,
+        INSTANT,
+        INTEGER,
+        STRING,
+        TIME,
+        URI,
+        XHTML;
+
+        static PrimitiveKind of(Class<?> type) {
+            if (Base64Binary.class.equals(type)) {
+                return BASE64_BINARY;
+            } else if (Boolean.class.equals(type)) {
+                return BOOLEAN;
+            } else if (Date.class.equals(type)) {
+                return DATE;
+            } else if (DateTime.class.equals(type)) {
+                return DATE_TIME;
+            } else if (Decimal.class.equals(type)) {
+                return DECIMAL;
+            } else if (Instant.class.equals(type)) {
+                return INSTANT;
+            } else if (Integer.class.isAssignableFrom(type)) {
+                return INTEGER;
+            } else if (Time.class.equals(type)) {
+                return TIME;
+            } else if (Uri.class.isAssignableFrom(type)) {
+                return URI;
+            } else if (Xhtml.class.equals(type)) {
+                return XHTML;
+            }
+            return STRING;
+        }
+    }
+
+    /**
+     * Per-object parse state for a primitive or choice element
+     */
+    private static final class Slot {
+        KeyInfo valueKey;
+        KeyInfo underscoreKey;
+        java.lang.String name;
+        AbstractBuilder<?> builder;
+        List<AbstractBuilder<?>> builders;
+        int valueCount = -1;
+        int underscoreCount = -1;
+
+        Method setter() {
+            return (valueKey != null) ? valueKey.setter : underscoreKey.setter;
+        }
+    }
+
+    /**
+     * Cached metadata for a JSON key of a model class
+     */
+    private static final class KeyInfo {
+        final java.lang.String key;
+        final java.lang.String elementName;
+        final Class<?> valueType;
+        final Kind kind;
+        final PrimitiveKind primitiveKind;
+        final boolean underscore;
+        final boolean repeating;
+        final boolean choice;
+        final int slotIndex;
+        final Method setter;
+        private TypeInfo valueTypeInfo;
+
+        KeyInfo(java.lang.String key, ElementInfo elementInfo, Class<?> valueType, boolean underscore, int slotIndex, Method setter) {
+            this.key = key;
+            this.elementName = elementInfo.getName();
+            this.valueType = valueType;
+            this.underscore = underscore;
+            this.repeating = elementInfo.isRepeating();
+            this.choice = elementInfo.isChoice();
+            this.slotIndex = slotIndex;
+            this.setter = setter;
+            if (java.lang.String.class.equals(valueType)) {
+                kind = Kind.JAVA_STRING;
+            } else if (ModelSupport.isPrimitiveType(valueType)) {
+                kind = Kind.PRIMITIVE;
+            } else if (Resource.class.isAssignableFrom(valueType)) {
+                kind = Kind.RESOURCE;
+            } else {
+                kind = Kind.COMPLEX;
+            }
+            this.primitiveKind = (kind == Kind.PRIMITIVE) ? PrimitiveKind.of(valueType) : null;
+        }
+
+        TypeInfo valueTypeInfo() {
+            if (valueTypeInfo == null) {
+                valueTypeInfo = getTypeInfo(valueType);
+            }
+            return valueTypeInfo;
+        }
+    }
+
+    /**
+     * Cached metadata for a model class: its builder factory and the JSON keys it accepts
+     */
+    private static final class TypeInfo {
+        static final TypeInfo ELEMENT = getTypeInfo(Element.class);
+
+        final Class<?> type;
+        final Method builderMethod;
+        final Map<java.lang.String, KeyInfo> keyInfoMap = new HashMap<>();
+        final int slotCount;
+
+        TypeInfo(Class<?> type) {
+            this.type = type;
+            try {
+                builderMethod = Modifier.isAbstract(type.getModifiers()) ? null : type.getMethod("builder");
+                Class<?> builderClass = Class.forName(type.getName() + "$Builder", false, type.getClassLoader());
+                Map<java.lang.String, java.lang.String> fieldNameMap = buildFieldNameMap(type);
+                int slotIndex = 0;
+                for (ElementInfo elementInfo : ModelSupport.getElementInfo(type)) {
+                    java.lang.String elementName = elementInfo.getName();
+                    java.lang.String methodName = fieldNameMap.get(elementName);
+                    if (elementInfo.isChoice()) {
+                        Method setter = builderClass.getMethod(methodName, Element.class);
+                        for (Class<?> choiceType : elementInfo.getChoiceTypes()) {
+                            java.lang.String key = ModelSupport.getChoiceElementName(elementName, choiceType);
+                            keyInfoMap.put(key, new KeyInfo(key, elementInfo, choiceType, false, slotIndex, setter));
+                            if (ModelSupport.isPrimitiveType(choiceType)) {
+                                keyInfoMap.put("_" + key, new KeyInfo("_" + key, elementInfo, choiceType, true, slotIndex, setter));
+                            }
+                        }
+                        slotIndex++;
+                    } else {
+                        Class<?> elementType = elementInfo.getType();
+                        Method setter = builderClass.getMethod(methodName, elementInfo.isRepeating() ? Collection.class : elementType);
+                        KeyInfo keyInfo = new KeyInfo(elementName, elementInfo, elementType, false, slotIndex, setter);
+                        keyInfoMap.put(elementName, keyInfo);
+                        if (keyInfo.kind == Kind.PRIMITIVE) {
+                            keyInfoMap.put("_" + elementName, new KeyInfo("_" + elementName, elementInfo, elementType, true, slotIndex, setter));
+                            slotIndex++;
+                        }
+                    }
+                }
+                slotCount = slotIndex;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to introspect model class: " + type.getName(), e);
+            }
+        }
+
+        AbstractBuilder<?> builder() {
+            try {
+                return (AbstractBuilder<?>) builderMethod.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create builder for model class: " + type.getName(), e);
+            }
+        }
+
+        private static Map<java.lang.String, java.lang.String> buildFieldNameMap(Class<?> type) {
+            Map<java.lang.String, java.lang.String> fieldNameMap = new HashMap<>();
+            for (Class<?> clazz : ModelSupport.getClosure(type)) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isVolatile(modifiers)) {
+                        continue;
+                    }
+                    fieldNameMap.put(ModelSupport.getElementName(field), field.getName());
+                }
+            }
+            return fieldNameMap;
+        }
+    }
+}
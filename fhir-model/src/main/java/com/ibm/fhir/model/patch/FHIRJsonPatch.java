@@ -23,9 +23,17 @@ import com.ibm.fhir.model.patch.exception.FHIRPatchException;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.JsonSupport;
 
+/**
+ * A FHIRPatch backed by a JSON Patch.
+ *
+ * <p>The add, remove, replace, move and copy operations are applied directly to the model wherever the result is
+ * guaranteed to be the same as applying them to the JSON representation of the resource, which is the fallback
+ * for all other patches.
+ */
 public class FHIRJsonPatch implements FHIRPatch {
     private static final JsonProvider PROVIDER = JsonProvider.provider();
     private final JsonPatch patch;
+    private final JsonArray operations;
     
     FHIRJsonPatch(JsonArray array) {
         this(PROVIDER.createPatch(array));
@@ -33,6 +41,7 @@ public class FHIRJsonPatch implements FHIRPatch {
     
     FHIRJsonPatch(JsonPatch patch) {
         this.patch = Objects.requireNonNull(patch);
+        this.operations = patch.toJsonArray();
     }
     
     public JsonPatch getJsonPatch() {
@@ -41,6 +50,10 @@ public class FHIRJsonPatch implements FHIRPatch {
 
     @Override
     public <T extends Resource> T apply(T resource) throws FHIRPatchException {
+        T result = ModelJsonPatch.apply(resource, operations);
+        if (result != null) {
+            return result;
+        }
         try {
             JsonObject object = JsonSupport.toJsonObject(resource);
             return FHIRParser.parser(Format.JSON)
@@ -0,0 +1,527 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.patch;
+
+import static com.ibm.fhir.model.util.ModelSupport.delimit;
+import static com.ibm.fhir.model.util.ModelSupport.isKeyword;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+import com.ibm.fhir.model.visitor.DefaultVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
+
+/**
+ * Applies the add, remove, replace, move and copy operations of a JSON Patch directly to the model,
+ * rebuilding only the elements between the resource and each patched element.
+ *
+ * <p>A JSON Pointer addresses the JSON representation of the resource, which differs from the model in a few
+ * places (primitive extensions, choice element names, empty arrays). Patches which can't be applied to the model
+ * with exactly the same result, along with invalid patches, are rejected so that the caller can fall back to
+ * applying the patch to the JSON representation, which also produces the expected error for invalid patches.
+ */
+final class ModelJsonPatch {
+    private static final Logger log = Logger.getLogger(ModelJsonPatch.class.getName());
+
+    private static final JsonBuilderFactory BUILDER_FACTORY = JsonProvider.provider().createBuilderFactory(null);
+
+    // the types which can be parsed as the value of a Parameters.parameter
+    private static final Set<Class<?>> PARAMETER_VALUE_TYPES = ModelSupport.getChoiceElementTypes(Parameters.Parameter.class, "value");
+
+    // the path of a repeating element emptied by the previous operation; it is an empty array in the JSON representation
+    private String emptyListPath;
+
+    private ModelJsonPatch() { }
+
+    /**
+     * Apply the passed JSON Patch operations to the model
+     *
+     * @param resource
+     *     the resource to patch
+     * @param operations
+     *     the operations of the JSON Patch
+     * @return
+     *     a new resource that is the result of applying the operations, or null if they must be applied to the JSON
+     *     representation of the resource instead
+     */
+    static <T extends Resource> T apply(T resource, JsonArray operations) {
+        try {
+            ModelJsonPatch patch = new ModelJsonPatch();
+            T result = resource;
+            for (JsonValue operation : operations) {
+                if (operation.getValueType() != JsonValue.ValueType.OBJECT) {
+                    throw new UnsupportedPatchException("operation is not an object");
+                }
+                result = patch.apply(result, operation.asJsonObject());
+            }
+            return result;
+        } catch (UnsupportedPatchException | RuntimeException e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Applying JSON Patch to the JSON representation of the resource: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private <T extends Resource> T apply(T resource, JsonObject operation) throws UnsupportedPatchException {
+        String op = getString(operation, "op");
+        String path = getString(operation, "path");
+
+        // only the operation which follows the one that emptied a list can see that it still exists
+        String emptyListPath = this.emptyListPath;
+        this.emptyListPath = null;
+
+        switch (op) {
+        case "add": {
+            Location location = resolve(resource, path);
+            return add(resource, location, toModel(operation.get("value"), location), emptyListPath);
+        }
+        case "remove":
+            return remove(resource, resolve(resource, path), emptyListPath);
+        case "replace": {
+            Location location = resolve(resource, path);
+            if (!location.exists(emptyListPath) || location.append) {
+                throw new UnsupportedPatchException("nothing to replace at " + path);
+            }
+            return add(resource, location, toModel(operation.get("value"), location), emptyListPath);
+        }
+        case "move": {
+            String from = getString(operation, "from");
+            if (from.equals(path)) {
+                return resource;
+            }
+            if (path.startsWith(from + "/")) {
+                throw new UnsupportedPatchException("cannot move " + from + " to one of its children");
+            }
+            Location source = resolve(resource, from);
+            Visitable value = source.getValue();
+            T result = remove(resource, source, emptyListPath);
+            Location target = resolve(result, path);
+            result = add(result, target, coerce(value, target), this.emptyListPath);
+            // the add may have changed the path of a list emptied by the remove
+            this.emptyListPath = null;
+            return result;
+        }
+        case "copy": {
+            Visitable value = resolve(resource, getString(operation, "from")).getValue();
+            Location target = resolve(resource, path);
+            return add(resource, target, coerce(value, target), emptyListPath);
+        }
+        default:
+            throw new UnsupportedPatchException("unsupported operation '" + op + "'");
+        }
+    }
+
+    /**
+     * @param value either a single value or, for the whole of a repeating element, the list of values
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Resource> T add(T resource, Location location, Object value, String emptyListPath) throws UnsupportedPatchException {
+        location.checkPrimitives();
+        if (location.isWholeList()) {
+            List<Visitable> values = (List<Visitable>) value;
+            if (values.isEmpty()) {
+                this.emptyListPath = location.getElementPath();
+            }
+            return update(resource, location, list -> {
+                list.clear();
+                list.addAll(values);
+            });
+        }
+        if (location.repeating) {
+            if (!location.listExists(emptyListPath)) {
+                throw new UnsupportedPatchException("no array at " + location.getElementPath());
+            }
+            if (location.index > location.list.size()) {
+                throw new UnsupportedPatchException("index out of bounds at " + location.getElementPath());
+            }
+            return update(resource, location, list -> list.add(location.index, (Visitable) value));
+        }
+        if (location.otherChoice) {
+            throw new UnsupportedPatchException("another type of choice element is set at " + location.getElementPath());
+        }
+        return set(resource, location, (Visitable) value);
+    }
+
+    private <T extends Resource> T remove(T resource, Location location, String emptyListPath) throws UnsupportedPatchException {
+        if (!location.exists(emptyListPath) || location.append) {
+            throw new UnsupportedPatchException("nothing to remove at " + location.getElementPath());
+        }
+        location.checkPrimitives();
+        if (location.isWholeList()) {
+            return update(resource, location, List::clear);
+        }
+        if (location.repeating) {
+            if (location.list.size() == 1) {
+                this.emptyListPath = location.getElementPath();
+            }
+            return update(resource, location, list -> list.remove(location.index));
+        }
+        return set(resource, location, null);
+    }
+
+    private <T extends Resource> T set(T resource, Location location, Visitable value) {
+        PatchingVisitor<T> visitor = new PatchingVisitor<>(location.parentPath, location.name, value);
+        resource.accept(visitor);
+        return visitor.getResult();
+    }
+
+    private <T extends Resource> T update(T resource, Location location, Consumer<List<Visitable>> listUpdate) {
+        PatchingVisitor<T> visitor = new PatchingVisitor<>(location.parentPath, location.name, listUpdate);
+        resource.accept(visitor);
+        return visitor.getResult();
+    }
+
+    /**
+     * Resolve a JSON Pointer against the model
+     */
+    private Location resolve(Resource resource, String pointer) throws UnsupportedPatchException {
+        if (!pointer.startsWith("/")) {
+            throw new UnsupportedPatchException("unsupported pointer '" + pointer + "'");
+        }
+        String[] tokens = pointer.substring(1).split("/", -1);
+
+        Visitable current = resource;
+        String path = ModelSupport.getTypeName(resource.getClass());
+        int i = 0;
+        while (true) {
+            if (ModelSupport.isPrimitiveType(current.getClass())) {
+                throw new UnsupportedPatchException("pointer '" + pointer + "' refers to the children of a primitive value");
+            }
+            String token = tokens[i++].replace("~1", "/").replace("~0", "~");
+
+            Location location = new Location();
+            location.parentPath = path;
+            ElementInfo elementInfo = ModelSupport.getElementInfo(current.getClass(), token);
+            if (elementInfo == null) {
+                elementInfo = ModelSupport.getChoiceElementInfo(current.getClass(), token);
+                if (elementInfo == null) {
+                    throw new UnsupportedPatchException("unknown element '" + token + "' in pointer '" + pointer + "'");
+                }
+                for (Class<?> choiceType : elementInfo.getChoiceTypes()) {
+                    if (token.equals(ModelSupport.getChoiceElementName(elementInfo.getName(), choiceType))) {
+                        location.type = choiceType;
+                    }
+                }
+            } else if (elementInfo.isChoice()) {
+                throw new UnsupportedPatchException("choice element '" + token + "' in pointer '" + pointer + "' has no type");
+            } else {
+                location.type = elementInfo.getType();
+            }
+            if (location.type == null || !Visitable.class.isAssignableFrom(location.type)) {
+                throw new UnsupportedPatchException("unsupported element '" + token + "' in pointer '" + pointer + "'");
+            }
+            location.name = elementInfo.getName();
+            location.repeating = elementInfo.isRepeating();
+
+            ChildVisitor children = new ChildVisitor(location.name);
+            current.accept(location.name, children);
+
+            if (location.repeating) {
+                location.list = children.list;
+                if (i == tokens.length) {
+                    return location;
+                }
+                String indexToken = tokens[i++];
+                if ("-".equals(indexToken)) {
+                    location.index = location.list.size();
+                    location.append = true;
+                } else if (indexToken.matches("0|[1-9][0-9]{0,8}")) {
+                    location.index = Integer.parseInt(indexToken);
+                } else {
+                    throw new UnsupportedPatchException("invalid index '" + indexToken + "' in pointer '" + pointer + "'");
+                }
+                if (i == tokens.length) {
+                    return location;
+                }
+                if (location.append || location.index >= location.list.size()) {
+                    throw new UnsupportedPatchException("pointer '" + pointer + "' refers to a missing element");
+                }
+                current = location.list.get(location.index);
+                path = location.getElementPath() + "[" + location.index + "]";
+            } else {
+                location.value = children.value;
+                if (elementInfo.isChoice() && location.value != null
+                        && !token.equals(ModelSupport.getChoiceElementName(location.name, location.value.getClass()))) {
+                    location.value = null;
+                    location.otherChoice = true;
+                }
+                if (i == tokens.length) {
+                    return location;
+                }
+                if (location.value == null) {
+                    throw new UnsupportedPatchException("pointer '" + pointer + "' refers to a missing element");
+                }
+                current = location.value;
+                path = location.getElementPath();
+            }
+        }
+    }
+
+    /**
+     * Convert the JSON value of an add or replace operation to the model
+     *
+     * @return a single value or, for the whole of a repeating element, the list of values
+     */
+    private Object toModel(JsonValue value, Location location) throws UnsupportedPatchException {
+        if (value == null) {
+            throw new UnsupportedPatchException("missing value");
+        }
+        if (location.isWholeList()) {
+            if (value.getValueType() != JsonValue.ValueType.ARRAY) {
+                throw new UnsupportedPatchException("value of " + location.getElementPath() + " is not an array");
+            }
+            List<Visitable> values = new ArrayList<>();
+            for (JsonValue item : value.asJsonArray()) {
+                values.add(toModel(item, location.type));
+            }
+            return values;
+        }
+        return toModel(value, location.type);
+    }
+
+    private Visitable toModel(JsonValue value, Class<?> type) throws UnsupportedPatchException {
+        if (ModelSupport.isCodeSubtype(type)) {
+            if (value.getValueType() != JsonValue.ValueType.STRING) {
+                throw new UnsupportedPatchException("value of type " + type.getSimpleName() + " is not a string");
+            }
+            return toCode(((JsonString) value).getString(), type);
+        }
+
+        // parse the value as part of a Parameters resource, which can hold an element of most data types
+        JsonObject parameters;
+        if (type == Extension.class) {
+            parameters = BUILDER_FACTORY.createObjectBuilder()
+                    .add("resourceType", "Parameters")
+                    .add("parameter", BUILDER_FACTORY.createArrayBuilder()
+                        .add(BUILDER_FACTORY.createObjectBuilder()
+                            .add("name", "value")
+                            .add("extension", BUILDER_FACTORY.createArrayBuilder().add(value))))
+                    .build();
+        } else if (type == Meta.class) {
+            parameters = BUILDER_FACTORY.createObjectBuilder()
+                    .add("resourceType", "Parameters")
+                    .add("meta", value)
+                    .build();
+        } else if (PARAMETER_VALUE_TYPES.contains(type)) {
+            parameters = BUILDER_FACTORY.createObjectBuilder()
+                    .add("resourceType", "Parameters")
+                    .add("parameter", BUILDER_FACTORY.createArrayBuilder()
+                        .add(BUILDER_FACTORY.createObjectBuilder()
+                            .add("name", "value")
+                            .add(ModelSupport.getChoiceElementName("value", type), value)))
+                    .build();
+        } else {
+            throw new UnsupportedPatchException("unsupported value type " + type.getSimpleName());
+        }
+
+        try {
+            Parameters result = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(parameters);
+            if (type == Extension.class) {
+                return result.getParameter().get(0).getExtension().get(0);
+            } else if (type == Meta.class) {
+                return result.getMeta();
+            }
+            Element element = result.getParameter().get(0).getValue();
+            if (element == null || element.getClass() != type) {
+                throw new UnsupportedPatchException("value is not of type " + type.getSimpleName());
+            }
+            return element;
+        } catch (FHIRParserException e) {
+            throw new UnsupportedPatchException("invalid value of type " + type.getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check that a value moved or copied from elsewhere in the resource has the type it would be parsed as at the target
+     */
+    private Visitable coerce(Visitable value, Location target) throws UnsupportedPatchException {
+        if (target.isWholeList()) {
+            throw new UnsupportedPatchException("cannot move or copy a single value to the whole of " + target.getElementPath());
+        }
+        if (value.getClass() == target.type || (target.type == Resource.class && value instanceof Resource)) {
+            return value;
+        }
+        if (value instanceof Code && Code.class.isAssignableFrom(target.type)) {
+            return toCode(((Code) value).getValue(), target.type);
+        }
+        throw new UnsupportedPatchException("value of type " + value.getClass().getSimpleName()
+                + " cannot be used as a " + target.type.getSimpleName());
+    }
+
+    private Code toCode(String value, Class<?> type) throws UnsupportedPatchException {
+        try {
+            MethodHandle methodHandle = MethodHandles.publicLookup().findStatic(type, "of", MethodType.methodType(type, String.class));
+            return (Code) methodHandle.invoke(value);
+        } catch (Throwable t) {
+            throw new UnsupportedPatchException("invalid value of type " + type.getSimpleName() + ": " + t.getMessage());
+        }
+    }
+
+    private static String getString(JsonObject operation, String name) throws UnsupportedPatchException {
+        JsonValue value = operation.get(name);
+        if (value == null || value.getValueType() != JsonValue.ValueType.STRING) {
+            throw new UnsupportedPatchException("missing or invalid '" + name + "'");
+        }
+        return ((JsonString) value).getString();
+    }
+
+    /**
+     * The element of a resource addressed by a JSON Pointer
+     */
+    private static class Location {
+        // the path of the parent of the element, in the format used by the CopyingVisitor
+        private String parentPath;
+        private String name;
+        // the type of the values at this location
+        private Class<?> type;
+        private boolean repeating;
+        // for a repeating element, its current values
+        private List<? extends Visitable> list;
+        // for a repeating element, the index within the list or -1 for the whole list
+        private int index = -1;
+        // true if the pointer ends with "-"
+        private boolean append;
+        // for a non-repeating element, its current value
+        private Visitable value;
+        // true if a choice element is set to a value of another type
+        private boolean otherChoice;
+
+        private String getElementPath() {
+            return parentPath + "." + (isKeyword(name) ? delimit(name) : name);
+        }
+
+        private boolean isWholeList() {
+            return repeating && index == -1;
+        }
+
+        /**
+         * @param emptyListPath the path of a repeating element that exists in the JSON representation even though it is empty
+         * @return true if the addressed value exists in the JSON representation
+         */
+        private boolean exists(String emptyListPath) {
+            if (isWholeList()) {
+                return listExists(emptyListPath);
+            }
+            if (repeating) {
+                return index < list.size();
+            }
+            return value != null;
+        }
+
+        /**
+         * @param emptyListPath the path of a repeating element that exists in the JSON representation even though it is empty
+         * @return true if the array of a repeating element exists in the JSON representation
+         */
+        private boolean listExists(String emptyListPath) {
+            return !list.isEmpty() || getElementPath().equals(emptyListPath);
+        }
+
+        private Visitable getValue() throws UnsupportedPatchException {
+            if (!exists(null) || append || isWholeList()) {
+                throw new UnsupportedPatchException("no single value at " + getElementPath());
+            }
+            checkPrimitives();
+            return repeating ? list.get(index) : value;
+        }
+
+        /**
+         * The id and extensions of a primitive element are serialized separately from its value, which is all
+         * that a JSON Pointer refers to, so the model can only be patched if there are none.
+         */
+        private void checkPrimitives() throws UnsupportedPatchException {
+            if (!ModelSupport.isPrimitiveType(type)) {
+                return;
+            }
+            if (repeating) {
+                for (Visitable item : list) {
+                    checkPrimitive((Element) item);
+                }
+            } else if (value != null) {
+                checkPrimitive((Element) value);
+            }
+        }
+
+        private void checkPrimitive(Element element) throws UnsupportedPatchException {
+            if (element.getId() != null || !element.getExtension().isEmpty()) {
+                throw new UnsupportedPatchException("primitive element at " + getElementPath() + " has an id or extensions");
+            }
+        }
+    }
+
+    /**
+     * Collects the value(s) of a single child element of the visited Resource or Element
+     */
+    private static class ChildVisitor extends DefaultVisitor {
+        private final String name;
+        private boolean parent = true;
+        private Visitable value;
+        private List<? extends Visitable> list;
+
+        private ChildVisitor(String name) {
+            super(false);
+            this.name = name;
+        }
+
+        @Override
+        public boolean visit(String elementName, int elementIndex, Visitable visitable) {
+            if (parent) {
+                parent = false;
+                return true;
+            }
+            if (elementIndex == -1 && elementName.equals(name)) {
+                value = visitable;
+            }
+            return false;
+        }
+
+        @Override
+        public void visitStart(String elementName, List<? extends Visitable> visitables, Class<?> type) {
+            if (elementName.equals(name)) {
+                list = visitables;
+            }
+        }
+    }
+
+    /**
+     * Thrown when a JSON Patch can't be applied to the model
+     */
+    private static class UnsupportedPatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedPatchException(String message) {
+            // only used to fall back to the JSON representation, so there's no need for a stack trace
+            super(message, null, false, false);
+        }
+    }
+}
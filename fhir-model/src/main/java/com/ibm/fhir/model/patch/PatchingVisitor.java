@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.patch;
+
+import static com.ibm.fhir.model.util.ModelSupport.delimit;
+import static com.ibm.fhir.model.util.ModelSupport.isKeyword;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.visitor.CopyingVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
+
+/**
+ * Set, remove, or update the values of a single element of a Resource or Element.
+ * Only the parent of the element and its ancestors are visited and rebuilt.
+ *
+ * @param <T> The type to copy. Only visitables of this type should be visited.
+ */
+class PatchingVisitor<T extends Visitable> extends CopyingVisitor<T> {
+    private final String parentPath;
+    private final String elementName;
+    private final String elementPath;
+    private final Visitable value;
+    private final Consumer<List<Visitable>> listUpdate;
+    private boolean adding;
+
+    /**
+     * Set or remove the value of a non-repeating element
+     *
+     * @param parentPath the path of the parent of the element, in the format returned by {@link #getPath()}
+     * @param elementName the name of the element
+     * @param value the new value of the element, or null to remove it
+     */
+    PatchingVisitor(String parentPath, String elementName, Visitable value) {
+        this.parentPath = Objects.requireNonNull(parentPath, "parentPath");
+        this.elementName = Objects.requireNonNull(elementName, "elementName");
+        this.elementPath = parentPath + "." + (isKeyword(elementName) ? delimit(elementName) : elementName);
+        this.value = value;
+        this.listUpdate = null;
+    }
+
+    /**
+     * Update the values of a repeating element
+     *
+     * @param parentPath the path of the parent of the element, in the format returned by {@link #getPath()}
+     * @param elementName the name of the element
+     * @param listUpdate updates a copy of the values of the element in place
+     */
+    PatchingVisitor(String parentPath, String elementName, Consumer<List<Visitable>> listUpdate) {
+        this.parentPath = Objects.requireNonNull(parentPath, "parentPath");
+        this.elementName = Objects.requireNonNull(elementName, "elementName");
+        this.elementPath = null;
+        this.value = null;
+        this.listUpdate = Objects.requireNonNull(listUpdate, "listUpdate");
+    }
+
+    @Override
+    public boolean visit(String elementName, int index, Visitable visitable) {
+        if (adding) {
+            // the new value; it just needs to be built and set on the parent
+            markDirty();
+            return false;
+        }
+        if (listUpdate == null && value == null && index == -1 && isAtPath(elementPath)) {
+            delete();
+            return false;
+        }
+        return isOnPathTo(parentPath);
+    }
+
+    @Override
+    protected void doVisitEnd(String elementName, int elementIndex, Element element) {
+        setValue();
+    }
+
+    @Override
+    protected void doVisitEnd(String elementName, int elementIndex, Resource resource) {
+        setValue();
+    }
+
+    @Override
+    protected void doVisitListEnd(String elementName, List<? extends Visitable> visitables, Class<?> type) {
+        if (listUpdate != null && elementName.equals(this.elementName) && isAtPath(parentPath)) {
+            listUpdate.accept(getList());
+            markListDirty();
+        }
+    }
+
+    /**
+     * Visit the new value as a child of the parent so that it replaces any existing value
+     */
+    private void setValue() {
+        if (value != null && !adding && isAtPath(parentPath)) {
+            adding = true;
+            try {
+                value.accept(elementName, this);
+            } finally {
+                adding = false;
+            }
+        }
+    }
+}
@@ -25,12 +25,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.model.annotation.Binding;
@@ -117,7 +119,8 @@ public final class ModelSupport {
     private static final Set<Class<? extends Resource>> CONCRETE_RESOURCE_TYPES = getResourceTypes().stream()
             .filter(rt -> !isAbstract(rt))
             .collect(Collectors.toSet());
-    private static final Map<Class<?>, List<Constraint>> MODEL_CLASS_CONSTRAINT_MAP = buildModelClassConstraintMap();
+    // constraints are read from the model class annotations the first time they are needed
+    private static final Map<Class<?>, List<Constraint>> MODEL_CLASS_CONSTRAINT_MAP = new ConcurrentHashMap<>(1024);
     // LinkedHashSet is used just to preserve the order, for convenience only
     private static final Set<Class<? extends Element>> CHOICE_ELEMENT_TYPES = new LinkedHashSet<>(Arrays.asList(
             Base64Binary.class,
@@ -239,9 +242,12 @@ public final class ModelSupport {
         private final Set<Class<?>> choiceTypes;
         private final boolean reference;
         private final Set<String> referenceTypes;
-        private final Binding binding;
         private final boolean summary;
 
+        // the binding is read from the field annotation the first time it is needed
+        private Binding binding;
+        private volatile boolean bindingResolved;
+
         private final Set<String> choiceElementNames;
 
         ElementInfo(String name,
@@ -253,7 +259,6 @@ public final class ModelSupport {
                 Set<Class<?>> choiceTypes,
                 boolean reference,
                 Set<String> referenceTypes,
-                Binding binding,
                 boolean isSummary) {
             this.name = name;
             this.declaringType = declaringType;
@@ -264,7 +269,6 @@ public final class ModelSupport {
             this.choiceTypes = choiceTypes;
             this.reference = reference;
             this.referenceTypes = referenceTypes;
-            this.binding = binding;
             this.summary = isSummary;
             Set<String> choiceElementNames = new LinkedHashSet<>();
             if (this.choice) {
@@ -320,11 +324,15 @@ public final class ModelSupport {
         }
 
         public Binding getBinding() {
+            if (!bindingResolved) {
+                binding = readBinding(declaringType, name);
+                bindingResolved = true;
+            }
             return binding;
         }
 
         public boolean hasBinding() {
-            return (binding != null);
+            return (getBinding() != null);
         }
 
         public Set<String> getChoiceElementNames() {
@@ -347,21 +355,132 @@ public final class ModelSupport {
         return Collections.unmodifiableMap(concreteTypeMap);
     }
 
-    private static Map<Class<?>, List<Constraint>> buildModelClassConstraintMap() {
-        Map<Class<?>, List<Constraint>> modelClassConstraintMap = new LinkedHashMap<>(1024);
-        for (Class<?> modelClass : getModelClasses()) {
-            List<Constraint> constraints = new ArrayList<>();
-            for (Class<?> clazz : getClosure(modelClass)) {
-                for (Constraint constraint : clazz.getDeclaredAnnotationsByType(Constraint.class)) {
-                    constraints.add(constraint);
-                }
+    private static List<Constraint> buildConstraints(Class<?> modelClass) {
+        List<Constraint> constraints = new ArrayList<>();
+        for (Class<?> clazz : getClosure(modelClass)) {
+            for (Constraint constraint : clazz.getDeclaredAnnotationsByType(Constraint.class)) {
+                constraints.add(constraint);
             }
-            modelClassConstraintMap.put(modelClass, Collections.unmodifiableList(constraints));
         }
-        return Collections.unmodifiableMap(modelClassConstraintMap);
+        return Collections.unmodifiableList(constraints);
+    }
+
+    private static Binding readBinding(Class<?> declaringType, String elementName) {
+        for (Field field : declaringType.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && elementName.equals(getElementName(field))) {
+                return field.getAnnotation(Binding.class);
+            }
+        }
+        return null;
     }
 
     private static Map<Class<?>, Map<String, ElementInfo>> buildModelClassElementInfoMap() {
+        try (InputStream in = ModelSupport.class.getClassLoader().getResourceAsStream("modelClassElementInfo")) {
+            if (in != null) {
+                return readModelClassElementInfoMap(in);
+            }
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+        // the precomputed metadata is missing, so fall back to reflecting over the model classes
+        return reflectModelClassElementInfoMap();
+    }
+
+    /**
+     * Read the element info generated by the CodeGenerator. Each model class is described by a line holding the
+     * class name and the name of its superclass (if that is a model class), followed by a line for each of the
+     * elements it declares:
+     * <pre>
+     * [tab]name[tab]type[tab]flags[tab]choiceTypes[tab]referenceTypes
+     * </pre>
+     * where flags holds an R, S, M, C or F for elements which are required, summary, repeating, choice or
+     * reference elements respectively, and the choice and reference types are comma-separated. This
+     * avoids reflecting over the fields and annotations of every model class during class initialization.
+     */
+    private static Map<Class<?>, Map<String, ElementInfo>> readModelClassElementInfoMap(InputStream in) throws Exception {
+        ClassLoader classLoader = ModelSupport.class.getClassLoader();
+        Map<String, Class<?>> classes = new HashMap<>(2048);
+        Map<Class<?>, Class<?>> superClassMap = new LinkedHashMap<>(1024);
+        Map<Class<?>, List<ElementInfo>> declaredElementInfoMap = new LinkedHashMap<>(1024);
+
+        Class<?> modelClass = null;
+        List<String> lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines().collect(Collectors.toList());
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] tokens = line.split("\t", -1);
+            if (!line.startsWith("\t")) {
+                modelClass = loadClass(tokens[0], classLoader, classes);
+                superClassMap.put(modelClass, tokens[1].isEmpty() ? null : loadClass(tokens[1], classLoader, classes));
+                declaredElementInfoMap.put(modelClass, new ArrayList<>());
+                continue;
+            }
+
+            String elementName = tokens[1];
+            Class<?> type = loadClass(tokens[2], classLoader, classes);
+            String flags = tokens[3];
+            boolean choice = flags.indexOf('C') >= 0;
+            boolean reference = flags.indexOf('F') >= 0;
+            Set<Class<?>> choiceTypes = Collections.emptySet();
+            if (choice) {
+                choiceTypes = new LinkedHashSet<>();
+                for (String choiceType : tokens[4].split(",")) {
+                    choiceTypes.add(loadClass(choiceType, classLoader, classes));
+                }
+                choiceTypes = Collections.unmodifiableSet(choiceTypes);
+            }
+            Set<String> referenceTypes = reference ?
+                    Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(tokens[5].split(",")))) :
+                    Collections.emptySet();
+            declaredElementInfoMap.get(modelClass).add(new ElementInfo(
+                    elementName,
+                    type,
+                    modelClass,
+                    flags.indexOf('R') >= 0,
+                    flags.indexOf('M') >= 0,
+                    choice,
+                    choiceTypes,
+                    reference,
+                    referenceTypes,
+                    flags.indexOf('S') >= 0
+                )
+            );
+        }
+
+        Map<Class<?>, Map<String, ElementInfo>> modelClassElementInfoMap = new LinkedHashMap<>(1024);
+        for (Class<?> clazz : declaredElementInfoMap.keySet()) {
+            // superclass elements come first, as they do when reflecting over the fields
+            List<Class<?>> closure = new ArrayList<>();
+            for (Class<?> c = clazz; c != null; c = superClassMap.get(c)) {
+                closure.add(c);
+            }
+            Collections.reverse(closure);
+
+            Map<String, ElementInfo> elementInfoMap = new LinkedHashMap<>();
+            for (Class<?> c : closure) {
+                for (ElementInfo elementInfo : declaredElementInfoMap.get(c)) {
+                    elementInfoMap.put(elementInfo.getName(), elementInfo);
+                }
+            }
+            modelClassElementInfoMap.put(clazz, Collections.unmodifiableMap(elementInfoMap));
+        }
+        return Collections.unmodifiableMap(modelClassElementInfoMap);
+    }
+
+    /**
+     * Load (without initializing) the named class
+     */
+    private static Class<?> loadClass(String className, ClassLoader classLoader, Map<String, Class<?>> classes) throws ClassNotFoundException {
+        Class<?> clazz = classes.get(className);
+        if (clazz == null) {
+            clazz = Class.forName(className, false, classLoader);
+            classes.put(className, clazz);
+        }
+        return clazz;
+    }
+
+    private static Map<Class<?>, Map<String, ElementInfo>> reflectModelClassElementInfoMap() {
         try (InputStream in = ModelSupport.class.getClassLoader().getResourceAsStream("modelClasses")) {
             Map<Class<?>, Map<String, ElementInfo>> modelClassElementInfoMap = new LinkedHashMap<>(1024);
             List<String> lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines().collect(Collectors.toList());
@@ -377,7 +496,6 @@ public final class ModelSupport {
                     boolean repeating = isRepeating(field);
                     boolean choice = isChoice(field);
                     boolean reference = isReference(field);
-                    Binding binding = field.getAnnotation(Binding.class);
                     Set<Class<?>> choiceTypes = choice ? Collections.unmodifiableSet(getChoiceTypes(field)) : Collections.emptySet();
                     Set<String> referenceTypes = reference ? Collections.unmodifiableSet(getReferenceTypes(field)) : Collections.emptySet();
                     elementInfoMap.put(elementName, new ElementInfo(
@@ -390,7 +508,6 @@ public final class ModelSupport {
                             choiceTypes,
                             reference,
                             referenceTypes,
-                            binding,
                             summary
                         )
                     );
@@ -508,7 +625,10 @@ public final class ModelSupport {
      * @return the list of constraints for the modelClass or empty if there are none
      */
     public static List<Constraint> getConstraints(Class<?> modelClass) {
-        return MODEL_CLASS_CONSTRAINT_MAP.getOrDefault(modelClass, Collections.emptyList());
+        if (!MODEL_CLASS_ELEMENT_INFO_MAP.containsKey(modelClass)) {
+            return Collections.emptyList();
+        }
+        return MODEL_CLASS_CONSTRAINT_MAP.computeIfAbsent(modelClass, ModelSupport::buildConstraints);
     }
 
     /**
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -15,7 +15,6 @@ import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
-import java.util.stream.Collectors;
 
 import javax.lang.model.SourceVersion;
 
@@ -35,13 +34,20 @@ import net.jcip.annotations.NotThreadSafe;
  * by setting new values on the current builder via ({@link BuilderWrapper#getBuilder()) and
  * marking it dirty via ({@link BuilderWrapper#markDirty())).
  *
+ * Builders are only created for the Resources and Elements which are actually modified (or whose builder is
+ * requested by a subclass), so unmodified parts of the tree are reused rather than rebuilt. Subclasses which
+ * only modify a known part of the tree can also return false from the visit methods for everything that is
+ * not on the way to it (see {@link #isOnPathTo(String)}) so that only that spine of the tree is visited.
+ *
  * Note: this class is NOT threadsafe.  Only one object should be visited at a time.
  *
  * @param <T> The type to copy. Only visitables of this type should be visited.
  */
 @NotThreadSafe
 public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
-    private final Stack<String> pathStack = new Stack<>();
+    // the path of the Resource or Element currently being visited, and the length of the path of each of its ancestors
+    private final StringBuilder path = new StringBuilder();
+    private final Stack<Integer> pathLengthStack = new Stack<>();
     private final Stack<BuilderWrapper> builderStack = new Stack<>();
     private final Stack<ListWrapper> listStack = new Stack<>();
     private Object result;
@@ -76,12 +82,43 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
      * @implSpec Path segments are appended in the visitStart methods and removed in the visitEnd methods.
      */
     public final String getPath() {
-        if (!pathStack.isEmpty()) {
-            return pathStack.stream().collect(Collectors.joining("."));
+        if (path.length() > 0) {
+            return path.toString();
         }
         return null;
     }
 
+    /**
+     * Whether the Resource or Element currently being visited is at the passed path.
+     *
+     * @param path a path in the format returned by {@link #getPath()}
+     * @return true if the passed path is the path of the Resource or Element currently being visited
+     */
+    protected final boolean isAtPath(String path) {
+        return path.contentEquals(this.path);
+    }
+
+    /**
+     * Whether the Resource or Element currently being visited is at the passed path or is one of its ancestors.
+     * Subclasses which modify a single part of the tree can return the result of this method from their visit
+     * methods to avoid visiting the children of everything else.
+     *
+     * @param path a path in the format returned by {@link #getPath()}
+     * @return true if the path of the Resource or Element currently being visited is equal to or a prefix of the passed path
+     */
+    protected final boolean isOnPathTo(String path) {
+        int length = this.path.length();
+        if (path.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (path.charAt(i) != this.path.charAt(i)) {
+                return false;
+            }
+        }
+        return path.length() == length || path.charAt(length) == '.';
+    }
+
     public CopyingVisitor() {
         super(true);
     }
@@ -92,8 +129,9 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
      * Invoke this method when visiting has failed and you want to clear the state in order to re-use the visitor.
      */
     public final void reset() {
-        if (!pathStack.isEmpty()) {
-            pathStack.clear();
+        path.setLength(0);
+        if (!pathLengthStack.isEmpty()) {
+            pathLengthStack.clear();
         }
         if (!builderStack.isEmpty()) {
             builderStack.clear();
@@ -108,7 +146,7 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
      */
     @Override
     public final void visitStart(java.lang.String elementName, int index, Element element) {
-        builderStack.push(new ElementWrapper(element.toBuilder()));
+        builderStack.push(new ElementWrapper(element));
         pathStackPush(elementName, index);
         doVisitStart(elementName, index, element);
     }
@@ -118,7 +156,7 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
      */
     @Override
     public final void visitStart(java.lang.String elementName, int index, Resource resource) {
-        builderStack.push(new ResourceWrapper(resource.toBuilder()));
+        builderStack.push(new ResourceWrapper(resource));
         pathStackPush(elementName, index);
         doVisitStart(elementName, index, resource);
     }
@@ -149,10 +187,11 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
             if (wrapper.isDirty()) {
                 listWrapper.dirty(true);
             }
-            // No way to know if one of the other elements in the list will be dirty so we need to build them all
-            Visitable item = wrapper.getBuilder().build();
+            // No way to know if one of the other elements in the list will be dirty so we need to collect them all,
+            // but only the modified ones need to be rebuilt
+            Visitable item = wrapper.isDirty() ? wrapper.getBuilder().build() : visited;
             if (item != null) {
-                listWrapper.getList().add(wrapper.getBuilder().build());
+                listWrapper.getList().add(item);
             }
         } else {
             if (builderStack.isEmpty()) {
@@ -243,17 +282,20 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
     }
 
     private void pathStackPop() {
-        pathStack.pop();
+        path.setLength(pathLengthStack.pop());
     }
 
     private void pathStackPush(String elementName, int index) {
         if (isKeyword(elementName)) {
             elementName = delimit(elementName);
         }
+        pathLengthStack.push(path.length());
+        if (path.length() > 0) {
+            path.append('.');
+        }
+        path.append(elementName);
         if (index != -1) {
-            pathStack.push(elementName + "[" + index + "]");
-        } else {
-            pathStack.push(elementName);
+            path.append('[').append(index).append(']');
         }
     }
 
@@ -346,29 +388,53 @@ public class CopyingVisitor<T extends Visitable> extends DefaultVisitor {
     }
 
     private class ElementWrapper extends BuilderWrapper {
-        private final Element.Builder builder;
+        private final Element element;
+        private Element.Builder builder;
+
+        /**
+         * @param element the visited element, from which the builder is created when it is first needed
+         */
+        public ElementWrapper(Element element) {
+            this.element = element;
+        }
 
         public ElementWrapper(Element.Builder builder) {
             // TODO can we wrap all the setters so that subclasses don't need to explicitly call markDirty()?
+            this.element = null;
             this.builder = builder;
         }
 
         @Override
         public Element.Builder getBuilder() {
+            if (builder == null) {
+                builder = element.toBuilder();
+            }
             return builder;
         }
     }
 
     private class ResourceWrapper extends BuilderWrapper {
-        private final Resource.Builder builder;
+        private final Resource resource;
+        private Resource.Builder builder;
+
+        /**
+         * @param resource the visited resource, from which the builder is created when it is first needed
+         */
+        public ResourceWrapper(Resource resource) {
+            this.resource = resource;
+        }
 
         public ResourceWrapper(Resource.Builder builder) {
             // TODO can we wrap all the setters so that subclasses don't need to explicitly call markDirty()?
+            this.resource = null;
             this.builder = builder;
         }
 
         @Override
         public Resource.Builder getBuilder() {
+            if (builder == null) {
+                builder = resource.toBuilder();
+            }
             return builder;
         }
     }
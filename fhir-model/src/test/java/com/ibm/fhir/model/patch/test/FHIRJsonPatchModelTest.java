@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.patch.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.patch.FHIRPatch;
+import com.ibm.fhir.model.patch.exception.FHIRPatchException;
+import com.ibm.fhir.model.resource.CarePlan;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.JsonSupport;
+
+/**
+ * Tests that JSON Patches applied to the model give exactly the same result as applying them to the JSON
+ * representation of the resource, including the patches which must fall back to the JSON representation.
+ */
+public class FHIRJsonPatchModelTest {
+    private Patient patient;
+    private CarePlan carePlan;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        patient = read("json/spec/patient-example.json");
+        carePlan = read("json/spec/careplan-example-f201-renal.json");
+    }
+
+    @DataProvider
+    public Object[][] patientPatches() {
+        return new Object[][] {
+            { "[{\"op\":\"replace\",\"path\":\"/active\",\"value\":false}]" },
+            { "[{\"op\":\"remove\",\"path\":\"/active\"}]" },
+            { "[{\"op\":\"add\",\"path\":\"/name/0/given/1\",\"value\":\"Jack\"}]" },
+            { "[{\"op\":\"add\",\"path\":\"/name/1/given/-\",\"value\":\"Jimmy\"}]" },
+            { "[{\"op\":\"replace\",\"path\":\"/name/2/family\",\"value\":\"Smith\"}]" },
+            { "[{\"op\":\"remove\",\"path\":\"/name/1\"}]" },
+            { "[{\"op\":\"add\",\"path\":\"/name/-\",\"value\":{\"use\":\"nickname\",\"given\":[\"Pete\"]}}]" },
+            { "[{\"op\":\"replace\",\"path\":\"/gender\",\"value\":\"female\"}]" },
+            { "[{\"op\":\"replace\",\"path\":\"/deceasedBoolean\",\"value\":true}]" },
+            { "[{\"op\":\"add\",\"path\":\"/deceasedBoolean\",\"value\":true}]" },
+            { "[{\"op\":\"remove\",\"path\":\"/deceasedBoolean\"},{\"op\":\"add\",\"path\":\"/deceasedDateTime\",\"value\":\"2020-01-01\"}]" },
+            { "[{\"op\":\"move\",\"path\":\"/name/0/family\",\"from\":\"/name/0/given/0\"}]" },
+            { "[{\"op\":\"move\",\"path\":\"/name/0\",\"from\":\"/name/2\"}]" },
+            { "[{\"op\":\"copy\",\"path\":\"/name/1/family\",\"from\":\"/name/0/family\"}]" },
+            { "[{\"op\":\"copy\",\"path\":\"/contact/0/gender\",\"from\":\"/gender\"}]" },
+            { "[{\"op\":\"add\",\"path\":\"/extension\",\"value\":[]},"
+                    + "{\"op\":\"add\",\"path\":\"/extension/-\",\"value\":{\"url\":\"myTime\",\"valueDateTime\":\"2021-01-01T00:00:00Z\"}}]" },
+            { "[{\"op\":\"add\",\"path\":\"/meta\",\"value\":{\"versionId\":\"2\",\"tag\":[{\"code\":\"patched\"}]}}]" },
+            { "[{\"op\":\"replace\",\"path\":\"/telecom\",\"value\":[{\"system\":\"phone\",\"value\":\"555-1234\"}]}]" },
+            { "[{\"op\":\"remove\",\"path\":\"/name/1/given/0\"},{\"op\":\"add\",\"path\":\"/name/1/given/0\",\"value\":\"James\"}]" },
+            { "[{\"op\":\"remove\",\"path\":\"/name/1/given/0\"},{\"op\":\"add\",\"path\":\"/name/1/given/0\",\"value\":\"James\"},"
+                    + "{\"op\":\"remove\",\"path\":\"/name/1/given/0\"}]" },
+            // the patches below fall back to the JSON representation
+            { "[{\"op\":\"replace\",\"path\":\"/birthDate\",\"value\":\"1974-12-26\"}]" },
+            { "[{\"op\":\"remove\",\"path\":\"/birthDate\"}]" },
+            { "[{\"op\":\"replace\",\"path\":\"/id\",\"value\":\"patched\"}]" },
+            { "[{\"op\":\"test\",\"path\":\"/active\",\"value\":true},{\"op\":\"replace\",\"path\":\"/active\",\"value\":false}]" },
+            { "[{\"op\":\"add\",\"path\":\"/contact/-\",\"value\":{\"name\":{\"family\":\"Doe\"}}}]" }
+        };
+    }
+
+    @Test(dataProvider = "patientPatches")
+    public void testPatientPatch(String patch) throws Exception {
+        assertPatch(patient, patch);
+    }
+
+    @Test
+    public void testCarePlanPatch() throws Exception {
+        assertPatch(carePlan, "[{\"op\":\"replace\",\"path\":\"/activity/0/detail/status\",\"value\":\"in-progress\"},"
+                + "{\"op\":\"replace\",\"path\":\"/activity/0/detail/dailyAmount/value\",\"value\":90},"
+                + "{\"op\":\"add\",\"path\":\"/note\",\"value\":[{\"text\":\"patched\"}]}]");
+    }
+
+    @Test
+    public void testUnchangedElementsAreShared() throws Exception {
+        CarePlan result = FHIRPatch.patch(array("[{\"op\":\"replace\",\"path\":\"/activity/0/detail/status\",\"value\":\"in-progress\"}]"))
+                .apply(carePlan);
+
+        // only the patched element and its ancestors are rebuilt
+        assertNotSame(result.getActivity().get(0), carePlan.getActivity().get(0));
+        assertSame(result.getActivity().get(0).getDetail().getCode(), carePlan.getActivity().get(0).getDetail().getCode());
+        assertSame(result.getActivity().get(1), carePlan.getActivity().get(1));
+        assertSame(result.getContained().get(0), carePlan.getContained().get(0));
+        assertSame(result.getText(), carePlan.getText());
+    }
+
+    @Test(expectedExceptions = FHIRPatchException.class)
+    public void testMissingElement() throws Exception {
+        FHIRPatch.patch(array("[{\"op\":\"replace\",\"path\":\"/name/5/family\",\"value\":\"Smith\"}]")).apply(patient);
+    }
+
+    @Test(expectedExceptions = FHIRPatchException.class)
+    public void testInvalidValue() throws Exception {
+        FHIRPatch.patch(array("[{\"op\":\"replace\",\"path\":\"/gender\",\"value\":\"invalid\"}]")).apply(patient);
+    }
+
+    @Test(expectedExceptions = FHIRPatchException.class)
+    public void testChoiceConflict() throws Exception {
+        FHIRPatch.patch(array("[{\"op\":\"add\",\"path\":\"/deceasedDateTime\",\"value\":\"2020-01-01\"}]")).apply(patient);
+    }
+
+    /**
+     * Assert that the patch gives the same result as applying it to the JSON representation of the resource
+     */
+    private void assertPatch(Resource resource, String patch) throws Exception {
+        JsonArray array = array(patch);
+        JsonObject expected = Json.createPatch(array).apply(JsonSupport.toJsonObject(resource));
+        Resource result = FHIRPatch.patch(array).apply(resource);
+        assertEquals(result, FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(expected), patch);
+    }
+
+    private JsonArray array(String patch) {
+        return Json.createReader(new StringReader(patch)).readArray();
+    }
+
+    private <T extends Resource> T read(String path) throws Exception {
+        try (Reader reader = ExamplesUtil.resourceReader(path)) {
+            return FHIRParser.parser(Format.JSON).parse(reader);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.examples.Index;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Verifies that the streaming mode of the JSON parser produces the same results as the default (JsonObject) mode
+ */
+public class FHIRJsonStreamingParserTest {
+    private static final String INDEX_PROPERTY = "com.ibm.fhir.model.spec.test.R4ExamplesTest.index";
+
+    @Test
+    public void testExamples() throws Exception {
+        Index index = Index.valueOf(System.getProperty(INDEX_PROPERTY, Index.MINIMAL_JSON.name()));
+        List<String> failures = new ArrayList<>();
+        int count = 0;
+        try (BufferedReader indexReader = new BufferedReader(ExamplesUtil.indexReader(index))) {
+            for (String line : indexReader.lines().collect(Collectors.toList())) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens.length != 2 || !tokens[1].endsWith(".json")) {
+                    continue;
+                }
+                String json;
+                try {
+                    json = read(tokens[1]);
+                } catch (FileNotFoundException e) {
+                    // some indexes reference examples which are not packaged with fhir-examples
+                    continue;
+                }
+                Resource expected = null;
+                Resource actual = null;
+                String expectedError = null;
+                String actualError = null;
+                try {
+                    expected = FHIRParser.parser(Format.JSON).parse(new StringReader(json));
+                } catch (FHIRParserException e) {
+                    expectedError = e.getMessage();
+                }
+                try {
+                    actual = streamingParser().parse(new StringReader(json));
+                } catch (FHIRParserException e) {
+                    actualError = e.getMessage();
+                }
+                if ((expectedError == null) != (actualError == null) || (expected != null && !expected.equals(actual))) {
+                    failures.add(tokens[1] + " [expected: " + expectedError + ", actual: " + actualError + "]");
+                }
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    @Test
+    public void testResourceTypeNotFirst() throws Exception {
+        String json = "{\"id\":\"1\",\"contained\":[{\"active\":true,\"resourceType\":\"Patient\"}],\"resourceType\":\"Patient\",\"gender\":\"male\"}";
+        Patient patient = streamingParser().parse(new StringReader(json));
+        assertEquals(patient.getId(), "1");
+        assertEquals(patient.getContained().size(), 1);
+        assertEquals(patient.getContained().get(0).as(Patient.class).getActive().getValue(), Boolean.TRUE);
+        assertEquals(patient, FHIRParser.parser(Format.JSON).parse(new StringReader(json)));
+    }
+
+    @Test
+    public void testPrimitiveExtensionBeforeValue() throws Exception {
+        String json = "{\"resourceType\":\"Patient\",\"name\":[{\"_given\":[null,{\"id\":\"g2\"}],\"given\":[\"a\",\"b\"]}],"
+                + "\"_birthDate\":{\"id\":\"bd\"},\"birthDate\":\"1970-01-01\"}";
+        Patient patient = streamingParser().parse(new StringReader(json));
+        assertEquals(patient.getName().get(0).getGiven().get(1).getId(), "g2");
+        assertEquals(patient.getBirthDate().getId(), "bd");
+        assertEquals(patient, FHIRParser.parser(Format.JSON).parse(new StringReader(json)));
+    }
+
+    @Test
+    public void testUnmatchedPrimitiveExtensionArray() throws Exception {
+        String json = "{\"resourceType\":\"Patient\",\"name\":[{\"_given\":[{\"id\":\"g1\"}]}]}";
+        try {
+            streamingParser().parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Found array with key '_given'"));
+        }
+    }
+
+    @Test
+    public void testMultipleChoiceElements() throws Exception {
+        String json = "{\"resourceType\":\"Patient\",\"deceasedBoolean\":true,\"deceasedDateTime\":\"2020-01-01\"}";
+        try {
+            streamingParser().parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Only one choice element key of the form: deceased[x] is allowed"));
+        }
+    }
+
+    @Test
+    public void testUnrecognizedElements() throws Exception {
+        try (InputStream in = FHIRJsonStreamingParserTest.class.getClassLoader().getResourceAsStream("JSON/observation-unrecognized-elements.json")) {
+            streamingParser().parse(in);
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Unrecognized element"), e.getMessage());
+        }
+        try (InputStream in = FHIRJsonStreamingParserTest.class.getClassLoader().getResourceAsStream("JSON/observation-unrecognized-elements.json")) {
+            FHIRParser parser = streamingParser();
+            parser.setIgnoringUnrecognizedElements(true);
+            assertNotNull(parser.parse(in));
+        }
+    }
+
+    @Test
+    public void testRejectDuplicateKeys() throws Exception {
+        try {
+            String json = "{\"resourceType\":\"Patient\",\"id\":\"1\",\"id\":\"2\"}";
+            streamingParser().parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Duplicate key 'id' is not allowed"));
+        }
+    }
+
+    @Test
+    public void testWrongValueType() throws Exception {
+        try {
+            String json = "{\"resourceType\":\"Patient\",\"active\":\"true\"}";
+            streamingParser().parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertEquals(e.getPath(), "Patient.active");
+        }
+    }
+
+    @Test
+    public void testPropertySupported() {
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        assertTrue(parser.isPropertySupported(FHIRJsonParser.PROPERTY_STREAMING));
+        assertFalse(parser.isPropertySupported("unknown"));
+    }
+
+    private FHIRParser streamingParser() {
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        parser.setProperty(FHIRJsonParser.PROPERTY_STREAMING, true);
+        return parser;
+    }
+
+    private String read(String path) throws Exception {
+        try (Reader reader = ExamplesUtil.resourceReader(path)) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.annotation.Binding;
+import com.ibm.fhir.model.annotation.Choice;
+import com.ibm.fhir.model.annotation.Constraint;
+import com.ibm.fhir.model.annotation.ReferenceTarget;
+import com.ibm.fhir.model.annotation.Required;
+import com.ibm.fhir.model.annotation.Summary;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+/**
+ * Checks that the element info ModelSupport loads from the generated metadata matches the model classes
+ */
+public class ModelSupportTest {
+
+    @Test
+    public void testElementInfoMatchesModelClasses() {
+        assertTrue(ModelSupport.getModelClasses().size() > 600);
+        for (Class<?> modelClass : ModelSupport.getModelClasses()) {
+            List<String> fieldElementNames = new ArrayList<>();
+            for (Class<?> clazz : ModelSupport.getClosure(modelClass)) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isVolatile(modifiers)) {
+                        continue;
+                    }
+                    String elementName = ModelSupport.getElementName(field);
+                    fieldElementNames.add(elementName);
+
+                    ElementInfo elementInfo = ModelSupport.getElementInfo(modelClass, elementName);
+                    String message = modelClass.getName() + "." + elementName;
+                    assertNotNull(elementInfo, message);
+                    Class<?> type = (field.getGenericType() instanceof ParameterizedType) ?
+                            (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0] :
+                            field.getType();
+                    assertEquals(elementInfo.getType(), type, message);
+                    assertEquals(elementInfo.getDeclaringType(), field.getDeclaringClass(), message);
+                    assertEquals(elementInfo.isRequired(), field.isAnnotationPresent(Required.class), message);
+                    assertEquals(elementInfo.isSummary(), field.isAnnotationPresent(Summary.class), message);
+                    assertEquals(elementInfo.isRepeating(), List.class.equals(field.getType()), message);
+                    assertEquals(elementInfo.isChoice(), field.isAnnotationPresent(Choice.class), message);
+                    if (elementInfo.isChoice()) {
+                        assertEquals(elementInfo.getChoiceTypes(),
+                                new LinkedHashSet<>(Arrays.asList(field.getAnnotation(Choice.class).value())), message);
+                    }
+                    assertEquals(elementInfo.isReference(), field.isAnnotationPresent(ReferenceTarget.class), message);
+                    if (elementInfo.isReference()) {
+                        assertEquals(elementInfo.getReferenceTypes(),
+                                new LinkedHashSet<>(Arrays.asList(field.getAnnotation(ReferenceTarget.class).value())), message);
+                    }
+                    assertEquals(elementInfo.getBinding(), field.getAnnotation(Binding.class), message);
+                }
+            }
+            // same elements, in the same order
+            assertEquals(new ArrayList<>(ModelSupport.getElementNames(modelClass)), fieldElementNames, modelClass.getName());
+        }
+    }
+
+    @Test
+    public void testConstraints() {
+        List<Constraint> expected = new ArrayList<>();
+        for (Class<?> clazz : ModelSupport.getClosure(Patient.class)) {
+            expected.addAll(Arrays.asList(clazz.getDeclaredAnnotationsByType(Constraint.class)));
+        }
+        assertTrue(!expected.isEmpty());
+        assertEquals(ModelSupport.getConstraints(Patient.class), expected);
+        assertTrue(ModelSupport.getConstraints(String.class).isEmpty());
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.notification.exception.FHIRNotificationException;
+
+/**
+ * Delivers notification events to a single subscriber from a dedicated worker thread so that
+ * a slow subscriber does not add to the latency of the request which generated the event.
+ * Events are held in a bounded queue; when the queue is full, the configured {@link OverflowPolicy}
+ * decides whether the publishing thread waits for space or the event is dropped.
+ */
+public class FHIRNotificationDispatcher {
+    private static final Logger log = Logger.getLogger(FHIRNotificationDispatcher.class.getName());
+
+    // The maximum number of events taken from the queue in one go
+    private static final int MAX_BATCH_SIZE = 100;
+
+    // How often the worker logs the dispatcher statistics while events are being delivered or dropped
+    private static final long STATISTICS_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * What to do with a new event when the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * wait for the worker to make space in the queue (back-pressure on the publishing thread)
+         */
+        BLOCK,
+        /**
+         * discard the new event
+         */
+        DROP;
+
+        public static OverflowPolicy from(String value) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid notification overflow policy: '" + value + "'");
+        }
+    }
+
+    private final FHIRNotificationSubscriber subscriber;
+    private final BlockingQueue<QueuedEvent> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final Consumer<FHIRNotificationSubscriber> failureHandler;
+    private final Thread worker;
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long lagMillis = 0;
+    private volatile boolean running = true;
+
+    // Only accessed by the worker thread
+    private long statisticsLoggedAt = System.nanoTime();
+    private long statisticsLoggedCount = 0;
+
+    /**
+     * Public constructor. Starts the worker thread.
+     * @param subscriber the subscriber to deliver events to
+     * @param queueSize the maximum number of events waiting to be delivered
+     * @param overflowPolicy what to do with a new event when the queue is full
+     * @param failureHandler called from the worker thread if the subscriber fails to process an event;
+     *        no further events are delivered to the subscriber after that
+     */
+    public FHIRNotificationDispatcher(FHIRNotificationSubscriber subscriber, int queueSize, OverflowPolicy overflowPolicy,
+            Consumer<FHIRNotificationSubscriber> failureHandler) {
+        this.subscriber = subscriber;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.overflowPolicy = overflowPolicy;
+        this.failureHandler = failureHandler;
+        this.worker = new Thread(() -> run(), "fhir-notification-" + subscriber.getClass().getSimpleName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queue the event for delivery to the subscriber
+     * @param event
+     */
+    public void dispatch(FHIRNotificationEvent event) {
+        if (!running) {
+            return;
+        }
+        QueuedEvent queuedEvent = new QueuedEvent(event);
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(queuedEvent);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped(event);
+            }
+        } else if (!queue.offer(queuedEvent)) {
+            dropped(event);
+        }
+    }
+
+    /**
+     * Stop the worker thread. Events which have not been delivered yet are discarded.
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        int remaining = queue.size();
+        queue.clear();
+        if (remaining > 0) {
+            log.warning("Discarded " + remaining + " undelivered notification event(s) for subscriber "
+                    + subscriber.getClass().getName());
+        }
+        log.info(getStatistics());
+    }
+
+    /**
+     * @return the number of events waiting to be delivered
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events delivered to the subscriber
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the time in milliseconds between queuing and delivering the most recently delivered event
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return a summary of the queue depth, delivered and dropped counts and lag, as written to the log
+     */
+    public String getStatistics() {
+        return "Notification dispatcher for subscriber " + subscriber.getClass().getName()
+                + ": queueDepth=" + getQueueDepth()
+                + ", dispatched=" + getDispatchedCount()
+                + ", dropped=" + getDroppedCount()
+                + ", lagMillis=" + getLagMillis();
+    }
+
+    private void dropped(FHIRNotificationEvent event) {
+        long count = droppedCount.incrementAndGet();
+        // Avoid flooding the log when the subscriber falls behind
+        if (count == 1 || count % 1000 == 0) {
+            log.warning("Notification queue for subscriber " + subscriber.getClass().getName() + " is full; "
+                    + count + " event(s) dropped so far, including " + event);
+        }
+    }
+
+    private void run() {
+        List<QueuedEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                QueuedEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Delivering " + batch.size() + " notification event(s), queue depth " + queue.size());
+                }
+                for (QueuedEvent queuedEvent : batch) {
+                    try {
+                        deliver(queuedEvent);
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "Unexpected error while publishing " + queuedEvent.event, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shutdown() was called
+                running = false;
+            } catch (FHIRNotificationException e) {
+                running = false;
+                log.log(Level.WARNING, FHIRNotificationDispatcher.class.getName() + ": unable to publish event", e);
+                failureHandler.accept(subscriber);
+            } finally {
+                batch.clear();
+            }
+            logStatistics();
+        }
+    }
+
+    /**
+     * Log the statistics at most once per interval, and only if events were delivered or dropped since the last time
+     */
+    private void logStatistics() {
+        long now = System.nanoTime();
+        if (now - statisticsLoggedAt < STATISTICS_INTERVAL_NANOS) {
+            return;
+        }
+        long count = dispatchedCount.get() + droppedCount.get();
+        if (count != statisticsLoggedCount) {
+            log.info(getStatistics());
+            statisticsLoggedCount = count;
+        }
+        statisticsLoggedAt = now;
+    }
+
+    private void deliver(QueuedEvent queuedEvent) throws FHIRNotificationException {
+        FHIRNotificationEvent event = queuedEvent.event;
+        try {
+            // Subscribers may read tenant-specific configuration while serializing the event
+            FHIRRequestContext.set(new FHIRRequestContext(event.getTenantId(), event.getDatasourceId()));
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unable to establish request context for tenant '" + event.getTenantId() + "'", e);
+        }
+        try {
+            subscriber.notify(event);
+            dispatchedCount.incrementAndGet();
+            lagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedEvent.queuedAt);
+        } finally {
+            FHIRRequestContext.remove();
+        }
+    }
+
+    /**
+     * An event along with the time it was queued, used to compute the lag
+     */
+    private static class QueuedEvent {
+        private final FHIRNotificationEvent event;
+        private final long queuedAt;
+
+        private QueuedEvent(FHIRNotificationEvent event) {
+            this.event = event;
+            this.queuedAt = System.nanoTime();
+        }
+    }
+}
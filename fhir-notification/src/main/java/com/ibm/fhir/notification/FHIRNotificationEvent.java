@@ -17,6 +17,11 @@ public class FHIRNotificationEvent {
     private String datasourceId = null;
     private Resource resource = null;
 
+    // The serialized forms of this event are cached so that they are only built once,
+    // no matter how many subscribers publish the event; every setter discards them
+    private volatile String jsonString = null;
+    private volatile String jsonStringWithResource = null;
+
     public FHIRNotificationEvent() {
         // No Operation
     }
@@ -27,6 +32,7 @@ public class FHIRNotificationEvent {
 
     public void setResourceId(String resourceId) {
         this.resourceId = resourceId;
+        clearJsonString();
     }
 
     public String getLastUpdated() {
@@ -35,6 +41,7 @@ public class FHIRNotificationEvent {
 
     public void setLastUpdated(String lastUpdated) {
         this.lastUpdated = lastUpdated;
+        clearJsonString();
     }
 
     public String getLocation() {
@@ -43,6 +50,7 @@ public class FHIRNotificationEvent {
 
     public void setLocation(String location) {
         this.location = location;
+        clearJsonString();
     }
 
     public String getOperationType() {
@@ -51,6 +59,7 @@ public class FHIRNotificationEvent {
 
     public void setOperationType(String operationType) {
         this.operationType = operationType;
+        clearJsonString();
     }
 
     public String getTenantId() {
@@ -59,6 +68,7 @@ public class FHIRNotificationEvent {
 
     public void setTenantId(String tenantId) {
         this.tenantId = tenantId;
+        clearJsonString();
     }
 
     public String getDatasourceId() {
@@ -67,6 +77,7 @@ public class FHIRNotificationEvent {
 
     public void setDatasourceId(String datasourceId) {
         this.datasourceId = datasourceId;
+        clearJsonString();
     }
 
     public Resource getResource() {
@@ -75,6 +86,32 @@ public class FHIRNotificationEvent {
 
     public void setResource(Resource resource) {
         this.resource = resource;
+        clearJsonString();
+    }
+
+    /**
+     * @param includeResource whether the serialized form includes the resource
+     * @return the cached serialized form of this event, or null if it has not been serialized yet
+     */
+    public String getJsonString(boolean includeResource) {
+        return includeResource ? jsonStringWithResource : jsonString;
+    }
+
+    /**
+     * @param includeResource whether the serialized form includes the resource
+     * @param jsonString the serialized form of this event
+     */
+    public void setJsonString(boolean includeResource, String jsonString) {
+        if (includeResource) {
+            this.jsonStringWithResource = jsonString;
+        } else {
+            this.jsonString = jsonString;
+        }
+    }
+
+    private void clearJsonString() {
+        this.jsonString = null;
+        this.jsonStringWithResource = null;
     }
 
     @Override
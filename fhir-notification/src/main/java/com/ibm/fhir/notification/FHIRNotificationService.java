@@ -8,15 +8,19 @@ package com.ibm.fhir.notification;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.notification.FHIRNotificationDispatcher.OverflowPolicy;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
@@ -32,6 +36,14 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     private static final FHIRNotificationService INSTANCE = new FHIRNotificationService();
     private Set<String> includedResourceTypes = Collections.synchronizedSortedSet(new TreeSet<String>());
 
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    // When async is enabled, each subscriber is notified from its own dispatcher thread
+    private boolean async = false;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Map<FHIRNotificationSubscriber, FHIRNotificationDispatcher> dispatchers = new ConcurrentHashMap<>();
+
     private FHIRNotificationService() {
         log.entering(this.getClass().getName(), "FHIRNotificationService");
         try {
@@ -40,6 +52,7 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
             FHIRPersistenceInterceptorMgr.getInstance().addPrioritizedInterceptor(this);
 
             initNotificationResourceTypes();
+            initDispatch();
         } catch (Throwable t) {
             throw new RuntimeException("Unexpected error during initialization.", t);
         }
@@ -58,6 +71,22 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
                 + (includedResourceTypes.isEmpty() ? "ALL" : includedResourceTypes.toString()) + "'");
     }
 
+    private void initDispatch() throws Exception {
+        PropertyGroup config = FHIRConfiguration.getInstance().loadConfiguration();
+        async = config.getBooleanProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC, Boolean.FALSE);
+        queueSize = config.getIntProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Invalid notification queue size: " + queueSize);
+        }
+        overflowPolicy = OverflowPolicy.from(config.getStringProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_OVERFLOW_POLICY,
+                OverflowPolicy.BLOCK.name()));
+
+        if (async) {
+            log.info("Notification service will publish events asynchronously using a queue of size " + queueSize
+                    + " per subscriber and overflow policy '" + overflowPolicy + "'");
+        }
+    }
+
     public static FHIRNotificationService getInstance() {
         return INSTANCE;
     }
@@ -70,6 +99,11 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     public void publish(FHIRNotificationEvent event) {
         log.entering(this.getClass().getName(), "publish");
         for (FHIRNotificationSubscriber subscriber : subscribers) {
+            FHIRNotificationDispatcher dispatcher = dispatchers.get(subscriber);
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                continue;
+            }
             try {
                 subscriber.notify(event);
             } catch (FHIRNotificationException e) {
@@ -89,6 +123,9 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
         log.entering(this.getClass().getName(), "subscribe");
         try {
             if (!subscribers.contains(subscriber)) {
+                if (async) {
+                    dispatchers.put(subscriber, new FHIRNotificationDispatcher(subscriber, queueSize, overflowPolicy, this::unsubscribe));
+                }
                 subscribers.add(subscriber);
             }
         } finally {
@@ -107,6 +144,10 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
             if (subscribers.contains(subscriber)) {
                 subscribers.remove(subscriber);
             }
+            FHIRNotificationDispatcher dispatcher = dispatchers.remove(subscriber);
+            if (dispatcher != null) {
+                dispatcher.shutdown();
+            }
         } finally {
             log.exiting(this.getClass().getName(), "unsubscribe");
         }
@@ -127,6 +168,16 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
         }
     }
 
+    /**
+     * Get the dispatcher which notifies the subscriber asynchronously, for monitoring purposes
+     *
+     * @param subscriber
+     * @return the dispatcher, or null if the subscriber is notified synchronously or is not subscribed
+     */
+    public FHIRNotificationDispatcher getDispatcher(FHIRNotificationSubscriber subscriber) {
+        return dispatchers.get(subscriber);
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // The following set of methods are from the FHIRPersistenceInterceptor interface and are implemented here to allow
     // the notification service to be registered as a persistence interceptor. All we really need to do in these methods
@@ -68,7 +68,8 @@ public class FHIRNotificationUtil {
     }
 
     /**
-     * Serializes the notification event into a JSON string.
+     * Serializes the notification event into a JSON string. The result is cached on the event
+     * so that subsequent calls for the same event return the same string.
      * @param event the FHIRNotificationEvent structure to be serialized
      * @param includeResource a flag that controls whether or not the resource object within
      * the event structure should be included in the serialized message.
@@ -76,6 +77,12 @@ public class FHIRNotificationUtil {
      * @throws FHIRException
      */
     public static String toJsonString(FHIRNotificationEvent event, boolean includeResource) throws FHIRException {
+        // The event is shared by all subscribers, so only serialize it once
+        String cached = event.getJsonString(includeResource);
+        if (cached != null) {
+            return cached;
+        }
+
         JsonObjectBuilder builder = JSON_BUILDER_FACTORY.createObjectBuilder();
         builder.add("lastUpdated", event.getLastUpdated());
         builder.add("location", event.getLocation());
@@ -128,6 +135,7 @@ public class FHIRNotificationUtil {
             JsonObject jsonObject = builder.build();
             jsonString = jsonObject.toString();
         }
+        event.setJsonString(includeResource, jsonString);
         return jsonString;
     }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.notification.FHIRNotificationDispatcher.OverflowPolicy;
+import com.ibm.fhir.notification.exception.FHIRNotificationException;
+
+/**
+ * FHIRNotificationDispatcher Tests
+ */
+public class FHIRNotificationDispatcherTest {
+
+    @BeforeClass
+    public void setup() {
+        FHIRConfiguration.setConfigHome("src/test/resources");
+    }
+
+    @Test
+    public void testBlockDeliversInOrder() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(50);
+        FHIRNotificationSubscriber subscriber = event -> {
+            received.add(event.getResourceId());
+            latch.countDown();
+        };
+
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(subscriber, 2, OverflowPolicy.BLOCK, s -> {});
+        try {
+            for (int i = 0; i < 50; i++) {
+                dispatcher.dispatch(event(Integer.toString(i)));
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 50; i++) {
+                assertEquals(received.get(i), Integer.toString(i));
+            }
+            assertEquals(dispatcher.getDroppedCount(), 0);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FHIRNotificationSubscriber subscriber = event -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(subscriber, 1, OverflowPolicy.DROP, s -> {});
+        try {
+            // the first event occupies the worker, the second fills the queue
+            dispatcher.dispatch(event("1"));
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            dispatcher.dispatch(event("2"));
+            dispatcher.dispatch(event("3"));
+            dispatcher.dispatch(event("4"));
+            assertEquals(dispatcher.getQueueDepth(), 1);
+            assertEquals(dispatcher.getDroppedCount(), 2);
+        } finally {
+            release.countDown();
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureHandler() throws Exception {
+        FHIRNotificationSubscriber subscriber = event -> {
+            throw new FHIRNotificationException("test");
+        };
+        AtomicReference<FHIRNotificationSubscriber> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(subscriber, 10, OverflowPolicy.BLOCK, s -> {
+            failed.set(s);
+            latch.countDown();
+        });
+        try {
+            dispatcher.dispatch(event("1"));
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertSame(failed.get(), subscriber);
+            assertEquals(dispatcher.getDispatchedCount(), 0);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    private FHIRNotificationEvent event(String resourceId) {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType("create");
+        event.setResourceId(resourceId);
+        event.setLocation("Patient/" + resourceId + "/_history/1");
+        event.setTenantId("default");
+        event.setDatasourceId("default");
+        return event;
+    }
+}
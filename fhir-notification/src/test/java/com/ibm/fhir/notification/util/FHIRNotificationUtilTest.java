@@ -206,6 +206,25 @@ public class FHIRNotificationUtilTest {
             "{\"lastUpdated\":\"2021-10-10\",\"location\":\"Patient/1-2-3-4\",\"operationType\":\"delete\",\"resourceId\":\"1-2-3-4\",\"datasourceId\":\"default\",\"tenantId\":\"default\"}");
     }
 
+    @Test
+    public void testUtil_SetterDiscardsCachedJson_tenant_default() throws FHIRException {
+        FHIRNotificationEvent evt = new FHIRNotificationEvent();
+        evt.setLastUpdated("2021-10-10");
+        evt.setLocation("Patient/1-2-3-4");
+        evt.setOperationType("create");
+        evt.setResourceId("1-2-3-4");
+        evt.setDatasourceId("default");
+        evt.setTenantId("default");
+
+        String jsonString = FHIRNotificationUtil.toJsonString(evt, false);
+        assertEquals(FHIRNotificationUtil.toJsonString(evt, false), jsonString);
+
+        evt.setOperationType("update");
+        assertNull(evt.getJsonString(false));
+        assertEquals(FHIRNotificationUtil.toJsonString(evt, false),
+            "{\"lastUpdated\":\"2021-10-10\",\"location\":\"Patient/1-2-3-4\",\"operationType\":\"update\",\"resourceId\":\"1-2-3-4\",\"datasourceId\":\"default\",\"tenantId\":\"default\"}");
+    }
+
     @Test
     public void testUtil_RoundTrip_tenant_default() throws FHIRException {
         String jsonString = "{\"lastUpdated\":\"2021-10-10\",\"location\":\"Patient/1-2-3-4\",\"operationType\":\"$operation\",\"resourceId\":\"1-2-3-4\",\"datasourceId\":\"default\",\"tenantId\":\"default\"}";
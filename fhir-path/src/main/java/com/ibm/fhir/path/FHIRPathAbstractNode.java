@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  * 
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -15,17 +15,23 @@ import java.util.stream.Stream;
 
 public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     protected final String name;
-    protected final String path;
+    protected String path;
     protected final FHIRPathType type;
-    protected final FHIRPathSystemValue value;
-    protected final Collection<FHIRPathNode> children;
+    protected FHIRPathSystemValue value;
+    protected volatile Collection<FHIRPathNode> children;
+    
+    // non-null for nodes whose path, value and children are materialized on demand by a FHIRPathTree
+    final FHIRPathTree.Expansion expansion;
     
     protected FHIRPathAbstractNode(Builder builder) {
         name = builder.name;
         path = builder.path;
         type = Objects.requireNonNull(builder.type);
         value = builder.value;
-        children = Collections.unmodifiableCollection(builder.children);
+        expansion = builder.expansion;
+        if (expansion == null) {
+            children = Collections.unmodifiableCollection(builder.children);
+        }
     }
     
     @Override
@@ -35,6 +41,9 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     
     @Override
     public String path() {
+        if (path == null && expansion != null) {
+            path = expansion.path();
+        }
         return path;
     }
     
@@ -45,19 +54,36 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     
     @Override
     public boolean hasValue() {
-        return value != null;
+        return getValue() != null;
     }
     
     @Override
     public FHIRPathSystemValue getValue() {
+        expand();
         return value;
     }
     
     @Override
     public Collection<FHIRPathNode> children() {
+        expand();
         return children;
     }
     
+    /**
+     * Materialize the value and children of this node if they have not been materialized yet
+     */
+    private void expand() {
+        if (children == null) {
+            synchronized (this) {
+                if (children == null) {
+                    Builder builder = expansion.expand(this);
+                    value = builder.value;
+                    children = Collections.unmodifiableCollection(builder.children);
+                }
+            }
+        }
+    }
+    
     @Override
     public Collection<FHIRPathNode> descendants() {
         return stream().skip(1).collect(Collectors.toList());
@@ -96,6 +122,9 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
         protected FHIRPathSystemValue value;
         protected Collection<FHIRPathNode> children = new ArrayList<>();
         
+        // set by FHIRPathTree for nodes that are materialized on demand
+        FHIRPathTree.Expansion expansion;
+        
         protected Builder(FHIRPathType type) {
             super();
             this.type = type;
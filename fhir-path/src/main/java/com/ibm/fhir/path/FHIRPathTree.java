@@ -1,11 +1,15 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.path;
 
+import static com.ibm.fhir.model.util.ModelSupport.delimit;
+import static com.ibm.fhir.model.util.ModelSupport.getTypeName;
+import static com.ibm.fhir.model.util.ModelSupport.isKeyword;
+
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -15,27 +19,26 @@ import java.time.ZonedDateTime;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.type.Quantity;
-import com.ibm.fhir.model.visitor.PathAwareVisitor;
+import com.ibm.fhir.model.visitor.DefaultVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
 
 /**
  * A tree of {@link FHIRPathNode} nodes created from a {@link Resource} or an {@link Element}
+ *
+ * <p>The tree is materialized lazily: the children, primitive value and path of each node are only created
+ * when an expression (or caller) navigates into that node.
  */
 public class FHIRPathTree {
     private final FHIRPathNode root;
-    private final Map<String, FHIRPathNode> pathNodeMap;
 
-    private FHIRPathTree(FHIRPathNode root, Map<String, FHIRPathNode> pathNodeMap) {
-        this.root = root;
-        this.pathNodeMap = Collections.unmodifiableMap(pathNodeMap);
+    private FHIRPathTree(Visitable visitable) {
+        root = node(null, getTypeName(visitable.getClass()), -1, visitable);
     }
 
     /**
@@ -57,7 +60,22 @@ public class FHIRPathTree {
      *     the node at the location given by the path parameter if exists, otherwise null
      */
     public FHIRPathNode getNode(String path) {
-        return pathNodeMap.get(path);
+        if (path == null) {
+            return null;
+        }
+        String[] segments = path.split("\\.");
+        FHIRPathNode node = matches(root, segments[0]) ? root : null;
+        for (int i = 1; i < segments.length && node != null; i++) {
+            FHIRPathNode parent = node;
+            node = null;
+            for (FHIRPathNode child : parent.children()) {
+                if (matches(child, segments[i])) {
+                    node = child;
+                    break;
+                }
+            }
+        }
+        return node;
     }
 
     /**
@@ -73,9 +91,14 @@ public class FHIRPathTree {
             return null;
         }
 
+        Expansion expansion = expansion(node);
+        if (expansion != null) {
+            return expansion.parent;
+        }
+
         int index = node.path().lastIndexOf(".");
         if (index != -1) {
-            return pathNodeMap.get(node.path().substring(0, index));
+            return getNode(node.path().substring(0, index));
         }
 
         return null;
@@ -142,11 +165,7 @@ public class FHIRPathTree {
      */
     public static FHIRPathTree tree(Resource resource) {
         Objects.requireNonNull(resource);
-
-        BuildingVisitor visitor = new BuildingVisitor();
-        resource.accept(visitor);
-
-        return new FHIRPathTree(visitor.getRoot(), visitor.getPathNodeMap());
+        return new FHIRPathTree(resource);
     }
 
     /**
@@ -159,118 +178,212 @@ public class FHIRPathTree {
      */
     public static FHIRPathTree tree(Element element) {
         Objects.requireNonNull(element);
+        return new FHIRPathTree(element);
+    }
 
-        BuildingVisitor visitor = new BuildingVisitor();
-        element.accept(visitor);
-
-        return new FHIRPathTree(visitor.getRoot(), visitor.getPathNodeMap());
+    private FHIRPathNode node(FHIRPathNode parent, String elementName, int elementIndex, Visitable visitable) {
+        FHIRPathAbstractNode.Builder builder;
+        if (visitable instanceof Resource) {
+            builder = FHIRPathResourceNode.builder((Resource) visitable);
+        } else if (visitable instanceof Quantity) {
+            builder = FHIRPathQuantityNode.builder((Quantity) visitable);
+        } else {
+            builder = FHIRPathElementNode.builder((Element) visitable);
+        }
+        builder.expansion = new Expansion(this, parent, elementName, elementIndex, visitable);
+        return builder.name(elementName).build();
     }
 
-    private static class BuildingVisitor extends PathAwareVisitor {
-        private Stack<FHIRPathNode.Builder> builderStack = new Stack<>();
-        private FHIRPathNode root;
-        private Map<String, FHIRPathNode> pathNodeMap = new HashMap<>();
+    /**
+     * The expansion of the node parameter if it was created by this FHIRPathTree, otherwise null
+     */
+    private Expansion expansion(FHIRPathNode node) {
+        if (node instanceof FHIRPathAbstractNode) {
+            Expansion expansion = ((FHIRPathAbstractNode) node).expansion;
+            if (expansion != null && expansion.tree == this) {
+                return expansion;
+            }
+        }
+        return null;
+    }
 
-        private void build() {
-            String path = getPath();
+    /**
+     * Indicates whether the node parameter corresponds to the path segment parameter (e.g. "name" or "given[1]")
+     */
+    private boolean matches(FHIRPathNode node, String segment) {
+        Expansion expansion = expansion(node);
+        if (expansion == null) {
+            return false;
+        }
+        String elementName = segment;
+        int elementIndex = -1;
+        int index = segment.indexOf('[');
+        if (index != -1 && segment.endsWith("]")) {
+            elementName = segment.substring(0, index);
+            try {
+                elementIndex = Integer.parseInt(segment.substring(index + 1, segment.length() - 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return expansion.elementIndex == elementIndex && expansion.segmentName().equals(elementName);
+    }
 
-            FHIRPathNode.Builder builder = builderStack.pop();
-            FHIRPathNode node = builder.path(path).build();
+    /**
+     * The information needed to materialize the path, value and children of a node on demand
+     */
+    static final class Expansion {
+        private final FHIRPathTree tree;
+        private final FHIRPathNode parent;
+        private final String elementName;
+        private final int elementIndex;
+        private final Visitable visitable;
+
+        private Expansion(FHIRPathTree tree, FHIRPathNode parent, String elementName, int elementIndex, Visitable visitable) {
+            this.tree = tree;
+            this.parent = parent;
+            this.elementName = elementName;
+            this.elementIndex = elementIndex;
+            this.visitable = visitable;
+        }
 
-            pathNodeMap.put(path, node);
+        private String segmentName() {
+            return isKeyword(elementName) ? delimit(elementName) : elementName;
+        }
 
-            if (!builderStack.isEmpty()) {
-                builderStack.peek().children(node);
-            } else {
-                root = node;
+        /**
+         * Compute the path of the node from the path of its parent
+         */
+        String path() {
+            StringBuilder sb = new StringBuilder();
+            if (parent != null) {
+                sb.append(parent.path()).append(".");
+            }
+            sb.append(segmentName());
+            if (elementIndex != -1) {
+                sb.append("[").append(elementIndex).append("]");
             }
+            return sb.toString();
         }
 
-        private Map<String, FHIRPathNode> getPathNodeMap() {
-            return pathNodeMap;
+        /**
+         * Visit the direct children of the wrapped element or resource
+         *
+         * @param node
+         *     the node being expanded
+         * @return
+         *     a builder that contains the value and the (not yet expanded) children of the node
+         */
+        FHIRPathAbstractNode.Builder expand(FHIRPathNode node) {
+            ExpandingVisitor visitor = new ExpandingVisitor(tree, node);
+            visitable.accept(elementName, elementIndex, visitor);
+            return visitor.builder;
         }
+    }
 
-        private FHIRPathNode getRoot() {
-            return root;
+    /**
+     * A visitor that creates the value and child nodes of a single node without descending any further
+     */
+    private static class ExpandingVisitor extends DefaultVisitor {
+        private final FHIRPathTree tree;
+        private final FHIRPathNode node;
+        private FHIRPathAbstractNode.Builder builder;
+        private int depth = 0;
+
+        private ExpandingVisitor(FHIRPathTree tree, FHIRPathNode node) {
+            super(true);
+            this.tree = tree;
+            this.node = node;
         }
 
         @Override
-        protected void doVisitEnd(String elementName, int elementIndex, Element element) {
-            build();
+        public boolean visit(java.lang.String elementName, int elementIndex, Visitable visitable) {
+            // only the element (or resource) being expanded has its children visited
+            return depth == 1;
         }
 
         @Override
-        protected void doVisitEnd(String elementName, int elementIndex, Resource resource) {
-            build();
+        public void visitStart(java.lang.String elementName, int elementIndex, Element element) {
+            if (depth++ == 0) {
+                builder = FHIRPathElementNode.builder(element);
+                if (element instanceof Quantity) {
+                    FHIRPathQuantityValue value = FHIRPathQuantityValue.quantityValue((Quantity) element);
+                    if (value != null) {
+                        builder.value(value);
+                    }
+                }
+            } else {
+                builder.children(tree.node(node, elementName, elementIndex, element));
+            }
         }
 
         @Override
-        protected void doVisitStart(String elementName, int elementIndex, Element element) {
-            if (element instanceof Quantity) {
-                Quantity quantity = (Quantity) element;
-                builderStack.push(FHIRPathQuantityNode.builder(quantity).name(elementName));
-                FHIRPathQuantityValue value = FHIRPathQuantityValue.quantityValue(quantity);
-                if (value != null) {
-                    builderStack.peek().value(value);
-                }
+        public void visitStart(java.lang.String elementName, int elementIndex, Resource resource) {
+            if (depth++ == 0) {
+                builder = FHIRPathResourceNode.builder(resource);
             } else {
-                builderStack.push(FHIRPathElementNode.builder(element).name(elementName));
+                builder.children(tree.node(node, elementName, elementIndex, resource));
             }
         }
 
         @Override
-        protected void doVisitStart(String elementName, int elementIndex, Resource resource) {
-            builderStack.push(FHIRPathResourceNode.builder(resource).name(elementName));
+        public void visitEnd(java.lang.String elementName, int elementIndex, Element element) {
+            depth--;
+        }
+
+        @Override
+        public void visitEnd(java.lang.String elementName, int elementIndex, Resource resource) {
+            depth--;
         }
 
         @Override
         public void visit(java.lang.String elementName, BigDecimal value) {
-            builderStack.peek().value(FHIRPathDecimalValue.decimalValue(elementName, value));
+            builder.value(FHIRPathDecimalValue.decimalValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, byte[] value) {
-            builderStack.peek().value(FHIRPathStringValue.stringValue(elementName, Base64.getEncoder().encodeToString(value)));
+            builder.value(FHIRPathStringValue.stringValue(elementName, Base64.getEncoder().encodeToString(value)));
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.Boolean value) {
-            builderStack.peek().value(FHIRPathBooleanValue.booleanValue(elementName, value));
+            builder.value(FHIRPathBooleanValue.booleanValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, java.lang.Integer value) {
-            builderStack.peek().value(FHIRPathIntegerValue.integerValue(elementName, value));
+            builder.value(FHIRPathIntegerValue.integerValue(elementName, value));
         }
 
         @Override
-        public void doVisit(java.lang.String elementName, java.lang.String value) {
-            builderStack.peek().value(FHIRPathStringValue.stringValue(elementName, value));
+        public void visit(java.lang.String elementName, java.lang.String value) {
+            builder.value(FHIRPathStringValue.stringValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, LocalDate value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            builder.value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, LocalTime value) {
-            builderStack.peek().value(FHIRPathTimeValue.timeValue(elementName, value));
+            builder.value(FHIRPathTimeValue.timeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, Year value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            builder.value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, YearMonth value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            builder.value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
 
         @Override
         public void visit(java.lang.String elementName, ZonedDateTime value) {
-            builderStack.peek().value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+            builder.value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
         }
     }
 }
@@ -262,6 +262,37 @@ public class FHIRPathEvaluator {
         }
     }
 
+    /**
+     * Evaluate a FHIRPath expression that was compiled with {@link FHIRPathUtil#compile(String)} using an existing
+     * EvaluationContext against a collection of FHIRPath nodes. Callers which evaluate the same expressions many
+     * times can use this method to avoid looking up the expression in the shared expression cache.
+     *
+     * @param evaluationContext
+     *     the evaluation context
+     * @param expressionContext
+     *     the compiled FHIRPath expression to evaluate
+     * @param initialContext
+     *     the initial context as a non-null, potentially empty collection of FHIRPath nodes
+     * @return
+     *     the result of evaluation as a collection of FHIRPath nodes
+     * @throws NullPointerException
+     *     if any of the parameters are null
+     * @throws FHIRPathException
+     *     if an exception occurs during evaluation
+     */
+    public Collection<FHIRPathNode> evaluate(EvaluationContext evaluationContext, ExpressionContext expressionContext, Collection<FHIRPathNode> initialContext) throws FHIRPathException {
+        Objects.requireNonNull(evaluationContext);
+        Objects.requireNonNull(expressionContext);
+        Objects.requireNonNull(initialContext);
+        try {
+            evaluationContext.setExternalConstant("context", initialContext);
+            setDateTimeConstants(evaluationContext);
+            return visitor.evaluate(evaluationContext, expressionContext, initialContext);
+        } catch (Exception e) {
+            throw new FHIRPathException("An error occurred while evaluating expression: " + expressionContext.getText(), e);
+        }
+    }
+
     private void setDateTimeConstants(EvaluationContext evaluationContext) {
         ZonedDateTime now = ZonedDateTime.now();
         evaluationContext.setExternalConstant("now", singleton(dateTimeValue(now)));
@@ -1353,7 +1384,14 @@ public class FHIRPathEvaluator {
             this(FHIRPathTree.tree(element));
         }
 
-        private EvaluationContext(FHIRPathTree tree) {
+        /**
+         * Create an evaluation context for an existing FHIRPath tree. Evaluation contexts are not thread-safe,
+         * but any number of them can share the same tree.
+         *
+         * @param tree
+         *     the FHIRPath tree
+         */
+        public EvaluationContext(FHIRPathTree tree) {
             this.tree = tree;
         }
 
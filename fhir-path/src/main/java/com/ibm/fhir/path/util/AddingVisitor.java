@@ -38,7 +38,7 @@ class AddingVisitor<T extends Visitable> extends CopyingVisitor<T> {
 
     @Override
     protected void doVisitListEnd(String elementName, List<? extends Visitable> visitables, Class<?> type) {
-        if (getPath().equals(path) && elementName.equals(this.elementNameToAdd)) {
+        if (isAtPath(path) && elementName.equals(this.elementNameToAdd)) {
             if (!type.isAssignableFrom(value.getClass())) {
                 throw new IllegalStateException("target " + type + " is not assignable from " + value.getClass());
             }
@@ -52,17 +52,18 @@ class AddingVisitor<T extends Visitable> extends CopyingVisitor<T> {
         if (!isRepeatingElement) {
             if (this.value == value) {
                 markDirty();
-            } else if (getPath().equals(path + "." + elementNameToAdd)) {
+            } else if (isAtPath(path + "." + elementNameToAdd)) {
                 throw new IllegalStateException("Add cannot replace an existing value at " + getPath());
             }
         }
-        return true;
+        // only the parent and its ancestors are modified
+        return isOnPathTo(path);
     }
 
     @Override
     protected void doVisitEnd(String elementName, int elementIndex, Resource resource) {
         if (!isRepeatingElement) {
-            if (getPath().equals(path)) {
+            if (isAtPath(path)) {
                 value.accept(this.elementNameToAdd, this);
             }
         }
@@ -71,7 +72,7 @@ class AddingVisitor<T extends Visitable> extends CopyingVisitor<T> {
     @Override
     protected void doVisitEnd(String elementName, int elementIndex, Element element) {
         if (!isRepeatingElement) {
-            if (getPath().equals(path)) {
+            if (isAtPath(path)) {
                 value.accept(this.elementNameToAdd, this);
             }
         }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -19,11 +19,11 @@ class DeletingVisitor<T extends Visitable> extends CopyingVisitor<T> {
 
     @Override
     public boolean visit(String elementName, int index, Visitable value) {
-        if (pathToDelete.equals(getPath())) {
+        if (isAtPath(pathToDelete)) {
             delete();
             markDirty();
             return false;
         }
-        return true;
+        return isOnPathTo(pathToDelete);
     }
 }
\ No newline at end of file
@@ -33,9 +33,14 @@ class InsertingVisitor<T extends Visitable> extends CopyingVisitor<T> {
                 convertToCodeSubtype(parent, elementName, (Code)value) : value;
     }
 
+    @Override
+    public boolean visit(String elementName, int index, Visitable value) {
+        return isOnPathTo(parentPath);
+    }
+
     @Override
     protected void doVisitListEnd(String elementName, List<? extends Visitable> visitables, Class<?> type) {
-        if (getPath().equals(parentPath) && elementName.equals(this.elementNameToInsert)) {
+        if (isAtPath(parentPath) && elementName.equals(this.elementNameToInsert)) {
             if (!type.isInstance(value)) {
                 throw new IllegalStateException("target " + type + " is not assignable from " + value.getClass());
             }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -30,9 +30,14 @@ class MovingVisitor<T extends Visitable> extends CopyingVisitor<T> {
         this.targetIndex = targetIndex;
     }
 
+    @Override
+    public boolean visit(String elementName, int index, Visitable value) {
+        return isOnPathTo(parentPath);
+    }
+
     @Override
     protected void doVisitListEnd(String elementName, List<? extends Visitable> visitables, Class<?> type) {
-        if (getPath().equals(parentPath) && elementName.equals(this.elementName)) {
+        if (isAtPath(parentPath) && elementName.equals(this.elementName)) {
             Visitable visitable = getList().remove(sourceIndex);
             getList().add(targetIndex, visitable);
             markListDirty();
@@ -32,7 +32,7 @@ class ReplacingVisitor<T extends Visitable> extends CopyingVisitor<T> {
 
     @Override
     public boolean visit(String elementName, int index, Visitable value) {
-        if (pathToReplace.equals(getPath())) {
+        if (isAtPath(pathToReplace)) {
             if (newValue instanceof Element) {
                 replace(((Element) newValue).toBuilder());
             } else if (newValue instanceof Resource) {
@@ -40,6 +40,6 @@ class ReplacingVisitor<T extends Visitable> extends CopyingVisitor<T> {
             }
             return false;
         }
-        return true;
+        return isOnPathTo(pathToReplace);
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathQuantityNode;
+import com.ibm.fhir.path.FHIRPathTree;
+
+/**
+ * Tests for navigating a lazily materialized {@link FHIRPathTree}
+ */
+public class LazyFHIRPathTreeTest {
+    @Test
+    public void testGetNodeAndParent() throws Exception {
+        Patient patient;
+        try (Reader reader = ExamplesUtil.resourceReader("json/spec/patient-example.json")) {
+            patient = FHIRParser.parser(Format.JSON).parse(reader);
+        }
+
+        FHIRPathTree tree = FHIRPathTree.tree(patient);
+        List<FHIRPathNode> nodes = tree.getRoot().stream()
+                .filter(node -> node.path() != null)
+                .collect(Collectors.toList());
+        assertTrue(nodes.size() > 1);
+
+        for (FHIRPathNode node : nodes) {
+            assertSame(tree.getNode(node.path()), node, node.path());
+            FHIRPathNode parent = tree.getParent(node);
+            if (node == tree.getRoot()) {
+                assertNull(parent);
+            } else {
+                assertTrue(parent.children().contains(node), node.path());
+                assertTrue(node.path().startsWith(parent.path() + "."), node.path());
+            }
+        }
+
+        assertNull(tree.getNode("Patient.name[99]"));
+        assertNull(tree.getNode("Observation.name[0]"));
+    }
+
+    @Test
+    public void testNavigateWithoutFullTraversal() throws Exception {
+        Patient patient;
+        try (Reader reader = ExamplesUtil.resourceReader("json/spec/patient-example.json")) {
+            patient = FHIRParser.parser(Format.JSON).parse(reader);
+        }
+
+        FHIRPathTree tree = FHIRPathTree.tree(patient);
+        FHIRPathNode given = tree.getNode("Patient.name[0].given[1]");
+        assertEquals(given.path(), "Patient.name[0].given[1]");
+        assertEquals(given.getValue().asStringValue().string(), patient.getName().get(0).getGiven().get(1).getValue());
+        assertEquals(tree.getParent(given).path(), "Patient.name[0]");
+    }
+
+    @Test
+    public void testQuantityValue() throws Exception {
+        Observation observation;
+        try (Reader reader = ExamplesUtil.resourceReader("json/spec/observation-example.json")) {
+            observation = FHIRParser.parser(Format.JSON).parse(reader);
+        }
+
+        FHIRPathTree tree = FHIRPathTree.tree(observation);
+        FHIRPathNode node = tree.getNode("Observation.value");
+        assertTrue(node.is(FHIRPathQuantityNode.class));
+        assertTrue(node.hasValue());
+        assertEquals(node.getValue().asQuantityValue().value(), observation.getValue().as(com.ibm.fhir.model.type.Quantity.class).getValue().getValue());
+    }
+}
@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.jdbc;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IIdNameCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
 
 /**
  * Manages caches separated by tenant
@@ -47,6 +48,12 @@ public interface FHIRPersistenceJDBCCache {
      */
     INameIdCache<Integer> getParameterNameCache();
 
+    /**
+     * Getter for the cache of resources used by read and vread
+     * @return the resource cache, or null if resource caching is not enabled
+     */
+    IResourceCache getResourceCache();
+
     /**
      * Tell any caches that the transaction on the current thread has just committed
      */
@@ -33,14 +33,15 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
     // thread-local cache of canonicals
     private final ThreadLocal<LinkedHashMap<String, Integer>> canonicalValues = new ThreadLocal<>();
 
-    // The lru code systems cache shared at the server level
-    private final LRUCache<String, Integer> codeSystemsCache;
+    // The lru code systems cache shared at the server level. The shared caches are striped
+    // so that concurrent ingestion threads don't serialize on a single lock
+    private final StripedLRUCache<String, Integer> codeSystemsCache;
 
     // The lru token values cache shared at the server level
-    private final LRUCache<CommonTokenValue, Long> tokenValuesCache;
+    private final StripedLRUCache<CommonTokenValue, Long> tokenValuesCache;
 
     // The lru canonical values cache shared at the server level
-    private final LRUCache<String, Integer> canonicalValuesCache;
+    private final StripedLRUCache<String, Integer> canonicalValuesCache;
 
     /**
      * Public constructor
@@ -51,9 +52,9 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
     public CommonTokenValuesCacheImpl(int codeSystemCacheSize, int tokenValueCacheSize, int canonicalCacheSize) {
 
         // LRU cache for quick lookup of code-systems and token-values
-        codeSystemsCache = new LRUCache<>(codeSystemCacheSize);
-        tokenValuesCache = new LRUCache<>(tokenValueCacheSize);
-        canonicalValuesCache = new LRUCache<>(canonicalCacheSize);
+        codeSystemsCache = new StripedLRUCache<>(codeSystemCacheSize);
+        tokenValuesCache = new StripedLRUCache<>(tokenValueCacheSize);
+        canonicalValuesCache = new StripedLRUCache<>(canonicalCacheSize);
     }
 
     /**
@@ -64,9 +65,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
 
         LinkedHashMap<String,Integer> sysMap = codeSystems.get();
         if (sysMap != null) {
-            synchronized(this.codeSystemsCache) {
-                codeSystemsCache.update(sysMap);
-            }
+            codeSystemsCache.update(sysMap);
 
             // clear the thread-local cache
             sysMap.clear();
@@ -74,9 +73,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
 
         LinkedHashMap<CommonTokenValue,Long> valMap = commonTokenValues.get();
         if (valMap != null) {
-            synchronized(this.tokenValuesCache) {
-                tokenValuesCache.update(valMap);
-            }
+            tokenValuesCache.update(valMap);
 
             // clear the thread-local cache
             valMap.clear();
@@ -84,9 +81,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
 
         LinkedHashMap<String,Integer> canMap = canonicalValues.get();
         if (canMap != null) {
-            synchronized(this.canonicalValuesCache) {
-                canonicalValuesCache.update(canMap);
-            }
+            canonicalValuesCache.update(canMap);
 
             // clear the thread-local cache
             canMap.clear();
@@ -108,9 +103,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
         }
 
         // See if it's in the shared cache
-        synchronized (this.codeSystemsCache) {
-            result = codeSystemsCache.get(codeSystem);
-        }
+        result = codeSystemsCache.get(codeSystem);
 
         if (result != null) {
             // We found it in the shared cache, so update our thread-local
@@ -149,20 +142,18 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             }
         }
 
-        // If we still have keys to find, look them up in the shared cache (which we need to lock first)
+        // If we still have keys to find, look them up in the shared cache (which locks each stripe as needed)
         if (needToFindSystems.size() > 0) {
-            synchronized (this.codeSystemsCache) {
-                for (ResourceTokenValueRec xr: needToFindSystems) {
-                    Integer id = codeSystemsCache.get(xr.getCodeSystemValue());
-                    if (id != null) {
-                        xr.setCodeSystemValueId(id);
-
-                        // Update the local cache with this value
-                        addCodeSystem(xr.getCodeSystemValue(), id);
-                    } else {
-                        // cache miss so add this record to the miss list for further processing
-                        misses.add(xr);
-                    }
+            for (ResourceTokenValueRec xr: needToFindSystems) {
+                Integer id = codeSystemsCache.get(xr.getCodeSystemValue());
+                if (id != null) {
+                    xr.setCodeSystemValueId(id);
+
+                    // Update the local cache with this value
+                    addCodeSystem(xr.getCodeSystemValue(), id);
+                } else {
+                    // cache miss so add this record to the miss list for further processing
+                    misses.add(xr);
                 }
             }
         }
@@ -197,21 +188,19 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             }
         }
 
-        // If we still have keys to find, look them up in the shared cache (which we need to lock first)
+        // If we still have keys to find, look them up in the shared cache (which locks each stripe as needed)
         if (needToFindValues.size() > 0) {
-            synchronized (this.tokenValuesCache) {
-                for (ResourceTokenValueRec tv: needToFindValues) {
-                    CommonTokenValue key = new CommonTokenValue(tv.getCodeSystemValueId(), tv.getTokenValue());
-                    Long id = tokenValuesCache.get(key);
-                    if (id != null) {
-                        tv.setCommonTokenValueId(id);
-
-                        // Update the local cache with this value
-                        addTokenValue(key, id);
-                    } else {
-                        // cache miss so add this record to the miss list for further processing
-                        misses.add(tv);
-                    }
+            for (ResourceTokenValueRec tv: needToFindValues) {
+                CommonTokenValue key = new CommonTokenValue(tv.getCodeSystemValueId(), tv.getTokenValue());
+                Long id = tokenValuesCache.get(key);
+                if (id != null) {
+                    tv.setCommonTokenValueId(id);
+
+                    // Update the local cache with this value
+                    addTokenValue(key, id);
+                } else {
+                    // cache miss so add this record to the miss list for further processing
+                    misses.add(tv);
                 }
             }
         }
@@ -245,20 +234,18 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             }
         }
 
-        // If we still have keys to find, look them up in the shared cache (which we need to lock first)
+        // If we still have keys to find, look them up in the shared cache (which locks each stripe as needed)
         if (needToFind.size() > 0) {
-            synchronized (this.canonicalValuesCache) {
-                for (ResourceProfileRec xr: needToFind) {
-                    Integer id = canonicalValuesCache.get(xr.getCanonicalValue());
-                    if (id != null) {
-                        xr.setCanonicalValueId(id);
-
-                        // Update the local cache with this value
-                        addCanonicalValue(xr.getCanonicalValue(), id);
-                    } else {
-                        // cache miss so add this record to the miss list for further processing
-                        misses.add(xr);
-                    }
+            for (ResourceProfileRec xr: needToFind) {
+                Integer id = canonicalValuesCache.get(xr.getCanonicalValue());
+                if (id != null) {
+                    xr.setCanonicalValueId(id);
+
+                    // Update the local cache with this value
+                    addCanonicalValue(xr.getCanonicalValue(), id);
+                } else {
+                    // cache miss so add this record to the miss list for further processing
+                    misses.add(xr);
                 }
             }
         }
@@ -314,17 +301,11 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
         canonicalValues.remove();
 
         // clear the shared caches too
-        synchronized (this.codeSystemsCache) {
-            this.codeSystemsCache.clear();
-        }
+        this.codeSystemsCache.clear();
 
-        synchronized (this.tokenValuesCache) {
-            this.tokenValuesCache.clear();
-        }
+        this.tokenValuesCache.clear();
 
-        synchronized (this.canonicalValuesCache) {
-            this.canonicalValuesCache.clear();
-        }
+        this.canonicalValuesCache.clear();
     }
 
     @Override
@@ -352,9 +333,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
 
     @Override
     public void prefillCodeSystems(Map<String, Integer> codeSystems) {
-        synchronized(codeSystemsCache) {
-            codeSystemsCache.putAll(codeSystems);
-        }
+        codeSystemsCache.putAll(codeSystems);
     }
 
     @Override
@@ -370,9 +349,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             result = valMap != null ? valMap.get(key) : null;
             if (result == null) {
                 // not found in the local cache, try the shared cache
-                synchronized (tokenValuesCache) {
-                    result = tokenValuesCache.get(key);
-                }
+                result = tokenValuesCache.get(key);
 
                 if (result != null) {
                     // add to the local cache so we can find it again without locking
@@ -399,9 +376,7 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
         result = valMap != null ? valMap.get(canonicalValue) : null;
         if (result == null) {
             // not found in the local cache, try the shared cache
-            synchronized (canonicalValuesCache) {
-                result = canonicalValuesCache.get(canonicalValue);
-            }
+            result = canonicalValuesCache.get(canonicalValue);
 
             if (result != null) {
                 // add to the local cache so we can find it again without locking
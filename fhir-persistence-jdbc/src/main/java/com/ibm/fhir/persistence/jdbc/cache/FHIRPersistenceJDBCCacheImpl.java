@@ -13,6 +13,7 @@ import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IIdNameCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
 
 /**
  * Aggregates and manages the individual caches used for a tenant
@@ -28,6 +29,9 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
 
     private final ICommonTokenValuesCache resourceReferenceCache;
 
+    // null if resource caching is not enabled
+    private final IResourceCache resourceCache;
+
     // flag to allow one lucky caller to get the opportunity to prefill
     private final AtomicBoolean needToPrefillFlag = new AtomicBoolean(true);
 
@@ -40,10 +44,24 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
      */
     public FHIRPersistenceJDBCCacheImpl(INameIdCache<Integer> resourceTypeCache, IIdNameCache<Integer> resourceTypeNameCache,
             INameIdCache<Integer> parameterNameCache, ICommonTokenValuesCache resourceReferenceCache) {
+        this(resourceTypeCache, resourceTypeNameCache, parameterNameCache, resourceReferenceCache, null);
+    }
+
+    /**
+     * Public constructor
+     * @param resourceTypeCache
+     * @param resourceTypeNameCache
+     * @param parameterNameCache
+     * @param resourceReferenceCache
+     * @param resourceCache the cache of resources, or null if resource caching is not enabled
+     */
+    public FHIRPersistenceJDBCCacheImpl(INameIdCache<Integer> resourceTypeCache, IIdNameCache<Integer> resourceTypeNameCache,
+            INameIdCache<Integer> parameterNameCache, ICommonTokenValuesCache resourceReferenceCache, IResourceCache resourceCache) {
         this.resourceTypeCache = resourceTypeCache;
         this.resourceTypeNameCache = resourceTypeNameCache;
         this.parameterNameCache = parameterNameCache;
         this.resourceReferenceCache = resourceReferenceCache;
+        this.resourceCache = resourceCache;
     }
 
     /**
@@ -76,6 +94,11 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         return parameterNameCache;
     }
 
+    @Override
+    public IResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
     @Override
     public void transactionCommitted() {
         logger.fine("Transaction committed - updating cache shared maps");
@@ -83,6 +106,9 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         resourceTypeNameCache.updateSharedMaps();
         parameterNameCache.updateSharedMaps();
         resourceReferenceCache.updateSharedMaps();
+        if (resourceCache != null) {
+            resourceCache.updateSharedMaps();
+        }
     }
 
     @Override
@@ -92,6 +118,9 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         resourceTypeNameCache.clearLocalMaps();
         parameterNameCache.clearLocalMaps();
         resourceReferenceCache.clearLocalMaps();
+        if (resourceCache != null) {
+            resourceCache.clearLocalMaps();
+        }
     }
 
     @Override
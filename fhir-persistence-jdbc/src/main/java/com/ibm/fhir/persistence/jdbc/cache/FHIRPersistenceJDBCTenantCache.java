@@ -15,6 +15,7 @@ import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
 
 /**
  * Manages separate caches for each tenant.
@@ -22,6 +23,9 @@ import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
 public class FHIRPersistenceJDBCTenantCache {
     private static final Logger logger = Logger.getLogger(FHIRPersistenceJDBCTenantCache.class.getName());
 
+    // The default maximum number of resources in the resource cache of each tenant/datasource
+    private static final int DEFAULT_RESOURCE_CACHE_MAX_SIZE = 10000;
+
     // Each tenant/datasource gets its own cache instance so we avoid mixing ids
     private final ConcurrentHashMap<String, FHIRPersistenceJDBCCache> cacheMap = new ConcurrentHashMap<>();
 
@@ -74,7 +78,14 @@ public class FHIRPersistenceJDBCTenantCache {
                 int externalSystemCacheSize = pg.getIntProperty("externalSystemCacheSize", 1000);
                 int externalValueCacheSize = pg.getIntProperty("externalValueCacheSize", 100000);
                 int canonicalCacheSize = pg.getIntProperty("canonicalCacheSize", 1000);
-                return FHIRPersistenceJDBCCacheUtil.create(externalSystemCacheSize, externalValueCacheSize, canonicalCacheSize);
+                IResourceCache resourceCache = null;
+                if (FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_ENABLED, Boolean.FALSE)) {
+                    int resourceCacheSize = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_MAX_SIZE,
+                        DEFAULT_RESOURCE_CACHE_MAX_SIZE);
+                    resourceCache = new ResourceCacheImpl(FHIRRequestContext.get().getTenantId(), datastoreId, resourceCacheSize,
+                        ResourceCacheInvalidationChannel.channel());
+                }
+                return FHIRPersistenceJDBCCacheUtil.create(externalSystemCacheSize, externalValueCacheSize, canonicalCacheSize, resourceCache);
             }
         } catch (IllegalStateException ise) {
             throw ise;
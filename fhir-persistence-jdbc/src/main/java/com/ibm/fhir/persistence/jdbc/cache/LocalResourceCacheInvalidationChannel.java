@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link ResourceCacheInvalidationChannel} which delivers invalidations synchronously
+ * to the listeners in the current JVM. This is sufficient for a single node, and stands
+ * in for a cross-node channel in tests.
+ */
+public class LocalResourceCacheInvalidationChannel implements ResourceCacheInvalidationChannel {
+    private static final Logger logger = Logger.getLogger(LocalResourceCacheInvalidationChannel.class.getName());
+
+    private static final LocalResourceCacheInvalidationChannel INSTANCE = new LocalResourceCacheInvalidationChannel();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Public constructor; use {@link #getInstance()} for the channel shared by the caches in this JVM
+     */
+    public LocalResourceCacheInvalidationChannel() {
+    }
+
+    /**
+     * @return the channel shared by the caches in this JVM
+     */
+    public static LocalResourceCacheInvalidationChannel getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void publish(String tenantId, String datastoreId, String resourceType, String logicalId, boolean erased) {
+        for (Listener listener : listeners) {
+            try {
+                listener.invalidate(tenantId, datastoreId, resourceType, logicalId, erased);
+            } catch (RuntimeException x) {
+                logger.log(Level.WARNING, "Resource cache invalidation failed for " + resourceType + "/" + logicalId, x);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.ibm.fhir.cache.CacheKey;
+import com.ibm.fhir.cache.CacheManager;
+import com.ibm.fhir.cache.CacheManager.Configuration;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
+
+/**
+ * A size-bounded cache of parsed resources for one tenant/datastore, held in two caches
+ * managed by the {@link CacheManager}:
+ * <ul>
+ * <li>the resources, keyed by (resourceType, logicalId, version). A version never changes once
+ * it is committed, so these entries only need to be removed when the resource is erased</li>
+ * <li>the current version of each resource, keyed by (resourceType, logicalId). These entries
+ * are invalidated whenever the resource is changed</li>
+ * </ul>
+ * Resources written by the current transaction are recorded in thread-local and bypass the
+ * cache until the transaction completes. The current version entries are then invalidated
+ * and the invalidation published on the {@link ResourceCacheInvalidationChannel} if the
+ * transaction committed, or simply forgotten if it rolled back.
+ */
+public class ResourceCacheImpl implements IResourceCache, ResourceCacheInvalidationChannel.Listener {
+    private static final Logger logger = Logger.getLogger(ResourceCacheImpl.class.getName());
+
+    // The prefix of the names of the caches registered with the CacheManager
+    public static final String CACHE_NAME_PREFIX = "com.ibm.fhir.persistence.jdbc.resourceCache.";
+
+    private final String tenantId;
+    private final String datastoreId;
+    private final String cacheName;
+    private final ResourceCacheInvalidationChannel channel;
+
+    // (resourceType, logicalId, version) -> resource
+    private final Cache<CacheKey, Resource> versions;
+
+    // (resourceType, logicalId) -> current version
+    private final Cache<CacheKey, Integer> currentVersions;
+
+    // incremented by every invalidation to detect an invalidation which races with a read
+    private final AtomicLong invalidationStamp = new AtomicLong();
+
+    // (resourceType, logicalId) -> invalidation for the resources written by the current transaction
+    private final ThreadLocal<Map<CacheKey, PendingInvalidation>> pending = new ThreadLocal<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Public constructor. The caches are registered with the {@link CacheManager} for the tenant
+     * of the current request, so this must be called in the context of the given tenant.
+     * @param tenantId
+     * @param datastoreId
+     * @param maxSize the maximum number of resources held in the cache
+     * @param channel the channel used to exchange invalidations with other nodes
+     */
+    public ResourceCacheImpl(String tenantId, String datastoreId, int maxSize, ResourceCacheInvalidationChannel channel) {
+        this.tenantId = tenantId;
+        this.datastoreId = datastoreId;
+        this.cacheName = CACHE_NAME_PREFIX + datastoreId;
+        this.channel = channel;
+        this.versions = CacheManager.getCache(cacheName, Configuration.of(maxSize));
+        this.currentVersions = CacheManager.getCache(cacheName + ".current", Configuration.of(maxSize));
+        channel.subscribe(this);
+    }
+
+    /**
+     * @return the name of the cache of resources registered with the {@link CacheManager}
+     */
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * Stop receiving invalidations. Used when the cache is discarded.
+     */
+    public void close() {
+        channel.unsubscribe(this);
+    }
+
+    @Override
+    public Resource getCurrentVersion(String resourceType, String logicalId) {
+        CacheKey key = CacheKey.key(resourceType, logicalId);
+        Resource result = null;
+        if (!isPending(key)) {
+            Integer version = currentVersions.getIfPresent(key);
+            if (version != null) {
+                result = versions.getIfPresent(CacheKey.key(resourceType, logicalId, version));
+            }
+        }
+        count(result);
+        return result;
+    }
+
+    @Override
+    public Resource getVersion(String resourceType, String logicalId, int version) {
+        Resource result = null;
+        if (!isPending(CacheKey.key(resourceType, logicalId))) {
+            result = versions.getIfPresent(CacheKey.key(resourceType, logicalId, version));
+        }
+        count(result);
+        return result;
+    }
+
+    @Override
+    public long getInvalidationStamp() {
+        return invalidationStamp.get();
+    }
+
+    @Override
+    public void putCurrentVersion(String resourceType, String logicalId, int version, Resource resource, long stamp) {
+        CacheKey key = CacheKey.key(resourceType, logicalId);
+        if (isPending(key)) {
+            // not committed yet, so not visible to other transactions
+            return;
+        }
+        versions.put(CacheKey.key(resourceType, logicalId, version), resource);
+
+        // Readers racing with each other must not move the current version backwards
+        currentVersions.asMap().merge(key, version, Math::max);
+
+        if (invalidationStamp.get() != stamp) {
+            // The resource may have been changed after it was read, in which case the
+            // invalidation could have been processed before we added the entry
+            currentVersions.asMap().remove(key, version);
+        }
+    }
+
+    @Override
+    public void putVersion(String resourceType, String logicalId, int version, Resource resource) {
+        if (!isPending(CacheKey.key(resourceType, logicalId))) {
+            versions.put(CacheKey.key(resourceType, logicalId, version), resource);
+        }
+    }
+
+    @Override
+    public void addPendingInvalidation(String resourceType, String logicalId, boolean erased) {
+        Map<CacheKey, PendingInvalidation> map = pending.get();
+        if (map == null) {
+            map = new HashMap<>();
+            pending.set(map);
+        }
+        PendingInvalidation pi = map.computeIfAbsent(CacheKey.key(resourceType, logicalId), k -> new PendingInvalidation(resourceType, logicalId));
+        pi.erased |= erased;
+    }
+
+    @Override
+    public void updateSharedMaps() {
+        Map<CacheKey, PendingInvalidation> map = pending.get();
+        if (map != null) {
+            pending.remove();
+            for (PendingInvalidation pi : map.values()) {
+                invalidate(pi.resourceType, pi.logicalId, pi.erased);
+                try {
+                    channel.publish(tenantId, datastoreId, pi.resourceType, pi.logicalId, pi.erased);
+                } catch (RuntimeException x) {
+                    // the change is committed, so all we can do is report it
+                    logger.log(Level.WARNING, "Failed to publish resource cache invalidation for " + pi.resourceType + "/" + pi.logicalId, x);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clearLocalMaps() {
+        pending.remove();
+    }
+
+    @Override
+    public void invalidate(String tenantId, String datastoreId, String resourceType, String logicalId, boolean erased) {
+        if (this.tenantId.equals(tenantId) && this.datastoreId.equals(datastoreId)) {
+            invalidate(resourceType, logicalId, erased);
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return a snapshot of the statistics of the underlying cache of resources
+     */
+    public CacheStats getCacheStats() {
+        return versions.stats();
+    }
+
+    /**
+     * Invalidate the current version of the given resource in this cache
+     * @param resourceType
+     * @param logicalId
+     * @param erased if true, also remove all cached versions of the resource
+     */
+    private void invalidate(String resourceType, String logicalId, boolean erased) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Invalidating cached resource " + resourceType + "/" + logicalId + (erased ? " (erased)" : ""));
+        }
+        invalidationStamp.incrementAndGet();
+        currentVersions.invalidate(CacheKey.key(resourceType, logicalId));
+        if (erased) {
+            // rare, so a scan is acceptable
+            versions.asMap().values().removeIf(r -> resourceType.equals(r.getClass().getSimpleName()) && logicalId.equals(r.getId()));
+        }
+    }
+
+    private boolean isPending(CacheKey key) {
+        Map<CacheKey, PendingInvalidation> map = pending.get();
+        return map != null && map.containsKey(key);
+    }
+
+    private void count(Resource result) {
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+    }
+
+    /**
+     * A resource written by the current transaction
+     */
+    private static class PendingInvalidation {
+        private final String resourceType;
+        private final String logicalId;
+        private boolean erased;
+
+        private PendingInvalidation(String resourceType, String logicalId) {
+            this.resourceType = resourceType;
+            this.logicalId = logicalId;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.ServiceLoader;
+
+/**
+ * Carries resource cache invalidations between the nodes of a cluster, so that a node
+ * does not keep serving the previous version of a resource which has been updated
+ * through another node. Implementations are discovered with the {@link ServiceLoader};
+ * without one, the {@link LocalResourceCacheInvalidationChannel} is used, which only
+ * reaches the caches in the current JVM.
+ */
+public interface ResourceCacheInvalidationChannel {
+
+    /**
+     * Receives the invalidations published to a channel
+     */
+    interface Listener {
+        /**
+         * Invalidate the given resource
+         * @param tenantId
+         * @param datastoreId
+         * @param resourceType
+         * @param logicalId
+         * @param erased true if all cached versions of the resource must be invalidated
+         */
+        void invalidate(String tenantId, String datastoreId, String resourceType, String logicalId, boolean erased);
+    }
+
+    /**
+     * Publish an invalidation to all the listeners of this channel, on this node and others.
+     * Called after the transaction which changed the resource has committed.
+     * @param tenantId
+     * @param datastoreId
+     * @param resourceType
+     * @param logicalId
+     * @param erased
+     */
+    void publish(String tenantId, String datastoreId, String resourceType, String logicalId, boolean erased);
+
+    /**
+     * Add a listener to this channel
+     * @param listener
+     */
+    void subscribe(Listener listener);
+
+    /**
+     * Remove a listener from this channel
+     * @param listener
+     */
+    void unsubscribe(Listener listener);
+
+    /**
+     * A factory method for getting the channel from the service loader, or the
+     * local channel if there is none
+     *
+     * @return
+     */
+    static ResourceCacheInvalidationChannel channel() {
+        for (ResourceCacheInvalidationChannel channel : ServiceLoader.load(ResourceCacheInvalidationChannel.class)) {
+            return channel;
+        }
+        return LocalResourceCacheInvalidationChannel.getInstance();
+    }
+}
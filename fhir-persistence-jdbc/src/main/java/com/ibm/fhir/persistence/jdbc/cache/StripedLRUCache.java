@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache shared between threads, split into a number of independently
+ * locked stripes. Each key belongs to exactly one stripe (by hash), and each stripe
+ * is an {@link LRUCache} holding its share of the maximum size, so threads only
+ * contend when they touch keys in the same stripe. Eviction is LRU within each
+ * stripe, which approximates LRU across the whole cache when the keys are well
+ * distributed. Null values are not permitted in this implementation.
+ */
+public class StripedLRUCache<K,V> {
+
+    // The default number of stripes, enough to keep contention low with many concurrent writers
+    public static final int DEFAULT_STRIPE_COUNT = 64;
+
+    private final LRUCache<K,V>[] stripes;
+
+    // stripes.length - 1; the stripe count is always a power of two
+    private final int mask;
+
+    /**
+     * Public constructor using {@link #DEFAULT_STRIPE_COUNT} stripes
+     * @param maxSize
+     */
+    public StripedLRUCache(int maxSize) {
+        this(maxSize, DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * Public constructor
+     * @param maxSize the maximum number of entries held by the cache
+     * @param stripeCount the requested number of stripes. This is rounded up to a power of two
+     *        and reduced if necessary so that each stripe can hold at least one entry
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLRUCache(int maxSize, int stripeCount) {
+        int count = 1;
+        while (count < stripeCount && count * 2 <= maxSize) {
+            count *= 2;
+        }
+        this.stripes = new LRUCache[count];
+        this.mask = count - 1;
+
+        // spread the remainder over the first stripes so that the total is exactly maxSize
+        int stripeSize = maxSize / count;
+        int remainder = maxSize % count;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new LRUCache<>(i < remainder ? stripeSize + 1 : stripeSize);
+        }
+    }
+
+    /**
+     * Get the value for the given key
+     * @param key
+     * @return the cached value, or null if the key is not in the cache
+     */
+    public V get(K key) {
+        LRUCache<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    /**
+     * Add the given entry to the cache, evicting the eldest entry of its stripe if necessary
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        LRUCache<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+    /**
+     * Add all the entries in the given map to the cache
+     * @param entries
+     */
+    public void putAll(Map<K,V> entries) {
+        for (Map.Entry<K,V> entry: entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Update this cache with the updates in the given LinkedHashMap, applied in the
+     * order of its entrySet so that the most recent updates are the last to be evicted.
+     * Only one stripe is locked at a time.
+     * @param updates
+     */
+    public void update(LinkedHashMap<K,V> updates) {
+        for (Map.Entry<K,V> entry: updates.entrySet()) {
+            LRUCache<K,V> stripe = stripeFor(entry.getKey());
+            synchronized (stripe) {
+                stripe.remove(entry.getKey());
+                stripe.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Remove all entries from the cache
+     */
+    public void clear() {
+        for (LRUCache<K,V> stripe: stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries currently held by the cache
+     */
+    public int size() {
+        int result = 0;
+        for (LRUCache<K,V> stripe: stripes) {
+            synchronized (stripe) {
+                result += stripe.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private LRUCache<K,V> stripeFor(K key) {
+        // spread the high bits of the hash, the same way as HashMap, because
+        // only the low bits are used to select the stripe
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & mask];
+    }
+}
@@ -12,9 +12,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,7 +37,9 @@ import com.ibm.fhir.persistence.jdbc.dao.impl.JDBCIdentityCacheImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterVisitorBatchDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceDAOImpl;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.impl.ParameterTransactionDataImpl;
+import com.ibm.fhir.persistence.jdbc.util.ExtractedSearchParameters;
 import com.ibm.fhir.persistence.jdbc.util.ParameterTableSupport;
 
 /**
@@ -82,6 +89,33 @@ public class ReindexResourceDAO extends ResourceDAOImpl {
             + "OFFSET ? ROWS FETCH FIRST 1 ROWS ONLY "
             ;
 
+    // the row limit is appended by getNextResources
+    private static final String PICK_RESOURCES_TYPE = ""
+            + "  SELECT lr.logical_resource_id, lr.resource_type_id, lr.logical_id, lr.reindex_txid, lr.parameter_hash "
+            + "    FROM logical_resources lr "
+            + "   WHERE lr.resource_type_id = ? "
+            + "     AND lr.is_deleted = 'N' "
+            + "     AND lr.reindex_tstamp < ? "
+            + "OFFSET ? ROWS FETCH FIRST "
+            ;
+
+    // the row limit is appended by getNextResources
+    private static final String PICK_ANY_RESOURCES = ""
+            + "  SELECT lr.logical_resource_id, lr.resource_type_id, lr.logical_id, lr.reindex_txid, lr.parameter_hash "
+            + "    FROM logical_resources lr "
+            + "   WHERE lr.is_deleted = 'N' "
+            + "     AND lr.reindex_tstamp < ? "
+            + "OFFSET ? ROWS FETCH FIRST "
+            ;
+
+    // Read the current version of each of a list of resources. The IN list markers are appended by readResources
+    private static final String READ_RESOURCES = ""
+            + "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID "
+            + "  FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR "
+            + " WHERE R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID "
+            + "   AND LR.LOGICAL_RESOURCE_ID IN ("
+            ;
+
     /**
      * Public constructor
      * @param connection
@@ -263,6 +297,140 @@ public class ReindexResourceDAO extends ResourceDAOImpl {
         return result;
     }
 
+    /**
+     * Pick up to maxCount resources to process, then also lock them. Specializations for different databases
+     * may use different techniques to optimize locking/concurrency control.
+     * @param random used to generate a random number
+     * @param reindexTstamp only get resources with a reindex_tstamp less than this
+     * @param resourceTypeId the resource type ID of a specific resource type, or null
+     * @param maxCount the maximum number of resources to pick
+     * @return the resource records, which is empty when there is nothing left to do
+     * @throws Exception
+     */
+    protected List<ResourceIndexRecord> getNextResources(SecureRandom random, Instant reindexTstamp, Integer resourceTypeId, int maxCount) throws Exception {
+        List<ResourceIndexRecord> result = new ArrayList<>();
+
+        // no need to close
+        Connection connection = getConnection();
+        IDatabaseTranslator translator = getTranslator();
+
+        // The same optimistic locking pattern as getNextResource, but applied to a batch of rows. The
+        // row limit is a literal because not every database supports a parameter marker here
+        final String select = (resourceTypeId != null ? PICK_RESOURCES_TYPE : PICK_ANY_RESOURCES) + maxCount + " ROWS ONLY";
+
+        // Randomly pick an offset, but if we get no rows, reduce the range
+        // until we hit 0, the same as getNextResource
+        int offsetRange = 1024;
+        do {
+            List<ResourceIndexRecord> candidates = new ArrayList<>();
+            int offset = random.nextInt(offsetRange);
+            try (PreparedStatement stmt = connection.prepareStatement(select)) {
+                if (resourceTypeId != null) {
+                    stmt.setInt(1, resourceTypeId);
+                    stmt.setTimestamp(2, Timestamp.from(reindexTstamp));
+                    stmt.setInt(3, offset);
+                } else {
+                    stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+                    stmt.setInt(2, offset);
+                }
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    candidates.add(new ResourceIndexRecord(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getString(5)));
+                }
+            } catch (SQLException x) {
+                logger.log(Level.SEVERE, select, x);
+                throw translator.translate(x);
+            }
+
+            if (!candidates.isEmpty()) {
+                // Try and lock all the candidates in one batch. Any which were claimed by another
+                // thread since we selected them are skipped, and if we lost them all we try again
+                final String UPDATE = ""
+                        + " UPDATE logical_resources  "
+                        + "    SET reindex_tstamp = ?, "
+                        + "        reindex_txid = ? "
+                        + "  WHERE logical_resource_id = ? "
+                        + "    AND reindex_txid = ? "; // make sure we have the txid we selected above
+
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    for (ResourceIndexRecord rir: candidates) {
+                        stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+                        stmt.setLong(2, rir.getTransactionId() + 1L);
+                        stmt.setLong(3, rir.getLogicalResourceId());
+                        stmt.setLong(4, rir.getTransactionId());
+                        stmt.addBatch();
+                    }
+                    int[] rowsAffected = stmt.executeBatch();
+                    for (int i = 0; i < rowsAffected.length; i++) {
+                        // some drivers don't report the count for each statement in the batch
+                        if (rowsAffected[i] > 0 || rowsAffected[i] == Statement.SUCCESS_NO_INFO) {
+                            result.add(candidates.get(i));
+                        }
+                    }
+                } catch (SQLException x) {
+                    logger.log(Level.SEVERE, UPDATE, x);
+                    throw translator.translate(x);
+                }
+            } else {
+                // Offset beyond that last available row, so we need to shrink the range
+                offsetRange /= 2;
+            }
+        } while (offsetRange > 0 && result.isEmpty());
+
+        return result;
+    }
+
+    /**
+     * Get a batch of resource records we want to reindex, each of which is locked for the
+     * current transaction. The resource type name of each record is filled in.
+     * @param reindexTstamp only get resources with a reindex_tstamp less than this
+     * @param resourceTypeId the resource type ID of a specific resource type, or null
+     * @param maxCount the maximum number of resources to get
+     * @return the resource records, which is empty when there is nothing left to do
+     * @throws Exception
+     */
+    public List<ResourceIndexRecord> getResourcesToReindex(Instant reindexTstamp, Integer resourceTypeId, int maxCount) throws Exception {
+        List<ResourceIndexRecord> result = getNextResources(RANDOM, reindexTstamp, resourceTypeId, maxCount);
+
+        // The resource type names are normally all in the cache, so there's no need for
+        // a join which would complicate the select for update
+        Map<Integer, String> resourceTypeNames = null;
+        for (ResourceIndexRecord rir: result) {
+            String resourceType = getCache().getResourceTypeNameCache().getName(rir.getResourceTypeId());
+            if (resourceType == null) {
+                if (resourceTypeNames == null) {
+                    resourceTypeNames = new HashMap<>();
+                    for (Map.Entry<String, Integer> entry: readAllResourceTypeNames().entrySet()) {
+                        resourceTypeNames.put(entry.getValue(), entry.getKey());
+                    }
+                }
+                resourceType = resourceTypeNames.get(rir.getResourceTypeId());
+            }
+            rir.setResourceType(resourceType);
+        }
+
+        return result;
+    }
+
+    /**
+     * Read the current version of each of the given resources of the same type in a single query
+     * @param resourceType the resource type of all the resources
+     * @param logicalResourceIds the logical resource IDs of the resources to read
+     * @return the resource DTOs, in no particular order. Resources which no longer exist are omitted
+     * @throws Exception
+     */
+    public List<Resource> readResources(String resourceType, List<Long> logicalResourceIds) throws Exception {
+        if (logicalResourceIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        StringBuilder sql = new StringBuilder(String.format(READ_RESOURCES, resourceType, resourceType));
+        for (int i = 0; i < logicalResourceIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(")");
+        return runQuery(sql.toString(), logicalResourceIds.toArray());
+    }
+
     /**
      * Get the resource record we want to reindex. This might take a few attempts, because
      * there could be hundreds of threads all trying to do the same thing, and we may see
@@ -363,6 +531,71 @@ public class ReindexResourceDAO extends ResourceDAOImpl {
         logger.exiting(CLASSNAME, METHODNAME);
     }
 
+    /**
+     * Reindex a batch of resources of the same type by deleting their existing parameters and replacing them
+     * with those passed in. The parameters of all the resources are written using the same statement batches.
+     * @param tablePrefix the table prefix
+     * @param parameters the extracted search parameters and their hash, keyed by logical resource id
+     * @throws Exception
+     */
+    public void updateParameters(String tablePrefix, Map<Long, ExtractedSearchParameters> parameters) throws Exception {
+
+        final String METHODNAME = "updateParameters() for " + parameters.size() + " " + tablePrefix + " resources";
+        logger.entering(CLASSNAME, METHODNAME);
+
+        // no need to close
+        Connection connection = getConnection();
+        ParameterTableSupport.deleteFromParameterTables(connection, tablePrefix, parameters.keySet());
+
+        JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(getCache(), this, parameterDao, getResourceReferenceDAO());
+        // Check if this is multitenant
+        boolean isMultitenant = this.getFlavor().isMultitenant();
+        try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(connection, "FHIR_ADMIN", tablePrefix, isMultitenant, 0L, 100,
+            identityCache, getResourceReferenceDAO(), getTransactionData())) {
+            for (Map.Entry<Long, ExtractedSearchParameters> entry: parameters.entrySet()) {
+                pvd.setLogicalResourceId(entry.getKey());
+                for (ExtractedParameterValue p: entry.getValue().getParameters()) {
+                    p.accept(pvd);
+                }
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "inserting parameters", x);
+            throw translator.translate(x);
+        }
+
+        // Update the parameter hashes in the LOGICAL_RESOURCES table
+        updateParameterHashes(connection, parameters);
+
+        logger.exiting(CLASSNAME, METHODNAME);
+    }
+
+    /**
+     * Updates the parameter hashes of a batch of resources in the LOGICAL_RESOURCES table.
+     * @param conn the connection
+     * @param parameters the extracted search parameters and their hash, keyed by logical resource id
+     * @throws SQLException
+     */
+    protected void updateParameterHashes(Connection conn, Map<Long, ExtractedSearchParameters> parameters) throws SQLException {
+        final String SQL = "UPDATE logical_resources SET parameter_hash = ? WHERE logical_resource_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            for (Map.Entry<Long, ExtractedSearchParameters> entry: parameters.entrySet()) {
+                // bind parameters
+                stmt.setString(1, entry.getValue().getParameterHashB64());
+                stmt.setLong(2, entry.getKey());
+                stmt.addBatch();
+            }
+            long dbCallStartTime = System.nanoTime();
+            stmt.executeBatch();
+            double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+            if (logger.isLoggable(Level.FINEST)) {
+                logger.finest("Update parameter_hash for " + parameters.size() + " logical resources [took " + dbCallDuration + " ms]");
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, SQL, x);
+            throw translator.translate(x);
+        }
+    }
+
     /**
      * Updates the parameter hash in the LOGICAL_RESOURCES table.
      * @param conn the connection
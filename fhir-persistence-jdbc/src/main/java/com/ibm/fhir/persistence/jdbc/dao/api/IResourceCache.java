@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Interface to a cache of parsed resources, keyed by resource type, logical id and version,
+ * along with the current version of each resource. Resources written by the current
+ * transaction are staged (thread-local) and only invalidated in the shared cache - here
+ * and on other nodes - after the transaction commits, so a rolled-back transaction never
+ * changes what other threads see.
+ */
+public interface IResourceCache {
+
+    /**
+     * Get the current version of the given resource
+     * @param resourceType
+     * @param logicalId
+     * @return the cached resource, or null if the current version is not known or not cached
+     */
+    Resource getCurrentVersion(String resourceType, String logicalId);
+
+    /**
+     * Get the given version of the given resource
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @return the cached resource, or null if not cached
+     */
+    Resource getVersion(String resourceType, String logicalId, int version);
+
+    /**
+     * Get a stamp which must be obtained before reading the current version of a resource
+     * from the database and passed to {@link #putCurrentVersion(String, String, int, Resource, long)}
+     * so that a concurrent invalidation is not lost
+     * @return
+     */
+    long getInvalidationStamp();
+
+    /**
+     * Add the current version of the given resource, read from the database, to the cache
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @param resource
+     * @param stamp the value returned by {@link #getInvalidationStamp()} before the resource was read
+     */
+    void putCurrentVersion(String resourceType, String logicalId, int version, Resource resource, long stamp);
+
+    /**
+     * Add the given version of the given resource, read from the database, to the cache
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @param resource
+     */
+    void putVersion(String resourceType, String logicalId, int version, Resource resource);
+
+    /**
+     * Record that the given resource has been written by the current transaction
+     * @param resourceType
+     * @param logicalId
+     * @param erased true if versions of the resource have been erased, in which case all its
+     *        cached versions are invalidated, not just its current version
+     */
+    void addPendingInvalidation(String resourceType, String logicalId, boolean erased);
+
+    /**
+     * Called after a transaction commit() to invalidate the resources written by the transaction
+     * in the shared cache and to publish the invalidations to other nodes
+     */
+    void updateSharedMaps();
+
+    /**
+     * Clear anything staged in thread-local (after transaction rollback, for example)
+     */
+    void clearLocalMaps();
+
+    /**
+     * @return the number of reads served from the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of reads which were not served from the cache
+     */
+    long getMissCount();
+}
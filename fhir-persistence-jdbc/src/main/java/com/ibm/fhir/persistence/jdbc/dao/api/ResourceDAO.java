@@ -7,8 +7,10 @@
 package com.ibm.fhir.persistence.jdbc.dao.api;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import com.ibm.fhir.database.utils.query.Select;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -18,6 +20,7 @@ import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.util.ExtractedSearchParameters;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 
 /**
@@ -37,6 +40,19 @@ public interface ResourceDAO extends FHIRDbDAO {
     Resource read(String logicalId, String resourceType)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads the metadata of the latest version of the Resource with the passed logical id and resource type,
+     * without reading its payload. The returned Resource DTO has no data stream.
+     * If no matching resource is found, null is returned.
+     * @param logicalId
+     * @param resourceType
+     * @return Resource - The metadata of the most recent version of the Resource, or null if not found.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Resource readMetadata(String logicalId, String resourceType)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Reads and returns the version of the Resource with the passed logical id, resource type, and version id.
      * If no matching resource is found, null is returned.
@@ -64,6 +80,24 @@ public interface ResourceDAO extends FHIRDbDAO {
     List<Resource> history(String resourceType, String logicalId, Timestamp fromDateTime, int offset, int maxResults)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads and returns the versions of the Resource with the passed logicalId which are older than the passed
+     * beforeVersionId, ordered by descending version id. This allows history pages to be read with a range
+     * predicate on the version id instead of skipping over the versions on all of the preceding pages.
+     * If non-null, the passed fromDateTime is used to limit the returned Resource
+     * versions to those that were updated after the fromDateTime.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param logicalId - The logical id of a FHIR Resource
+     * @param fromDateTime - The starting date/time of the version history.
+     * @param beforeVersionId - The version id of the last version returned on the previous page
+     * @param maxResults - The maximum number of versions to return
+     * @return List<Resource> - An ordered list of Resource versions.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> historyBeforeVersion(String resourceType, String logicalId, Timestamp fromDateTime, int beforeVersionId, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Reads and returns the COUNT of all versions of the Resource with the passed logicalId.
      * If non-null, the passed fromDateTime is used to limit the count of Resource versions to those that were updated after the fromDateTime.
@@ -96,6 +130,18 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<Resource> search(Select select) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Executes the search contained in the passed {@link Select} and hands the DTO built from each row to the
+     * process function as soon as the row is read, rather than collecting the rows into a list first.
+     * Result processing will be stopped if the process function returns Boolean FALSE.
+     * @param select - Contains a search query and (optionally) bind variables.
+     * @param process - The function which consumes each Resource DTO before the next row is read.
+     * @return int - The number of rows processed.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    int search(Select select, Function<Resource, Boolean> process) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Executes the search contained in the passed SqlQueryData, using it's encapsulated search string and bind variables.
      * @param queryData - Contains a search string and (optionally) bind variables.
@@ -240,4 +286,34 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     Resource insert(Resource resource, List<ExtractedParameterValue> parameters, String parameterHashB64, ParameterDAO parameterDao)
             throws FHIRPersistenceException;
+
+    /**
+     * Inserts a batch of Resource DTOs and their associated search parameters to the appropriate FHIR resource tables.
+     * After insert, the generated primary key is acquired and set in each Resource object. Implementations which
+     * insert the resources one at a time report the failure of a resource without failing the rest of the batch;
+     * implementations which write the whole batch using set-based statements succeed or fail as a whole.
+     * @param resources the Resource Data Transfer Objects
+     * @param parameters the extracted search parameters of each resource, in the same order as the resources
+     * @param parameterDao The Parameter DAO
+     * @return the exception of each resource which could not be inserted, by its position in the batch; empty if
+     *         every resource was inserted
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @throws FHIRPersistenceVersionIdMismatchException
+     * @throws FHIRPersistenceException
+     */
+    Map<Integer, FHIRPersistenceException> insertBatch(List<Resource> resources, List<ExtractedSearchParameters> parameters,
+            ParameterDAO parameterDao) throws FHIRPersistenceException;
+
+    /**
+     * Reads the version id of the current version of each of the given logical resources of the passed resource type,
+     * including those which have been deleted.
+     * @param resourceType
+     * @param logicalIds
+     * @return a map of logical id to version id; logical ids which don't exist are not included
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Map<String, Integer> readCurrentVersionIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 }
\ No newline at end of file
@@ -19,10 +19,10 @@ import java.util.List;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 import com.ibm.fhir.persistence.ResourcePayload;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.util.PayloadCompression;
 
 /**
  * DAO to fetch the payload objects for a list of resource ids
@@ -109,7 +109,7 @@ public class FetchPayloadsForIdsDAO {
                 String logicalId = rs.getString(1);
                 Instant lastUpdated = Instant.ofEpochMilli(rs.getTimestamp(2).getTime());
                 long resourceId = rs.getLong(3);
-                InputStream is = new GZIPInputStream(rs.getBinaryStream(4));
+                InputStream is = PayloadCompression.decompress(rs.getBinaryStream(4));
                 ResourcePayload rp =  new ResourcePayload(logicalId, lastUpdated, resourceId, is);
                 consumer.accept(rp);
             }
@@ -63,7 +63,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     private final boolean storeWholeSystemParams = true;
 
     // FK to the logical resource for the parameters being added
-    private final long logicalResourceId;
+    private long logicalResourceId;
 
     // Maintainers: remember to close all statements in AutoCloseable#close()
     private final String insertString;
@@ -193,6 +193,18 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         }
     }
 
+    /**
+     * Switch to adding the parameters of another resource of the same type. This allows the parameters
+     * of many resources to be added using the same statement batches, saving database round-trips.
+     * @param logicalResourceId
+     */
+    public void setLogicalResourceId(long logicalResourceId) {
+        this.logicalResourceId = logicalResourceId;
+
+        // composite ids are only unique within a resource
+        this.compositeIdCounter = 0;
+    }
+
     /**
      * Look up the normalized id for the parameter, adding it to the parameter_names table if it doesn't yet exist
      * @param parameterName
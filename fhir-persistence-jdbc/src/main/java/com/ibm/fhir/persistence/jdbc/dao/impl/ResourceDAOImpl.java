@@ -21,10 +21,12 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +50,7 @@ import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
 import com.ibm.fhir.persistence.jdbc.impl.ParameterTransactionDataImpl;
+import com.ibm.fhir.persistence.jdbc.util.ExtractedSearchParameters;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCacheUpdater;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
@@ -83,6 +86,20 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
             "LR.LOGICAL_ID = ? AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID";
 
+    // Read the metadata of the current version of the resource (even if the resource has been deleted), without the payload
+    private static final String SQL_READ_METADATA = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, LR.RESOURCE_FINGERPRINT " +
+            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+            "LR.LOGICAL_ID = ? AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID";
+
+    // Read the version id of the current version of a set of logical resources (even if they have been deleted)
+    private static final String SQL_READ_VERSION_IDS = "SELECT LR.LOGICAL_ID, LR.VERSION_ID FROM %s_LOGICAL_RESOURCES LR WHERE LR.LOGICAL_ID IN ";
+
+    // the maximum number of logical ids read by each SQL_READ_VERSION_IDS statement
+    private static final int READ_VERSION_IDS_BATCH_SIZE = 500;
+
+    // column index of the fingerprint in the SQL_READ_METADATA query, which has no DATA column
+    private static final int IDX_METADATA_RESOURCE_FINGERPRINT = 6;
+
     // Read a specific version of the resource
     private static final String SQL_VERSION_READ =
             "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
@@ -94,7 +111,7 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
     //                                                                                 1 2 3 4 5 6 7 8 9 0
     // @formatter:on
     // Don't forget that we must account for IN and OUT parameters.
-    private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?,?,?)";
+    private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?,?,?,?)";
 
     // Read version history of the resource identified by its logical-id
     private static final String SQL_HISTORY =
@@ -113,6 +130,18 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
                     "LR.LOGICAL_ID = ? AND R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
                     "ORDER BY R.VERSION_ID DESC ";
 
+    private static final String SQL_HISTORY_BEFORE_VERSION =
+            "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                    "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                    "LR.LOGICAL_ID = ? AND R.VERSION_ID < ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
+                    "ORDER BY R.VERSION_ID DESC ";
+
+    private static final String SQL_HISTORY_FROM_DATETIME_BEFORE_VERSION =
+            "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                    "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                    "LR.LOGICAL_ID = ? AND R.LAST_UPDATED >= ? AND R.VERSION_ID < ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
+                    "ORDER BY R.VERSION_ID DESC ";
+
     private static final String SQL_HISTORY_FROM_DATETIME_COUNT =
             "SELECT COUNT(R.VERSION_ID) FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE LR.LOGICAL_ID = ? AND " +
                     "R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID";
@@ -218,6 +247,36 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resource;
     }
 
+    @Override
+    public Resource readMetadata(String logicalId, String resourceType) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readMetadata";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Resource resource = null;
+        String stmtString = String.format(SQL_READ_METADATA, resourceType, resourceType);
+        try (PreparedStatement stmt = this.getConnection().prepareStatement(stmtString)) {
+            stmt.setString(1, logicalId);
+            ResultSet resultSet = stmt.executeQuery();
+            if (resultSet.next()) {
+                resource = new Resource();
+                resource.setId(resultSet.getLong(IDX_RESOURCE_ID));
+                resource.setLogicalResourceId(resultSet.getLong(IDX_LOGICAL_RESOURCE_ID));
+                resource.setVersionId(resultSet.getInt(IDX_VERSION_ID));
+                resource.setLastUpdated(resultSet.getTimestamp(IDX_LAST_UPDATED, UTC));
+                resource.setDeleted("Y".equals(resultSet.getString(IDX_IS_DELETED)));
+                resource.setResourceFingerprint(resultSet.getString(IDX_METADATA_RESOURCE_FINGERPRINT));
+                resource.setLogicalId(logicalId);
+                resource.setResourceType(resourceType);
+            }
+        } catch (Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading resource metadata.");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return resource;
+    }
+
     @Override
     public Resource versionRead(String logicalId, String resourceType, int versionId) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "versionRead";
@@ -333,6 +392,41 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return count;
     }
 
+    @Override
+    public List<Resource> historyBeforeVersion(String resourceType, String logicalId, Timestamp fromDateTime, int beforeVersionId, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "historyBeforeVersion";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> resources = null;
+        String stmtString = null;
+
+        try {
+            if (fromDateTime != null) {
+                stmtString = String.format(SQL_HISTORY_FROM_DATETIME_BEFORE_VERSION, resourceType, resourceType);
+                if (isDb2Database()) {
+                    stmtString = stmtString + DB2_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, fromDateTime, beforeVersionId, maxResults, 0);
+                } else {
+                    stmtString = stmtString + DERBY_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, fromDateTime, beforeVersionId, 0, maxResults);
+                }
+            } else {
+                stmtString = String.format(SQL_HISTORY_BEFORE_VERSION, resourceType, resourceType);
+                if (isDb2Database()) {
+                    stmtString = stmtString + DB2_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, beforeVersionId, maxResults, 0);
+                } else {
+                    stmtString = stmtString + DERBY_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, beforeVersionId, 0, maxResults);
+                }
+            }
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME, Arrays.toString(new Object[] { resources }));
+        }
+        return resources;
+    }
+
     @Override
     public List<Resource> search(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "search(SqlQueryData)";
@@ -586,17 +680,18 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             stmt.setString(5, resource.isDeleted() ? "Y": "N");
             stmt.setInt(6, resource.getVersionId());
             stmt.setString(7, parameterHashB64);
-            stmt.registerOutParameter(8, Types.BIGINT);  // logical_resource_id
-            stmt.registerOutParameter(9, Types.BIGINT);  // resource_id
-            stmt.registerOutParameter(10, Types.VARCHAR); // current_hash
+            stmt.setString(8, resource.getResourceFingerprint());
+            stmt.registerOutParameter(9, Types.BIGINT);  // logical_resource_id
+            stmt.registerOutParameter(10, Types.BIGINT);  // resource_id
+            stmt.registerOutParameter(11, Types.VARCHAR); // current_hash
 
             stmt.execute();
             long latestTime = System.nanoTime();
             double dbCallDuration = (latestTime-dbCallStartTime)/1e6;
 
-            resource.setId(stmt.getLong(8));
-            long versionedResourceRowId = stmt.getLong(9);
-            String currentHash = stmt.getString(10);
+            resource.setId(stmt.getLong(9));
+            long versionedResourceRowId = stmt.getLong(10);
+            String currentHash = stmt.getString(11);
             if (large) {
                 String largeStmtString = String.format(LARGE_BLOB, resource.getResourceType());
                 try (PreparedStatement ps = connection.prepareStatement(largeStmtString)) {
@@ -661,6 +756,66 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resource;
     }
 
+    @Override
+    public Map<Integer, FHIRPersistenceException> insertBatch(List<Resource> resources, List<ExtractedSearchParameters> parameters,
+            ParameterDAO parameterDao) throws FHIRPersistenceException {
+        // The stored procedure handles one resource per call, so there's nothing to gain from doing
+        // anything other than inserting the resources one at a time. A resource which can't be inserted
+        // doesn't stop the others, unless we've lost the connection
+        Map<Integer, FHIRPersistenceException> failures = new HashMap<>();
+        for (int i = 0; i < resources.size(); i++) {
+            ExtractedSearchParameters searchParameters = parameters.get(i);
+            try {
+                insert(resources.get(i), searchParameters.getParameters(), searchParameters.getParameterHashB64(), parameterDao);
+            } catch (FHIRPersistenceDBConnectException e) {
+                throw e;
+            } catch (FHIRPersistenceException e) {
+                log.warning("Failed to insert '" + resources.get(i).getResourceType() + "/" + resources.get(i).getLogicalId()
+                        + "' of a batch: " + e.getMessage());
+                failures.put(i, e);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public Map<String, Integer> readCurrentVersionIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readCurrentVersionIds";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Map<String, Integer> result = new HashMap<>();
+        List<String> remaining = new ArrayList<>(logicalIds);
+        try {
+            // Keep the number of bind markers in each statement reasonable
+            for (int start = 0; start < remaining.size(); start += READ_VERSION_IDS_BATCH_SIZE) {
+                List<String> batch = remaining.subList(start, Math.min(start + READ_VERSION_IDS_BATCH_SIZE, remaining.size()));
+                StringBuilder stmtString = new StringBuilder();
+                stmtString.append(String.format(SQL_READ_VERSION_IDS, resourceType));
+                stmtString.append("(");
+                for (int i = 0; i < batch.size(); i++) {
+                    stmtString.append(i == 0 ? "?" : ",?");
+                }
+                stmtString.append(")");
+                try (PreparedStatement stmt = this.getConnection().prepareStatement(stmtString.toString())) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 1, batch.get(i));
+                    }
+                    ResultSet resultSet = stmt.executeQuery();
+                    while (resultSet.next()) {
+                        result.put(resultSet.getString(1), resultSet.getInt(2));
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading resource version ids.");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
     @Override
     public List<Resource> search(String sqlSelect) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "search";
@@ -788,6 +943,45 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return runQuery(select);
     }
 
+    @Override
+    public int search(Select select, Function<Resource, Boolean> process) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "search";
+        log.entering(CLASSNAME, METHODNAME);
+
+        int rowCount = 0;
+        Connection connection = getConnection(); // do not close
+        ResultSet resultSet = null;
+        long dbCallStartTime;
+        double dbCallDuration;
+
+        try (PreparedStatement stmt = QueryUtil.prepareSelect(connection, select, getTranslator())) {
+            dbCallStartTime = System.nanoTime();
+            resultSet = stmt.executeQuery();
+            dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("DB search complete. executionTime=" + dbCallDuration + "ms");
+            }
+
+            boolean proceed = true;
+            while (proceed && resultSet.next()) {
+                Resource dto = this.createDTO(resultSet);
+                rowCount++;
+                proceed = !Boolean.FALSE.equals(process.apply(dto));
+            }
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            // avoid leaking SQL because the exception message might be returned to a client
+            FHIRPersistenceDataAccessException fx =
+                    new FHIRPersistenceDataAccessException("Failure retrieving FHIR objects");
+            throw severe(log, fx, select.toDebugString(), e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return rowCount;
+    }
+
     @Override
     public List<Long> searchForIds(Select dataQuery) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "searchForIds";
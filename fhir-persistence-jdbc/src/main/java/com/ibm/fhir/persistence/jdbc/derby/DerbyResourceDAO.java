@@ -132,6 +132,7 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                 sourceKey,
                 resource.getVersionId(),
                 parameterHashB64,
+                resource.getResourceFingerprint(),
                 connection,
                 parameterDao
                 );
@@ -201,11 +202,12 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
      * @param conn
      * @param parameterDao
      * @param p_parameterHashB64 Base64 encoded parameter hash value
+     * @param p_resourceFingerprint salt:hash fingerprint of the resource content, or null
      * @return the resource_id for the entry we created
      * @throws Exception
      */
     public long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, InputStream p_payload, Timestamp p_last_updated, boolean p_is_deleted,
-        String p_source_key, Integer p_version, String p_parameterHashB64, Connection conn, ParameterDAO parameterDao) throws Exception {
+        String p_source_key, Integer p_version, String p_parameterHashB64, String p_resourceFingerprint, Connection conn, ParameterDAO parameterDao) throws Exception {
 
         final String METHODNAME = "storeResource() for " + tablePrefix + " resource";
         logger.entering(CLASSNAME, METHODNAME);
@@ -361,7 +363,7 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                 if (logger.isLoggable(Level.FINEST)) {
                     logger.finest("Creating " + tablePrefix + "_logical_resources row: " + v_resource_type + "/" + p_logical_id);
                 }
-                final String sql5 = "INSERT INTO " + tablePrefix + "_logical_resources (logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id) VALUES (?, ?, ?, ?, ?, ?)";
+                final String sql5 = "INSERT INTO " + tablePrefix + "_logical_resources (logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id, resource_fingerprint) VALUES (?, ?, ?, ?, ?, ?, ?)";
                 try (PreparedStatement stmt = conn.prepareStatement(sql5)) {
                     // bind parameters
                     stmt.setLong(1, v_logical_resource_id);
@@ -370,6 +372,7 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                     stmt.setTimestamp(4, p_last_updated, UTC);
                     stmt.setInt(5, p_version); // initial version
                     stmt.setLong(6, v_resource_id);
+                    stmt.setString(7, p_resourceFingerprint); // from V0017
                     stmt.executeUpdate();
                     if (logger.isLoggable(Level.FINEST)) {
                         logger.finest("Created " + tablePrefix + "_logical_resources row: " + v_resource_type + "/" + p_logical_id);
@@ -445,14 +448,15 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
             if (logger.isLoggable(Level.FINEST)) {
                 logger.finest("Updating " + tablePrefix + "_logical_resources: " + v_resource_type + "/" + p_logical_id);
             }
-            final String sql4 = "UPDATE " + tablePrefix + "_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ? WHERE logical_resource_id = ?";
+            final String sql4 = "UPDATE " + tablePrefix + "_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ?, resource_fingerprint = ? WHERE logical_resource_id = ?";
             try (PreparedStatement stmt = conn.prepareStatement(sql4)) {
                 // bind parameters
                 stmt.setLong(1, v_resource_id);
                 stmt.setString(2, p_is_deleted ? "Y" : "N");
                 stmt.setTimestamp(3, p_last_updated, UTC);
                 stmt.setInt(4, p_version);
-                stmt.setLong(5, v_logical_resource_id);
+                stmt.setString(5, p_resourceFingerprint); // from V0017
+                stmt.setLong(6, v_logical_resource_id);
                 stmt.executeUpdate();
                 if (logger.isLoggable(Level.FINEST)) {
                     logger.finest("Updated " + tablePrefix + "_logical_resources: " + v_resource_type + "/" + p_logical_id);
@@ -873,6 +873,16 @@ public class SearchQueryRenderer implements SearchQueryVisitor<QueryData> {
         return queryData;
     }
 
+    @Override
+    public QueryData addSeekFilter(QueryData queryData, long lastLogicalResourceId) {
+        // Applied to the core LR0 query so the database can start its index range scan
+        // after the last row of the previous page instead of reading and discarding
+        // every row on the preceding pages
+        final String lrAlias = queryData.getLRAlias();
+        queryData.getQuery().from().where().and(lrAlias, "LOGICAL_RESOURCE_ID").gt().bind(lastLogicalResourceId);
+        return queryData;
+    }
+
     /**
      * Get the parameter values table name (e.g. Patient_STR_VALUES) for the
      * given resource and parameter type. Note that this is now different from
@@ -258,6 +258,15 @@ public interface SearchQueryVisitor<T> {
      */
     T addPagination(T query);
 
+    /**
+     * Add a range filter on the logical resource id so that the query starts
+     * immediately after the last row of the previous page (keyset pagination)
+     * @param query
+     * @param lastLogicalResourceId
+     * @return
+     */
+    T addSeekFilter(T query, long lastLogicalResourceId);
+
     /**
      * Add a chain subquery element as part of a chained parameter search
      * @param currentSubQuery
@@ -57,6 +57,12 @@ public class Resource {
      */
     private boolean deleted;
 
+    /**
+     *  This is the <resourceType>_LOGICAL_RESOURCES.RESOURCE_FINGERPRINT column, the
+     *  salt:hash fingerprint of the resource content (null if not known)
+     */
+    private String resourceFingerprint;
+
 
     public Resource() {
         super();
@@ -118,6 +124,14 @@ public class Resource {
         this.deleted = deleted;
     }
 
+    public String getResourceFingerprint() {
+        return resourceFingerprint;
+    }
+
+    public void setResourceFingerprint(String resourceFingerprint) {
+        this.resourceFingerprint = resourceFingerprint;
+    }
+
     @Override
     public String toString() {
         return "Resource [id=" + id + ", logicalResourceId=" + logicalResourceId + ", logicalId=" + logicalId +
@@ -9,6 +9,9 @@ package com.ibm.fhir.persistence.jdbc.impl;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_INCLUDE_PARALLELISM;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_PAYLOAD_COMPRESSION;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_REINDEX_PARALLELISM;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_SEARCH_ENABLE_OPT_QUERY_BUILDER;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_UPDATE_CREATE_ENABLED;
 import static com.ibm.fhir.model.type.String.string;
@@ -16,6 +19,8 @@ import static com.ibm.fhir.model.util.ModelSupport.getResourceType;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -27,17 +32,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.naming.InitialContext;
 import javax.transaction.TransactionSynchronizationRegistry;
@@ -80,6 +85,8 @@ import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.model.util.JsonSupport;
+import com.ibm.fhir.model.util.SaltHash;
+import com.ibm.fhir.model.visitor.ResourceFingerprintVisitor;
 import com.ibm.fhir.model.visitor.Visitable;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.FHIRPathSystemValue;
@@ -91,6 +98,7 @@ import com.ibm.fhir.persistence.MultiResourceResult;
 import com.ibm.fhir.persistence.ResourceChangeLogRecord;
 import com.ibm.fhir.persistence.ResourceEraseRecord;
 import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.ResourceVersionMetadata;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -116,6 +124,7 @@ import com.ibm.fhir.persistence.jdbc.connection.SchemaNameSupplier;
 import com.ibm.fhir.persistence.jdbc.connection.SetTenantAction;
 import com.ibm.fhir.persistence.jdbc.dao.EraseResourceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.ReindexResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IResourceReferenceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
@@ -146,11 +155,14 @@ import com.ibm.fhir.persistence.jdbc.util.ExtractedSearchParameters;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
 import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
 import com.ibm.fhir.persistence.jdbc.util.NewQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.PageTokenSupport;
 import com.ibm.fhir.persistence.jdbc.util.ParameterHashVisitor;
 import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
+import com.ibm.fhir.persistence.jdbc.util.PayloadCompression;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.jdbc.util.TimestampPrefixedUUID;
+import com.ibm.fhir.persistence.util.ConcurrentTaskRunner;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.persistence.util.InputOutputByteStream;
 import com.ibm.fhir.persistence.util.LogicalIdentityProvider;
@@ -184,12 +196,18 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     protected static final String TXN_JNDI_NAME = "java:comp/UserTransaction";
     public static final String TRX_SYNCH_REG_JNDI_NAME = "java:comp/TransactionSynchronizationRegistry";
     private static final String TXN_DATA_KEY = "transactionDataKey/" + CLASSNAME;
+    private static final String TXN_CHANGED_KEY = "transactionChangedKey/" + CLASSNAME;
+
+    // The default number of threads used to parse and extract the parameters of a reindex batch
+    // and to run the include queries of a search concurrently
+    private static final int DEFAULT_REINDEX_PARALLELISM = 4;
+    private static final int DEFAULT_INCLUDE_PARALLELISM = 4;
 
     // The following are filtered as they are handled specifically by the persistence layer:
     private static final List<String> SPECIAL_HANDLING = Arrays.asList("_id", "_lastUpdated");
 
     private final TransactionSynchronizationRegistry trxSynchRegistry;
-    private List<OperationOutcome.Issue> supplementalIssues = new ArrayList<>();
+    private final List<OperationOutcome.Issue> supplementalIssues = Collections.synchronizedList(new ArrayList<>());
 
     protected UserTransaction userTransaction = null;
     protected Boolean updateCreateEnabled = null;
@@ -376,6 +394,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Create the new Resource DTO instance.
             com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO =
                     createResourceDTO(logicalId, newVersionNumber, lastUpdated, updatedResource);
+            resourceDTO.setResourceFingerprint(computeFingerprint(updatedResource));
 
             // The DAO objects are now created on-the-fly (not expensive to construct) and
             // given the connection to use while processing this request
@@ -385,6 +404,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Persist the Resource DTO.
             resourceDao.setPersistenceContext(context);
             ExtractedSearchParameters searchParameters = this.extractSearchParameters(updatedResource, resourceDTO);
+            addPendingInvalidation(resourceDTO.getResourceType(), resourceDTO.getLogicalId(), false);
             resourceDao.insert(resourceDTO, searchParameters.getParameters(), searchParameters.getParameterHashB64(), parameterDao);
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
@@ -447,16 +467,30 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         // Most resources are well under 10K after being serialized and compressed
         InputOutputByteStream ioStream = new InputOutputByteStream(DATA_BUFFER_INITIAL_SIZE);
 
-        // Serialize and compress the Resource
-        try (GZIPOutputStream zipStream = new GZIPOutputStream(ioStream.outputStream())) {
+        // Serialize and compress the Resource using the codec configured for the current tenant
+        PayloadCompression compression = PayloadCompression.from(
+                FHIRConfigHelper.getStringProperty(PROPERTY_JDBC_PAYLOAD_COMPRESSION, PayloadCompression.GZIP.value()));
+        try (OutputStream zipStream = compression.compress(ioStream.outputStream())) {
             FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
-            resourceDTO.setDataStream(ioStream);
         }
+        resourceDTO.setDataStream(ioStream);
 
         return resourceDTO;
     }
 
+    /**
+     * Compute the fingerprint stored with the current version of a resource so that a later
+     * update with identical content can be detected without reading the previous payload.
+     *
+     * @param resource
+     * @return the fingerprint encoded as salt:hash
+     */
+    private String computeFingerprint(Resource resource) {
+        ResourceFingerprintVisitor fingerprinter = new ResourceFingerprintVisitor();
+        resource.accept(fingerprinter);
+        return fingerprinter.getSaltAndHash().toString();
+    }
+
     /**
      * Creates and returns a copy of the passed resource with the {@code Resource.id}
      * {@code Resource.meta.versionId}, and {@code Resource.meta.lastUpdated} elements replaced.
@@ -482,6 +516,33 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 .build();
     }
 
+    /**
+     * Get the resource cache for the current tenant/datastore
+     * @return the resource cache, or null if resource caching is not enabled
+     */
+    private IResourceCache getResourceCache() {
+        return this.cache != null ? this.cache.getResourceCache() : null;
+    }
+
+    /**
+     * Tell the resource cache (if enabled) that the given resource is being changed by the
+     * current transaction. The cached entries are invalidated only if the transaction commits.
+     * Also records that the transaction has changed data, so that later searches in the same
+     * transaction don't run their include queries on other connections.
+     * @param resourceType
+     * @param logicalId
+     * @param erased true if versions of the resource are being erased
+     */
+    private void addPendingInvalidation(String resourceType, String logicalId, boolean erased) {
+        if (trxSynchRegistry != null) {
+            trxSynchRegistry.putResource(TXN_CHANGED_KEY, Boolean.TRUE);
+        }
+        IResourceCache resourceCache = getResourceCache();
+        if (resourceCache != null) {
+            resourceCache.addPendingInvalidation(resourceType, logicalId, erased);
+        }
+    }
+
     /**
      * Convenience method to construct a new instance of the {@link ResourceDAO}
      * @param connection the connection to the database for the DAO to use
@@ -570,11 +631,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 }
             }
 
-            // Otherwise, go ahead and read the resource from the datastore and get the
-            // existing version # from it.
+            // Otherwise, go ahead and read the metadata of the current version from the
+            // datastore and get the existing version # from it.
             else {
-                log.fine("Fetching 'previous' resource for update.");
-                existingResourceDTO = resourceDao.read(logicalId, resourceType.getSimpleName());
+                log.fine("Fetching 'previous' resource metadata for update.");
+                existingResourceDTO = resourceDao.readMetadata(logicalId, resourceType.getSimpleName());
                 if (existingResourceDTO != null) {
                     existingVersion = existingResourceDTO.getVersionId();
                 }
@@ -605,10 +666,12 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Create the new Resource DTO instance.
             com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO =
                     createResourceDTO(logicalId, newVersionNumber, lastUpdated, updatedResource);
+            resourceDTO.setResourceFingerprint(computeFingerprint(updatedResource));
 
             // Persist the Resource DTO.
             resourceDao.setPersistenceContext(context);
             ExtractedSearchParameters searchParameters = this.extractSearchParameters(updatedResource, resourceDTO);
+            addPendingInvalidation(resourceDTO.getResourceType(), resourceDTO.getLogicalId(), false);
             resourceDao.insert(resourceDTO, searchParameters.getParameters(), searchParameters.getParameterHashB64(), parameterDao);
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
@@ -646,6 +709,267 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public <T extends Resource> List<SingleResourceResult<T>> createBatch(List<FHIRPersistenceContext> contexts, List<T> resources)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "createBatch";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+
+            // As for create(), any ids given with the resources are replaced by system-generated values
+            List<String> logicalIds = new ArrayList<>(resources.size());
+            List<Integer> versions = new ArrayList<>(resources.size());
+            for (int i = 0; i < resources.size(); i++) {
+                logicalIds.add(generateResourceId());
+                versions.add(1);
+            }
+
+            return storeBatch(resourceDao, parameterDao, resources, logicalIds, versions);
+        }
+        catch(FHIRPersistenceFKVException e) {
+            log.log(Level.SEVERE, "FK violation", e);
+            throw e;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a batch create operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    @Override
+    public <T extends Resource> List<SingleResourceResult<T>> updateBatch(List<FHIRPersistenceContext> contexts, List<T> resources)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "updateBatch";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<SingleResourceResult<T>> results = new ArrayList<>(Collections.nCopies(resources.size(), null));
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+
+            // Each resource can only be stored once by a set-based insert, so split the batch
+            // wherever a resource appears again
+            int start = 0;
+            while (start < resources.size()) {
+                Set<String> keys = new HashSet<>();
+                int end = start;
+                while (end < resources.size()
+                        && keys.add(resources.get(end).getClass().getSimpleName() + "/" + resources.get(end).getId())) {
+                    end++;
+                }
+                updateBatch(contexts.subList(start, end), resourceDao, parameterDao, resources.subList(start, end), results, start);
+                start = end;
+            }
+            return results;
+        }
+        catch(FHIRPersistenceFKVException e) {
+            log.log(Level.SEVERE, this.performCacheDiagnostics());
+            throw e;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            // don't chain the exception to avoid leaking secrets
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a batch update operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Store a new version of each of the given resources, none of which may appear more than once.
+     * As for update(), the existing version is taken from the "previous resource" of the persistence
+     * event of a resource if it is set; the other current versions are read with one query per resource type.
+     * @param contexts the persistence context of each of the resources
+     * @param resourceDao
+     * @param parameterDao
+     * @param resources
+     * @param results the results list to fill in
+     * @param offset the position in results of the first of the resources
+     * @throws Exception
+     */
+    private <T extends Resource> void updateBatch(List<FHIRPersistenceContext> contexts, ResourceDAO resourceDao, ParameterDAO parameterDao,
+            List<T> resources, List<SingleResourceResult<T>> results, int offset) throws Exception {
+        Map<String, List<String>> logicalIdsByType = new HashMap<>();
+        for (int i = 0; i < resources.size(); i++) {
+            if (!isPrevFhirResourceSet(contexts.get(i))) {
+                T resource = resources.get(i);
+                logicalIdsByType.computeIfAbsent(resource.getClass().getSimpleName(), k -> new ArrayList<>()).add(resource.getId());
+            }
+        }
+        Map<String, Map<String, Integer>> currentVersions = new HashMap<>();
+        for (Entry<String, List<String>> entry : logicalIdsByType.entrySet()) {
+            currentVersions.put(entry.getKey(), resourceDao.readCurrentVersionIds(entry.getKey(), entry.getValue()));
+        }
+
+        List<T> toStore = new ArrayList<>(resources.size());
+        List<String> logicalIds = new ArrayList<>(resources.size());
+        List<Integer> versions = new ArrayList<>(resources.size());
+        List<Integer> positions = new ArrayList<>(resources.size());
+        for (int i = 0; i < resources.size(); i++) {
+            T resource = resources.get(i);
+            String resourceType = resource.getClass().getSimpleName();
+            Integer existingVersion;
+            if (isPrevFhirResourceSet(contexts.get(i))) {
+                Resource existingResource = contexts.get(i).getPersistenceEvent().getPrevFhirResource();
+                existingVersion = existingResource == null ? null : Integer.valueOf(existingResource.getMeta().getVersionId().getValue());
+            } else {
+                existingVersion = currentVersions.get(resourceType).get(resource.getId());
+            }
+
+            // If this logical resource doesn't exist and the "updateCreate" feature is not enabled,
+            // then this entry fails without affecting the others
+            if (existingVersion == null && !updateCreateEnabled) {
+                String msg = "Resource '" + resourceType + "/" + resource.getId() + "' not found.";
+                log.log(Level.SEVERE, msg);
+                results.set(offset + i, new SingleResourceResult.Builder<T>()
+                        .success(false)
+                        .outcome(FHIRUtil.buildOperationOutcome(msg, IssueType.NOT_FOUND, IssueSeverity.ERROR))
+                        .build());
+                continue;
+            }
+
+            toStore.add(resource);
+            logicalIds.add(resource.getId());
+            versions.add(existingVersion == null ? 1 : existingVersion + 1);
+            positions.add(offset + i);
+        }
+
+        List<SingleResourceResult<T>> stored = storeBatch(resourceDao, parameterDao, toStore, logicalIds, versions);
+        for (int i = 0; i < stored.size(); i++) {
+            results.set(positions.get(i), stored.get(i));
+        }
+    }
+
+    /**
+     * Store the given versions of a batch of resources using a single call to the DAO, which
+     * may insert them together using set-based statements. A resource which can't be prepared,
+     * or which the DAO reports as not inserted, gets an unsuccessful result without affecting
+     * the others.
+     * @param resourceDao
+     * @param parameterDao
+     * @param resources the resources to store
+     * @param logicalIds the logical id of each resource
+     * @param versions the new version number of each resource
+     * @return the result for each of the resources, in the same order
+     * @throws Exception if the batch as a whole could not be stored
+     */
+    private <T extends Resource> List<SingleResourceResult<T>> storeBatch(ResourceDAO resourceDao, ParameterDAO parameterDao,
+            List<T> resources, List<String> logicalIds, List<Integer> versions) throws Exception {
+        List<SingleResourceResult<T>> results = new ArrayList<>(Collections.nCopies(resources.size(), null));
+        if (resources.isEmpty()) {
+            return results;
+        }
+
+        Instant lastUpdated = Instant.now(ZoneOffset.UTC);
+        List<T> updatedResources = new ArrayList<>(resources.size());
+        List<Integer> positions = new ArrayList<>(resources.size());
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = new ArrayList<>(resources.size());
+        List<ExtractedSearchParameters> searchParameters = new ArrayList<>(resources.size());
+        for (int i = 0; i < resources.size(); i++) {
+            String logicalId = logicalIds.get(i);
+            int newVersionNumber = versions.get(i);
+            try {
+                T updatedResource = copyAndSetResourceMetaFields(resources.get(i), logicalId, newVersionNumber, lastUpdated);
+
+                com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO =
+                        createResourceDTO(logicalId, newVersionNumber, lastUpdated, updatedResource);
+                resourceDTO.setResourceFingerprint(computeFingerprint(updatedResource));
+                ExtractedSearchParameters extracted = this.extractSearchParameters(updatedResource, resourceDTO);
+
+                updatedResources.add(updatedResource);
+                positions.add(i);
+                resourceDTOs.add(resourceDTO);
+                searchParameters.add(extracted);
+            } catch (FHIRPersistenceException e) {
+                results.set(i, buildBatchFailure(e));
+            } catch (Exception e) {
+                // don't chain the exception to avoid leaking secrets
+                FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while preparing '"
+                        + resources.get(i).getClass().getSimpleName() + "/" + logicalId + "' of a batch.");
+                log.log(Level.SEVERE, fx.getMessage(), e);
+                results.set(i, buildBatchFailure(fx));
+            }
+        }
+        if (resourceDTOs.isEmpty()) {
+            return results;
+        }
+
+        // The resources of a batch each have their own persistence context, so unlike create() and update()
+        // we don't set one on the DAO; the insert doesn't depend on it
+        Map<Integer, FHIRPersistenceException> failures = resourceDao.insertBatch(resourceDTOs, searchParameters, parameterDao);
+        for (int i = 0; i < resourceDTOs.size(); i++) {
+            FHIRPersistenceException failure = failures.get(i);
+            if (failure == null) {
+                addPendingInvalidation(resourceDTOs.get(i).getResourceType(), resourceDTOs.get(i).getLogicalId(), false);
+                results.set(positions.get(i), buildBatchResult(updatedResources.get(i)));
+            } else {
+                if (failure instanceof FHIRPersistenceFKVException) {
+                    log.log(Level.SEVERE, this.performCacheDiagnostics());
+                }
+                results.set(positions.get(i), buildBatchFailure(failure));
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Persisted a batch of " + (resourceDTOs.size() - failures.size()) + " FHIR Resources");
+        }
+        return results;
+    }
+
+    /**
+     * Indicates whether the "previous resource" is set in the persistence event of the given context
+     * @param context
+     * @return
+     */
+    private boolean isPrevFhirResourceSet(FHIRPersistenceContext context) {
+        return context != null && context.getPersistenceEvent() != null && context.getPersistenceEvent().isPrevFhirResourceSet();
+    }
+
+    /**
+     * Build the result for a resource stored as part of a batch
+     * @param resource
+     * @return
+     */
+    private <T extends Resource> SingleResourceResult<T> buildBatchResult(T resource) {
+        SingleResourceResult.Builder<T> resultBuilder = new SingleResourceResult.Builder<T>()
+                .success(true)
+                .resource(resource);
+
+        // Add supplemental issues to an OperationOutcome
+        if (!supplementalIssues.isEmpty()) {
+            resultBuilder.outcome(OperationOutcome.builder()
+                .issue(supplementalIssues)
+                .build());
+        }
+        return resultBuilder.build();
+    }
+
+    /**
+     * Build the result for a resource of a batch which could not be stored
+     * @param e the reason the resource could not be stored
+     * @return
+     */
+    private <T extends Resource> SingleResourceResult<T> buildBatchFailure(FHIRPersistenceException e) {
+        return new SingleResourceResult.Builder<T>()
+                .success(false)
+                .outcome(FHIRUtil.buildOperationOutcome(e, false))
+                .build();
+    }
+
     @Override
     public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
             throws FHIRPersistenceException {
@@ -768,6 +1092,15 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                     resourceDTOList = this.buildSortedResourceDTOList(resourceDao, resourceType, resourceDao.searchForIds(query));
                 } else {
                     resourceDTOList = resourceDao.search(query);
+
+                    // Results are ordered by LOGICAL_RESOURCE_ID, so the last row of a full page
+                    // marks where the next page starts
+                    if (resourceDTOList.size() == searchContext.getPageSize()) {
+                        long lastLogicalResourceId = resourceDTOList.get(resourceDTOList.size() - 1).getLogicalResourceId();
+                        searchContext.setNextPageToken(PageTokenSupport.encode(searchContext.getPageNumber() + 1, searchContext.getPageSize(),
+                            PageTokenSupport.queryKey(resourceType.getSimpleName(), searchContext.getSearchParameters(), searchContext.getSortParameters()),
+                            lastLogicalResourceId));
+                    }
                 }
 
                 resources = this.convertResourceDTOList(resourceDTOList, resourceType, elements);
@@ -799,6 +1132,121 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public MultiResourceResult<Resource> searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            Function<ResourcePayload, Boolean> process) throws FHIRPersistenceException {
+        final String METHODNAME = "searchPayloads";
+        log.entering(CLASSNAME, METHODNAME);
+
+        MultiResourceResult.Builder<Resource> resultBuilder = new MultiResourceResult.Builder<>();
+        FHIRSearchContext searchContext = context.getSearchContext();
+        Integer searchResultCount = null;
+
+        if (!this.optQueryBuilderEnabled || isSystemLevelSearch(resourceType) || searchContext.hasElementsParameters()
+                || (searchContext.hasSummaryParameter() && !SummaryValueSet.FALSE.equals(searchContext.getSummaryParameter()))
+                || searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
+            throw new FHIRPersistenceNotSupportedException("The search result payloads cannot be streamed for this search");
+        }
+
+        try (Connection connection = openConnection()) {
+            // For PostgreSQL search queries we need to set some options to ensure better plans
+            connectionStrategy.applySearchOptimizerOptions(connection, SearchUtil.isCompartmentSearch(searchContext));
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            ResourceReferenceDAO rrd = makeResourceReferenceDAO(connection);
+            JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao, rrd);
+
+            checkModifiers(searchContext, false);
+            NewQueryBuilder queryBuilder = new NewQueryBuilder(connectionStrategy.getQueryHints(), identityCache);
+
+            // Skip count query if _total=none
+            if (!TotalValueSet.NONE.equals(searchContext.getTotalParameter())) {
+                Select countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
+                if (countQuery != null) {
+                    searchResultCount = resourceDao.searchCount(countQuery);
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("searchResultCount = " + searchResultCount);
+                    }
+                    searchContext.setTotalCount(searchResultCount);
+                }
+            }
+
+            List<OperationOutcome.Issue> issues = validatePagingContext(searchContext);
+            if (!issues.isEmpty()) {
+                resultBuilder.outcome(OperationOutcome.builder()
+                    .issue(issues)
+                    .build());
+                if (!searchContext.isLenient()) {
+                    return resultBuilder.success(false).build();
+                }
+            }
+
+            // For _summary=count or pageSize == 0, we return only the count
+            if ((searchResultCount == null || searchResultCount > 0)
+                    && !SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
+                    && searchContext.getPageSize() > 0) {
+                Select query = queryBuilder.buildQuery(resourceType, searchContext);
+
+                // The payload of each row is decompressed and handed over while the ResultSet is open,
+                // so only the current row is held in memory
+                long[] lastLogicalResourceId = new long[1];
+                Function<com.ibm.fhir.persistence.jdbc.dto.Resource, Boolean> rowProcessor = resourceDTO -> {
+                    lastLogicalResourceId[0] = resourceDTO.getLogicalResourceId();
+                    return process.apply(toResourcePayload(resourceDTO));
+                };
+
+                int matchCount = 0;
+                if (searchContext.hasSortParameters()) {
+                    for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO :
+                            this.buildSortedResourceDTOList(resourceDao, resourceType, resourceDao.searchForIds(query))) {
+                        matchCount++;
+                        if (Boolean.FALSE.equals(process.apply(toResourcePayload(resourceDTO)))) {
+                            break;
+                        }
+                    }
+                } else {
+                    matchCount = resourceDao.search(query, rowProcessor);
+
+                    // Results are ordered by LOGICAL_RESOURCE_ID, so the last row of a full page
+                    // marks where the next page starts
+                    if (matchCount == searchContext.getPageSize()) {
+                        searchContext.setNextPageToken(PageTokenSupport.encode(searchContext.getPageNumber() + 1, searchContext.getPageSize(),
+                            PageTokenSupport.queryKey(resourceType.getSimpleName(), searchContext.getSearchParameters(), searchContext.getSortParameters()),
+                            lastLogicalResourceId[0]));
+                    }
+                }
+                searchContext.setMatchCount(matchCount);
+            }
+
+            return resultBuilder
+                    .success(true)
+                    .build();
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Wraps the decompressed payload of the passed Resource Data Transfer Object in a ResourcePayload.
+     * @param resourceDTO
+     * @return
+     * @throws UncheckedIOException if the payload cannot be decompressed
+     */
+    private ResourcePayload toResourcePayload(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) {
+        try {
+            return new ResourcePayload(resourceDTO.getLogicalId(), resourceDTO.getLastUpdated().toInstant(), resourceDTO.getId(),
+                PayloadCompression.decompress(resourceDTO.getDataStream().inputStream()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Search query implementation based on the original string-based query builder.
      * Still used for whole-system search.
@@ -1081,6 +1529,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     /**
      * Process the inclusion parameters. Build and execute a query for each parameter, and
      * collect the resulting 'include' resources to be returned with the 'match' resources.
+     * The queries which don't depend on each other's results (those of the same iteration level)
+     * are run together by {@link #runIncludeQueries(List, ResourceDAO)}, and their results are
+     * merged in parameter order, so the 'include' resources don't depend on which query finishes first.
      *
      * @param searchContext - the current search context
      * @param resourceType - the search resource type
@@ -1110,49 +1561,26 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 .map(r -> Long.toString(r.getLogicalResourceId())).collect(Collectors.toSet());
         queryResultMap.put(0, Collections.singletonMap(resourceTypeString, baseLogicalResourceIds));
 
-        // Process non-iterative _include parameters. These are only run against 'match' search
-        // results.
+        // Process non-iterative _include and _revinclude parameters. These are only run against
+        // 'match' search results.
+        List<IncludeQuery> includeQueries = new ArrayList<>();
         for (InclusionParameter includeParm : searchContext.getIncludeParameters()) {
             if (!includeParm.isIterate()) {
-                // Build and run the query
-                List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeResources =
-                        this.runIncludeQuery(resourceType, searchContext, queryBuilder, includeParm, SearchConstants.INCLUDE,
-                            baseLogicalResourceIds, queryResultMap, resourceDao, 1, allResourceIds);
-
-                // Add new ids to de-dup list
-                allResourceIds.addAll(includeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                // Add resources to list
-                allIncludeResources.addAll(includeResources);
-
-                // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                if (allIncludeResources.size() > searchContext.getMaxPageIncludeCount()) {
-                    return allIncludeResources;
-                }
+                addIncludeQuery(includeQueries, resourceType, searchContext, queryBuilder, includeParm, SearchConstants.INCLUDE,
+                    baseLogicalResourceIds, 1);
             }
         }
-
-        // Process non-iterative _revinclude parameters. These are only run against 'match' search
-        // results.
         for (InclusionParameter revincludeParm : searchContext.getRevIncludeParameters()) {
             if (!revincludeParm.isIterate()) {
-                // Build and run the query
-                List<com.ibm.fhir.persistence.jdbc.dto.Resource> revincludeResources =
-                        this.runIncludeQuery(resourceType, searchContext, queryBuilder, revincludeParm, SearchConstants.REVINCLUDE,
-                            baseLogicalResourceIds, queryResultMap, resourceDao, 1, allResourceIds);
-
-                // Add new ids to de-dup list
-                allResourceIds.addAll(revincludeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                // Add resources to list
-                allIncludeResources.addAll(revincludeResources);
-
-                // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                if (allIncludeResources.size() > searchContext.getMaxPageIncludeCount()) {
-                    return allIncludeResources;
-                }
+                addIncludeQuery(includeQueries, resourceType, searchContext, queryBuilder, revincludeParm, SearchConstants.REVINCLUDE,
+                    baseLogicalResourceIds, 1);
             }
         }
+        runIncludeQueries(includeQueries, resourceDao);
+        if (!mergeIncludeResults(includeQueries, searchContext, queryResultMap, allResourceIds, allIncludeResources)) {
+            // Max size exceeded. Return results and let rest helper throw exception.
+            return allIncludeResources;
+        }
 
         // Process iterative parameters.
         // - Iteration 0 is a special iteration. It will only process against resources returned by primary search
@@ -1173,28 +1601,15 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 }
 
                 // Process iterative _include parameters
+                includeQueries = new ArrayList<>();
                 for (InclusionParameter includeParm : searchContext.getIncludeParameters()) {
                     if (includeParm.isIterate() && resourceTypeMap.keySet().contains(includeParm.getJoinResourceType())) {
                         // For iteration 0, we only process if target type is same as join type
                         if (i > 0 || includeParm.getJoinResourceType().equals(includeParm.getSearchParameterTargetType())) {
                             // Get ids to query against
                             Set<String> queryIds = resourceTypeMap.get(includeParm.getJoinResourceType());
-
-                            // Build and run the query
-                            List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeResources =
-                                    this.runIncludeQuery(resourceType, searchContext, queryBuilder, includeParm,
-                                        SearchConstants.INCLUDE, queryIds, queryResultMap, resourceDao, i+1, allResourceIds);
-
-                            // Add new ids to de-dup list
-                            allResourceIds.addAll(includeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                            // Add resources to list
-                            allIncludeResources.addAll(includeResources);
-
-                            // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                            if (allIncludeResources.size() > searchContext.getMaxPageIncludeCount()) {
-                                return allIncludeResources;
-                            }
+                            addIncludeQuery(includeQueries, resourceType, searchContext, queryBuilder, includeParm,
+                                SearchConstants.INCLUDE, queryIds, i+1);
                         }
                     }
                 }
@@ -1204,25 +1619,17 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         if (i > 0 || revincludeParm.getJoinResourceType().equals(revincludeParm.getSearchParameterTargetType())) {
                             // Get ids to query against
                             Set<String> queryIds = resourceTypeMap.get(revincludeParm.getSearchParameterTargetType());
-
-                            // Build and run the query
-                            List<com.ibm.fhir.persistence.jdbc.dto.Resource> revincludeResources =
-                                    this.runIncludeQuery(resourceType, searchContext, queryBuilder, revincludeParm,
-                                        SearchConstants.REVINCLUDE, queryIds, queryResultMap, resourceDao, i+1, allResourceIds);
-
-                            // Add new ids to de-dup list
-                            allResourceIds.addAll(revincludeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                            // Add resources to list
-                            allIncludeResources.addAll(revincludeResources);
-
-                            // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                            if (allIncludeResources.size() > searchContext.getMaxPageIncludeCount()) {
-                                return allIncludeResources;
-                            }
+                            addIncludeQuery(includeQueries, resourceType, searchContext, queryBuilder, revincludeParm,
+                                SearchConstants.REVINCLUDE, queryIds, i+1);
                         }
                     }
                 }
+
+                // The queries of this iteration only read the results of the previous iteration level
+                runIncludeQueries(includeQueries, resourceDao);
+                if (!mergeIncludeResults(includeQueries, searchContext, queryResultMap, allResourceIds, allIncludeResources)) {
+                    return allIncludeResources;
+                }
             }
         }
 
@@ -1280,58 +1687,154 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     }
 
     /**
-     * Build and execute a single query for a single inclusion parameter.
+     * Build the query for a single inclusion parameter and add it to the list of queries to run.
+     * The query is built by the calling thread because the query builder resolves parameter names
+     * and resource types through the caches and connection of the current request.
      *
+     * @param includeQueries - the list of queries to run
      * @param resourceType - the search resource type
      * @param searchContext - the current search context
      * @param queryBuilder - the query builder
-     * @param inclusionParm - the inclusion parameter for which the query is being
-     *                        built and executed
+     * @param inclusionParm - the inclusion parameter for which the query is being built
      * @param includeType - either INCLUDE or REVINCLUDE
      * @param queryIds - the list of logical resource IDs of the target resources
      *                   the query is running against
-     * @param queryResultMap - the map of prior query results
-     * @param resourceDao - the resource data access object
-     * @param iterationLevel - the current iteration level
-     * @param allResourceIds - the list of all resource IDs being returned - used
-     *                         for de-duplication
-     * @return the list of resources returned from the query
+     * @param iterationLevel - the iteration level at which the results are recorded
      * @throws Exception
      */
-    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> runIncludeQuery(Class<? extends Resource> resourceType,
+    private void addIncludeQuery(List<IncludeQuery> includeQueries, Class<? extends Resource> resourceType,
         FHIRSearchContext searchContext, NewQueryBuilder queryBuilder, InclusionParameter inclusionParm,
-        String includeType, Set<String> queryIds, Map<Integer, Map<String, Set<String>>> queryResultMap,
-        ResourceDAO resourceDao, int iterationLevel, Set<Long> allResourceIds) throws Exception {
+        String includeType, Set<String> queryIds, int iterationLevel) throws Exception {
 
         if (queryIds.isEmpty()) {
-            return Collections.emptyList();
+            return;
         }
 
         // Build the query. For the new query builder, we work in the actual long logical_resource_id
         // values, not strings. TODO keep the values as longs to avoid unnecessary overhead
         List<Long> logicalResourceIds = queryIds.stream().map(Long::parseLong).collect(Collectors.toList());
         Select includeQuery = queryBuilder.buildIncludeQuery(resourceType, searchContext, inclusionParm, logicalResourceIds, includeType);
+        includeQueries.add(new IncludeQuery(inclusionParm, includeType, iterationLevel, includeQuery));
+    }
 
-        // Execute the query and filter out duplicates
-        List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeDTOs =
-                resourceDao.search(includeQuery).stream().filter(r -> !allResourceIds.contains(r.getId())).collect(Collectors.toList());
+    /**
+     * Add the results of the given include queries, in order, to the 'include' resources.
+     *
+     * @param includeQueries - the queries which have been run
+     * @param searchContext - the current search context
+     * @param queryResultMap - the map of prior query results
+     * @param allResourceIds - the list of all resource IDs being returned - used
+     *                         for de-duplication
+     * @param allIncludeResources - the 'include' resources collected so far
+     * @return false if the max number of 'include' resources has been exceeded
+     */
+    private boolean mergeIncludeResults(List<IncludeQuery> includeQueries, FHIRSearchContext searchContext,
+        Map<Integer, Map<String, Set<String>>> queryResultMap, Set<Long> allResourceIds,
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> allIncludeResources) {
+
+        for (IncludeQuery includeQuery : includeQueries) {
+            // Filter out duplicates
+            List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeDTOs =
+                    includeQuery.result.stream().filter(r -> !allResourceIds.contains(r.getId())).collect(Collectors.toList());
+
+            // Add query result to map.
+            // The logical resource IDs are pulled from the returned DTOs and saved in a
+            // map of resource type to logical resource IDs. This map is then saved in a
+            // map of iteration # to resource type map.
+            // On subsequent iterations, _include and _revinclude parameters which target
+            // this resource type will use the associated logical resource IDs in their queries.
+            if (!includeDTOs.isEmpty()) {
+                Set<String> lrIds = includeDTOs.stream()
+                        .map(r -> Long.toString(r.getLogicalResourceId())).collect(Collectors.toSet());
+                Map<String, Set<String>> resultMap = queryResultMap.computeIfAbsent(includeQuery.iterationLevel, k -> new HashMap<>());
+                Set<String> resultLogicalResourceIds = resultMap.computeIfAbsent(SearchConstants.INCLUDE.equals(includeQuery.includeType) ?
+                        includeQuery.inclusionParm.getSearchParameterTargetType() : includeQuery.inclusionParm.getJoinResourceType(),
+                        k -> new HashSet<>());
+                resultLogicalResourceIds.addAll(lrIds);
+            }
 
-        // Add query result to map.
-        // The logical resource IDs are pulled from the returned DTOs and saved in a
-        // map of resource type to logical resource IDs. This map is then saved in a
-        // map of iteration # to resource type map.
-        // On subsequent iterations, _include and _revinclude parameters which target
-        // this resource type will use the associated logical resource IDs in their queries.
-        if (!includeDTOs.isEmpty()) {
-            Set<String> lrIds = includeDTOs.stream()
-                    .map(r -> Long.toString(r.getLogicalResourceId())).collect(Collectors.toSet());
-            Map<String, Set<String>> resultMap = queryResultMap.computeIfAbsent(iterationLevel, k -> new HashMap<>());
-            Set<String> resultLogicalResourceIds = resultMap.computeIfAbsent(SearchConstants.INCLUDE.equals(includeType) ?
-                    inclusionParm.getSearchParameterTargetType() : inclusionParm.getJoinResourceType(), k -> new HashSet<>());
-            resultLogicalResourceIds.addAll(lrIds);
+            // Add new ids to de-dup list
+            allResourceIds.addAll(includeDTOs.stream().map(r -> r.getId()).collect(Collectors.toSet()));
+
+            // Add resources to list
+            allIncludeResources.addAll(includeDTOs);
+
+            // Check if max size exceeded
+            if (allIncludeResources.size() > searchContext.getMaxPageIncludeCount()) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return includeDTOs;
+    /**
+     * Execute the given include queries. Up to <code>includeParallelism</code> queries are run concurrently;
+     * the calling thread runs queries on its own connection, and each additional worker obtained from the
+     * container's managed executor runs queries on a connection of its own, in a separate read-only transaction.
+     * The queries are run one after another by the calling thread if no managed executor is available or if
+     * the current transaction has changed data which the other transactions would not see.
+     *
+     * @param includeQueries - the queries to run. The result of each query is filled in
+     * @param resourceDao - the resource data access object of the calling thread
+     * @throws Exception if any of the queries failed
+     */
+    private void runIncludeQueries(List<IncludeQuery> includeQueries, ResourceDAO resourceDao) throws Exception {
+        int parallelism = Math.max(1, FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_INCLUDE_PARALLELISM, DEFAULT_INCLUDE_PARALLELISM));
+        if (userTransaction == null || trxSynchRegistry == null || isTransactionChanged()) {
+            parallelism = 1;
+        }
+        ConcurrentTaskRunner.run("include query", includeQueries.size(), parallelism, resourceDao, this::runIncludeQueryWorker,
+            (dao, index) -> {
+                IncludeQuery includeQuery = includeQueries.get(index);
+                includeQuery.result = dao.search(includeQuery.select);
+            });
+    }
+
+    /**
+     * Provide an include query worker with a resource DAO on a connection of its own, in a separate read-only transaction
+     *
+     * @param work - runs the include queries claimed by the worker
+     * @throws Exception if the transaction or the connection could not be obtained
+     */
+    private void runIncludeQueryWorker(Consumer<ResourceDAO> work) throws Exception {
+        userTransaction.begin();
+        try (Connection connection = openConnection()) {
+            connectionStrategy.applySearchOptimizerOptions(connection, false);
+            work.accept(FHIRResourceDAOFactory.getResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN,
+                    schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), cache));
+        } finally {
+            try {
+                userTransaction.rollback();
+            } catch (Exception e) {
+                log.log(Level.FINE, "Unable to end include query worker transaction", e);
+            }
+        }
+    }
+
+    /**
+     * @return true if the current transaction has created, updated or deleted any resources
+     */
+    private boolean isTransactionChanged() {
+        return trxSynchRegistry.getResource(TXN_CHANGED_KEY) != null;
+    }
+
+    /**
+     * A query for a single inclusion parameter, built by the calling thread, and its result
+     */
+    private static class IncludeQuery {
+        private final InclusionParameter inclusionParm;
+        private final String includeType;
+        private final int iterationLevel;
+        private final Select select;
+
+        private List<com.ibm.fhir.persistence.jdbc.dto.Resource> result;
+
+        private IncludeQuery(InclusionParameter inclusionParm, String includeType, int iterationLevel, Select select) {
+            this.inclusionParm = inclusionParm;
+            this.includeType = includeType;
+            this.iterationLevel = iterationLevel;
+            this.select = select;
+        }
     }
 
     /**
@@ -1419,6 +1922,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
             // Persist the logically deleted Resource DTO.
             resourceDao.setPersistenceContext(context);
+            addPendingInvalidation(resourceDTO.getResourceType(), resourceDTO.getLogicalId(), false);
             resourceDao.insert(resourceDTO, null, null, null);
 
             if (log.isLoggable(Level.FINE)) {
@@ -1494,9 +1998,24 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             }
         }
 
+        // Only complete resources are cached, so reads which only want some elements go to the database
+        IResourceCache resourceCache = elements == null ? getResourceCache() : null;
+        if (resourceCache != null) {
+            resource = resourceType.cast(resourceCache.getCurrentVersion(resourceType.getSimpleName(), logicalId));
+            if (resource != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(resource)
+                        .build();
+            }
+        }
+
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
 
+            // obtained before the read so that a concurrent update can't leave a stale entry in the cache
+            final long stamp = resourceCache != null ? resourceCache.getInvalidationStamp() : 0;
             resourceDTO = resourceDao.read(logicalId, resourceType.getSimpleName());
             boolean resourceIsDeleted = resourceDTO != null && resourceDTO.isDeleted();
             if (resourceIsDeleted && !context.includeDeleted()) {
@@ -1504,6 +2023,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         resourceType.getSimpleName() + "/" + logicalId + "' is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+            if (resourceCache != null && resource != null && !resourceIsDeleted) {
+                resourceCache.putCurrentVersion(resourceType.getSimpleName(), logicalId, resourceDTO.getVersionId(), resource, stamp);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -1564,8 +2086,22 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             }
 
             if (resourceCount > 0) {
-                offset = (historyContext.getPageNumber() - 1) * historyContext.getPageSize();
-                resourceDTOList = resourceDao.history(resourceType.getSimpleName(), logicalId, fromDateTime, offset, historyContext.getPageSize());
+                // Versions are ordered by descending VERSION_ID, so a valid continuation token
+                // lets us read the page with a range predicate instead of an offset
+                Long beforeVersionId = PageTokenSupport.decode(historyContext.getPageToken(), historyContext.getPageNumber(),
+                    historyContext.getPageSize(), PageTokenSupport.queryKey(resourceType.getSimpleName(), logicalId, fromDateTime));
+                if (beforeVersionId != null) {
+                    resourceDTOList = resourceDao.historyBeforeVersion(resourceType.getSimpleName(), logicalId, fromDateTime,
+                        beforeVersionId.intValue(), historyContext.getPageSize());
+                } else {
+                    offset = (historyContext.getPageNumber() - 1) * historyContext.getPageSize();
+                    resourceDTOList = resourceDao.history(resourceType.getSimpleName(), logicalId, fromDateTime, offset, historyContext.getPageSize());
+                }
+                if (resourceDTOList.size() == historyContext.getPageSize()) {
+                    int lastVersionId = resourceDTOList.get(resourceDTOList.size() - 1).getVersionId();
+                    historyContext.setNextPageToken(PageTokenSupport.encode(historyContext.getPageNumber() + 1, historyContext.getPageSize(),
+                        PageTokenSupport.queryKey(resourceType.getSimpleName(), logicalId, fromDateTime), lastVersionId));
+                }
                 for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
                     if (resourceDTO.isDeleted()) {
                         deletedResourceVersions.putIfAbsent(logicalId, new ArrayList<Integer>());
@@ -1702,15 +2238,30 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
 
         try (Connection connection = openConnection()) {
-            ResourceDAO resourceDao = makeResourceDAO(connection);
-
             version = Integer.parseInt(versionId);
+
+            // Only complete resources are cached, so reads which only want some elements go to the database
+            IResourceCache resourceCache = elements == null ? getResourceCache() : null;
+            if (resourceCache != null) {
+                resource = resourceType.cast(resourceCache.getVersion(resourceType.getSimpleName(), logicalId, version));
+                if (resource != null) {
+                    return new SingleResourceResult.Builder<T>()
+                            .success(true)
+                            .resource(resource)
+                            .build();
+                }
+            }
+
+            ResourceDAO resourceDao = makeResourceDAO(connection);
             resourceDTO = resourceDao.versionRead(logicalId, resourceType.getSimpleName(), version);
             if (resourceDTO != null && resourceDTO.isDeleted() && !context.includeDeleted()) {
                 throw new FHIRPersistenceResourceDeletedException("Resource '" +
                         resourceType.getSimpleName() + "/" + logicalId + "' version " + versionId + " is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+            if (resourceCache != null && resource != null && !resourceDTO.isDeleted()) {
+                resourceCache.putVersion(resourceType.getSimpleName(), logicalId, version, resource);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -2369,7 +2920,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             if (resourceDTO != null && resourceDTO.getDataStream() != null) {
                 FHIRParser parser = FHIRParser.parser(Format.JSON);
                 parser.setValidating(false);
-                in = new GZIPInputStream(resourceDTO.getDataStream().inputStream());
+                // stored payloads are always written by our generator, so read them without the intermediate JsonObject
+                parser.setProperty(FHIRJsonParser.PROPERTY_STREAMING, true);
+                in = PayloadCompression.decompress(resourceDTO.getDataStream().inputStream());
                 if (elements != null) {
                     // parse/filter the resource using elements
                     resource = parser.as(FHIRJsonParser.class).parseAndFilter(in, elements);
@@ -2411,6 +2964,43 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         return true;
     }
 
+    @Override
+    public boolean isSearchPayloadStreamingSupported() {
+        // the legacy query builder has no streaming variant
+        return this.optQueryBuilderEnabled;
+    }
+
+    @Override
+    public boolean isVersionMetadataSupported() {
+        return true;
+    }
+
+    @Override
+    public ResourceVersionMetadata readCurrentVersionMetadata(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            String logicalId) throws FHIRPersistenceException {
+        final String METHODNAME = "readCurrentVersionMetadata";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = resourceDao.readMetadata(logicalId, resourceType.getSimpleName());
+            if (resourceDTO == null) {
+                return null;
+            }
+            return new ResourceVersionMetadata(logicalId, resourceDTO.getVersionId(), resourceDTO.isDeleted(),
+                resourceDTO.getLastUpdated().toInstant(),
+                resourceDTO.getResourceFingerprint() != null ? new SaltHash(resourceDTO.getResourceFingerprint()) : null);
+        } catch(FHIRPersistenceException e) {
+            throw e;
+        } catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while reading resource metadata.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     private OperationOutcome buildOKOperationOutcome() {
         return FHIRUtil.buildOperationOutcome("All OK", IssueType.INFORMATIONAL, IssueSeverity.INFORMATION);
     }
@@ -2655,6 +3245,192 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public int reindexBatch(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, java.time.Instant tstamp,
+        String resourceLogicalId, int maxCount) throws FHIRPersistenceException {
+        if (resourceLogicalId != null && resourceLogicalId.contains("/")) {
+            // a single resource, so there's nothing to batch
+            return reindex(context, operationOutcomeResult, tstamp, null, resourceLogicalId);
+        }
+
+        final String METHODNAME = "reindexBatch";
+        log.entering(CLASSNAME, METHODNAME);
+
+        int result = 0;
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("reindexBatch tstamp=" + tstamp.toString() + ", maxCount=" + maxCount);
+        }
+
+        if (tstamp.isAfter(java.time.Instant.now())) {
+            // protect against setting a future timestamp, which could otherwise
+            // disable the ability to reindex anything
+            throw new FHIRPersistenceException("Reindex tstamp cannot be in the future");
+        }
+
+        try (Connection connection = openConnection()) {
+            doCachePrefill(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            ReindexResourceDAO reindexDAO = FHIRResourceDAOFactory.getReindexResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry, this.cache, parameterDao);
+            reindexDAO.setPersistenceContext(context);
+
+            // Optionally restrict reindex to a specific resource type e.g. "Patient"
+            Integer resourceTypeId = null;
+            if (resourceLogicalId != null) {
+                resourceTypeId = cache.getResourceTypeCache().getId(resourceLogicalId);
+                if (resourceTypeId == null) {
+                    // no resources of this type have ever been stored
+                    return 0;
+                }
+            }
+
+            // Claim a batch of resources, which stay locked until the end of the transaction
+            final long start = System.nanoTime();
+            List<ResourceIndexRecord> records = reindexDAO.getResourcesToReindex(tstamp, resourceTypeId, maxCount);
+            final long claimed = System.nanoTime();
+            if (records.isEmpty()) {
+                return 0;
+            }
+
+            // Read the current version of the claimed resources, one query for each resource type
+            Map<String, List<ResourceIndexRecord>> recordsByType = new LinkedHashMap<>();
+            for (ResourceIndexRecord rir: records) {
+                recordsByType.computeIfAbsent(rir.getResourceType(), k -> new ArrayList<>()).add(rir);
+            }
+            List<ReindexEntry> entries = new ArrayList<>(records.size());
+            for (Map.Entry<String, List<ResourceIndexRecord>> typeRecords: recordsByType.entrySet()) {
+                List<Long> logicalResourceIds = typeRecords.getValue().stream().map(ResourceIndexRecord::getLogicalResourceId).collect(Collectors.toList());
+                Map<Long, com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = new HashMap<>();
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO: reindexDAO.readResources(typeRecords.getKey(), logicalResourceIds)) {
+                    resourceDTOs.put(resourceDTO.getLogicalResourceId(), resourceDTO);
+                }
+                for (ResourceIndexRecord rir: typeRecords.getValue()) {
+                    entries.add(new ReindexEntry(rir, resourceDTOs.get(rir.getLogicalResourceId())));
+                }
+            }
+            final long read = System.nanoTime();
+
+            // Parsing and extraction is where most of the time goes, so spread it across threads
+            final int threads = extractReindexParameters(entries);
+            final long extracted = System.nanoTime();
+
+            // Replace the parameters of each resource whose parameter hash has changed, in one batch per resource type
+            Map<String, Map<Long, ExtractedSearchParameters>> changedByType = new LinkedHashMap<>();
+            int updated = 0;
+            int unchanged = 0;
+            for (ReindexEntry entry: entries) {
+                ResourceIndexRecord rir = entry.record;
+                if (entry.parameters == null) {
+                    // deleted or no longer exists
+                    continue;
+                }
+                if (rir.getParameterHash() == null || !rir.getParameterHash().equals(entry.parameters.getParameterHashB64())) {
+                    changedByType.computeIfAbsent(rir.getResourceType(), k -> new LinkedHashMap<>()).put(rir.getLogicalResourceId(), entry.parameters);
+                    updated++;
+                } else {
+                    log.fine(() -> "Skipping update of unchanged parameters for FHIR Resource '" + rir.getResourceType() + "/" + rir.getLogicalId() + "'");
+                    unchanged++;
+                }
+            }
+            for (Map.Entry<String, Map<Long, ExtractedSearchParameters>> typeParameters: changedByType.entrySet()) {
+                reindexDAO.updateParameters(typeParameters.getKey(), typeParameters.getValue());
+            }
+            final long written = System.nanoTime();
+
+            // Only report the work once it is all done, so that a batch which fails (and may be retried) reports nothing
+            for (ReindexEntry entry: entries) {
+                ResourceIndexRecord rir = entry.record;
+                if (entry.parameters != null) {
+                    final String diag = "Processed " + rir.getResourceType() + "/" + rir.getLogicalId();
+                    operationOutcomeResult.issue(Issue.builder().code(IssueType.INFORMATIONAL).severity(IssueSeverity.INFORMATION).diagnostics(string(diag)).build());
+                } else {
+                    final String diag = "Failed to read resource: " + rir.getResourceType() + "/" + rir.getLogicalId();
+                    operationOutcomeResult.issue(Issue.builder().code(IssueType.NOT_FOUND).severity(IssueSeverity.WARNING).diagnostics(string(diag)).build());
+                }
+            }
+            final String summary = String.format("Reindexed batch of %d resources (%d updated, %d unchanged) in %.3f ms: "
+                    + "claim %.3f ms, read %.3f ms, extract %.3f ms on %d thread(s), write %.3f ms",
+                    records.size(), updated, unchanged, (written - start) / 1e6,
+                    (claimed - start) / 1e6, (read - claimed) / 1e6, (extracted - read) / 1e6, threads, (written - extracted) / 1e6);
+            log.fine(summary);
+            operationOutcomeResult.issue(Issue.builder().code(IssueType.INFORMATIONAL).severity(IssueSeverity.INFORMATION).diagnostics(string(summary)).build());
+
+            // every claimed resource counts, even those we couldn't read, because it is no longer waiting to be reindexed
+            result = records.size();
+        } catch(FHIRPersistenceFKVException e) {
+            getTransaction().setRollbackOnly();
+            log.log(Level.SEVERE, "Unexpected error while performing reindex", e);
+            throw e;
+        } catch(FHIRPersistenceException e) {
+            getTransaction().setRollbackOnly();
+            log.log(Level.SEVERE, "Unexpected error while performing reindex", e);
+            throw e;
+        } catch (DataAccessException dax) {
+            getTransaction().setRollbackOnly();
+
+            // It's possible this is a deadlock exception, in which case it could be considered retryable
+            if (dax.isTransactionRetryable()) {
+                log.log(Level.WARNING, "Retryable error while performing reindex", dax);
+                FHIRPersistenceDataAccessException fpx = new FHIRPersistenceDataAccessException("Data access error while performing a reindex operation.");
+                fpx.setTransactionRetryable(true);
+                throw fpx;
+            } else {
+                log.log(Level.SEVERE, "Non-retryable error while performing reindex", dax);
+                throw new FHIRPersistenceDataAccessException("Data access error while performing a reindex operation.");
+            }
+        } catch(Throwable e) {
+            getTransaction().setRollbackOnly();
+            log.log(Level.SEVERE, "Unexpected error while performing a reindex", e);
+            // don't chain the exception to avoid leaking secrets
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a reindex operation.");
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse each of the given resources and extract its search parameters. Up to <code>reindexParallelism</code>
+     * resources are processed concurrently; the calling thread takes part in the work and additional workers are
+     * obtained from the container's managed executor. If no managed executor is available, the resources are
+     * processed one after another.
+     * @param entries the resources to process. The parameters of each entry which can be read are filled in
+     * @return the number of threads used
+     * @throws Exception if any of the resources could not be processed
+     */
+    private int extractReindexParameters(List<ReindexEntry> entries) throws Exception {
+        int parallelism = Math.max(1, FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_REINDEX_PARALLELISM, DEFAULT_REINDEX_PARALLELISM));
+        return ConcurrentTaskRunner.run("reindex", entries.size(), parallelism, index -> {
+            ReindexEntry entry = entries.get(index);
+            try {
+                if (entry.resourceDTO != null && !entry.resourceDTO.isDeleted()) {
+                    Resource resource = convertResourceDTO(entry.resourceDTO, getResourceType(entry.record.getResourceType()), null);
+                    entry.parameters = extractSearchParameters(resource, entry.resourceDTO);
+                }
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Unable to extract parameters for FHIR Resource '" + entry.record.getResourceType() + "/" + entry.record.getLogicalId() + "'", e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * A resource claimed for reindexing, with its current version and extracted parameters
+     */
+    private static class ReindexEntry {
+        private final ResourceIndexRecord record;
+        private final com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO;
+
+        // null if the resource is deleted or no longer exists
+        private ExtractedSearchParameters parameters;
+
+        private ReindexEntry(ResourceIndexRecord record, com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) {
+            this.record = record;
+            this.resourceDTO = resourceDTO;
+        }
+    }
+
     @Override
     public String generateResourceId() {
         return logicalIdentityProvider.createNewIdentityValue();
@@ -2780,6 +3556,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             IDatabaseTranslator translator = FHIRResourceDAOFactory.getTranslatorForFlavor(connectionStrategy.getFlavor());
             IResourceReferenceDAO rrd = makeResourceReferenceDAO(connection);
             EraseResourceDAO eraseDao = new EraseResourceDAO(connection, translator, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.cache, rrd);
+            addPendingInvalidation(eraseDto.getResourceType(), eraseDto.getLogicalId(), true);
             eraseDao.erase(eraseRecord, eraseDto);
         } catch(FHIRPersistenceResourceNotFoundException e) {
             throw e;
@@ -13,6 +13,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -78,6 +80,35 @@ public class PostgresReindexResourceDAO extends ReindexResourceDAO {
             + "RETURNING logical_resource_id, resource_type_id, logical_id, reindex_txid, parameter_hash "
             ;
 
+    private static final String PICK_RESOURCES_TYPE = ""
+            + "   UPDATE logical_resources "
+            + "      SET reindex_tstamp = ?, "
+            + "          reindex_txid = COALESCE(reindex_txid + 1, 1) "
+            + "    WHERE logical_resource_id IN ( "
+            + "       SELECT lr.logical_resource_id "
+            + "         FROM logical_resources lr "
+            + "        WHERE lr.resource_type_id = ? "
+            + "          AND lr.is_deleted = 'N' "
+            + "          AND lr.reindex_tstamp < ? "
+            + "     ORDER BY lr.reindex_tstamp  "
+            + "   FOR UPDATE SKIP LOCKED LIMIT ?) "
+            + "RETURNING logical_resource_id, resource_type_id, logical_id, reindex_txid, parameter_hash "
+            ;
+
+    private static final String PICK_ANY_RESOURCES = ""
+            + "   UPDATE logical_resources "
+            + "      SET reindex_tstamp = ?,"
+            + "          reindex_txid = COALESCE(reindex_txid + 1, 1) "
+            + "    WHERE logical_resource_id IN ( "
+            + "       SELECT lr.logical_resource_id "
+            + "         FROM logical_resources lr "
+            + "        WHERE lr.is_deleted = 'N' "
+            + "          AND lr.reindex_tstamp < ? "
+            + "     ORDER BY lr.reindex_tstamp  "
+            + "   FOR UPDATE SKIP LOCKED LIMIT ?) "
+            + "RETURNING logical_resource_id, resource_type_id, logical_id, reindex_txid, parameter_hash "
+            ;
+
     /**
      * Public constructor
      * @param connection
@@ -166,4 +197,43 @@ public class PostgresReindexResourceDAO extends ReindexResourceDAO {
 
         return result;
     }
+
+    @Override
+    public List<ResourceIndexRecord> getNextResources(SecureRandom random, Instant reindexTstamp, Integer resourceTypeId, int maxCount) throws Exception {
+        List<ResourceIndexRecord> result = new ArrayList<>();
+
+        // no need to close
+        Connection connection = getConnection();
+        IDatabaseTranslator translator = getTranslator();
+
+        // Claim the whole batch in one statement. SKIP LOCKED means that concurrent reindex
+        // requests each get a different batch without blocking each other
+        final String update = resourceTypeId != null ? PICK_RESOURCES_TYPE : PICK_ANY_RESOURCES;
+
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            if (resourceTypeId != null) {
+                // limit to resource type
+                stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+                stmt.setInt(2, resourceTypeId);
+                stmt.setTimestamp(3, Timestamp.from(reindexTstamp));
+                stmt.setInt(4, maxCount);
+            } else {
+                // any resource type
+                stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+                stmt.setTimestamp(2, Timestamp.from(reindexTstamp));
+                stmt.setInt(3, maxCount);
+            }
+
+            stmt.execute();
+            ResultSet rs = stmt.getResultSet();
+            while (rs.next()) {
+                result.add(new ResourceIndexRecord(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getString(5)));
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, update, x);
+            throw translator.translate(x);
+        }
+
+        return result;
+    }
 }
\ No newline at end of file
@@ -16,7 +16,12 @@ import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +45,8 @@ import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
 import com.ibm.fhir.persistence.jdbc.impl.ParameterTransactionDataImpl;
+import com.ibm.fhir.persistence.jdbc.util.ExtractedSearchParameters;
+import com.ibm.fhir.persistence.jdbc.util.ParameterTableSupport;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 
 /**
@@ -51,7 +58,7 @@ public class PostgresResourceDAO extends ResourceDAOImpl {
     private static final Logger logger = Logger.getLogger(CLASSNAME);
 
     private static final String SQL_READ_RESOURCE_TYPE = "{CALL %s.add_resource_type(?, ?)}";
-    private static final String SQL_INSERT_WITH_PARAMETERS = "{CALL %s.add_any_resource(?,?,?,?,?,?,?,?,?,?)}";
+    private static final String SQL_INSERT_WITH_PARAMETERS = "{CALL %s.add_any_resource(?,?,?,?,?,?,?,?,?,?,?)}";
 
     // DAO used to obtain sequence values from FHIR_REF_SEQUENCE
     private FhirRefSequenceDAO fhirRefSequenceDAO;
@@ -106,20 +113,21 @@ public class PostgresResourceDAO extends ResourceDAOImpl {
             stmt.setString(6, UUID.randomUUID().toString());
             stmt.setInt(7, resource.getVersionId());
             stmt.setString(8, parameterHashB64);
-            stmt.registerOutParameter(9, Types.BIGINT);
-            stmt.registerOutParameter(10, Types.VARCHAR); // The old parameter_hash
+            stmt.setString(9, resource.getResourceFingerprint());
+            stmt.registerOutParameter(10, Types.BIGINT);
+            stmt.registerOutParameter(11, Types.VARCHAR); // The old parameter_hash
 
             dbCallStartTime = System.nanoTime();
             stmt.execute();
             dbCallDuration = (System.nanoTime()-dbCallStartTime)/1e6;
 
-            resource.setId(stmt.getLong(9));
+            resource.setId(stmt.getLong(10));
 
             // Parameter time
             // To keep things simple for the postgresql use-case, we just use a visitor to
             // handle inserts of parameters directly in the resource parameter tables.
             // Note we don't get any parameters for the resource soft-delete operation
-            final String currentParameterHash = stmt.getString(10);
+            final String currentParameterHash = stmt.getString(11);
             if (parameters != null && (parameterHashB64 == null || parameterHashB64.isEmpty()
                     || !parameterHashB64.equals(currentParameterHash))) {
                 // postgresql doesn't support partitioned multi-tenancy, so we disable it on the DAO:
@@ -158,6 +166,367 @@ public class PostgresResourceDAO extends ResourceDAOImpl {
         return resource;
     }
 
+    @Override
+    public Map<Integer, FHIRPersistenceException> insertBatch(List<Resource> resources, List<ExtractedSearchParameters> parameters,
+            ParameterDAO parameterDao) throws FHIRPersistenceException {
+        // Any SQL error aborts the PostgreSQL transaction, so the batch can only succeed or fail as a whole
+        final String METHODNAME = "insertBatch";
+        logger.entering(CLASSNAME, METHODNAME);
+
+        try {
+            // Each resource type has its own set of tables, so process the batch one type at a time
+            Map<String, List<Integer>> positionsByType = new LinkedHashMap<>();
+            for (int i = 0; i < resources.size(); i++) {
+                positionsByType.computeIfAbsent(resources.get(i).getResourceType(), k -> new ArrayList<>()).add(i);
+            }
+
+            for (Map.Entry<String, List<Integer>> entry : positionsByType.entrySet()) {
+                List<Resource> typeResources = new ArrayList<>(entry.getValue().size());
+                List<ExtractedSearchParameters> typeParameters = new ArrayList<>(entry.getValue().size());
+                for (int position : entry.getValue()) {
+                    typeResources.add(resources.get(position));
+                    typeParameters.add(parameters.get(position));
+                }
+
+                long dbCallStartTime = System.nanoTime();
+                insertBatch(entry.getKey(), typeResources, typeParameters, parameterDao);
+                double dbCallDuration = (System.nanoTime()-dbCallStartTime)/1e6;
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Successfully inserted batch of " + typeResources.size() + " " + entry.getKey()
+                            + " resources. executionTime=" + dbCallDuration + "ms");
+                }
+            }
+            return Collections.emptyMap();
+        } catch(FHIRPersistenceDBConnectException | FHIRPersistenceDataAccessException e) {
+            throw e;
+        } catch(SQLIntegrityConstraintViolationException e) {
+            FHIRPersistenceFKVException fx = new FHIRPersistenceFKVException("Encountered FK violation while inserting Resource batch.");
+            throw severe(logger, fx, e);
+        } catch(SQLException e) {
+            if ("99001".equals(e.getSQLState())) {
+                // this is just a concurrency update, so there's no need to log the SQLException here
+                throw new FHIRPersistenceVersionIdMismatchException("Encountered version id mismatch while inserting Resource batch");
+            } else {
+                FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("SQLException encountered while inserting Resource batch.");
+                throw severe(logger, fx, e);
+            }
+        } catch(Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure inserting Resource batch.");
+            throw severe(logger, fx, e);
+        } finally {
+            logger.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Insert a batch of resources of the same type, following the same steps as the add_any_resource
+     * stored procedure but using one (batched) statement per step instead of one call per resource.
+     * The logical ids in the batch must be unique.
+     * @param resourceType
+     * @param resources
+     * @param parameters
+     * @param parameterDao
+     * @throws Exception
+     */
+    private void insertBatch(String resourceType, List<Resource> resources, List<ExtractedSearchParameters> parameters,
+            ParameterDAO parameterDao) throws Exception {
+        final Connection connection = getConnection(); // do not close
+
+        Integer resourceTypeId = getResourceTypeIdFromCaches(resourceType);
+        if (resourceTypeId == null) {
+            resourceTypeId = this.readResourceTypeId(resourceType);
+            this.addResourceTypeCacheCandidate(resourceType, resourceTypeId);
+        }
+
+        // Lock any logical resources which already exist. The order keeps concurrent batches from deadlocking
+        final String SELECT_FOR_UPDATE = "SELECT logical_id, logical_resource_id, parameter_hash FROM logical_resources "
+                + "WHERE resource_type_id = ? AND logical_id = ANY(?) ORDER BY logical_id FOR NO KEY UPDATE";
+        Map<String, Long> logicalResourceIds = new HashMap<>();
+        Map<String, String> currentHashes = new HashMap<>();
+        lockLogicalResources(connection, SELECT_FOR_UPDATE, resourceTypeId, resources, logicalResourceIds, currentHashes);
+
+        // Grab all the ids we need from the sequence in one round-trip
+        List<Resource> newResources = new ArrayList<>();
+        for (Resource resource : resources) {
+            if (!logicalResourceIds.containsKey(resource.getLogicalId())) {
+                newResources.add(resource);
+            }
+        }
+        long[] ids = nextSequenceValues(connection, newResources.size() + resources.size());
+        int nextId = 0;
+        Map<String, Long> newLogicalResourceIds = new HashMap<>();
+        for (Resource resource : newResources) {
+            newLogicalResourceIds.put(resource.getLogicalId(), ids[nextId++]);
+        }
+        long[] resourceIds = new long[resources.size()];
+        for (int i = 0; i < resources.size(); i++) {
+            resourceIds[i] = ids[nextId++];
+        }
+
+        // Create the system-wide logical resource records we don't have yet
+        if (!newResources.isEmpty()) {
+            final String INSERT_LOGICAL_RESOURCES = "INSERT INTO logical_resources (logical_resource_id, resource_type_id, logical_id, reindex_tstamp, is_deleted, last_updated, parameter_hash) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+            try (PreparedStatement stmt = connection.prepareStatement(INSERT_LOGICAL_RESOURCES)) {
+                for (int i = 0; i < resources.size(); i++) {
+                    Resource resource = resources.get(i);
+                    Long logicalResourceId = newLogicalResourceIds.get(resource.getLogicalId());
+                    if (logicalResourceId != null) {
+                        stmt.setLong(1, logicalResourceId);
+                        stmt.setInt(2, resourceTypeId);
+                        stmt.setString(3, resource.getLogicalId());
+                        stmt.setTimestamp(4, Timestamp.valueOf(DEFAULT_VALUE_REINDEX_TSTAMP), UTC);
+                        stmt.setString(5, resource.isDeleted() ? "Y" : "N");
+                        stmt.setTimestamp(6, resource.getLastUpdated(), UTC);
+                        stmt.setString(7, parameters.get(i).getParameterHashB64());
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+
+            // Another thread may have snuck in and created some of these logical resources before us, in
+            // which case the record we now lock has a different id and we treat it as an existing resource
+            lockLogicalResources(connection, SELECT_FOR_UPDATE, resourceTypeId, newResources, logicalResourceIds, currentHashes);
+            newLogicalResourceIds.entrySet().removeIf(e -> !e.getValue().equals(logicalResourceIds.get(e.getKey())));
+        }
+
+        // Insert the resource-specific logical resource records for the resources we created. Remember that
+        // logical_id is denormalized so it gets stored again here for convenience
+        if (!newLogicalResourceIds.isEmpty()) {
+            final String INSERT_LR = "INSERT INTO " + resourceType + "_logical_resources (logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id, resource_fingerprint) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement stmt = connection.prepareStatement(INSERT_LR)) {
+                for (int i = 0; i < resources.size(); i++) {
+                    Resource resource = resources.get(i);
+                    if (newLogicalResourceIds.containsKey(resource.getLogicalId())) {
+                        stmt.setLong(1, logicalResourceIds.get(resource.getLogicalId()));
+                        stmt.setString(2, resource.getLogicalId());
+                        stmt.setString(3, resource.isDeleted() ? "Y" : "N");
+                        stmt.setTimestamp(4, resource.getLastUpdated(), UTC);
+                        stmt.setInt(5, resource.getVersionId());
+                        stmt.setLong(6, resourceIds[i]);
+                        stmt.setString(7, resource.getResourceFingerprint());
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+        }
+
+        // For existing resources, check the versions and clear out any parameters which are about to be replaced
+        List<Long> existingLogicalResourceIds = new ArrayList<>();
+        List<Long> changedLogicalResourceIds = new ArrayList<>();
+        for (int i = 0; i < resources.size(); i++) {
+            String logicalId = resources.get(i).getLogicalId();
+            if (!newLogicalResourceIds.containsKey(logicalId)) {
+                existingLogicalResourceIds.add(logicalResourceIds.get(logicalId));
+                if (parameterHashChanged(currentHashes.get(logicalId), parameters.get(i).getParameterHashB64())) {
+                    changedLogicalResourceIds.add(logicalResourceIds.get(logicalId));
+                }
+            }
+        }
+
+        if (!existingLogicalResourceIds.isEmpty()) {
+            checkVersions(connection, resourceType, resources, newLogicalResourceIds, logicalResourceIds, existingLogicalResourceIds);
+            ParameterTableSupport.deleteFromParameterTables(connection, resourceType, changedLogicalResourceIds);
+
+            // Keep is_deleted and last_updated in LOGICAL_RESOURCES current to support whole-system search
+            final String UPDATE_LOGICAL_RESOURCES = "UPDATE logical_resources SET is_deleted = ?, last_updated = ?, parameter_hash = ? WHERE logical_resource_id = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(UPDATE_LOGICAL_RESOURCES)) {
+                for (int i = 0; i < resources.size(); i++) {
+                    Resource resource = resources.get(i);
+                    if (!newLogicalResourceIds.containsKey(resource.getLogicalId())) {
+                        stmt.setString(1, resource.isDeleted() ? "Y" : "N");
+                        stmt.setTimestamp(2, resource.getLastUpdated(), UTC);
+                        stmt.setString(3, parameters.get(i).getParameterHashB64());
+                        stmt.setLong(4, logicalResourceIds.get(resource.getLogicalId()));
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+        }
+
+        // The big resource data insert
+        final String INSERT_RESOURCES = "INSERT INTO " + resourceType + "_resources (resource_id, logical_resource_id, version_id, data, last_updated, is_deleted) "
+                + "VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_RESOURCES)) {
+            for (int i = 0; i < resources.size(); i++) {
+                Resource resource = resources.get(i);
+                stmt.setLong(1, resourceIds[i]);
+                stmt.setLong(2, logicalResourceIds.get(resource.getLogicalId()));
+                stmt.setInt(3, resource.getVersionId());
+                stmt.setBinaryStream(4, resource.getDataStream().inputStream());
+                stmt.setTimestamp(5, resource.getLastUpdated(), UTC);
+                stmt.setString(6, resource.isDeleted() ? "Y" : "N");
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        // Point the existing logical resources at their new versions
+        if (!existingLogicalResourceIds.isEmpty()) {
+            final String UPDATE_LR = "UPDATE " + resourceType + "_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ?, resource_fingerprint = ? "
+                    + "WHERE logical_resource_id = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(UPDATE_LR)) {
+                for (int i = 0; i < resources.size(); i++) {
+                    Resource resource = resources.get(i);
+                    if (!newLogicalResourceIds.containsKey(resource.getLogicalId())) {
+                        stmt.setLong(1, resourceIds[i]);
+                        stmt.setString(2, resource.isDeleted() ? "Y" : "N");
+                        stmt.setTimestamp(3, resource.getLastUpdated(), UTC);
+                        stmt.setInt(4, resource.getVersionId());
+                        stmt.setString(5, resource.getResourceFingerprint());
+                        stmt.setLong(6, logicalResourceIds.get(resource.getLogicalId()));
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+        }
+
+        // Use a single visitor so that the parameters of the whole batch share the same statement batches.
+        // Note we don't get any parameters for the resource soft-delete operation
+        JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(getCache(), this, parameterDao, getResourceReferenceDAO());
+        try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(connection, null, resourceType, false,
+                logicalResourceIds.get(resources.get(0).getLogicalId()), 100, identityCache, getResourceReferenceDAO(), getTransactionData())) {
+            for (int i = 0; i < resources.size(); i++) {
+                String logicalId = resources.get(i).getLogicalId();
+                ExtractedSearchParameters searchParameters = parameters.get(i);
+                if (searchParameters.getParameters() != null && (newLogicalResourceIds.containsKey(logicalId)
+                        || parameterHashChanged(currentHashes.get(logicalId), searchParameters.getParameterHashB64()))) {
+                    pvd.setLogicalResourceId(logicalResourceIds.get(logicalId));
+                    for (ExtractedParameterValue p: searchParameters.getParameters()) {
+                        p.accept(pvd);
+                    }
+                }
+            }
+        }
+
+        // Finally, record each change in RESOURCE_CHANGE_LOG
+        final String INSERT_CHANGE_LOG = "INSERT INTO resource_change_log(resource_id, change_tstamp, resource_type_id, logical_resource_id, version_id, change_type)"
+                + " VALUES (?,?,?,?,?,?)";
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_CHANGE_LOG)) {
+            for (int i = 0; i < resources.size(); i++) {
+                Resource resource = resources.get(i);
+                String changeType = resource.isDeleted() ? "D" : newLogicalResourceIds.containsKey(resource.getLogicalId()) ? "C" : "U";
+                ps.setLong(     1, resourceIds[i]);
+                ps.setTimestamp(2, resource.getLastUpdated(), UTC);
+                ps.setInt(      3, resourceTypeId);
+                ps.setLong(     4, logicalResourceIds.get(resource.getLogicalId()));
+                ps.setInt(      5, resource.getVersionId());
+                ps.setString(   6, changeType);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        for (Resource resource : resources) {
+            resource.setId(logicalResourceIds.get(resource.getLogicalId()));
+        }
+    }
+
+    /**
+     * Lock the logical_resources records of the given resources, recording the logical_resource_id
+     * and parameter_hash of each one found
+     * @param conn
+     * @param sql
+     * @param resourceTypeId
+     * @param resources
+     * @param logicalResourceIds
+     * @param currentHashes
+     * @throws SQLException
+     */
+    private void lockLogicalResources(Connection conn, String sql, int resourceTypeId, List<Resource> resources,
+            Map<String, Long> logicalResourceIds, Map<String, String> currentHashes) throws SQLException {
+        String[] logicalIds = new String[resources.size()];
+        for (int i = 0; i < logicalIds.length; i++) {
+            logicalIds[i] = resources.get(i).getLogicalId();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, resourceTypeId);
+            stmt.setArray(2, conn.createArrayOf("varchar", logicalIds));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                logicalResourceIds.put(rs.getString(1), rs.getLong(2));
+                currentHashes.put(rs.getString(1), rs.getString(3));
+            }
+        }
+    }
+
+    /**
+     * Get the given number of values from fhir_sequence using a single statement
+     * @param conn
+     * @param count
+     * @return
+     * @throws SQLException
+     */
+    private long[] nextSequenceValues(Connection conn, int count) throws SQLException {
+        long[] result = new long[count];
+        final String SQL = "SELECT nextval('fhir_sequence') FROM generate_series(1, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            stmt.setInt(1, count);
+            ResultSet rs = stmt.executeQuery();
+            for (int i = 0; i < count; i++) {
+                if (!rs.next()) {
+                    // not going to happen, unless someone butchers the statement being executed
+                    throw new IllegalStateException("Sequence query returned fewer rows than requested: " + count);
+                }
+                result[i] = rs.getLong(1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Concurrency check: the version of each existing resource (which is also embedded in the JSON payload)
+     * must be one greater than its current version, otherwise we've hit a concurrent update race condition
+     * @param conn
+     * @param resourceType
+     * @param resources
+     * @param newLogicalResourceIds
+     * @param logicalResourceIds
+     * @param existingLogicalResourceIds
+     * @throws SQLException
+     */
+    private void checkVersions(Connection conn, String resourceType, List<Resource> resources, Map<String, Long> newLogicalResourceIds,
+            Map<String, Long> logicalResourceIds, List<Long> existingLogicalResourceIds) throws SQLException {
+        Map<Long, Integer> currentVersions = new HashMap<>();
+        final String SQL = "SELECT logical_resource_id, version_id FROM " + resourceType + "_logical_resources WHERE logical_resource_id = ANY(?)";
+        try (PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            stmt.setArray(1, conn.createArrayOf("bigint", existingLogicalResourceIds.toArray(new Long[0])));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                currentVersions.put(rs.getLong(1), rs.getInt(2));
+            }
+        }
+
+        for (Resource resource : resources) {
+            if (!newLogicalResourceIds.containsKey(resource.getLogicalId())) {
+                Integer currentVersion = currentVersions.get(logicalResourceIds.get(resource.getLogicalId()));
+                if (currentVersion == null) {
+                    // This database is broken, because we shouldn't have logical_resource records without
+                    // corresponding resource-specific logical_resource records.
+                    throw new SQLException("Logical_id record '" + resource.getLogicalId() + "' missing for resource " + resourceType);
+                }
+                if (resource.getVersionId() != currentVersion + 1) {
+                    // mimic the exception we'd see from the stored procedure
+                    throw new SQLException("Concurrent update - mismatch of version in JSON", "99001");
+                }
+            }
+        }
+    }
+
+    /**
+     * @param currentHash
+     * @param parameterHashB64
+     * @return true if the parameters of an existing resource need to be replaced
+     */
+    private static boolean parameterHashChanged(String currentHash, String parameterHashB64) {
+        return currentHash == null || currentHash.isEmpty() || !currentHash.equals(parameterHashB64);
+    }
+
     /**
      * Delete all parameters for the given resourceId from the parameters table
      *
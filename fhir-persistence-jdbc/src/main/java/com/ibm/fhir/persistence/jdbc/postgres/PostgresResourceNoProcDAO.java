@@ -115,6 +115,7 @@ public class PostgresResourceNoProcDAO extends ResourceDAOImpl {
                 sourceKey,
                 resource.getVersionId(),
                 parameterHashB64,
+                resource.getResourceFingerprint(),
                 connection,
                 parameterDao
                 );
@@ -180,13 +181,14 @@ public class PostgresResourceNoProcDAO extends ResourceDAOImpl {
      * @param p_source_key
      * @param p_version
      * @param parameterHashB64
+     * @param resourceFingerprint salt:hash fingerprint of the resource content, or null
      * @param conn
      * @param parameterDao
      * @return the resource_id for the entry we created
      * @throws Exception
      */
     public long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, InputStream p_payload, Timestamp p_last_updated, boolean p_is_deleted,
-        String p_source_key, Integer p_version, String parameterHashB64, Connection conn, ParameterDAO parameterDao) throws Exception {
+        String p_source_key, Integer p_version, String parameterHashB64, String resourceFingerprint, Connection conn, ParameterDAO parameterDao) throws Exception {
 
         final String METHODNAME = "storeResource() for " + tablePrefix + " resource";
         logger.entering(CLASSNAME, METHODNAME);
@@ -377,14 +379,15 @@ public class PostgresResourceNoProcDAO extends ResourceDAOImpl {
         }
 
         // update the logical resource with the values for the latest version
-        String sql4 = "UPDATE " + tablePrefix + "_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ? WHERE logical_resource_id = ?";
+        String sql4 = "UPDATE " + tablePrefix + "_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ?, resource_fingerprint = ? WHERE logical_resource_id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql4)) {
             // bind parameters
             stmt.setLong(1, v_resource_id);
             stmt.setString(2, p_is_deleted ? "Y" : "N");
             stmt.setTimestamp(3, p_last_updated, UTC);
             stmt.setInt(4, p_version);
-            stmt.setLong(5, v_logical_resource_id);
+            stmt.setString(5, resourceFingerprint);
+            stmt.setLong(6, v_logical_resource_id);
             stmt.executeUpdate();
         }
 
@@ -210,6 +210,17 @@ public class NewQueryBuilder {
     private Select renderQuery(SearchQuery domainModel, FHIRSearchContext searchContext) throws FHIRPersistenceException {
         final int offset = (searchContext.getPageNumber()-1) * searchContext.getPageSize();
         final int rowsPerPage = searchContext.getPageSize();
+        return renderQuery(domainModel, offset, rowsPerPage);
+    }
+
+    /**
+     * Render the domain model into a Select statement using the given pagination
+     * @param domainModel
+     * @param offset
+     * @param rowsPerPage
+     * @return
+     */
+    private Select renderQuery(SearchQuery domainModel, int offset, int rowsPerPage) throws FHIRPersistenceException {
         SearchQueryRenderer renderer = new SearchQueryRenderer(this.identityCache, offset, rowsPerPage);
         QueryData queryData = domainModel.visit(renderer);
         return queryData.getQuery().build();
@@ -228,6 +239,7 @@ public class NewQueryBuilder {
                 new Object[] { resourceType.getSimpleName(), searchContext.getSearchParameters() });
 
         final SearchQuery domainModel;
+        int offset = (searchContext.getPageNumber()-1) * searchContext.getPageSize();
         if (Resource.class.equals(resourceType)) {
             // Whole-system search
             if (allSearchParmsAreGlobal(searchContext.getSearchParameters())) {
@@ -280,9 +292,19 @@ public class NewQueryBuilder {
             domainModel = sortQuery;
         } else {
             domainModel = new SearchDataQuery(resourceType.getSimpleName());
+
+            // Results are ordered by LOGICAL_RESOURCE_ID, so a valid continuation token
+            // lets us seek straight to the start of the requested page
+            Long lastLogicalResourceId = PageTokenSupport.decode(searchContext.getPageToken(), searchContext.getPageNumber(),
+                searchContext.getPageSize(), PageTokenSupport.queryKey(resourceType.getSimpleName(), searchContext.getSearchParameters(),
+                    searchContext.getSortParameters()));
+            if (lastLogicalResourceId != null) {
+                domainModel.add(new SeekPaginationExtension(lastLogicalResourceId));
+                offset = 0;
+            }
         }
         buildModelCommon(domainModel, resourceType, searchContext);
-        Select result = renderQuery(domainModel, searchContext);
+        Select result = renderQuery(domainModel, offset, searchContext.getPageSize());
 
         log.exiting(CLASSNAME, METHODNAME);
         return result;
@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.parameters.SortParameter;
+
+/**
+ * Support class for the opaque continuation tokens used to implement keyset (seek)
+ * pagination. A token captures the page number and page size it was issued for, a hash
+ * of the normalized query and the sort key of the last row returned on the preceding page.
+ * Tokens are only honored when all of these match the request; otherwise callers fall
+ * back to OFFSET pagination so that plain _page links keep working and a token reused
+ * with a different _count, sort or set of search parameters can't skip rows.
+ */
+public class PageTokenSupport {
+    private static final char SEPARATOR = ':';
+
+    private PageTokenSupport() {
+        // No operation
+    }
+
+    /**
+     * Encode a continuation token for the given page
+     * @param pageNumber the page number the token is valid for
+     * @param pageSize the page size the token is valid for
+     * @param queryKey the normalized query the token is valid for
+     * @param lastKey the sort key of the last row on the preceding page
+     * @return
+     */
+    public static String encode(int pageNumber, int pageSize, String queryKey, long lastKey) {
+        String value = Integer.toString(pageNumber) + SEPARATOR + Integer.toString(pageSize) + SEPARATOR
+                + Long.toHexString(hash(queryKey)) + SEPARATOR + Long.toString(lastKey);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode the sort key from the given continuation token
+     * @param pageToken the token passed with the request, may be null
+     * @param pageNumber the requested page number
+     * @param pageSize the requested page size
+     * @param queryKey the normalized requested query
+     * @return the sort key of the last row on the preceding page, or null if the token is
+     *         missing, malformed, or was issued for a different page, page size or query
+     */
+    public static Long decode(String pageToken, int pageNumber, int pageSize, String queryKey) {
+        if (pageToken == null || pageToken.isEmpty() || pageNumber <= 1) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+            String[] parts = value.split(String.valueOf(SEPARATOR), -1);
+            if (parts.length != 4
+                    || Integer.parseInt(parts[0]) != pageNumber
+                    || Integer.parseInt(parts[1]) != pageSize
+                    || Long.parseLong(parts[2], 16) != hash(queryKey)) {
+                return null;
+            }
+            return Long.parseLong(parts[3]);
+        } catch (IllegalArgumentException e) {
+            // includes NumberFormatException; an unusable token is simply ignored
+            return null;
+        }
+    }
+
+    /**
+     * Build the normalized form of a search query used to bind continuation tokens to that query.
+     * The order of the search parameters doesn't matter; the order of the sort parameters does.
+     * @param resourceType the resource type being searched
+     * @param searchParameters the parsed search parameters
+     * @param sortParameters the parsed sort parameters
+     * @return
+     */
+    public static String queryKey(String resourceType, List<QueryParameter> searchParameters, List<SortParameter> sortParameters) {
+        List<String> parameters = new ArrayList<>(searchParameters.size());
+        for (QueryParameter parameter : searchParameters) {
+            StringBuilder sb = new StringBuilder();
+            for (QueryParameter p = parameter; p != null; p = p.getNextParameter()) {
+                append(sb, p);
+            }
+            parameters.add(sb.toString());
+        }
+        Collections.sort(parameters);
+
+        StringBuilder sb = new StringBuilder(resourceType);
+        for (String parameter : parameters) {
+            sb.append('&').append(parameter);
+        }
+        for (SortParameter sortParameter : sortParameters) {
+            sb.append('&').append(sortParameter.getCode()).append(SEPARATOR).append(sortParameter.getDirection().value());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Build the normalized form of a history query used to bind continuation tokens to that query.
+     * @param resourceType the resource type
+     * @param logicalId the logical id of the resource
+     * @param since the lower bound of the history, may be null
+     * @return
+     */
+    public static String queryKey(String resourceType, String logicalId, Object since) {
+        return resourceType + '/' + logicalId + '?' + since;
+    }
+
+    private static void append(StringBuilder sb, QueryParameter parameter) {
+        sb.append(parameter.getCode());
+        if (parameter.getModifier() != null) {
+            sb.append(SEPARATOR).append(parameter.getModifier().value());
+        }
+        if (parameter.getModifierResourceTypeName() != null) {
+            sb.append(SEPARATOR).append(parameter.getModifierResourceTypeName());
+        }
+        sb.append(parameter.isReverseChained() ? "<" : "").append(parameter.isInclusionCriteria() ? "~" : "").append('=');
+        String delimiter = "";
+        for (QueryParameterValue value : parameter.getValues()) {
+            sb.append(delimiter).append(value);
+            delimiter = ",";
+        }
+        sb.append('.');
+    }
+
+    private static long hash(String queryKey) {
+        CRC32 crc = new CRC32();
+        crc.update(queryKey.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.jdbc.util;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collection;
 
 /**
  * Support functions for managing the search parameter value tables
@@ -43,6 +44,37 @@ public class ParameterTableSupport {
         deleteFromParameterTable(conn, "logical_resource_security", v_logical_resource_id);
     }
 
+    /**
+     * Delete any current parameters from the whole-system and resource-specific parameter tables
+     * for all the given logical_resource_ids of the given resource type, using one statement per table
+     * @param conn
+     * @param tablePrefix
+     * @param logicalResourceIds
+     * @throws SQLException
+     */
+    public static void deleteFromParameterTables(Connection conn, String tablePrefix, Collection<Long> logicalResourceIds) throws SQLException {
+        if (logicalResourceIds.isEmpty()) {
+            return;
+        }
+        deleteFromParameterTable(conn, tablePrefix + "_str_values", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_number_values", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_date_values", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_latlng_values", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_resource_token_refs", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_quantity_values", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_profiles", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_tags", logicalResourceIds);
+        deleteFromParameterTable(conn, tablePrefix + "_security", logicalResourceIds);
+
+        // delete any system level parameters we have for these resources
+        deleteFromParameterTable(conn, "str_values", logicalResourceIds);
+        deleteFromParameterTable(conn, "date_values", logicalResourceIds);
+        deleteFromParameterTable(conn, "resource_token_refs", logicalResourceIds);
+        deleteFromParameterTable(conn, "logical_resource_profiles", logicalResourceIds);
+        deleteFromParameterTable(conn, "logical_resource_tags", logicalResourceIds);
+        deleteFromParameterTable(conn, "logical_resource_security", logicalResourceIds);
+    }
+
     /**
      * Delete all parameters for the given resourceId from the parameters table
      *
@@ -60,4 +92,28 @@ public class ParameterTableSupport {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Delete all parameters for the given resourceIds from the parameters table
+     *
+     * @param conn
+     * @param tableName
+     * @param logicalResourceIds
+     * @throws SQLException
+     */
+    private static void deleteFromParameterTable(Connection conn, String tableName, Collection<Long> logicalResourceIds) throws SQLException {
+        StringBuilder delValues = new StringBuilder("DELETE FROM ").append(tableName).append(" WHERE logical_resource_id IN (");
+        for (int i = 0; i < logicalResourceIds.size(); i++) {
+            delValues.append(i == 0 ? "?" : ",?");
+        }
+        delValues.append(")");
+        try (PreparedStatement stmt = conn.prepareStatement(delValues.toString())) {
+            // bind parameters
+            int idx = 1;
+            for (Long logicalResourceId: logicalResourceIds) {
+                stmt.setLong(idx++, logicalResourceId);
+            }
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The codecs used to compress the resource payload stored in the DATA column.
+ *
+ * <p>Payloads written with {@link #GZIP} are plain gzip streams, exactly as written by earlier
+ * releases. Payloads written with any other codec start with a single header byte identifying
+ * the codec. Because a gzip stream always starts with the magic byte 0x1f, which is not used as
+ * a header byte, {@link #decompress(InputStream)} can read rows written with any codec,
+ * so the codec can be changed at any time without migrating existing data.
+ */
+public enum PayloadCompression {
+    /**
+     * gzip at the default compression level; the original format, without a header byte.
+     * The header value is the first byte of every gzip stream.
+     */
+    GZIP("gzip", 0x1f),
+    /**
+     * no compression; trades storage for the lowest CPU cost
+     */
+    NONE("none", 0x01),
+    /**
+     * raw deflate at the fastest compression level, without the gzip header and CRC
+     */
+    DEFLATE("deflate", 0x02),
+    /**
+     * raw deflate with a preset dictionary of strings which are common in FHIR JSON, which
+     * noticeably improves the compression of small resources
+     */
+    DEFLATE_DICT("deflate-dict", 0x03);
+
+    // The preset dictionary for DEFLATE_DICT. Deflate favors matches near the end of the dictionary,
+    // so the most common strings come last. This must never change once rows have been written with it;
+    // a different dictionary needs a new codec (and header byte).
+    private static final byte[] DICTIONARY = (
+            "\"category\":[{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/observation-category\","
+            + "\"http://terminology.hl7.org/CodeSystem/v3-ActCode\",\"http://terminology.hl7.org/CodeSystem/v2-0203\","
+            + "\"valueCodeableConcept\":{\"valueString\":\"\"valueBoolean\":\"valueDateTime\":\"\"effectiveDateTime\":\""
+            + "\"encounter\":{\"reference\":\"Encounter/\"performer\":[{\"reference\":\"Practitioner/\"issued\":\""
+            + "\"period\":{\"start\":\"\",\"end\":\"\"identifier\":[{\"use\":\"official\",\"system\":\""
+            + "\"name\":[{\"use\":\"official\",\"family\":\"\",\"given\":[\"\"telecom\":[{\"system\":\"phone\","
+            + "\"gender\":\"female\"male\"birthDate\":\"\"address\":[{\"line\":[\"\"city\":\"\"state\":\"\"postalCode\":\""
+            + "\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/\"valueQuantity\":{\"value\":"
+            + ",\"unit\":\"\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"\"interpretation\":[{\"coding\":[{"
+            + "\"status\":\"final\"\"status\":\"active\"\"clinicalStatus\":{\"coding\":[{\"system\":\""
+            + "\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">"
+            + "</div>\"},\"subject\":{\"reference\":\"Patient/\"},\"http://snomed.info/sct\"\"http://loinc.org\""
+            + "\"code\":{\"coding\":[{\"system\":\"\",\"code\":\"\",\"display\":\"\"}],\"text\":\"\"reference\":\""
+            + "{\"resourceType\":\"\",\"id\":\"\",\"meta\":{\"versionId\":\"\",\"lastUpdated\":\"")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final String value;
+    private final int header;
+
+    private PayloadCompression(String value, int header) {
+        this.value = value;
+        this.header = header;
+    }
+
+    /**
+     * @return the name used to select this codec in the configuration
+     */
+    public String value() {
+        return value;
+    }
+
+    /**
+     * Get the codec with the given configuration value
+     * @param value
+     * @return
+     * @throws IllegalArgumentException if value is not a valid codec name
+     */
+    public static PayloadCompression from(String value) {
+        for (PayloadCompression c : PayloadCompression.values()) {
+            if (c.value.equalsIgnoreCase(value)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Invalid payload compression: '" + value + "'");
+    }
+
+    /**
+     * Wrap the given stream so that the data written to the returned stream is compressed
+     * with this codec. The returned stream must be closed to complete the payload.
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+        switch (this) {
+        case GZIP:
+            return new GZIPOutputStream(out);
+        case NONE:
+            out.write(header);
+            return out;
+        case DEFLATE:
+            out.write(header);
+            return new DeflaterStream(out, new Deflater(Deflater.BEST_SPEED, true));
+        case DEFLATE_DICT:
+        default:
+            out.write(header);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            deflater.setDictionary(DICTIONARY);
+            return new DeflaterStream(out, deflater);
+        }
+    }
+
+    /**
+     * Wrap the given payload stream, written by any of the codecs, so that the data read
+     * from the returned stream is decompressed
+     * @param in
+     * @return
+     * @throws IOException if the payload header is not recognized
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, 1);
+        int first = pin.read();
+        if (first == GZIP.header) {
+            pin.unread(first);
+            return new GZIPInputStream(pin);
+        } else if (first == NONE.header) {
+            return pin;
+        } else if (first == DEFLATE.header) {
+            return new InflaterStream(pin, new Inflater(true));
+        } else if (first == DEFLATE_DICT.header) {
+            Inflater inflater = new Inflater(true);
+            inflater.setDictionary(DICTIONARY);
+            return new InflaterStream(pin, inflater);
+        } else {
+            throw new IOException("Unrecognized payload header: " + first);
+        }
+    }
+
+    /**
+     * Releases the native resources of its deflater on close, which DeflaterOutputStream
+     * only does for deflaters it creates itself
+     */
+    private static class DeflaterStream extends DeflaterOutputStream {
+        private DeflaterStream(OutputStream out, Deflater deflater) {
+            super(out, deflater);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+    /**
+     * Releases the native resources of its inflater on close, which InflaterInputStream
+     * only does for inflaters it creates itself
+     */
+    private static class InflaterStream extends InflaterInputStream {
+        private InflaterStream(InputStream in, Inflater inflater) {
+            super(in, inflater);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.domain.SearchExtension;
+import com.ibm.fhir.persistence.jdbc.domain.SearchQueryVisitor;
+
+/**
+ * A SearchExtension used to replace OFFSET pagination with a range predicate
+ * on LOGICAL_RESOURCE_ID when the request carries a valid continuation token.
+ */
+public class SeekPaginationExtension implements SearchExtension {
+    // The LOGICAL_RESOURCE_ID of the last row returned on the previous page
+    private final long lastLogicalResourceId;
+
+    /**
+     * Public constructor
+     * @param lastLogicalResourceId
+     */
+    public SeekPaginationExtension(long lastLogicalResourceId) {
+        this.lastLogicalResourceId = lastLogicalResourceId;
+    }
+
+    @Override
+    public <T> T visit(T query, SearchQueryVisitor<T> visitor) throws FHIRPersistenceException {
+        return visitor.addSeekFilter(query, lastLogicalResourceId);
+    }
+}
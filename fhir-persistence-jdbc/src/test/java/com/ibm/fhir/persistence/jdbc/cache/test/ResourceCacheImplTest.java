@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.cache.CacheManager;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.persistence.jdbc.cache.LocalResourceCacheInvalidationChannel;
+import com.ibm.fhir.persistence.jdbc.cache.ResourceCacheImpl;
+
+/**
+ * Unit tests for {@link ResourceCacheImpl}
+ */
+public class ResourceCacheImplTest {
+
+    @Test
+    public void testCommit() {
+        ResourceCacheImpl cache = new ResourceCacheImpl("default", "commit", 100, new LocalResourceCacheInvalidationChannel());
+        Patient v1 = patient("p1", 1);
+        cache.putCurrentVersion("Patient", "p1", 1, v1, cache.getInvalidationStamp());
+        assertSame(cache.getCurrentVersion("Patient", "p1"), v1);
+        assertSame(cache.getVersion("Patient", "p1", 1), v1);
+
+        // Changes made by the current transaction bypass the cache until it commits
+        cache.addPendingInvalidation("Patient", "p1", false);
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+        cache.putCurrentVersion("Patient", "p1", 2, patient("p1", 2), cache.getInvalidationStamp());
+        assertNull(cache.getVersion("Patient", "p1", 2));
+
+        cache.updateSharedMaps();
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+
+        // Versions don't change, so they survive the update
+        assertSame(cache.getVersion("Patient", "p1", 1), v1);
+        assertNull(cache.getVersion("Patient", "p1", 2));
+
+        assertEquals(cache.getHitCount(), 3);
+        assertEquals(cache.getMissCount(), 4);
+        assertEquals(CacheManager.getCacheStats(cache.getCacheName()).hitCount(), 3);
+        cache.close();
+    }
+
+    @Test
+    public void testRollback() {
+        ResourceCacheImpl cache = new ResourceCacheImpl("default", "rollback", 100, new LocalResourceCacheInvalidationChannel());
+        Patient v1 = patient("p1", 1);
+        cache.putCurrentVersion("Patient", "p1", 1, v1, cache.getInvalidationStamp());
+
+        cache.addPendingInvalidation("Patient", "p1", false);
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+
+        // The rolled back change never reaches the shared cache
+        cache.clearLocalMaps();
+        assertSame(cache.getCurrentVersion("Patient", "p1"), v1);
+        cache.close();
+    }
+
+    @Test
+    public void testStaleRead() {
+        ResourceCacheImpl cache = new ResourceCacheImpl("default", "stale", 100, new LocalResourceCacheInvalidationChannel());
+
+        // The resource is updated and committed by another thread after we read it
+        long stamp = cache.getInvalidationStamp();
+        cache.invalidate("default", "stale", "Patient", "p1", false);
+        cache.putCurrentVersion("Patient", "p1", 1, patient("p1", 1), stamp);
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+        cache.close();
+    }
+
+    @Test
+    public void testErase() {
+        ResourceCacheImpl cache = new ResourceCacheImpl("default", "erase", 100, new LocalResourceCacheInvalidationChannel());
+        cache.putVersion("Patient", "p1", 1, patient("p1", 1));
+        cache.putCurrentVersion("Patient", "p1", 2, patient("p1", 2), cache.getInvalidationStamp());
+        Patient other = patient("p2", 1);
+        cache.putVersion("Patient", "p2", 1, other);
+
+        cache.addPendingInvalidation("Patient", "p1", true);
+        cache.updateSharedMaps();
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+        assertNull(cache.getVersion("Patient", "p1", 1));
+        assertNull(cache.getVersion("Patient", "p1", 2));
+        assertSame(cache.getVersion("Patient", "p2", 1), other);
+        cache.close();
+    }
+
+    @Test
+    public void testInvalidationChannel() {
+        // Nodes sharing a channel. node1 and node2 are for the same datastore but, as on
+        // separate JVMs, don't share the underlying caches. node3 is for another datastore.
+        LocalResourceCacheInvalidationChannel channel = new LocalResourceCacheInvalidationChannel();
+        ResourceCacheImpl node1 = new ResourceCacheImpl("default", "channel", 100, channel);
+        CacheManager.removeCache(node1.getCacheName());
+        CacheManager.removeCache(node1.getCacheName() + ".current");
+        ResourceCacheImpl node2 = new ResourceCacheImpl("default", "channel", 100, channel);
+        ResourceCacheImpl node3 = new ResourceCacheImpl("default", "other", 100, channel);
+
+        Patient v1 = patient("p1", 1);
+        node1.putCurrentVersion("Patient", "p1", 1, v1, node1.getInvalidationStamp());
+        node2.putCurrentVersion("Patient", "p1", 1, v1, node2.getInvalidationStamp());
+        node3.putCurrentVersion("Patient", "p1", 1, v1, node3.getInvalidationStamp());
+
+        node1.addPendingInvalidation("Patient", "p1", false);
+        node1.updateSharedMaps();
+
+        // Only the caches for the same tenant/datastore are invalidated
+        assertNull(node1.getCurrentVersion("Patient", "p1"));
+        assertNull(node2.getCurrentVersion("Patient", "p1"));
+        assertSame(node3.getCurrentVersion("Patient", "p1"), v1);
+
+        node1.close();
+        node2.close();
+        node3.close();
+    }
+
+    private Patient patient(String logicalId, int version) {
+        return Patient.builder()
+                .id(logicalId)
+                .meta(Meta.builder().versionId(Id.of(Integer.toString(version))).build())
+                .build();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.cache.StripedLRUCache;
+
+/**
+ * Unit tests for {@link StripedLRUCache}
+ */
+public class StripedLRUCacheTest {
+
+    @Test
+    public void testSingleStripe() {
+        // with a single stripe, the behavior is the same as LRUCache
+        StripedLRUCache<String,Long> cache = new StripedLRUCache<>(2, 1);
+        assertEquals(cache.getStripeCount(), 1);
+
+        LinkedHashMap<String,Long> updates = new LinkedHashMap<>();
+        updates.put("system1", 1L);
+        updates.put("system2", 2L);
+        cache.update(updates);
+        updates.clear();
+        assertEquals((long)cache.get("system1"), 1L);
+        assertEquals((long)cache.get("system2"), 2L);
+
+        // Add a new value to the updates. Should push out system1
+        updates.put("system3", 3L);
+        cache.update(updates);
+        updates.clear();
+        assertNull(cache.get("system1"));
+        assertEquals((long)cache.get("system2"), 2L);
+        assertEquals((long)cache.get("system3"), 3L);
+
+        // refresh system2 then add system1, should lose system3
+        updates.put("system2", 2L);
+        updates.put("system1", 1L);
+        cache.update(updates);
+        assertEquals((long)cache.get("system1"), 1L);
+        assertEquals((long)cache.get("system2"), 2L);
+        assertNull(cache.get("system3"));
+    }
+
+    @Test
+    public void testBounded() {
+        StripedLRUCache<Integer,Integer> cache = new StripedLRUCache<>(100, 8);
+        assertEquals(cache.getStripeCount(), 8);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 100);
+
+        // the most recent entries are still there
+        assertEquals((int)cache.get(999), 999);
+        cache.clear();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testStripeCount() {
+        // rounded up to a power of two
+        assertEquals(new StripedLRUCache<>(1000, 5).getStripeCount(), 8);
+        // limited so that each stripe holds at least one entry
+        assertEquals(new StripedLRUCache<>(3, 64).getStripeCount(), 2);
+        assertEquals(new StripedLRUCache<>(1, 64).getStripeCount(), 1);
+    }
+}
@@ -30,6 +30,7 @@ import com.ibm.fhir.persistence.jdbc.dao.EraseResourceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IIdNameCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
 import com.ibm.fhir.schema.app.util.CommonUtil;
 
 /**
@@ -233,6 +234,11 @@ public class EraseTestMain {
             return null;
         }
 
+        @Override
+        public IResourceCache getResourceCache() {
+            return null;
+        }
+
         @Override
         public void transactionCommitted() {
             // No Operation
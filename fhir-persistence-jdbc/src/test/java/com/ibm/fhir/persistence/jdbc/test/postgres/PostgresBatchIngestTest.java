@@ -0,0 +1,329 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.postgres;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.common.JdbcConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.database.utils.postgres.PostgresPropertyAdapter;
+import com.ibm.fhir.database.utils.postgres.PostgresTranslator;
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Identifier;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.FHIRDeviceStatus;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.FHIRPersistenceJDBCCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.IdNameCache;
+import com.ibm.fhir.persistence.jdbc.cache.NameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+import com.ibm.fhir.schema.control.FhirSchemaConstants;
+
+/**
+ * Checks that the set-based PostgreSQL batch insert writes the same rows as the one-at-a-time create and update.
+ * Each resource stored by createBatch/updateBatch is compared with an equivalent resource stored by create/update:
+ * the rows of logical_resources, the resources and logical_resources tables of the resource type, the parameter
+ * tables and resource_change_log must be the same, apart from the generated ids, the logical id, the timestamps,
+ * the payload and the fingerprint, which are checked for consistency instead.
+ *
+ * <p>Not part of the default suite; run against a PostgreSQL database with a deployed FHIR data schema (see
+ * test.postgres.properties) using:
+ * <pre>
+ * mvn test -f fhir-persistence-jdbc -Dsurefire.suiteXmlFiles=src/test/java/testng-postgres.xml
+ * </pre>
+ */
+public class PostgresBatchIngestTest extends AbstractPersistenceTest {
+    private static final String CODE_SYSTEM = "http://example.com/fhir/postgres-batch-ingest-test";
+
+    // The columns which are expected to differ between equivalent resources
+    private static final Set<String> GENERATED_COLUMNS = new HashSet<>(Arrays.asList(
+        "logical_resource_id", "logical_id", "resource_id", "current_resource_id", "last_updated", "change_tstamp",
+        "data", "resource_fingerprint"));
+
+    // The tables shared by all resource types which hold rows of a logical resource
+    private static final List<String> COMMON_TABLES = Arrays.asList(
+        FhirSchemaConstants.LOGICAL_RESOURCES, FhirSchemaConstants.STR_VALUES, FhirSchemaConstants.DATE_VALUES,
+        FhirSchemaConstants.RESOURCE_TOKEN_REFS, FhirSchemaConstants.LOGICAL_RESOURCE_PROFILES,
+        FhirSchemaConstants.LOGICAL_RESOURCE_TAGS, FhirSchemaConstants.LOGICAL_RESOURCE_SECURITY,
+        FhirSchemaConstants.LOGICAL_RESOURCE_COMPARTMENTS, FhirSchemaConstants.RESOURCE_CHANGE_LOG);
+
+    // test properties
+    private Properties testProps;
+
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+
+    private FHIRPersistenceJDBCCache cache;
+
+    private String schemaName;
+
+    private Device single;
+    private final List<Device> batch = new ArrayList<>();
+
+    public PostgresBatchIngestTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.postgres.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        schemaName = testProps.getProperty("schemaName").toLowerCase();
+        JdbcConnectionProvider cp = new JdbcConnectionProvider(new PostgresTranslator(), new PostgresPropertyAdapter(testProps));
+        this.connectionPool = new PoolConnectionProvider(cp, 1);
+        ICommonTokenValuesCache rrc = new CommonTokenValuesCacheImpl(100, 100, 100);
+        cache = new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new IdNameCache<Integer>(), new NameIdCache<Integer>(), rrc);
+    }
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool, cache);
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+
+    private static Device device(String code) {
+        return Device.builder()
+                .meta(Meta.builder()
+                    .tag(Coding.builder().system(Uri.of(CODE_SYSTEM)).code(Code.of("tag")).build())
+                    .profile(Canonical.of(CODE_SYSTEM + "/StructureDefinition/profile"))
+                    .build())
+                .identifier(Identifier.builder().system(Uri.of(CODE_SYSTEM)).value(string(code)).build())
+                .status(FHIRDeviceStatus.ACTIVE)
+                .manufacturer(string("Manufacturer " + code))
+                .url(Uri.of(CODE_SYSTEM + "/" + code))
+                .patient(Reference.builder().reference(string("Patient/postgres-batch-ingest-test")).build())
+                .type(CodeableConcept.builder()
+                    .coding(Coding.builder().system(Uri.of(CODE_SYSTEM)).code(Code.of(code)).build())
+                    .build())
+                .build();
+    }
+
+    private List<FHIRPersistenceContext> contexts(int count) throws Exception {
+        List<FHIRPersistenceContext> contexts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contexts.add(getDefaultPersistenceContext());
+        }
+        return contexts;
+    }
+
+    @Test
+    public void testCreateBatch() throws Exception {
+        single = persistence.create(getDefaultPersistenceContext(), device("create")).getResource();
+
+        List<Device> devices = Arrays.asList(device("create"), device("create"), device("create"));
+        List<SingleResourceResult<Device>> results = persistence.createBatch(contexts(devices.size()), devices);
+        assertEquals(results.size(), devices.size());
+        for (SingleResourceResult<Device> result : results) {
+            assertTrue(result.isSuccess());
+            batch.add(result.getResource());
+        }
+
+        assertSameRows();
+    }
+
+    @Test(dependsOnMethods = { "testCreateBatch" })
+    public void testUpdateBatch() throws Exception {
+        single = persistence.update(getDefaultPersistenceContext(), single.getId(), updated(single, "update")).getResource();
+
+        List<Device> devices = new ArrayList<>();
+        for (Device device : batch) {
+            devices.add(updated(device, "update"));
+        }
+        List<SingleResourceResult<Device>> results = persistence.updateBatch(contexts(devices.size()), devices);
+        assertEquals(results.size(), devices.size());
+        batch.clear();
+        for (SingleResourceResult<Device> result : results) {
+            assertTrue(result.isSuccess());
+            assertEquals(result.getResource().getMeta().getVersionId().getValue(), "2");
+            batch.add(result.getResource());
+        }
+
+        assertSameRows();
+    }
+
+    @Test(dependsOnMethods = { "testUpdateBatch" })
+    public void testUpdateBatchWithRepeatedResource() throws Exception {
+        // The batch is split where a resource appears again, so each of its versions is stored in turn
+        single = persistence.update(getDefaultPersistenceContext(), single.getId(), updated(single, "first")).getResource();
+        single = persistence.update(getDefaultPersistenceContext(), single.getId(), updated(single, "second")).getResource();
+
+        Device device = batch.get(0);
+        List<Device> devices = Arrays.asList(updated(device, "first"), updated(device, "second"));
+        List<SingleResourceResult<Device>> results = persistence.updateBatch(contexts(devices.size()), devices);
+        assertEquals(results.size(), devices.size());
+        for (SingleResourceResult<Device> result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(results.get(1).getResource().getMeta().getVersionId().getValue(), "4");
+        batch.clear();
+        batch.add(results.get(1).getResource());
+
+        assertSameRows();
+    }
+
+    private static Device updated(Device device, String code) {
+        return device(code).toBuilder().id(device.getId()).build();
+    }
+
+    /**
+     * Compare the rows of each of the batch resources with the rows of the single resource
+     */
+    private void assertSameRows() throws Exception {
+        // Within the transaction of the test, so this is the connection used by the persistence layer
+        try (Connection connection = connectionPool.getConnection()) {
+            List<String> tables = readTables(connection);
+            long singleId = readLogicalResourceId(connection, single);
+            Map<String, List<String>> expected = readRows(connection, tables, singleId);
+            assertConsistent(connection, singleId);
+            assertFalse(expected.get("resource_change_log").isEmpty());
+
+            for (Device device : batch) {
+                long logicalResourceId = readLogicalResourceId(connection, device);
+                assertEquals(readRows(connection, tables, logicalResourceId), expected, device.getId());
+                assertConsistent(connection, logicalResourceId);
+            }
+        }
+    }
+
+    /**
+     * Read the names of the tables which hold rows of a Device logical resource
+     */
+    private List<String> readTables(Connection connection) throws SQLException {
+        final String SQL = "SELECT DISTINCT c.table_name FROM information_schema.columns c "
+                + "JOIN information_schema.tables t ON t.table_schema = c.table_schema AND t.table_name = c.table_name "
+                + "WHERE c.table_schema = ? AND c.column_name = 'logical_resource_id' AND t.table_type = 'BASE TABLE' "
+                + "ORDER BY c.table_name";
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(SQL)) {
+            ps.setString(1, schemaName);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                String table = rs.getString(1);
+                if (table.startsWith("device_") || COMMON_TABLES.contains(table.toUpperCase())) {
+                    tables.add(table);
+                }
+            }
+        }
+        assertTrue(tables.contains("device_resources"));
+        return tables;
+    }
+
+    private long readLogicalResourceId(Connection connection, Resource resource) throws SQLException {
+        final String SQL = "SELECT logical_resource_id FROM " + schemaName + ".device_logical_resources WHERE logical_id = ?";
+        try (PreparedStatement ps = connection.prepareStatement(SQL)) {
+            ps.setString(1, resource.getId());
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next(), resource.getId());
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Read the rows of the logical resource from each of the tables, leaving out the generated columns
+     * @return the sorted rows of each table, by table name
+     */
+    private Map<String, List<String>> readRows(Connection connection, List<String> tables, long logicalResourceId) throws SQLException {
+        Map<String, List<String>> result = new TreeMap<>();
+        for (String table : tables) {
+            List<String> rows = new ArrayList<>();
+            final String SQL = "SELECT * FROM " + schemaName + "." + table + " WHERE logical_resource_id = ?";
+            try (PreparedStatement ps = connection.prepareStatement(SQL)) {
+                ps.setLong(1, logicalResourceId);
+                ResultSet rs = ps.executeQuery();
+                ResultSetMetaData md = rs.getMetaData();
+                while (rs.next()) {
+                    Map<String, String> row = new TreeMap<>();
+                    for (int i = 1; i <= md.getColumnCount(); i++) {
+                        String column = md.getColumnName(i).toLowerCase();
+                        if (!GENERATED_COLUMNS.contains(column)) {
+                            row.put(column, String.valueOf(rs.getObject(i)));
+                        }
+                    }
+                    rows.add(row.toString());
+                }
+            }
+            Collections.sort(rows);
+            result.put(table, rows);
+        }
+        return result;
+    }
+
+    /**
+     * Check the generated columns left out of the comparison: the current version is referenced by the resource
+     * type's logical_resources table, the timestamps agree, and each change log row refers to a stored version
+     */
+    private void assertConsistent(Connection connection, long logicalResourceId) throws SQLException {
+        final String SQL = "SELECT lr.last_updated, xlr.last_updated, xr.last_updated, xlr.resource_fingerprint "
+                + "FROM " + schemaName + ".logical_resources lr "
+                + "JOIN " + schemaName + ".device_logical_resources xlr ON xlr.logical_resource_id = lr.logical_resource_id "
+                + "JOIN " + schemaName + ".device_resources xr ON xr.resource_id = xlr.current_resource_id "
+                + "AND xr.logical_resource_id = xlr.logical_resource_id AND xr.version_id = xlr.version_id "
+                + "WHERE lr.logical_resource_id = ?";
+        try (PreparedStatement ps = connection.prepareStatement(SQL)) {
+            ps.setLong(1, logicalResourceId);
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(rs.getTimestamp(2), rs.getTimestamp(1));
+            assertEquals(rs.getTimestamp(3), rs.getTimestamp(1));
+            assertNotNull(rs.getString(4));
+        }
+
+        final String CHANGES = "SELECT COUNT(*) FROM " + schemaName + ".resource_change_log c "
+                + "LEFT OUTER JOIN " + schemaName + ".device_resources xr ON xr.resource_id = c.resource_id "
+                + "AND xr.logical_resource_id = c.logical_resource_id AND xr.version_id = c.version_id "
+                + "AND xr.last_updated = c.change_tstamp "
+                + "WHERE c.logical_resource_id = ? AND xr.resource_id IS NULL";
+        try (PreparedStatement ps = connection.prepareStatement(CHANGES)) {
+            ps.setLong(1, logicalResourceId);
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(rs.getInt(1), 0);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.util.PayloadCompression;
+
+/**
+ * Unit test for {@link PayloadCompression}
+ */
+public class PayloadCompressionTest {
+    private static final String PAYLOAD = "{\"resourceType\":\"Observation\",\"id\":\"17a5d1c7b2e-5c1b1f6a-1a5c-4fa1-9d5e-0c0ed3f0f1c2\","
+            + "\"meta\":{\"versionId\":\"1\",\"lastUpdated\":\"2021-06-01T12:00:00.000Z\"},\"status\":\"final\","
+            + "\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8867-4\",\"display\":\"Heart rate\"}]},"
+            + "\"subject\":{\"reference\":\"Patient/17a5d1c7b2e-0f7c2ae4-5c0e-4c6b-9c4b-6c6a0d1b8f2e\"},"
+            + "\"effectiveDateTime\":\"2021-06-01T11:58:00Z\","
+            + "\"valueQuantity\":{\"value\":72,\"unit\":\"beats/minute\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"/min\"}}";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (PayloadCompression compression : PayloadCompression.values()) {
+            byte[] compressed = compress(compression, PAYLOAD);
+            assertEquals(decompress(compressed), PAYLOAD, compression.value());
+        }
+    }
+
+    @Test
+    public void testReadLegacyGzip() throws IOException {
+        // rows written before the codec was configurable are plain gzip streams
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(decompress(bytes.toByteArray()), PAYLOAD);
+        assertEquals(compress(PayloadCompression.GZIP, PAYLOAD), bytes.toByteArray());
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        int deflate = compress(PayloadCompression.DEFLATE, PAYLOAD).length;
+        int deflateDict = compress(PayloadCompression.DEFLATE_DICT, PAYLOAD).length;
+        assertTrue(deflateDict < deflate, deflateDict + " >= " + deflate);
+    }
+
+    @Test
+    public void testFrom() {
+        assertEquals(PayloadCompression.from("deflate-dict"), PayloadCompression.DEFLATE_DICT);
+        assertEquals(PayloadCompression.from("GZIP"), PayloadCompression.GZIP);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFromInvalid() {
+        PayloadCompression.from("lz4");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testUnrecognizedHeader() throws IOException {
+        decompress(new byte[] { 0x7f, 0x00 });
+    }
+
+    private byte[] compress(PayloadCompression compression, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compression.compress(bytes)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private String decompress(byte[] value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = PayloadCompression.decompress(new ByteArrayInputStream(value))) {
+            byte[] buffer = new byte[256];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, len);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
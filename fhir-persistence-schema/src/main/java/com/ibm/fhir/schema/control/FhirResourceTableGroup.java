@@ -52,6 +52,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE_HIGH;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE_LOW;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_VERSION_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_FINGERPRINT;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_FINGERPRINT_BYTES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TOKEN_REFS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPES;
@@ -192,7 +194,7 @@ public class FhirResourceTableGroup {
         // things sensible.
         Table.Builder builder = Table.builder(schemaName, tableName)
                 .setTenantColumnName(MT_ID)
-                .setVersion(FhirSchemaVersion.V0012.vid()) // V0011: is_deleted and last_updated, V0012: version_id
+                .setVersion(FhirSchemaVersion.V0017.vid()) // V0011: is_deleted and last_updated, V0012: version_id, V0017: resource_fingerprint
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .addBigIntColumn(LOGICAL_RESOURCE_ID, false)
                 .addVarcharColumn(LOGICAL_ID, LOGICAL_ID_BYTES, false)
@@ -200,6 +202,7 @@ public class FhirResourceTableGroup {
                 .addCharColumn(IS_DELETED, 1, false, "'X'")
                 .addTimestampColumn(LAST_UPDATED, true) // nullable has to match the migration add column
                 .addIntColumn(VERSION_ID, true) // nullable has to match the migration add column
+                .addVarcharColumn(RESOURCE_FINGERPRINT, RESOURCE_FINGERPRINT_BYTES, true) // nullable has to match the migration add column
                 .addPrimaryKey(tableName + "_PK", LOGICAL_RESOURCE_ID)
                 .addForeignKeyConstraint("FK_" + tableName + "_LRID", schemaName, LOGICAL_RESOURCES, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
@@ -223,7 +226,7 @@ public class FhirResourceTableGroup {
                         statements.add(new DropTable(schemaName, prefix + "_TOKEN_VALUES"));
                     }
 
-                    if (priorVersion < FhirSchemaVersion.V0012.vid()) {
+                    if (priorVersion < FhirSchemaVersion.V0017.vid()) {
                         addLogicalResourcesMigration(statements, tableName, priorVersion);
                     }
 
@@ -251,6 +254,7 @@ public class FhirResourceTableGroup {
      * V0010: IS_DELETED is added to each xxx_LOGICAL_RESOURCES.
      * V0011: LAST_UPDATED is added to each xxx_LOGICAL_RESOURCES.
      * V0012: VERSION_ID is added to each xxx_LOGICAL_RESOURCES.
+     * V0017: RESOURCE_FINGERPRINT is added to each xxx_LOGICAL_RESOURCES.
      *
      * Note that we don't attempt to perform the data migration here because
      * migration for Db2 multi-tenant schemas requires iterating over each
@@ -283,6 +287,12 @@ public class FhirResourceTableGroup {
             builder.addIntColumn(VERSION_ID, true);
         }
 
+        if (priorVersion < FhirSchemaVersion.V0017.vid()) {
+            // Add the RESOURCE_FINGERPRINT column if needed. Existing rows are left null
+            // and get a fingerprint the next time the resource is written
+            builder.addVarcharColumn(RESOURCE_FINGERPRINT, RESOURCE_FINGERPRINT_BYTES, true);
+        }
+
         List<ColumnBase> columns = builder.buildColumns();
         if (columns.size() > 0) {
             for (ColumnBase column : columns) {
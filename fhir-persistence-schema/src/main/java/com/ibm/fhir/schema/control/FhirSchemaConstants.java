@@ -109,6 +109,8 @@ public class FhirSchemaConstants {
     public static final String LAST_UPDATED = "LAST_UPDATED";
     public static final String PARAMETER_HASH = "PARAMETER_HASH";
     public static final int PARAMETER_HASH_BYTES = 44; // For SHA-256 encoded as Base64
+    public static final String RESOURCE_FINGERPRINT = "RESOURCE_FINGERPRINT";
+    public static final int RESOURCE_FINGERPRINT_BYTES = 89; // salt:hash, each 256 bits encoded as Base64
     public static final String PARAMETER_NAME = "PARAMETER_NAME";
     public static final String PARAMETER_NAME_ID = "PARAMETER_NAME_ID";
     public static final String STR_VALUE = "STR_VALUE";
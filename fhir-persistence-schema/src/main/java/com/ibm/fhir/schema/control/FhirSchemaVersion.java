@@ -35,6 +35,7 @@ public enum FhirSchemaVersion {
     ,V0014(14, "whole-system search and canonical references", true)
     ,V0015(15, "issue-2155 add parameter hash to bypass update during reindex", true)
     ,V0016(16, "issue-1921 add dedicated common_token_values mapping table for security", true)
+    ,V0017(17, "add RESOURCE_FINGERPRINT to each xxx_LOGICAL_RESOURCES table to detect no-op updates", false)
     ;
 
     // The version number recorded in the VERSION_HISTORY
@@ -22,6 +22,7 @@
 --   p_is_deleted:  the soft delete flag
 --   p_version:     the intended version id for this resource
 --   p_parameter_hash_b64: Base64 encoded hash of parameter values
+--   p_resource_fingerprint: salt:hash fingerprint of the resource content, used to detect no-op updates
 --   o_logical_resource_id: output field returning the newly assigned logical_resource_id value
 --   o_resource_id: output field returning the newly assigned resource_id value
 --   o_current_parameter_hash: Base64 current parameter hash if existing resource
@@ -36,6 +37,7 @@
       IN p_is_deleted                      CHAR(  1),
       IN p_version                          INT,
       IN p_parameter_hash_b64           VARCHAR(44 OCTETS),
+      IN p_resource_fingerprint         VARCHAR(89 OCTETS),
       OUT o_logical_resource_id          BIGINT,
       OUT o_resource_row_id              BIGINT,
       OUT o_current_parameter_hash      VARCHAR(44 OCTETS)
@@ -107,9 +109,9 @@ BEGIN
       -- we created the logical resource and therefore we already own the lock. So now we can
       -- safely create the corresponding record in the resource-type-specific logical_resources table
       PREPARE stmt FROM
-         'INSERT INTO ' || v_schema_name || '.' || p_resource_type || '_logical_resources (mt_id, logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id) '
-      || '     VALUES (?, ?, ?, ?, ?, ?, ?)';
-      EXECUTE stmt USING {{ADMIN_SCHEMA_NAME}}.sv_tenant_id, v_logical_resource_id, p_logical_id, p_is_deleted, p_last_updated, p_version, v_resource_id;
+         'INSERT INTO ' || v_schema_name || '.' || p_resource_type || '_logical_resources (mt_id, logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id, resource_fingerprint) '
+      || '     VALUES (?, ?, ?, ?, ?, ?, ?, ?)';
+      EXECUTE stmt USING {{ADMIN_SCHEMA_NAME}}.sv_tenant_id, v_logical_resource_id, p_logical_id, p_is_deleted, p_last_updated, p_version, v_resource_id, p_resource_fingerprint;
       SET v_new_resource = 1;
     END IF;
   END IF;
@@ -185,8 +187,8 @@ BEGIN
     -- As this is an existing logical resource, we need to update the xx_logical_resource values to match
     -- the values of the current resource. For new resources, these are added by the insert so we don't
     -- need to update them here.
-    PREPARE stmt FROM 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ? WHERE logical_resource_id = ?';
-    EXECUTE stmt USING v_resource_id, p_is_deleted, p_last_updated, p_version, v_logical_resource_id;
+    PREPARE stmt FROM 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = ?, is_deleted = ?, last_updated = ?, version_id = ?, resource_fingerprint = ? WHERE logical_resource_id = ?';
+    EXECUTE stmt USING v_resource_id, p_is_deleted, p_last_updated, p_version, p_resource_fingerprint, v_logical_resource_id;
 
     -- For V0014 we also store is_deleted and last_updated at the logical_resource level
     PREPARE stmt FROM 'UPDATE ' || v_schema_name || '.logical_resources SET is_deleted = ?, last_updated = ?, parameter_hash = ? WHERE logical_resource_id = ?';
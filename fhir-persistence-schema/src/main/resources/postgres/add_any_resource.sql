@@ -19,6 +19,7 @@
 --   p_last_updated the last_updated time given by the FHIR server
 --   p_is_deleted: the soft delete flag
 --   p_version_id: the intended new version id of the resource (matching the JSON payload)
+--   p_resource_fingerprint: salt:hash fingerprint of the resource content, used to detect no-op updates
 --   o_resource_id: output field returning the newly assigned resource_id value
 -- Exceptions:
 --   SQLSTATE 99001: on version conflict (concurrency)
@@ -32,6 +33,7 @@
       IN p_source_key                    VARCHAR( 64),
       IN p_version                           INT,
       IN p_parameter_hash_b64            VARCHAR( 44),
+      IN p_resource_fingerprint          VARCHAR( 89),
       OUT o_logical_resource_id           BIGINT,
       OUT o_current_parameter_hash       VARCHAR( 44))
     LANGUAGE plpgsql
@@ -89,8 +91,8 @@ BEGIN
     THEN
       -- we created the logical resource and therefore we already own the lock. So now we can
       -- safely create the corresponding record in the resource-type-specific logical_resources table
-      EXECUTE 'INSERT INTO ' || v_schema_name || '.' || p_resource_type || '_logical_resources (logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id) '
-      || '     VALUES ($1, $2, $3, $4, $5, $6)' USING v_logical_resource_id, p_logical_id, p_is_deleted, p_last_updated, p_version, v_resource_id;
+      EXECUTE 'INSERT INTO ' || v_schema_name || '.' || p_resource_type || '_logical_resources (logical_resource_id, logical_id, is_deleted, last_updated, version_id, current_resource_id, resource_fingerprint) '
+      || '     VALUES ($1, $2, $3, $4, $5, $6, $7)' USING v_logical_resource_id, p_logical_id, p_is_deleted, p_last_updated, p_version, v_resource_id, p_resource_fingerprint;
       v_new_resource := 1;
     ELSE
       v_logical_resource_id := t_logical_resource_id;
@@ -167,8 +169,8 @@ BEGIN
     -- As this is an existing logical resource, we need to update the xx_logical_resource values to match
     -- the values of the current resource. For new resources, these are added by the insert so we don't
     -- need to update them here.
-    EXECUTE 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = $1, is_deleted = $2, last_updated = $3, version_id = $4 WHERE logical_resource_id = $5'
-      USING v_resource_id, p_is_deleted, p_last_updated, p_version, v_logical_resource_id;
+    EXECUTE 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = $1, is_deleted = $2, last_updated = $3, version_id = $4, resource_fingerprint = $5 WHERE logical_resource_id = $6'
+      USING v_resource_id, p_is_deleted, p_last_updated, p_version, p_resource_fingerprint, v_logical_resource_id;
 
     -- For V0014 we now also store is_deleted and last_updated values at the whole-system logical_resources level
     EXECUTE 'UPDATE ' || v_schema_name || '.logical_resources SET is_deleted = $1, last_updated = $2, parameter_hash = $3 WHERE logical_resource_id = $4'
@@ -7,15 +7,20 @@
 package com.ibm.fhir.persistence;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.code.IssueSeverity;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.erase.EraseDTO;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
 
 /**
  * This interface defines the contract between the FHIR Server's REST API layer and the underlying
@@ -74,6 +79,77 @@ public interface FHIRPersistence {
      */
     <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId, T resource) throws FHIRPersistenceException;
 
+    /**
+     * Stores a batch of new FHIR Resources in the datastore. Implementations may insert the resources together
+     * using set-based statements; the default implementation creates them one at a time using
+     * {@link #create(FHIRPersistenceContext, Resource)}.
+     *
+     * <p>An entry which can't be stored on its own is reported by an unsuccessful SingleResourceResult with an
+     * OperationOutcome, without failing the rest of the batch.
+     *
+     * @param contexts the FHIRPersistenceContext instance associated with each of the resources, in the same order
+     *        as the resources
+     * @param resources the FHIR Resource instances to be created in the datastore
+     * @return a SingleResourceResult for each of the resources, in the same order as the resources
+     * @throws FHIRPersistenceException if the batch as a whole could not be stored; none of its resources
+     *         should be considered stored
+     */
+    default <T extends Resource> List<SingleResourceResult<T>> createBatch(List<FHIRPersistenceContext> contexts, List<T> resources)
+            throws FHIRPersistenceException {
+        List<SingleResourceResult<T>> results = new ArrayList<>(resources.size());
+        for (int i = 0; i < resources.size(); i++) {
+            try {
+                results.add(create(contexts.get(i), resources.get(i)));
+            } catch (FHIRPersistenceException e) {
+                results.add(new SingleResourceResult.Builder<T>()
+                        .success(false)
+                        .outcome(FHIRUtil.buildOperationOutcome(e, false))
+                        .build());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Updates a batch of FHIR Resources by storing a new version of each in the datastore. The logical id of each
+     * resource is taken from its id element. Implementations may insert the resources together using set-based
+     * statements; the default implementation updates them one at a time using
+     * {@link #update(FHIRPersistenceContext, String, Resource)}.
+     *
+     * <p>An entry which can't be stored on its own (for example, because it doesn't exist and update/create is
+     * disabled) is reported by an unsuccessful SingleResourceResult with an OperationOutcome, without failing the
+     * rest of the batch.
+     *
+     * @param contexts the FHIRPersistenceContext instance associated with each of the resources, in the same order
+     *        as the resources; as for {@link #update(FHIRPersistenceContext, String, Resource)}, the previous version
+     *        set in its persistence event, if any, is used as the existing version of the resource
+     * @param resources the new contents of the FHIR Resources to be stored
+     * @return a SingleResourceResult for each of the resources, in the same order as the resources
+     * @throws FHIRPersistenceException if the batch as a whole could not be stored; none of its resources
+     *         should be considered stored
+     */
+    default <T extends Resource> List<SingleResourceResult<T>> updateBatch(List<FHIRPersistenceContext> contexts, List<T> resources)
+            throws FHIRPersistenceException {
+        List<SingleResourceResult<T>> results = new ArrayList<>(resources.size());
+        for (int i = 0; i < resources.size(); i++) {
+            T resource = resources.get(i);
+            try {
+                results.add(update(contexts.get(i), resource.getId(), resource));
+            } catch (FHIRPersistenceResourceNotFoundException e) {
+                results.add(new SingleResourceResult.Builder<T>()
+                        .success(false)
+                        .outcome(FHIRUtil.buildOperationOutcome(e.getMessage(), IssueType.NOT_FOUND, IssueSeverity.ERROR))
+                        .build());
+            } catch (FHIRPersistenceException e) {
+                results.add(new SingleResourceResult.Builder<T>()
+                        .success(false)
+                        .outcome(FHIRUtil.buildOperationOutcome(e, false))
+                        .build());
+            }
+        }
+        return results;
+    }
+
     /**
      * Deletes the specified FHIR Resource from the datastore.
      *
@@ -111,6 +187,36 @@ public interface FHIRPersistence {
      */
     MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) throws FHIRPersistenceException;
 
+    /**
+     * Returns true iff the persistence layer implementation supports streaming the payloads of search results
+     * through {@link #searchPayloads(FHIRPersistenceContext, Class, Function)}.
+     */
+    default boolean isSearchPayloadStreamingSupported() {
+        return false;
+    }
+
+    /**
+     * Performs a search like {@link #search(FHIRPersistenceContext, Class)}, but instead of parsing the resources in
+     * the page of results it hands the stored JSON payload of each one to the process function, in result order,
+     * as it is read from the datastore. The process function must consume the payload before returning. Result
+     * processing will be stopped if the process function returns Boolean FALSE.
+     *
+     * <p>Only the 'match' resources are processed, and they are not filtered, so the search context must not
+     * contain _elements, _summary, _include or _revinclude parameters. The total count, match count and paging
+     * information are set on the search context just as they are for {@link #search(FHIRPersistenceContext, Class)}.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @param process function to process each payload record
+     * @return a MultiResourceResult with no resources and/or an OperationOutcome with hints, warnings, or errors
+     *         related to the interaction
+     * @throws FHIRPersistenceException
+     */
+    default MultiResourceResult<Resource> searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            Function<ResourcePayload, Boolean> process) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Streaming search result payloads is not supported");
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports transactions.
      */
@@ -136,6 +242,29 @@ public interface FHIRPersistence {
         return false;
     }
 
+    /**
+     * Returns true iff the persistence layer implementation supports reading the metadata
+     * of the current version of a resource without its payload
+     */
+    default boolean isVersionMetadataSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the metadata of the current version of a resource, even if it is deleted, without
+     * reading and parsing the resource payload. This is cheaper than {@link #read(FHIRPersistenceContext, Class, String)}
+     * for callers which only need to know the current version of a resource.
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type
+     * @param logicalId the logical id of the resource
+     * @return the metadata of the current version, or null if the resource does not exist
+     * @throws FHIRPersistenceException
+     */
+    default ResourceVersionMetadata readCurrentVersionMetadata(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            String logicalId) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Reading resource version metadata is not supported");
+    }
+
     /**
      * Generates a resource ID.
      *
@@ -167,6 +296,29 @@ public interface FHIRPersistence {
     int reindex(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, List<Long> indexIds,
         String resourceLogicalId) throws FHIRPersistenceException;
 
+    /**
+     * Reindexes up to maxCount resources in the current transaction. Implementations may claim the resources
+     * as a batch and process them concurrently; the default implementation reindexes them one at a time
+     * using {@link #reindex(FHIRPersistenceContext, OperationOutcome.Builder, Instant, List, String)}.
+     * @param context the FHIRPersistenceContext instance associated with the current request.
+     * @param operationOutcomeResult accumulate issues in this {@link OperationOutcome.Builder}
+     * @param tstamp only reindex resources with a reindex_tstamp less than this
+     * @param resourceLogicalId resourceType or resourceType/logicalId value to limit the resources to reindex, or null
+     * @param maxCount the maximum number of resources to reindex
+     * @return count of the number of resources reindexed by this call; 0 when there is nothing left to do
+     * @throws FHIRPersistenceException
+     */
+    default int reindexBatch(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, Instant tstamp,
+        String resourceLogicalId, int maxCount) throws FHIRPersistenceException {
+        int result = 0;
+        int processed = 1;
+        while (result < maxCount && processed > 0) {
+            processed = reindex(context, operationOutcomeResult, tstamp, null, resourceLogicalId);
+            result += processed;
+        }
+        return result;
+    }
+
     /**
      * Special function for high speed export of resource payloads. The process
      * function must process the InputStream before returning. Result processing
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.time.Instant;
+
+import com.ibm.fhir.model.util.SaltHash;
+
+/**
+ * The metadata of the current version of a resource, which can be read
+ * without reading and parsing the resource payload
+ */
+public class ResourceVersionMetadata {
+
+    // The logical identifier of the resource
+    private final String logicalId;
+
+    // The version number of the current version
+    private final int versionId;
+
+    // True if the current version is a deletion marker
+    private final boolean deleted;
+
+    // The last_updated value of the current version
+    private final Instant lastUpdated;
+
+    // The fingerprint of the current version, if stored by the persistence layer
+    private final SaltHash fingerprint;
+
+    /**
+     * Public constructor
+     * @param logicalId
+     * @param versionId
+     * @param deleted
+     * @param lastUpdated
+     * @param fingerprint the stored fingerprint, or null if not available
+     */
+    public ResourceVersionMetadata(String logicalId, int versionId, boolean deleted, Instant lastUpdated, SaltHash fingerprint) {
+        this.logicalId = logicalId;
+        this.versionId = versionId;
+        this.deleted = deleted;
+        this.lastUpdated = lastUpdated;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the logicalId
+     */
+    public String getLogicalId() {
+        return logicalId;
+    }
+
+    /**
+     * @return the versionId
+     */
+    public int getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * @return true if the current version is a deletion marker
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return the lastUpdated
+     */
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * @return the fingerprint computed by the {@link com.ibm.fhir.model.visitor.ResourceFingerprintVisitor}
+     * when the version was stored, or null if not available
+     */
+    public SaltHash getFingerprint() {
+        return fingerprint;
+    }
+}
@@ -8,6 +8,7 @@ package com.ibm.fhir.persistence.interceptor;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
@@ -67,6 +68,7 @@ public class FHIRPersistenceEvent {
     private Resource fhirResource;
     private Resource prevFhirResource = null;
     private boolean  prevFhirResourceSet = false;
+    private Callable<Resource> prevFhirResourceLoader = null;
     private Map<String, Object> properties;
 
     /**
@@ -108,6 +110,17 @@ public class FHIRPersistenceEvent {
      * the existing version of the resource prior to the new resource being stored.
      */
     public Resource getPrevFhirResource() {
+        if (prevFhirResourceLoader != null) {
+            Callable<Resource> loader = prevFhirResourceLoader;
+            prevFhirResourceLoader = null;
+            try {
+                setPrevFhirResource(loader.call());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to read the previous version of the resource", e);
+            }
+        }
         return prevFhirResource;
     }
 
@@ -138,6 +151,19 @@ public class FHIRPersistenceEvent {
         return prevFhirResourceSet;
     }
 
+    /**
+     * Sets a loader for the "previous" resource associated with an "update" request, for when the
+     * server only read the metadata of the existing version. The loader is called the first time
+     * {@link #getPrevFhirResource()} is invoked, so the payload of the existing version is only
+     * read if an interceptor needs it. Until then, {@link #isPrevFhirResourceSet()} returns false.
+     * Interceptor implementations should *not* call this method.
+     *
+     * @param loader reads the existing most recent version of the resource
+     */
+    public void setPrevFhirResourceLoader(Callable<Resource> loader) {
+        this.prevFhirResourceLoader = loader;
+    }
+
     /**
      * Returns the resource type associated with the FHIR REST API request that triggered the
      * interceptor invocation.   This will be non-null for a
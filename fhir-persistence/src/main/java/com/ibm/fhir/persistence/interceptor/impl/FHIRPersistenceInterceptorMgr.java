@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.persistence.interceptor.impl;
 
+import java.lang.reflect.Method;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ServiceLoader;
@@ -83,6 +84,25 @@ public class FHIRPersistenceInterceptorMgr {
         interceptors.add(0, interceptor);
     }
 
+    /**
+     * Returns true if any registered interceptor overrides the 'afterSearch' method, and so may need to inspect
+     * or modify the resources in the search result bundle.
+     */
+    public boolean hasAfterSearchInterceptors() {
+        for (FHIRPersistenceInterceptor interceptor : interceptors) {
+            try {
+                Method afterSearch = interceptor.getClass().getMethod("afterSearch", FHIRPersistenceEvent.class);
+                if (!FHIRPersistenceInterceptor.class.equals(afterSearch.getDeclaringClass())) {
+                    return true;
+                }
+            } catch (NoSuchMethodException e) {
+                // not possible for an implementation of the interface, but err on the side of caution
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * The following methods will invoke the respective interceptor methods on each registered interceptor.
      */
@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.InitialContext;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * Runs a fixed number of independent tasks, identified by their index, on up to <code>parallelism</code> threads.
+ * The calling thread takes part in the work and the additional workers are obtained from the container's managed
+ * executor, so that they have access to the application's naming context; each worker runs with the calling thread's
+ * {@link FHIRRequestContext}. Each thread takes the next task which has not been claimed yet until there are none left
+ * or one of the tasks fails.
+ *
+ * <p>The request context instance is shared rather than copied, so the tasks may read it but must not modify it.
+ *
+ * <p>Request-scoped state (e.g. a persistence instance or a database connection) must not be shared between threads, so
+ * each thread runs its tasks with a context of its own: the calling thread uses the context passed by the caller, and
+ * each worker obtains its context from a {@link WorkerContext}. A worker which can't obtain a context just stops; its
+ * tasks are run by the other threads.
+ *
+ * <p>If no managed executor is available (e.g. outside of the server), the tasks are run one after another by the
+ * calling thread.
+ */
+public final class ConcurrentTaskRunner {
+    private static final Logger log = Logger.getLogger(ConcurrentTaskRunner.class.getName());
+
+    public static final String MANAGED_EXECUTOR_JNDI_NAME = "java:comp/DefaultManagedExecutorService";
+
+    private final String name;
+    private final int taskCount;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private volatile Exception failure;
+    private int completed;
+
+    private ConcurrentTaskRunner(String name, int taskCount) {
+        this.name = name;
+        this.taskCount = taskCount;
+    }
+
+    /**
+     * A task which runs with the context of the thread which claimed it
+     *
+     * @param <C> the type of the per-thread context
+     */
+    @FunctionalInterface
+    public interface Task<C> {
+        /**
+         * @param context the context of the current thread
+         * @param index the index of the task, from 0 to <code>taskCount - 1</code>
+         * @throws Exception if the task failed; no further tasks are started
+         */
+        void run(C context, int index) throws Exception;
+    }
+
+    /**
+     * A task which doesn't need a per-thread context
+     */
+    @FunctionalInterface
+    public interface IndexedTask {
+        /**
+         * @param index the index of the task, from 0 to <code>taskCount - 1</code>
+         * @throws Exception if the task failed; no further tasks are started
+         */
+        void run(int index) throws Exception;
+    }
+
+    /**
+     * Provides the context of a worker thread for the duration of its share of the work
+     *
+     * @param <C> the type of the per-thread context
+     */
+    @FunctionalInterface
+    public interface WorkerContext<C> {
+        /**
+         * Obtain a context, pass it to <code>work</code>, and release it once <code>work</code> returns.
+         * Called on the worker thread.
+         *
+         * @param work runs the tasks claimed by this worker with the given context
+         * @throws Exception if the context could not be obtained; the worker stops
+         */
+        void run(Consumer<C> work) throws Exception;
+    }
+
+    /**
+     * Run the tasks using the container's managed executor, if available
+     *
+     * @param name a description of the tasks used in log messages
+     * @param taskCount the number of tasks
+     * @param parallelism the maximum number of threads, including the calling thread
+     * @param task the task
+     * @return the number of threads used, including the calling thread
+     * @throws Exception the first failure of any of the tasks
+     */
+    public static int run(String name, int taskCount, int parallelism, IndexedTask task) throws Exception {
+        return run(name, taskCount, parallelism, null, work -> work.accept(null), (context, index) -> task.run(index));
+    }
+
+    /**
+     * Run the tasks using the container's managed executor, if available
+     *
+     * @param name a description of the tasks used in log messages
+     * @param taskCount the number of tasks
+     * @param parallelism the maximum number of threads, including the calling thread
+     * @param callerContext the context used by the calling thread
+     * @param workerContext provides the context of each worker thread
+     * @param task the task
+     * @return the number of threads used, including the calling thread
+     * @throws Exception the first failure of any of the tasks
+     */
+    public static <C> int run(String name, int taskCount, int parallelism, C callerContext, WorkerContext<C> workerContext,
+            Task<C> task) throws Exception {
+        ExecutorService executor = Math.min(parallelism, taskCount) > 1 ? getManagedExecutor() : null;
+        return run(executor, name, taskCount, parallelism, callerContext, workerContext, task);
+    }
+
+    /**
+     * Run the tasks using the given executor
+     *
+     * @param executor the executor used for the additional workers, or null to run the tasks on the calling thread only
+     * @param name a description of the tasks used in log messages
+     * @param taskCount the number of tasks
+     * @param parallelism the maximum number of threads, including the calling thread
+     * @param callerContext the context used by the calling thread
+     * @param workerContext provides the context of each worker thread
+     * @param task the task
+     * @return the number of threads used, including the calling thread
+     * @throws Exception the first failure of any of the tasks
+     */
+    public static <C> int run(ExecutorService executor, String name, int taskCount, int parallelism, C callerContext,
+            WorkerContext<C> workerContext, Task<C> task) throws Exception {
+        ConcurrentTaskRunner runner = new ConcurrentTaskRunner(name, taskCount);
+
+        int workerCount = executor != null ? Math.min(parallelism, taskCount) - 1 : 0;
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        List<Future<?>> workers = new ArrayList<>(Math.max(0, workerCount));
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(executor.submit(() -> runner.runWorker(requestContext, workerContext, task)));
+            }
+        } catch (RejectedExecutionException e) {
+            log.fine("Unable to start all " + name + " workers; continuing with " + workers.size() + " worker(s)");
+        }
+
+        // The calling thread works alongside the workers. Once every task has been claimed, we only wait for
+        // the claimed tasks to finish; a worker which hasn't started yet has nothing left to do.
+        runner.runTasks(callerContext, task);
+        try {
+            runner.awaitClaimed();
+        } catch (InterruptedException e) {
+            workers.forEach(w -> w.cancel(true));
+            throw e;
+        }
+        workers.forEach(w -> w.cancel(false));
+
+        if (runner.failure != null) {
+            throw runner.failure;
+        }
+        return workers.size() + 1;
+    }
+
+    /**
+     * Look up the container's managed executor
+     *
+     * @return the executor, or null if it is not available (e.g. outside of the server)
+     */
+    public static ExecutorService getManagedExecutor() {
+        try {
+            return (ExecutorService) new InitialContext().lookup(MANAGED_EXECUTOR_JNDI_NAME);
+        } catch (Exception e) {
+            log.fine("Managed executor not available; work will be done by the calling thread");
+            return null;
+        }
+    }
+
+    private <C> void runWorker(FHIRRequestContext requestContext, WorkerContext<C> workerContext, Task<C> task) {
+        // Don't obtain a context (e.g. a connection) if the other threads have already claimed every task
+        if (failure != null || nextIndex.get() >= taskCount) {
+            return;
+        }
+        try {
+            FHIRRequestContext.set(requestContext);
+            workerContext.run(context -> runTasks(context, task));
+        } catch (Exception e) {
+            log.log(Level.FINE, name + " worker stopped", e);
+        } finally {
+            FHIRRequestContext.remove();
+        }
+    }
+
+    private <C> void runTasks(C context, Task<C> task) {
+        int index;
+        while (failure == null && (index = nextIndex.getAndIncrement()) < taskCount) {
+            try {
+                task.run(context, index);
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                complete();
+            }
+        }
+    }
+
+    /**
+     * Wait until every task which has been claimed by one of the threads has finished. No task can be claimed
+     * after this method is called.
+     */
+    private void awaitClaimed() throws InterruptedException {
+        int claimed = Math.min(nextIndex.getAndSet(taskCount), taskCount);
+        synchronized (this) {
+            while (completed < claimed) {
+                wait();
+            }
+        }
+    }
+
+    private synchronized void complete() {
+        completed++;
+        notifyAll();
+    }
+
+    private synchronized void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+}
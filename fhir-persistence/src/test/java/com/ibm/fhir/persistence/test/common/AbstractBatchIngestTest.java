@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+
+/**
+ * Tests for creating and updating resources in batches.
+ */
+public abstract class AbstractBatchIngestTest extends AbstractPersistenceTest {
+    private static final String CODE_SYSTEM = "http://example.com/fhir/batch-ingest-test";
+    private static final int RESOURCE_COUNT = 5;
+
+    private final List<Device> created = new ArrayList<>();
+
+    private static Device device(String code) {
+        return Device.builder()
+                .type(CodeableConcept.builder()
+                    .coding(Coding.builder().system(Uri.of(CODE_SYSTEM)).code(Code.of(code)).build())
+                    .build())
+                .build();
+    }
+
+    private List<FHIRPersistenceContext> contexts(int count) throws Exception {
+        List<FHIRPersistenceContext> contexts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contexts.add(getDefaultPersistenceContext());
+        }
+        return contexts;
+    }
+
+    @Test
+    public void testCreateBatch() throws Exception {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            devices.add(device("create"));
+        }
+
+        List<SingleResourceResult<Device>> results = persistence.createBatch(contexts(devices.size()), devices);
+        assertEquals(results.size(), RESOURCE_COUNT);
+
+        Set<String> ids = new HashSet<>();
+        for (SingleResourceResult<Device> result : results) {
+            assertTrue(result.isSuccess());
+            Device device = result.getResource();
+            assertNotNull(device.getId());
+            assertEquals(device.getMeta().getVersionId().getValue(), "1");
+            ids.add(device.getId());
+            created.add(device);
+        }
+        assertEquals(ids.size(), RESOURCE_COUNT);
+
+        // Each resource can be read back, and its parameters were written
+        for (Device device : created) {
+            assertEquals(persistence.read(getDefaultPersistenceContext(), Device.class, device.getId()).getResource().getId(), device.getId());
+        }
+        Set<String> found = new HashSet<>();
+        for (Resource resource : runQueryTest(Device.class, "type", CODE_SYSTEM + "|create", 1000)) {
+            found.add(resource.getId());
+        }
+        assertTrue(found.containsAll(ids));
+    }
+
+    @Test(dependsOnMethods = { "testCreateBatch" })
+    public void testUpdateBatch() throws Exception {
+        // The first resource appears twice, so gets two new versions
+        Device first = created.get(0).toBuilder().type(device("update").getType()).build();
+        Device second = created.get(1).toBuilder().type(device("update").getType()).build();
+        List<Device> devices = Arrays.asList(first, second, first);
+
+        List<SingleResourceResult<Device>> results = persistence.updateBatch(contexts(devices.size()), devices);
+        assertEquals(results.size(), devices.size());
+        for (SingleResourceResult<Device> result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(results.get(0).getResource().getMeta().getVersionId().getValue(), "2");
+        assertEquals(results.get(1).getResource().getMeta().getVersionId().getValue(), "2");
+        assertEquals(results.get(2).getResource().getMeta().getVersionId().getValue(), "3");
+
+        Device current = persistence.read(getDefaultPersistenceContext(), Device.class, first.getId()).getResource();
+        assertEquals(current.getMeta().getVersionId().getValue(), "3");
+
+        // The parameters of the new versions replaced the old ones
+        Set<String> found = new HashSet<>();
+        for (Resource resource : runQueryTest(Device.class, "type", CODE_SYSTEM + "|update", 1000)) {
+            found.add(resource.getId());
+        }
+        assertTrue(found.contains(first.getId()));
+        assertTrue(found.contains(second.getId()));
+        for (Resource resource : runQueryTest(Device.class, "type", CODE_SYSTEM + "|create", 1000)) {
+            assertTrue(!resource.getId().equals(first.getId()) && !resource.getId().equals(second.getId()));
+        }
+    }
+
+    @Test(dependsOnMethods = { "testUpdateBatch" })
+    public void testUpdateBatchWithPreviousResource() throws Exception {
+        // As for update(), the version of the previous resource set in the persistence event is used
+        Device previous = persistence.read(getDefaultPersistenceContext(), Device.class, created.get(1).getId()).getResource();
+        Device device = previous.toBuilder().type(device("previous").getType()).build();
+        FHIRPersistenceEvent event = new FHIRPersistenceEvent(device, Collections.emptyMap());
+        event.setPrevFhirResource(previous);
+
+        List<SingleResourceResult<Device>> results = persistence.updateBatch(
+                Collections.singletonList(FHIRPersistenceContextFactory.createPersistenceContext(event)),
+                Collections.singletonList(device));
+        assertEquals(results.size(), 1);
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(results.get(0).getResource().getMeta().getVersionId().getValue(), "3");
+    }
+}
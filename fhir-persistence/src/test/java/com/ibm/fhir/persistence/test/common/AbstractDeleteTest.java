@@ -8,6 +8,7 @@ package com.ibm.fhir.persistence.test.common;
 
 import static com.ibm.fhir.model.type.String.string;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.assertNull;
@@ -22,6 +23,8 @@ import com.ibm.fhir.model.resource.Device;
 import com.ibm.fhir.model.resource.Device.UdiCarrier;
 import com.ibm.fhir.model.test.TestUtil;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.visitor.ResourceFingerprintVisitor;
+import com.ibm.fhir.persistence.ResourceVersionMetadata;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -172,4 +175,30 @@ public abstract class AbstractDeleteTest extends AbstractPersistenceTest {
         Device latestDeviceVersion = (Device)resources.get(0);
         assertEquals(updatedUdiValue,latestDeviceVersion.getUdiCarrier().get(0).getDeviceIdentifier().getValue());
     }
+
+    @Test(dependsOnMethods = { "testReDeleteValidDevice", "testUpdateDeletedDevice" })
+    public void testReadVersionMetadata() throws Exception {
+        if (!persistence.isVersionMetadataSupported()) {
+            return;
+        }
+
+        ResourceVersionMetadata deleted = persistence.readCurrentVersionMetadata(getDefaultPersistenceContext(), Device.class, this.deviceId1);
+        assertNotNull(deleted);
+        assertTrue(deleted.isDeleted());
+
+        ResourceVersionMetadata metadata = persistence.readCurrentVersionMetadata(getDefaultPersistenceContext(), Device.class, this.deviceId2);
+        assertNotNull(metadata);
+        assertFalse(metadata.isDeleted());
+        assertEquals(metadata.getVersionId(), 3);
+
+        // If the fingerprint is stored, it must match the content of the current version
+        if (metadata.getFingerprint() != null) {
+            Device device = persistence.read(getDefaultPersistenceContext(), Device.class, this.deviceId2).getResource();
+            ResourceFingerprintVisitor fingerprinter = new ResourceFingerprintVisitor(metadata.getFingerprint());
+            device.accept(fingerprinter);
+            assertEquals(fingerprinter.getSaltAndHash(), metadata.getFingerprint());
+        }
+
+        assertNull(persistence.readCurrentVersionMetadata(getDefaultPersistenceContext(), Device.class, "invalid-device-id"));
+    }
 }
@@ -12,6 +12,7 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.assertNotNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -120,6 +121,105 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertTrue(isResourceInResponse(resource3, results));
     }
 
+    // Walking the pages with the continuation token must produce the same pages as _page alone
+    @Test
+    public void testSearchPagingWithPageToken() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+            Map<String, List<String>> queryParameters = new HashMap<>();
+            queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+            queryParameters.put("_page", Collections.singletonList(java.lang.Integer.toString(pageNumber)));
+            List<Resource> results = runQueryTest(Basic.class, queryParameters, 1);
+            assertEquals(results.size(), 1, "expected number of results");
+            expected.add(results.get(0).getId());
+        }
+
+        List<String> actual = new ArrayList<>();
+        String pageToken = null;
+        for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+            Map<String, List<String>> queryParameters = new HashMap<>();
+            queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+            queryParameters.put("_page", Collections.singletonList(java.lang.Integer.toString(pageNumber)));
+            if (pageToken != null) {
+                queryParameters.put("_pageToken", Collections.singletonList(pageToken));
+            }
+            FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+            MultiResourceResult<Resource> result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+            assertTrue(result.isSuccess());
+            assertEquals(result.getResource().size(), 1, "expected number of results");
+            actual.add(result.getResource().get(0).getId());
+            pageToken = searchContext.getNextPageToken();
+            assertNotNull(pageToken);
+        }
+        assertEquals(actual, expected);
+
+        // a token issued for a different page is ignored
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_page", Collections.singletonList("2"));
+        queryParameters.put("_pageToken", Collections.singletonList(pageToken));
+        List<Resource> results = runQueryTest(Basic.class, queryParameters, 1);
+        assertEquals(results.size(), 1, "expected number of results");
+        assertEquals(results.get(0).getId(), expected.get(1));
+    }
+
+    // A token issued for a different page size must not be used to seek; page 2 of size 2 starts at the third row
+    @Test
+    public void testSearchPagingWithPageTokenAndChangedCount() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_page", Collections.singletonList("3"));
+        List<Resource> results = runQueryTest(Basic.class, queryParameters, 1);
+        assertEquals(results.size(), 1, "expected number of results");
+        String expected = results.get(0).getId();
+
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_page", Collections.singletonList("1"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        MultiResourceResult<Resource> result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        String pageToken = searchContext.getNextPageToken();
+        assertNotNull(pageToken);
+
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_page", Collections.singletonList("2"));
+        queryParameters.put("_pageToken", Collections.singletonList(pageToken));
+        results = runQueryTest(Basic.class, queryParameters, 2);
+        assertEquals(results.size(), 1, "expected number of results");
+        assertEquals(results.get(0).getId(), expected);
+
+        // the same holds for a token reused with different search parameters
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_id", Collections.singletonList(expected));
+        queryParameters.put("_page", Collections.singletonList("2"));
+        queryParameters.put("_pageToken", Collections.singletonList(pageToken));
+        results = runQueryTest(Basic.class, queryParameters, 1);
+        assertEquals(results.size(), 0, "expected number of results");
+    }
+
+    @Test
+    public void testHistoryPagingWithPageToken() throws Exception {
+        String pageToken = null;
+        for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+            FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+            historyContext.setPageSize(1);
+            historyContext.setPageNumber(pageNumber);
+            historyContext.setPageToken(pageToken);
+            FHIRPersistenceContext context = this.getPersistenceContextForHistory(historyContext);
+
+            MultiResourceResult<? extends Basic> result = persistence.history(context, resource3.getClass(), resource3.getId());
+            assertTrue(result.isSuccess());
+            List<? extends Basic> results = result.getResource();
+            assertEquals(results.size(), 1, "expected number of results");
+            assertEquals(results.get(0).getMeta().getVersionId().getValue(), java.lang.Integer.toString(4 - pageNumber), "expected version");
+            pageToken = historyContext.getNextPageToken();
+            assertNotNull(pageToken);
+        }
+    }
+
     // history results should be sorted with oldest versions last
     @Test
     public void testHistoryPaging() throws Exception {
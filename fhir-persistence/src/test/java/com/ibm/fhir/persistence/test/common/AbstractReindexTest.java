@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.OperationOutcome.Issue;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+
+/**
+ * Tests for reindexing resources in batches.
+ */
+public abstract class AbstractReindexTest extends AbstractPersistenceTest {
+    private static final String CODE_SYSTEM = "http://example.com/fhir/reindex-test";
+    private static final int RESOURCE_COUNT = 5;
+    private static final int BATCH_SIZE = 2;
+
+    private final List<String> ids = new ArrayList<>();
+    private Instant tstamp;
+
+    @BeforeClass
+    public void createResources() throws Exception {
+        Device device = Device.builder()
+                .type(CodeableConcept.builder()
+                    .coding(Coding.builder().system(Uri.of(CODE_SYSTEM)).code(Code.of("reindex")).build())
+                    .build())
+                .build();
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            ids.add(persistence.create(getDefaultPersistenceContext(), device).getResource().getId());
+        }
+    }
+
+    /**
+     * Clear the stored hash of the parameters of the given resource, if the implementation stores one,
+     * so that the parameters of the resource are rewritten when it is reindexed
+     * @param resourceType
+     * @param logicalId
+     * @throws Exception
+     */
+    protected void clearParameterHash(String resourceType, String logicalId) throws Exception {
+        // NOP by default
+    }
+
+    @Test
+    public void testReindexBatch() throws Exception {
+        // only resources last reindexed before this are picked
+        tstamp = Instant.now();
+        clearParameterHash("Device", ids.get(0));
+
+        Set<String> processed = new HashSet<>();
+        int total = 0;
+        int count;
+        do {
+            OperationOutcome.Builder result = OperationOutcome.builder();
+            count = persistence.reindexBatch(getDefaultPersistenceContext(), result, tstamp, "Device", BATCH_SIZE);
+            assertTrue(count <= BATCH_SIZE);
+            if (count > 0) {
+                for (Issue issue : result.build().getIssue()) {
+                    String diagnostics = issue.getDiagnostics().getValue();
+                    if (diagnostics.startsWith("Processed Device/")) {
+                        processed.add(diagnostics.substring("Processed Device/".length()));
+                    }
+                }
+            }
+            total += count;
+        } while (count > 0);
+
+        assertTrue(total >= RESOURCE_COUNT);
+        assertTrue(processed.containsAll(ids));
+
+        // The parameters are still searchable, including those which were rewritten
+        Set<String> found = new HashSet<>();
+        for (Resource resource : runQueryTest(Device.class, "type", CODE_SYSTEM + "|reindex", 1000)) {
+            found.add(resource.getId());
+        }
+        assertTrue(found.containsAll(ids));
+    }
+
+    @Test(dependsOnMethods = { "testReindexBatch" })
+    public void testReindexBatchComplete() throws Exception {
+        // everything was reindexed using this tstamp, so there's nothing left to do
+        OperationOutcome.Builder result = OperationOutcome.builder();
+        assertEquals(persistence.reindexBatch(getDefaultPersistenceContext(), result, tstamp, "Device", BATCH_SIZE), 0);
+    }
+}
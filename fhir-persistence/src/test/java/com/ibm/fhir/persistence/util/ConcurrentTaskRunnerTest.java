@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * Tests for {@link ConcurrentTaskRunner}
+ */
+public class ConcurrentTaskRunnerTest {
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEveryTaskRunsOnceWithTheContextOfItsThread() throws Exception {
+        FHIRRequestContext requestContext = new FHIRRequestContext("tenant1");
+        FHIRRequestContext.set(requestContext);
+        try {
+            String[] results = new String[100];
+            Set<String> workerContexts = ConcurrentHashMap.newKeySet();
+            AtomicInteger nextWorker = new AtomicInteger();
+
+            int threads = ConcurrentTaskRunner.run(executor, "test", results.length, 4, "caller",
+                work -> {
+                    String context = "worker" + nextWorker.incrementAndGet();
+                    workerContexts.add(context);
+                    work.accept(context);
+                },
+                (context, index) -> {
+                    assertSame(FHIRRequestContext.get(), requestContext);
+                    results[index] = context;
+                });
+
+            assertEquals(threads, 4);
+            for (String result : results) {
+                assertTrue("caller".equals(result) || workerContexts.contains(result), result);
+            }
+        } finally {
+            FHIRRequestContext.remove();
+        }
+    }
+
+    @Test
+    public void testFirstFailureIsThrown() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        Exception failure = new Exception("task 5 failed");
+        try {
+            ConcurrentTaskRunner.run(executor, "test", 1000, 4, null, work -> work.accept(null), (context, index) -> {
+                count.incrementAndGet();
+                if (index == 5) {
+                    throw failure;
+                }
+            });
+            fail();
+        } catch (Exception e) {
+            assertSame(e, failure);
+        }
+        assertTrue(count.get() < 1000);
+    }
+
+    @Test
+    public void testWorkerWithoutContext() throws Exception {
+        boolean[] done = new boolean[10];
+        ConcurrentTaskRunner.run(executor, "test", done.length, 4, "caller",
+            work -> {
+                throw new Exception("no context");
+            },
+            (context, index) -> {
+                assertEquals(context, "caller");
+                done[index] = true;
+            });
+        for (boolean d : done) {
+            assertTrue(d);
+        }
+    }
+
+    @Test
+    public void testWithoutExecutor() throws Exception {
+        Thread caller = Thread.currentThread();
+        AtomicInteger count = new AtomicInteger();
+        int threads = ConcurrentTaskRunner.run(null, "test", 10, 4, null, work -> fail(), (context, index) -> {
+            assertSame(Thread.currentThread(), caller);
+            assertNull(context);
+            count.incrementAndGet();
+        });
+        assertEquals(threads, 1);
+        assertEquals(count.get(), 10);
+    }
+}
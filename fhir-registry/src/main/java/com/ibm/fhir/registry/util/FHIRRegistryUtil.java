@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,6 +10,7 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -144,10 +145,45 @@ public final class FHIRRegistryUtil {
         return null;
     }
 
+    /**
+     * Get the registry resources for the package with the given id
+     *
+     * <p>The resources are read from a snapshot of the package when one is available on the classpath or in the
+     * directory configured through {@link Snapshot#SNAPSHOT_DIR_PROPERTY} and was built from the current package
+     * content (see {@link Snapshot#checksum(String)}). Otherwise they are read from the package index and, if a
+     * snapshot directory is configured, a snapshot is written in the background for the next startup.
+     *
+     * @param packageId
+     *     the package id
+     * @return
+     *     the registry resources for the package
+     */
     public static Collection<FHIRRegistryResource> getRegistryResources(String packageId) {
-        List<FHIRRegistryResource> resources = new ArrayList<>();
         String packageDirectory = packageId.replace(".", "/") + "/package";
-        for (Entry entry : readIndex(packageDirectory + "/.index.json")) {
+        String indexPath = packageDirectory + "/.index.json";
+        Path snapshotDirectory = Snapshot.getSnapshotDirectory();
+
+        long packageChecksum = Snapshot.checksum(packageDirectory);
+        if (packageChecksum != -1) {
+            Snapshot snapshot = Snapshot.load(packageDirectory + "/" + Snapshot.SNAPSHOT_FILE_NAME, packageChecksum);
+            if (snapshot == null && snapshotDirectory != null) {
+                snapshot = Snapshot.open(snapshotDirectory.resolve(packageId + Snapshot.SNAPSHOT_FILE_NAME), packageChecksum);
+            }
+            if (snapshot != null) {
+                return getRegistryResources(snapshot);
+            }
+        }
+
+        Collection<FHIRRegistryResource> resources = getRegistryResources(packageDirectory, readIndex(indexPath));
+        if (packageChecksum != -1 && snapshotDirectory != null && !resources.isEmpty()) {
+            writeSnapshot(snapshotDirectory.resolve(packageId + Snapshot.SNAPSHOT_FILE_NAME), packageChecksum, resources);
+        }
+        return resources;
+    }
+
+    private static Collection<FHIRRegistryResource> getRegistryResources(String packageDirectory, List<Entry> entries) {
+        List<FHIRRegistryResource> resources = new ArrayList<>();
+        for (Entry entry : entries) {
             resources.add(new PackageRegistryResource(
                 ModelSupport.getResourceType(entry.getResourceType()),
                 entry.getId(),
@@ -160,6 +196,34 @@ public final class FHIRRegistryUtil {
         return Collections.unmodifiableList(resources);
     }
 
+    private static Collection<FHIRRegistryResource> getRegistryResources(Snapshot snapshot) {
+        List<FHIRRegistryResource> resources = new ArrayList<>(snapshot.getEntries().size());
+        for (Snapshot.Entry entry : snapshot.getEntries()) {
+            resources.add(new SnapshotRegistryResource(
+                ModelSupport.getResourceType(entry.getResourceType()),
+                (entry.getVersion() != null) ? Version.from(entry.getVersion()) : Version.NO_VERSION,
+                snapshot,
+                entry));
+        }
+        return Collections.unmodifiableList(resources);
+    }
+
+    /**
+     * Write the snapshot on a daemon thread; the resources of this startup are still served from the package index
+     */
+    private static void writeSnapshot(Path file, long packageChecksum, Collection<FHIRRegistryResource> resources) {
+        Thread thread = new Thread(() -> {
+            try {
+                Snapshot.write(file, packageChecksum, resources);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Unable to write snapshot '" + file + "'", e);
+            }
+        }, "fhir-registry-snapshot");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
     public static List<Entry> readIndex(String indexPath) {
         log.info("Loading index: " + indexPath);
         try (InputStream in = FHIRRegistryUtil.class.getClassLoader().getResourceAsStream(indexPath)) {
@@ -0,0 +1,506 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import static com.ibm.fhir.registry.util.FHIRRegistryUtil.loadResource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource.Version;
+
+/**
+ * A binary snapshot of the registry resources in a package: a compact index followed by the resources themselves,
+ * each one pre-parsed, serialized as compact JSON and deflated.
+ *
+ * <p>A snapshot records the checksum of the package it was built from (the index and every resource file, see
+ * {@link #checksum(String)}) and a checksum of its own content, and is only used when both match. A resource file
+ * which changes without a change to its id, url or version therefore invalidates the snapshot as well. Resources
+ * are deserialized on demand and, because they were validated when the snapshot was written, without running the
+ * validating parser again.
+ *
+ * <p>Layout (big-endian):
+ * <pre>
+ * int      magic
+ * int      format version
+ * long     checksum of the package files (.index.json and the resource files)
+ * long     CRC32 of everything that follows
+ * int      entry count
+ * int      entry table length
+ * byte[]   entry table: per entry resourceType, id, url, version?, kind?, type? (modified UTF-8), data offset, data length
+ * byte[]   data: per entry the deflated compact JSON of the resource
+ * </pre>
+ */
+public class Snapshot {
+    private static final Logger log = Logger.getLogger(Snapshot.class.getName());
+
+    /**
+     * The system property for the directory in which package snapshots are written on first boot and read afterwards
+     */
+    public static final String SNAPSHOT_DIR_PROPERTY = "com.ibm.fhir.registry.snapshot.dir";
+
+    /**
+     * The classpath location of a snapshot generated at build time, relative to the package directory
+     */
+    public static final String SNAPSHOT_FILE_NAME = ".snapshot";
+
+    private static final int MAGIC = 0x46485253; // "FHRS"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_LENGTH = 24;
+
+    private final ByteBuffer buffer;
+    private final int dataOffset;
+    private final List<Entry> entries;
+
+    private Snapshot(ByteBuffer buffer, int dataOffset, List<Entry> entries) {
+        this.buffer = buffer;
+        this.dataOffset = dataOffset;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Deserialize the resource for the given entry of this snapshot
+     *
+     * @param entry
+     *     the entry
+     * @return
+     *     the resource, or null if it could not be read
+     */
+    public Resource getResource(Entry entry) {
+        byte[] data = new byte[entry.length];
+        ByteBuffer buffer = this.buffer.duplicate();
+        position(buffer, dataOffset + entry.offset);
+        buffer.get(data);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new InflaterInputStream(new ByteArrayInputStream(data)), StandardCharsets.UTF_8))) {
+            FHIRParser parser = FHIRParser.parser(Format.JSON);
+            parser.setValidating(false);
+            return parser.parse(reader);
+        } catch (Exception e) {
+            log.warning("Unable to load resource: " + entry.getUrl() + " from snapshot due to the following exception: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Get the directory configured through {@link #SNAPSHOT_DIR_PROPERTY}
+     *
+     * @return
+     *     the snapshot directory, or null if snapshots should not be written or read from the file system
+     */
+    public static Path getSnapshotDirectory() {
+        String dir = System.getProperty(SNAPSHOT_DIR_PROPERTY);
+        return (dir != null && !dir.isEmpty()) ? Paths.get(dir) : null;
+    }
+
+    /**
+     * Compute the checksum of the package in the given classpath directory: a CRC32 over the relative path and the
+     * CRC32 of each file in the directory (except for snapshots), in path order.
+     *
+     * <p>When the package is in a jar, the CRC32 of each file is taken from the jar's directory, so the files
+     * don't need to be read. Otherwise, each file is read to compute its CRC32. Both yield the same checksum for the
+     * same package content.
+     *
+     * @param packageDirectory
+     *     the classpath location of the package directory (the directory that contains .index.json)
+     * @return
+     *     the checksum of the package, or -1 if it could not be computed
+     */
+    public static long checksum(String packageDirectory) {
+        return checksum(Snapshot.class.getClassLoader(), packageDirectory);
+    }
+
+    /**
+     * Compute the checksum of the package in the given classpath directory of the given class loader
+     *
+     * @param classLoader
+     *     the class loader
+     * @param packageDirectory
+     *     the classpath location of the package directory (the directory that contains .index.json)
+     * @return
+     *     the checksum of the package, or -1 if it could not be computed
+     * @see #checksum(String)
+     */
+    public static long checksum(ClassLoader classLoader, String packageDirectory) {
+        URL indexUrl = classLoader.getResource(packageDirectory + "/.index.json");
+        if (indexUrl == null) {
+            return -1;
+        }
+        try {
+            // file CRC32 by path relative to the package directory
+            Map<String, Long> crcs = new TreeMap<>();
+            if ("jar".equals(indexUrl.getProtocol())) {
+                // the jar file may be cached and shared by the URL handler, so it is not closed here
+                JarFile jarFile = ((JarURLConnection) indexUrl.openConnection()).getJarFile();
+                String prefix = packageDirectory + "/";
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (!entry.isDirectory() && name.startsWith(prefix) && !name.endsWith(SNAPSHOT_FILE_NAME)) {
+                        crcs.put(name.substring(prefix.length()), entry.getCrc());
+                    }
+                }
+            } else if ("file".equals(indexUrl.getProtocol())) {
+                Path directory = Paths.get(indexUrl.toURI()).getParent();
+                try (Stream<Path> files = Files.walk(directory)) {
+                    for (Path path : (Iterable<Path>) files::iterator) {
+                        if (Files.isRegularFile(path) && !path.getFileName().toString().endsWith(SNAPSHOT_FILE_NAME)) {
+                            crcs.put(directory.relativize(path).toString().replace('\\', '/'), crc(path));
+                        }
+                    }
+                }
+            } else {
+                log.fine("Unable to compute the checksum of package '" + packageDirectory + "' from " + indexUrl);
+                return -1;
+            }
+
+            CRC32 crc = new CRC32();
+            for (Map.Entry<String, Long> entry : crcs.entrySet()) {
+                crc.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                long value = entry.getValue();
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    crc.update((int) (value >>> shift));
+                }
+            }
+            return crc.getValue();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unexpected error while computing the checksum of package '" + packageDirectory + "'", e);
+        }
+        return -1;
+    }
+
+    private static long crc(Path file) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file), new CRC32())) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // just consume the stream
+            }
+            return in.getChecksum().getValue();
+        }
+    }
+
+    /**
+     * Memory-map the snapshot file at the given path
+     *
+     * @param file
+     *     the snapshot file
+     * @param packageChecksum
+     *     the checksum of the package the snapshot must have been built from
+     * @return
+     *     the snapshot, or null if the file does not exist, is stale, or is corrupt
+     */
+    public static Snapshot open(Path file, long packageChecksum) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), packageChecksum, file.toString());
+        } catch (NoSuchFileException e) {
+            log.fine("Snapshot '" + file + "' does not exist");
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unexpected error while opening snapshot '" + file + "'", e);
+        }
+        return null;
+    }
+
+    /**
+     * Read the snapshot at the given classpath location
+     *
+     * @param path
+     *     the classpath location of the snapshot
+     * @param packageChecksum
+     *     the checksum of the package the snapshot must have been built from
+     * @return
+     *     the snapshot, or null if it does not exist, is stale, or is corrupt
+     */
+    public static Snapshot load(String path, long packageChecksum) {
+        try (InputStream in = Snapshot.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return open(ByteBuffer.wrap(out.toByteArray()), packageChecksum, path);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unexpected error while loading snapshot '" + path + "'", e);
+        }
+        return null;
+    }
+
+    private static Snapshot open(ByteBuffer buffer, long packageChecksum, String name) throws IOException {
+        if (buffer.limit() < HEADER_LENGTH + 8 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            log.warning("Ignoring snapshot '" + name + "' because it is not a supported snapshot file");
+            return null;
+        }
+        if (buffer.getLong(8) != packageChecksum) {
+            log.info("Ignoring snapshot '" + name + "' because it was built from different package content");
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer content = buffer.duplicate();
+        position(content, HEADER_LENGTH);
+        crc.update(content);
+        if (buffer.getLong(16) != crc.getValue()) {
+            log.warning("Ignoring snapshot '" + name + "' because its checksum does not match");
+            return null;
+        }
+
+        int count = buffer.getInt(HEADER_LENGTH);
+        int tableLength = buffer.getInt(HEADER_LENGTH + 4);
+        byte[] table = new byte[tableLength];
+        ByteBuffer tableBuffer = buffer.duplicate();
+        position(tableBuffer, HEADER_LENGTH + 8);
+        tableBuffer.get(table);
+
+        List<Entry> entries = new ArrayList<>(count);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(table));
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(
+                in.readUTF(),
+                in.readUTF(),
+                in.readUTF(),
+                readOptionalUTF(in),
+                readOptionalUTF(in),
+                readOptionalUTF(in),
+                in.readInt(),
+                in.readInt()));
+        }
+
+        log.info("Loaded snapshot '" + name + "' with " + count + " entries");
+        return new Snapshot(buffer, HEADER_LENGTH + 8 + tableLength, entries);
+    }
+
+    /**
+     * Write a snapshot of the given registry resources to the given file, replacing it atomically where supported
+     *
+     * @param file
+     *     the snapshot file
+     * @param packageChecksum
+     *     the checksum of the package the registry resources were read from
+     * @param registryResources
+     *     the registry resources
+     * @throws IOException
+     *     if the snapshot could not be written or one of the resources could not be loaded
+     */
+    public static void write(Path file, long packageChecksum, Collection<FHIRRegistryResource> registryResources) throws IOException {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream tableOut = new DataOutputStream(table);
+        FHIRGenerator generator = FHIRGenerator.generator(Format.JSON);
+
+        for (FHIRRegistryResource registryResource : registryResources) {
+            // load package resources directly so that the provider does not hold on to every parsed resource
+            Resource resource = registryResource.is(PackageRegistryResource.class) ?
+                    loadResource(registryResource.as(PackageRegistryResource.class).getPath()) : registryResource.getResource();
+            if (resource == null) {
+                throw new IOException("Unable to load resource: " + registryResource.getUrl());
+            }
+
+            int offset = data.size();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (OutputStream out = new DeflaterOutputStream(new NonClosingOutputStream(data), deflater)) {
+                generator.generate(resource, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Unable to serialize resource: " + registryResource.getUrl(), e);
+            } finally {
+                deflater.end();
+            }
+
+            tableOut.writeUTF(registryResource.getResourceType().getSimpleName());
+            tableOut.writeUTF(Objects.toString(registryResource.getId(), ""));
+            tableOut.writeUTF(registryResource.getUrl());
+            writeOptionalUTF(tableOut, Version.NO_VERSION.equals(registryResource.getVersion()) ? null : registryResource.getVersion().toString());
+            writeOptionalUTF(tableOut, registryResource.getKind());
+            writeOptionalUTF(tableOut, registryResource.getType());
+            tableOut.writeInt(offset);
+            tableOut.writeInt(data.size() - offset);
+        }
+        tableOut.flush();
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream(8 + table.size() + data.size());
+        DataOutputStream contentOut = new DataOutputStream(content);
+        contentOut.writeInt(registryResources.size());
+        contentOut.writeInt(table.size());
+        table.writeTo(contentOut);
+        data.writeTo(contentOut);
+        contentOut.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(content.toByteArray());
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(packageChecksum);
+                out.writeLong(crc.getValue());
+                content.writeTo(out);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("Wrote snapshot '" + file + "' with " + registryResources.size() + " entries");
+    }
+
+    private static String readOptionalUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptionalUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    // the cast keeps the Java 8 signature of position(int) when compiled with a later JDK
+    private static void position(ByteBuffer buffer, int position) {
+        ((Buffer) buffer).position(position);
+    }
+
+    /**
+     * The metadata for a resource in the snapshot and the location of its data
+     */
+    public static class Entry {
+        private final String resourceType;
+        private final String id;
+        private final String url;
+        private final String version;
+        private final String kind;
+        private final String type;
+        private final int offset;
+        private final int length;
+
+        private Entry(
+                String resourceType,
+                String id,
+                String url,
+                String version,
+                String kind,
+                String type,
+                int offset,
+                int length) {
+            this.resourceType = resourceType;
+            this.id = id.isEmpty() ? null : id;
+            this.url = url;
+            this.version = version;
+            this.kind = kind;
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Lets a DeflaterOutputStream be closed to finish a resource without closing the shared data stream
+     */
+    private static class NonClosingOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private NonClosingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.util.Objects;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+
+/**
+ * A FHIR registry resource that loads its FHIR resource from a package {@link Snapshot}
+ */
+public class SnapshotRegistryResource extends FHIRRegistryResource {
+    private final Snapshot snapshot;
+    private final Snapshot.Entry entry;
+
+    public SnapshotRegistryResource(
+            Class<? extends Resource> resourceType,
+            Version version,
+            Snapshot snapshot,
+            Snapshot.Entry entry) {
+        super(resourceType, entry.getId(), entry.getUrl(), version, entry.getKind(), entry.getType());
+        this.snapshot = Objects.requireNonNull(snapshot);
+        this.entry = entry;
+    }
+
+    /**
+     * Get the FHIR resource associated with this registry resource
+     *
+     * @return
+     *     the FHIR resource associated with this registry resource
+     */
+    @Override
+    public Resource getResource() {
+        Resource resource = this.resource;
+        if (resource == null) {
+            synchronized (this) {
+                resource = this.resource;
+                if (resource == null) {
+                    resource = snapshot.getResource(entry);
+                    this.resource = resource;
+                }
+            }
+        }
+        return resource;
+    }
+}
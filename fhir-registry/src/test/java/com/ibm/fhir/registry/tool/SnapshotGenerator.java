@@ -0,0 +1,31 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.tool;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.ibm.fhir.registry.util.FHIRRegistryUtil;
+import com.ibm.fhir.registry.util.Snapshot;
+
+/**
+ * Generates the build-time snapshot for each package id passed on the command line (hl7.fhir.core by default)
+ * from the package index and resources on the classpath. Run it from the module that contains the package.
+ */
+public class SnapshotGenerator {
+    public static void main(String[] args) throws Exception {
+        List<String> packageIds = (args.length > 0) ? Arrays.asList(args) : Collections.singletonList("hl7.fhir.core");
+        for (String packageId : packageIds) {
+            String packageDirectory = packageId.replace(".", "/") + "/package";
+            Path file = Paths.get("src/main/resources", packageDirectory, Snapshot.SNAPSHOT_FILE_NAME);
+            Snapshot.write(file, Snapshot.checksum(packageDirectory), FHIRRegistryUtil.getRegistryResources(packageId));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.resource.StructureDefinition;
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.registry.core.CoreResourceProvider;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+import com.ibm.fhir.registry.util.Snapshot;
+
+public class SnapshotTest {
+    private static final long PACKAGE_CHECKSUM = 12345L;
+
+    private final List<FHIRRegistryResource> registryResources = new ArrayList<>();
+    private Path file;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        FHIRRegistryResourceProvider provider = new CoreResourceProvider();
+        registryResources.addAll(provider.getSearchParameterResources("Patient"));
+        registryResources.addAll(provider.getProfileResources("Observation"));
+        registryResources.add(provider.getRegistryResource(StructureDefinition.class, "http://hl7.org/fhir/StructureDefinition/Patient", null));
+        registryResources.add(provider.getRegistryResource(ValueSet.class, "http://hl7.org/fhir/ValueSet/administrative-gender", null));
+
+        file = Files.createTempFile("fhir-registry", Snapshot.SNAPSHOT_FILE_NAME);
+        Snapshot.write(file, PACKAGE_CHECKSUM, registryResources);
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Snapshot snapshot = Snapshot.open(file, PACKAGE_CHECKSUM);
+        assertNotNull(snapshot);
+        assertEquals(snapshot.getEntries().size(), registryResources.size());
+        for (int i = 0; i < registryResources.size(); i++) {
+            FHIRRegistryResource registryResource = registryResources.get(i);
+            Snapshot.Entry entry = snapshot.getEntries().get(i);
+            assertEquals(entry.getResourceType(), registryResource.getResourceType().getSimpleName());
+            assertEquals(entry.getId(), registryResource.getId());
+            assertEquals(entry.getUrl(), registryResource.getUrl());
+            assertEquals(entry.getVersion(), registryResource.getVersion().toString());
+            assertEquals(entry.getKind(), registryResource.getKind());
+            assertEquals(entry.getType(), registryResource.getType());
+            assertEquals(snapshot.getResource(entry), registryResource.getResource());
+        }
+        assertEquals(snapshot.getResource(snapshot.getEntries().get(0)).getClass(), SearchParameter.class);
+    }
+
+    @Test
+    public void testStaleSnapshot() {
+        assertNull(Snapshot.open(file, PACKAGE_CHECKSUM + 1));
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x01;
+        Path corrupt = Files.createTempFile("fhir-registry-corrupt", Snapshot.SNAPSHOT_FILE_NAME);
+        try {
+            Files.write(corrupt, bytes);
+            assertNull(Snapshot.open(corrupt, PACKAGE_CHECKSUM));
+        } finally {
+            Files.deleteIfExists(corrupt);
+        }
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertNull(Snapshot.open(file.resolveSibling("does-not-exist" + Snapshot.SNAPSHOT_FILE_NAME), PACKAGE_CHECKSUM));
+    }
+
+    @Test
+    public void testPackageChecksum() throws Exception {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put(".index.json", "{\"index-version\":1,\"files\":[]}");
+        files.put("SearchParameter-test.json", "{\"resourceType\":\"SearchParameter\",\"id\":\"test\",\"version\":\"1\"}");
+
+        long directoryChecksum = checksum(files, false);
+        assertNotEquals(directoryChecksum, -1L);
+
+        // the CRC32 values from the jar directory yield the same checksum as the file content
+        assertEquals(checksum(files, true), directoryChecksum);
+
+        // snapshots are not part of the package content
+        files.put(Snapshot.SNAPSHOT_FILE_NAME, "ignored");
+        assertEquals(checksum(files, false), directoryChecksum);
+        assertEquals(checksum(files, true), directoryChecksum);
+
+        // a resource body which changes without a change to its id or version changes the checksum
+        files.put("SearchParameter-test.json", "{\"resourceType\":\"SearchParameter\",\"id\":\"test\",\"version\":\"1\",\"name\":\"x\"}");
+        assertNotEquals(checksum(files, false), directoryChecksum);
+        assertNotEquals(checksum(files, true), directoryChecksum);
+    }
+
+    @Test
+    public void testPackageChecksumWithoutIndex() throws Exception {
+        assertEquals(Snapshot.checksum("does/not/exist/package"), -1L);
+    }
+
+    /**
+     * Compute the checksum of a package with the given files in a temporary directory or jar
+     */
+    private long checksum(Map<String, String> files, boolean jar) throws Exception {
+        String packageDirectory = "test/package";
+        Path root = Files.createTempDirectory("fhir-registry-package");
+        try {
+            URL url;
+            if (jar) {
+                Path jarFile = root.resolve("package.jar");
+                try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jarFile))) {
+                    for (Map.Entry<String, String> file : files.entrySet()) {
+                        out.putNextEntry(new JarEntry(packageDirectory + "/" + file.getKey()));
+                        out.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                        out.closeEntry();
+                    }
+                }
+                url = jarFile.toUri().toURL();
+            } else {
+                Path directory = Files.createDirectories(root.resolve(packageDirectory));
+                for (Map.Entry<String, String> file : files.entrySet()) {
+                    try (OutputStream out = Files.newOutputStream(directory.resolve(file.getKey()))) {
+                        out.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                url = root.toUri().toURL();
+            }
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[] { url }, null)) {
+                return Snapshot.checksum(classLoader, packageDirectory);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
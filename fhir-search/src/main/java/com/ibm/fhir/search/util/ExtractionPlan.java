@@ -0,0 +1,347 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathParser;
+import com.ibm.fhir.path.FHIRPathParser.ExpressionContext;
+import com.ibm.fhir.path.FHIRPathType;
+import com.ibm.fhir.path.util.FHIRPathUtil;
+
+/**
+ * A plan for extracting the values of a list of search parameters from a resource.
+ *
+ * <p>Search parameter expressions that are simple paths (e.g. {@code Observation.code}), optionally followed by
+ * a type cast (e.g. {@code (Observation.value as Quantity)} or {@code Observation.value.as(Quantity)}), or unions
+ * of these, are compiled into a single prefix tree. The prefix tree is evaluated in one pass over the resource so
+ * that shared prefixes such as {@code Observation.code} or {@code Observation.component} are only navigated once.
+ * All other expressions are not compiled and must be evaluated using the FHIRPath evaluator.
+ *
+ * <p>The results of evaluating a compiled expression are the same as the results of evaluating the expression
+ * using the FHIRPath evaluator against the same {@link com.ibm.fhir.path.FHIRPathTree}.
+ *
+ * <p>ExtractionPlan instances are immutable and thread-safe.
+ */
+public final class ExtractionPlan {
+    private static final Logger log = Logger.getLogger(ExtractionPlan.class.getName());
+
+    private static final String SYSTEM_NAMESPACE = "System";
+
+    private final List<SearchParameter> parameters;
+    private final Step root;
+    private final int stepCount;
+    // the compiled branches for each search parameter (by index) or null if the expression could not be compiled
+    private final List<Branch[]> branches;
+
+    private ExtractionPlan(List<SearchParameter> parameters) {
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+        this.root = new Step(0);
+        this.branches = new ArrayList<>(parameters.size());
+        int[] counter = { 1 };
+        for (SearchParameter parameter : parameters) {
+            branches.add(compile(parameter, counter));
+        }
+        this.stepCount = counter[0];
+    }
+
+    /**
+     * The search parameters of this ExtractionPlan
+     *
+     * @return
+     *     an unmodifiable list of the search parameters of this ExtractionPlan
+     */
+    public List<SearchParameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Indicates whether the expression of the search parameter at the given index was compiled
+     *
+     * @param index
+     *     the index of the search parameter in {@link #getParameters()}
+     * @return
+     *     true if the expression was compiled, otherwise false
+     */
+    public boolean isCompiled(int index) {
+        return branches.get(index) != null;
+    }
+
+    /**
+     * Evaluate the compiled expressions of this ExtractionPlan against the given node
+     *
+     * @param node
+     *     the root node of a {@link com.ibm.fhir.path.FHIRPathTree}
+     * @return
+     *     a list that contains the values of each search parameter in {@link #getParameters()} (by index), or null for
+     *     search parameters whose expression was not compiled
+     */
+    public List<List<FHIRPathNode>> evaluate(FHIRPathNode node) {
+        @SuppressWarnings("unchecked")
+        List<FHIRPathNode>[] collections = new List[stepCount];
+        walk(root, Collections.singletonList(node), collections);
+
+        List<List<FHIRPathNode>> result = new ArrayList<>(branches.size());
+        for (Branch[] parameterBranches : branches) {
+            if (parameterBranches == null) {
+                result.add(null);
+            } else if (parameterBranches.length == 1) {
+                result.add(parameterBranches[0].apply(collections));
+            } else {
+                // union
+                Set<FHIRPathNode> union = new LinkedHashSet<>();
+                for (Branch branch : parameterBranches) {
+                    union.addAll(branch.apply(collections));
+                }
+                result.add(new ArrayList<>(union));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the collection for each step below the given step (breadth of one level at a time) using the same
+     * member invocation semantics as the FHIRPath evaluator
+     */
+    private void walk(Step step, List<FHIRPathNode> context, List<FHIRPathNode>[] collections) {
+        collections[step.index] = context;
+        if (step.children.isEmpty()) {
+            return;
+        }
+
+        FHIRPathNode singleton = (context.size() == 1) ? context.get(0) : null;
+        boolean bucket = false;
+        for (Step child : step.children.values()) {
+            if (singleton != null && isInTypeClosure(singleton.type(), child.identifier)) {
+                // a type name that matches the context (e.g. "Patient" in "Patient.name") passes the context through
+                collections[child.index] = context;
+            } else {
+                collections[child.index] = new ArrayList<>();
+                bucket = true;
+            }
+        }
+
+        if (bucket) {
+            for (FHIRPathNode node : context) {
+                for (FHIRPathNode child : node.children()) {
+                    Step childStep = step.children.get(child.name());
+                    if (childStep != null && collections[childStep.index] != context) {
+                        collections[childStep.index].add(child);
+                    }
+                }
+            }
+        }
+
+        for (Step child : step.children.values()) {
+            walk(child, collections[child.index], collections);
+        }
+    }
+
+    private static boolean isInTypeClosure(FHIRPathType type, String identifier) {
+        if (SYSTEM_NAMESPACE.equals(type.namespace())) {
+            return false;
+        }
+        while (type != null && !FHIRPathType.FHIR_ANY.equals(type)) {
+            if (type.getName().equals(identifier)) {
+                return true;
+            }
+            type = type.baseType();
+        }
+        return false;
+    }
+
+    private Branch[] compile(SearchParameter parameter, int[] counter) {
+        if (parameter.getExpression() == null || parameter.getExpression().getValue() == null) {
+            return null;
+        }
+        String expr = parameter.getExpression().getValue();
+        try {
+            List<Branch> result = new ArrayList<>();
+            if (compileBranches(FHIRPathUtil.compile(expr), result, counter)) {
+                return result.toArray(new Branch[result.size()]);
+            }
+        } catch (Exception e) {
+            // leave the expression to the FHIRPath evaluator (which reports the error)
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Unable to compile expression '" + expr + "': " + e.getMessage());
+            }
+        }
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("Expression '" + expr + "' of search parameter '" + parameter.getCode().getValue() + "' will be evaluated using the FHIRPath evaluator");
+        }
+        return null;
+    }
+
+    private boolean compileBranches(ExpressionContext ctx, List<Branch> result, int[] counter) {
+        if (ctx instanceof FHIRPathParser.UnionExpressionContext) {
+            FHIRPathParser.UnionExpressionContext union = (FHIRPathParser.UnionExpressionContext) ctx;
+            return compileBranches(union.expression(0), result, counter) && compileBranches(union.expression(1), result, counter);
+        }
+
+        if (ctx instanceof FHIRPathParser.TermExpressionContext
+                && ((FHIRPathParser.TermExpressionContext) ctx).term() instanceof FHIRPathParser.ParenthesizedTermContext) {
+            return compileBranches(((FHIRPathParser.ParenthesizedTermContext) ((FHIRPathParser.TermExpressionContext) ctx).term()).expression(), result, counter);
+        }
+
+        ExpressionContext pathContext = ctx;
+        String typeName = null;
+        if (ctx instanceof FHIRPathParser.TypeExpressionContext) {
+            // e.g. (Observation.value as Quantity)
+            FHIRPathParser.TypeExpressionContext typeExpression = (FHIRPathParser.TypeExpressionContext) ctx;
+            if (!"as".equals(typeExpression.getChild(1).getText())) {
+                return false;
+            }
+            pathContext = typeExpression.expression();
+            typeName = typeExpression.typeSpecifier().getText().replace("`", "");
+        } else if (ctx instanceof FHIRPathParser.InvocationExpressionContext
+                && ((FHIRPathParser.InvocationExpressionContext) ctx).invocation() instanceof FHIRPathParser.FunctionInvocationContext) {
+            // e.g. Observation.value.as(Quantity)
+            FHIRPathParser.InvocationExpressionContext invocationExpression = (FHIRPathParser.InvocationExpressionContext) ctx;
+            FHIRPathParser.FunctionContext function = ((FHIRPathParser.FunctionInvocationContext) invocationExpression.invocation()).function();
+            if (!"as".equals(function.identifier().getText()) || function.paramList() == null || function.paramList().expression().size() != 1) {
+                return false;
+            }
+            pathContext = invocationExpression.expression();
+            typeName = function.paramList().expression(0).getText().replace("`", "");
+        }
+
+        FHIRPathType type = null;
+        if (typeName != null) {
+            type = FHIRPathType.from(typeName);
+            if (type == null) {
+                return false;
+            }
+        }
+
+        List<String> path = compilePath(pathContext);
+        if (path == null) {
+            return false;
+        }
+
+        Step step = root;
+        for (String identifier : path) {
+            Step child = step.children.get(identifier);
+            if (child == null) {
+                child = new Step(counter[0]++, identifier);
+                step.children.put(identifier, child);
+            }
+            step = child;
+        }
+        result.add(new Branch(step.index, type));
+
+        return true;
+    }
+
+    /**
+     * Compile a chain of member invocations (e.g. Observation.component.code) into a list of identifiers
+     *
+     * @return
+     *     the list of identifiers or null if the expression is not a chain of member invocations
+     */
+    private List<String> compilePath(ExpressionContext ctx) {
+        if (ctx instanceof FHIRPathParser.TermExpressionContext) {
+            FHIRPathParser.TermContext term = ((FHIRPathParser.TermExpressionContext) ctx).term();
+            if (term instanceof FHIRPathParser.ParenthesizedTermContext) {
+                return compilePath(((FHIRPathParser.ParenthesizedTermContext) term).expression());
+            }
+            if (term instanceof FHIRPathParser.InvocationTermContext
+                    && ((FHIRPathParser.InvocationTermContext) term).invocation() instanceof FHIRPathParser.MemberInvocationContext) {
+                List<String> path = new ArrayList<>();
+                path.add(identifier((FHIRPathParser.MemberInvocationContext) ((FHIRPathParser.InvocationTermContext) term).invocation()));
+                return path;
+            }
+            return null;
+        }
+        if (ctx instanceof FHIRPathParser.InvocationExpressionContext
+                && ((FHIRPathParser.InvocationExpressionContext) ctx).invocation() instanceof FHIRPathParser.MemberInvocationContext) {
+            FHIRPathParser.InvocationExpressionContext invocationExpression = (FHIRPathParser.InvocationExpressionContext) ctx;
+            List<String> path = compilePath(invocationExpression.expression());
+            if (path != null) {
+                path.add(identifier((FHIRPathParser.MemberInvocationContext) invocationExpression.invocation()));
+            }
+            return path;
+        }
+        return null;
+    }
+
+    private String identifier(FHIRPathParser.MemberInvocationContext ctx) {
+        String text = ctx.identifier().getText();
+        return text.startsWith("`") ? text.substring(1, text.length() - 1) : text;
+    }
+
+    /**
+     * Static factory method for creating ExtractionPlan instances
+     *
+     * @param parameters
+     *     the search parameters
+     * @return
+     *     a new ExtractionPlan instance
+     */
+    public static ExtractionPlan compile(List<SearchParameter> parameters) {
+        return new ExtractionPlan(parameters);
+    }
+
+    /**
+     * A node in the prefix tree of compiled paths
+     */
+    private static class Step {
+        private final int index;
+        private final String identifier;
+        private final Map<String, Step> children = new LinkedHashMap<>();
+
+        private Step(int index) {
+            this(index, null);
+        }
+
+        private Step(int index, String identifier) {
+            this.index = index;
+            this.identifier = identifier;
+        }
+    }
+
+    /**
+     * One side of a (possibly) union expression: the step at the end of its path and an optional type cast
+     */
+    private static class Branch {
+        private final int index;
+        private final FHIRPathType type;
+
+        private Branch(int index, FHIRPathType type) {
+            this.index = index;
+            this.type = type;
+        }
+
+        private List<FHIRPathNode> apply(List<FHIRPathNode>[] collections) {
+            List<FHIRPathNode> collection = collections[index];
+            if (type == null) {
+                return new ArrayList<>(collection);
+            }
+            List<FHIRPathNode> result = new ArrayList<>();
+            for (FHIRPathNode node : collection) {
+                FHIRPathType nodeType = node.type();
+                if (SYSTEM_NAMESPACE.equals(type.namespace()) && node.hasValue()) {
+                    nodeType = node.getValue().type();
+                }
+                if (type.isAssignableFrom(nodeType)) {
+                    result.add(node);
+                }
+            }
+            return result;
+        }
+    }
+
+}
@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.search.util;
 
+import static com.ibm.fhir.cache.util.CacheSupport.createCacheAsMap;
 import static com.ibm.fhir.model.util.ModelSupport.FHIR_STRING;
 
 import java.io.FileNotFoundException;
@@ -158,6 +159,13 @@ public class SearchUtil {
      */
     private static TenantSpecificSearchParameterCache searchParameterCache = new TenantSpecificSearchParameterCache();
 
+    /*
+     * Compiled extraction plans keyed by the list of applicable search parameters for a given resource type (and tenant).
+     * The SearchParameter instances are cached, so the keys are compared by identity in practice.
+     */
+    private static final int EXTRACTION_PLAN_CACHE_MAX_ENTRIES = 1024;
+    private static final Map<List<SearchParameter>, ExtractionPlan> EXTRACTION_PLAN_CACHE = createCacheAsMap(EXTRACTION_PLAN_CACHE_MAX_ENTRIES);
+
     private SearchUtil() {
         // No Operation
         // Hides the Initialization
@@ -702,7 +710,12 @@ public class SearchUtil {
 
         List<SearchParameter> parameters = getApplicableSearchParameters(resourceType.getSimpleName());
 
-        for (SearchParameter parameter : parameters) {
+        // Evaluate the compiled expressions in a single pass; the remaining expressions fall back to the evaluator
+        ExtractionPlan plan = EXTRACTION_PLAN_CACHE.computeIfAbsent(parameters, ExtractionPlan::compile);
+        List<List<FHIRPathNode>> compiledResults = plan.evaluate(evaluationContext.getTree().getRoot());
+
+        for (int i = 0; i < parameters.size(); i++) {
+            SearchParameter parameter = parameters.get(i);
 
             com.ibm.fhir.model.type.String expression = parameter.getExpression();
 
@@ -724,7 +737,7 @@ public class SearchUtil {
                 continue;
             }
             try {
-                Collection<FHIRPathNode> tmpResults = evaluator.evaluate(evaluationContext, expression.getValue());
+                Collection<FHIRPathNode> tmpResults = plan.isCompiled(i) ? compiledResults.get(i) : evaluator.evaluate(evaluationContext, expression.getValue());
 
                 if (log.isLoggable(Level.FINEST)) {
                     log.finest("Expression [" + expression.getValue() + "] parameter-code ["
@@ -1685,6 +1698,8 @@ public class SearchUtil {
             } else if (SearchConstants.PAGE.equals(name)) {
                 int pageNumber = Integer.parseInt(first);
                 context.setPageNumber(pageNumber);
+            } else if (SearchConstants.PAGE_TOKEN.equals(name)) {
+                context.setPageToken(first);
             } else if (SearchConstants.SORT.equals(name) && first != null) {
                 // in R4, we only look for _sort
                 // Only first value is used, which matches behavior of other parameters that are supposed to be specified at most once
@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.examples.Index;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Markdown;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.model.type.code.ResourceType;
+import com.ibm.fhir.model.type.code.SearchParamType;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.search.util.ExtractionPlan;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Verifies that compiled extraction plans produce the same results as the FHIRPath evaluator
+ */
+public class ExtractionPlanTest extends BaseSearchTest {
+
+    @Test
+    public void testCompile() {
+        ExtractionPlan plan = ExtractionPlan.compile(Arrays.asList(
+            searchParameter("a", "Observation.code"),
+            searchParameter("b", "Observation.component.code | Observation.code"),
+            searchParameter("c", "(Observation.value as Quantity) | (Observation.value as SampledData)"),
+            searchParameter("d", "Observation.value.as(CodeableConcept).text"),
+            searchParameter("e", "Observation.subject.where(resolve() is Patient)"),
+            searchParameter("f", null)));
+        assertTrue(plan.isCompiled(0));
+        assertTrue(plan.isCompiled(1));
+        assertTrue(plan.isCompiled(2));
+        assertFalse(plan.isCompiled(3));
+        assertFalse(plan.isCompiled(4));
+        assertFalse(plan.isCompiled(5));
+    }
+
+    @Test
+    public void testExamples() throws Exception {
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        int count = 0;
+        try (BufferedReader indexReader = new BufferedReader(ExamplesUtil.indexReader(Index.MINIMAL_JSON))) {
+            for (String line : indexReader.lines().collect(Collectors.toList())) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens.length != 2 || !"OK".equals(tokens[0])) {
+                    continue;
+                }
+                Resource resource;
+                try (Reader reader = ExamplesUtil.resourceReader(tokens[1])) {
+                    resource = FHIRParser.parser(Format.JSON).parse(reader);
+                } catch (FileNotFoundException e) {
+                    continue;
+                }
+
+                List<SearchParameter> parameters = SearchUtil.getApplicableSearchParameters(resource.getClass().getSimpleName());
+                ExtractionPlan plan = ExtractionPlan.compile(parameters);
+                EvaluationContext evaluationContext = new EvaluationContext(resource);
+                List<List<FHIRPathNode>> results = plan.evaluate(evaluationContext.getTree().getRoot());
+
+                for (int i = 0; i < parameters.size(); i++) {
+                    if (!plan.isCompiled(i)) {
+                        continue;
+                    }
+                    String expression = parameters.get(i).getExpression().getValue();
+                    Collection<FHIRPathNode> expected = evaluator.evaluate(evaluationContext, expression);
+                    assertEquals(results.get(i), new ArrayList<>(expected), tokens[1] + ": " + expression);
+                }
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    private SearchParameter searchParameter(String code, String expression) {
+        return SearchParameter.builder()
+                .url(Uri.of("http://example.com/SearchParameter/" + code))
+                .name(com.ibm.fhir.model.type.String.of(code))
+                .status(PublicationStatus.ACTIVE)
+                .description(Markdown.of(code))
+                .code(Code.of(code))
+                .base(ResourceType.OBSERVATION)
+                .type(SearchParamType.TOKEN)
+                .expression(expression != null ? com.ibm.fhir.model.type.String.of(expression) : null)
+                .build();
+    }
+}
@@ -41,6 +41,7 @@ import javax.websocket.server.ServerContainer;
 import org.apache.commons.configuration.MapConfiguration;
 import org.owasp.encoder.Encode;
 
+import com.ibm.fhir.audit.AuditLogServiceFactory;
 import com.ibm.fhir.cache.CachingProxy;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.PropertyGroup;
@@ -247,6 +248,9 @@ public class FHIRServletContextListener implements ServletContextListener {
                 natsPublisher = null;
             }
 
+            // Send or spill any audit events which are still queued.
+            AuditLogServiceFactory.stopService();
+
             for (GraphTermServiceProvider graphTermServiceProvider : graphTermServiceProviders) {
                 graphTermServiceProvider.getGraph().close();
             }
@@ -324,6 +324,28 @@ public interface FHIRResourceHelpers {
     int doReindex(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, List<Long> indexIds,
         String resourceLogicalId) throws Exception;
 
+    /**
+     * Invoke the FHIR persistence reindex operation for a batch of up to maxCount resources in a single transaction.
+     * The default implementation reindexes the resources one at a time, each in its own transaction.
+     * @param operationContext the operation context
+     * @param operationOutcomeResult accumulate issues in this {@link OperationOutcome.Builder}
+     * @param tstamp only reindex resources with a reindex_tstamp less than this
+     * @param resourceLogicalId resourceType or resourceType/logicalId value to limit the resources to reindex, or null
+     * @param maxCount the maximum number of resources to reindex
+     * @return count of the number of resources reindexed by this call; 0 when there is nothing left to do
+     * @throws Exception
+     */
+    default int doReindexBatch(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp,
+        String resourceLogicalId, int maxCount) throws Exception {
+        int result = 0;
+        int processed = 1;
+        while (result < maxCount && processed > 0) {
+            processed = doReindex(operationContext, operationOutcomeResult, tstamp, null, resourceLogicalId);
+            result += processed;
+        }
+        return result;
+    }
+
     /**
      * Invoke the FHIR Persistence erase operation for a specific instance of the erase.
      * @param operationContext
@@ -350,4 +372,15 @@ public interface FHIRResourceHelpers {
      */
     List<Long> doRetrieveIndex(FHIROperationContext operationContext, String resourceTypeName, int count, Instant notModifiedAfter, Long afterIndexId) throws Exception;
 
+    /**
+     * Create a helper for use by another thread which works on the current request. Persistence instances are
+     * request-scoped and hold per-thread transaction state, so a helper must not be shared between threads; the
+     * returned helper has its own persistence instance.
+     * @return a new helper, or null if this implementation does not support concurrent use
+     * @throws Exception
+     */
+    default FHIRResourceHelpers createConcurrentHelper() throws Exception {
+        return null;
+    }
+
 }
\ No newline at end of file
@@ -342,7 +342,7 @@ public class FHIRResource {
     /**
      * Retrieves the shared persistence helper object from the servlet context.
      */
-    private PersistenceHelper getPersistenceHelper() {
+    protected PersistenceHelper getPersistenceHelper() {
         if (persistenceHelper == null) {
             persistenceHelper =
                     (PersistenceHelper) context.getAttribute(FHIRPersistenceHelper.class.getName());
@@ -79,7 +79,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_HTTP_REQUEST, httpServletRequest);
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.GET);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, null, null, null, operationName,
                     null, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, null, result);
@@ -122,7 +122,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_SECURITY_CONTEXT, securityContext);
             operationContext.setProperty(FHIROperationContext.PROPNAME_HTTP_REQUEST, httpServletRequest);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, null, null, null, operationName,
                     resource, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, null, result);
@@ -166,7 +166,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_SECURITY_CONTEXT, securityContext);
             operationContext.setProperty(FHIROperationContext.PROPNAME_HTTP_REQUEST, httpServletRequest);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result =
                     helper.doInvoke(operationContext, null, null, null, operationName, null, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, null, result);
@@ -212,7 +212,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.GET);
             operationContext.setProperty(FHIROperationContext.PROPNAME_PATH_PARAMETER, resourceTypeName);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, resourceTypeName, null, null, operationName,
                     null, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, resourceTypeName, result);
@@ -258,7 +258,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.POST);
             operationContext.setProperty(FHIROperationContext.PROPNAME_PATH_PARAMETER, resourceTypeName);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, resourceTypeName, null, null, operationName,
                     resource, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, resourceTypeName, result);
@@ -318,7 +318,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.GET);
             operationContext.setProperty(FHIROperationContext.PROPNAME_PATH_PARAMETER, resourceTypeName);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, resourceTypeName, logicalId, null, operationName,
                     null, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, resourceTypeName, result);
@@ -365,7 +365,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.POST);
             operationContext.setProperty(FHIROperationContext.PROPNAME_PATH_PARAMETER, resourceTypeName);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, resourceTypeName, logicalId, null, operationName,
                     resource, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, resourceTypeName, result);
@@ -413,7 +413,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.GET);
             operationContext.setProperty(FHIROperationContext.PROPNAME_PATH_PARAMETER, resourceTypeName);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, resourceTypeName, logicalId, versionId, operationName,
                     null, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, resourceTypeName, result);
@@ -461,7 +461,7 @@ public class Operation extends FHIRResource {
             operationContext.setProperty(FHIROperationContext.PROPNAME_METHOD_TYPE, HttpMethod.POST);
             operationContext.setProperty(FHIROperationContext.PROPNAME_PATH_PARAMETER, resourceTypeName);
 
-            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl(), getPersistenceHelper());
             Resource result = helper.doInvoke(operationContext, resourceTypeName, logicalId, versionId, operationName,
                     resource, uriInfo.getQueryParameters());
             Response response = buildResponse(operationContext, resourceTypeName, result);
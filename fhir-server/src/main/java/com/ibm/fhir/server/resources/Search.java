@@ -8,7 +8,9 @@ package com.ibm.fhir.server.resources;
 
 import static com.ibm.fhir.server.util.IssueTypeToHttpStatusMapper.issueListToStatus;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,11 +22,17 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Bundle;
@@ -41,6 +49,9 @@ import com.ibm.fhir.server.util.RestAuditLogger;
 public class Search extends FHIRResource {
     private static final Logger log = java.util.logging.Logger.getLogger(Search.class.getName());
 
+    @Context
+    private HttpHeaders httpHeaders;
+
     public Search() throws Exception {
         super();
     }
@@ -64,6 +75,7 @@ public class Search extends FHIRResource {
         Response.Status status = null;
         MultivaluedMap<String, String> queryParameters = null;
         Bundle bundle = null;
+        boolean streaming = false;
 
         try {
             checkInitComplete();
@@ -71,6 +83,15 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            if (isStreamingResponseAcceptable()) {
+                FHIRRestHelper.StreamingSearch streamingSearch =
+                        helper.prepareStreamingSearch(type, null, null, queryParameters, getRequestUri());
+                if (streamingSearch != null) {
+                    // the audit log entry is written once the bundle has been streamed
+                    streaming = true;
+                    return streamingResponse(streamingSearch, queryParameters, startTime);
+                }
+            }
             bundle = helper.doSearch(type, null, null, queryParameters, getRequestUri(), null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -81,11 +102,13 @@ public class Search extends FHIRResource {
             status = Status.INTERNAL_SERVER_ERROR;
             return exceptionResponse(e, status);
         } finally {
-            try {
-                RestAuditLogger.logSearch(httpServletRequest, queryParameters, bundle,
-                        startTime, new Date(), status);
-            } catch (Exception e) {
-                log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+            if (!streaming) {
+                try {
+                    RestAuditLogger.logSearch(httpServletRequest, queryParameters, bundle,
+                            startTime, new Date(), status);
+                } catch (Exception e) {
+                    log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+                }
             }
 
             log.exiting(this.getClass().getName(), "doSearch");
@@ -113,6 +136,7 @@ public class Search extends FHIRResource {
         Response.Status status = null;
         MultivaluedMap<String, String> queryParameters = null;
         Bundle bundle = null;
+        boolean streaming = false;
 
         try {
             checkInitComplete();
@@ -120,6 +144,15 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            if (isStreamingResponseAcceptable()) {
+                FHIRRestHelper.StreamingSearch streamingSearch =
+                        helper.prepareStreamingSearch(type, compartment, compartmentId, queryParameters, getRequestUri());
+                if (streamingSearch != null) {
+                    // the audit log entry is written once the bundle has been streamed
+                    streaming = true;
+                    return streamingResponse(streamingSearch, queryParameters, startTime);
+                }
+            }
             bundle = helper.doSearch(type, compartment, compartmentId, queryParameters, getRequestUri(), null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -130,11 +163,13 @@ public class Search extends FHIRResource {
             status = Status.INTERNAL_SERVER_ERROR;
             return exceptionResponse(e, status);
         } finally {
-            try {
-                RestAuditLogger.logSearch(httpServletRequest, queryParameters, bundle,
-                        startTime, new Date(), status);
-            } catch (Exception e) {
-                log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+            if (!streaming) {
+                try {
+                    RestAuditLogger.logSearch(httpServletRequest, queryParameters, bundle,
+                            startTime, new Date(), status);
+                } catch (Exception e) {
+                    log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+                }
             }
 
             log.exiting(this.getClass().getName(), "doSearchCompartment");
@@ -186,4 +221,63 @@ public class Search extends FHIRResource {
             log.exiting(this.getClass().getName(), "doSearchAll");
         }
     }
+
+    /**
+     * Returns true if the client will accept a compact JSON response, which is the only format in which
+     * a search response bundle can be streamed.
+     */
+    private boolean isStreamingResponseAcceptable() {
+        List<MediaType> acceptableMediaTypes = httpHeaders.getAcceptableMediaTypes();
+        if (!acceptableMediaTypes.isEmpty()) {
+            MediaType mediaType = acceptableMediaTypes.get(0);
+            if (!mediaType.isWildcardType() && !mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_JSON_TYPE)
+                    && !mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return false;
+            }
+        }
+
+        // Same precedence as FHIRProvider: the header, then the _pretty query parameter, then the config
+        String pretty = httpHeaders.getHeaderString(FHIRConfiguration.DEFAULT_PRETTY_RESPONSE_HEADER_NAME);
+        if (pretty == null) {
+            pretty = uriInfo.getQueryParameters().getFirst("_pretty");
+        }
+        if (pretty != null && (Boolean.parseBoolean(pretty) || "false".equalsIgnoreCase(pretty))) {
+            return !Boolean.parseBoolean(pretty);
+        }
+        return !FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_DEFAULT_PRETTY_PRINT, false);
+    }
+
+    /**
+     * Builds a response which writes the result bundle of the passed search as it is read from the persistence layer,
+     * and then writes the audit log entry for the search.
+     */
+    private Response streamingResponse(FHIRRestHelper.StreamingSearch streamingSearch, MultivaluedMap<String, String> queryParameters,
+            Date startTime) {
+        StreamingOutput entity = out -> {
+            Response.Status status = Status.INTERNAL_SERVER_ERROR;
+            try {
+                streamingSearch.writeTo(out);
+                status = Status.OK;
+            } catch (Exception e) {
+                if (e instanceof FHIROperationException) {
+                    status = issueListToStatus(((FHIROperationException) e).getIssues());
+                }
+                if (!streamingSearch.isCommitted()) {
+                    // nothing has been written yet, so the error can still be returned as usual
+                    throw new WebApplicationException(e instanceof FHIROperationException
+                            ? exceptionResponse((FHIROperationException) e, status) : exceptionResponse(e, status));
+                }
+                log.log(Level.SEVERE, "An error occurred while streaming the search response bundle; the response is incomplete", e);
+                throw e instanceof IOException ? (IOException) e : new IOException(e);
+            } finally {
+                try {
+                    RestAuditLogger.logSearch(httpServletRequest, queryParameters, streamingSearch.getBundle(),
+                            startTime, new Date(), status);
+                } catch (Exception e) {
+                    log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+                }
+            }
+        };
+        return Response.status(Status.OK).type(FHIRMediaType.APPLICATION_FHIR_JSON_TYPE).entity(entity).build();
+    }
 }
@@ -15,7 +15,11 @@ import static javax.servlet.http.HttpServletResponse.SC_GONE;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -32,11 +36,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import jakarta.json.Json;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -52,6 +58,9 @@ import com.ibm.fhir.core.HTTPHandlingPreference;
 import com.ibm.fhir.core.HTTPReturnPreference;
 import com.ibm.fhir.core.context.FHIRPagingContext;
 import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.patch.FHIRPatch;
 import com.ibm.fhir.model.patch.exception.FHIRPatchException;
 import com.ibm.fhir.model.resource.Bundle;
@@ -92,6 +101,8 @@ import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.ResourceChangeLogRecord;
 import com.ibm.fhir.persistence.ResourceEraseRecord;
+import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.ResourceVersionMetadata;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -102,9 +113,11 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+import com.ibm.fhir.persistence.helper.PersistenceHelper;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.util.ConcurrentTaskRunner;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.profile.ProfileSupport;
 import com.ibm.fhir.search.SearchConstants;
@@ -148,6 +161,13 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
     // clamp the number of entries in system history to 1000
     private static final int MAX_HISTORY_ENTRIES = 1000;
 
+    // by default, the entries of batch bundles are processed one after another
+    private static final int DEFAULT_BATCH_PARALLELISM = 1;
+
+    // How our generator starts a serialized bundle, and how a streamed 'match' entry ends
+    private static final String BUNDLE_JSON_PREFIX = "{\"resourceType\":\"Bundle\",";
+    private static final byte[] MATCH_ENTRY_END = ",\"search\":{\"mode\":\"match\",\"score\":1}}".getBytes(StandardCharsets.UTF_8);
+
     public static final DateTimeFormatter PARSER_FORMATTER = new DateTimeFormatterBuilder()
             .appendPattern("EEE")
             .optionalStart()
@@ -161,6 +181,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
     private FHIRPersistence persistence = null;
 
+    // Used to obtain an additional FHIRPersistence instance for each thread which processes batch entries; may be null.
+    private PersistenceHelper persistenceHelper = null;
+
     // Used for correlating requests within a bundle.
     private String bundleRequestCorrelationId = null;
 
@@ -170,6 +193,26 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         this.persistence = persistence;
     }
 
+    /**
+     * Constructor for a helper which may process the entries of batch bundles concurrently and which supports
+     * {@link #createConcurrentHelper()}
+     *
+     * @param persistence
+     *            the persistence instance used by the calling thread
+     * @param persistenceHelper
+     *            used to obtain a separate persistence instance for each additional thread which works on the request,
+     *            because persistence instances are request-scoped and must not be shared between threads
+     */
+    public FHIRRestHelper(FHIRPersistence persistence, PersistenceHelper persistenceHelper) {
+        this.persistence = persistence;
+        this.persistenceHelper = persistenceHelper;
+    }
+
+    @Override
+    public FHIRResourceHelpers createConcurrentHelper() throws Exception {
+        return persistenceHelper != null ? new FHIRRestHelper(persistenceHelper.getFHIRPersistenceImplementation()) : null;
+    }
+
     @Override
     public FHIRRestOperationResponse doCreate(String type, Resource resource, String ifNoneExist,
             boolean doValidation) throws Exception {
@@ -340,6 +383,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         FHIRRequestContext requestContext = FHIRRequestContext.get();
 
         boolean isDeleted; // stash the deleted status of the resource when we first read it
+        ResourceVersionMetadata prevMetadata = null; // set instead of the previous resource when only its metadata was read
         FHIRRestOperationResponse ior = new FHIRRestOperationResponse();
 
         try {
@@ -443,11 +487,22 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                     }
                 }
 
-                // Retrieve the resource to be updated using the type and id values. Include
-                // the resource even if it has been deleted
-                SingleResourceResult<? extends Resource> srr = doRead(type, id, (patch != null), true, newResource, null, false);
-                ior.setPrevResource(srr.getResource());
-                isDeleted = srr.isDeleted();
+                if (patch == null && persistence.isVersionMetadataSupported()) {
+                    // A plain update only needs the current version of the resource, so avoid reading
+                    // and parsing its payload unless it turns out to be needed further on
+                    prevMetadata = doReadVersionMetadata(type, id);
+                    isDeleted = prevMetadata != null && prevMetadata.isDeleted();
+                    if (prevMetadata != null && skippableUpdate && !isDeleted && prevMetadata.getFingerprint() == null) {
+                        // No stored fingerprint to compare with, so we need the resource after all
+                        ior.setPrevResource(doRead(type, id, false, true, newResource, null, false).getResource());
+                    }
+                } else {
+                    // Retrieve the resource to be updated using the type and id values. Include
+                    // the resource even if it has been deleted
+                    SingleResourceResult<? extends Resource> srr = doRead(type, id, (patch != null), true, newResource, null, false);
+                    ior.setPrevResource(srr.getResource());
+                    isDeleted = srr.isDeleted();
+                }
             }
 
             if (patch != null) {
@@ -470,17 +525,30 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             List<Issue> warnings = doValidation ? new ArrayList<>(validateInput(newResource)) : new ArrayList<>() ;
 
             // Perform the "version-aware" update check, and also find out if the resource was deleted.
-            if (ior.getPrevResource() != null) {
-                performVersionAwareUpdateCheck(ior.getPrevResource(), ifMatchValue);
+            if (ior.getPrevResource() != null || prevMetadata != null) {
+                if (ior.getPrevResource() != null) {
+                    performVersionAwareUpdateCheck(ior.getPrevResource(), ifMatchValue);
+                } else {
+                    performVersionAwareUpdateCheck(Integer.toString(prevMetadata.getVersionId()), ifMatchValue);
+                }
 
-                if (skippableUpdate && !isDeleted) {
-                    ResourceFingerprintVisitor fingerprinter = new ResourceFingerprintVisitor();
-                    ior.getPrevResource().accept(fingerprinter);
-                    SaltHash baseline = fingerprinter.getSaltAndHash();
+                if (skippableUpdate && !isDeleted && (ior.getPrevResource() != null || prevMetadata.getFingerprint() != null)) {
+                    SaltHash baseline;
+                    if (ior.getPrevResource() != null) {
+                        ResourceFingerprintVisitor fingerprinter = new ResourceFingerprintVisitor();
+                        ior.getPrevResource().accept(fingerprinter);
+                        baseline = fingerprinter.getSaltAndHash();
+                    } else {
+                        baseline = prevMetadata.getFingerprint();
+                    }
 
-                    fingerprinter = new ResourceFingerprintVisitor(baseline);
+                    ResourceFingerprintVisitor fingerprinter = new ResourceFingerprintVisitor(baseline);
                     newResource.accept(fingerprinter);
                     if (fingerprinter.getSaltAndHash().equals(baseline)) {
+                        if (ior.getPrevResource() == null) {
+                            // The existing resource is returned as the result of the skipped update
+                            ior.setPrevResource(doRead(type, id, false, true, newResource, null, false).getResource());
+                        }
                         txn.commit();
                         txn = null;
 
@@ -506,11 +574,17 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             FHIRPersistenceEvent event = new FHIRPersistenceEvent(newResource,
                     buildPersistenceEventProperties(type, newResource.getId(), null, null));
 
-            // Next, set the "previous resource" in the persistence event.
-            event.setPrevFhirResource(ior.getPrevResource());
+            // Next, set the "previous resource" in the persistence event. If we only read its
+            // metadata, it is read when (and if) an interceptor asks for it
+            if (ior.getPrevResource() == null && prevMetadata != null) {
+                final String prevId = id;
+                event.setPrevFhirResourceLoader(() -> doRead(type, prevId, false, true, null, null, false).getResource());
+            } else {
+                event.setPrevFhirResource(ior.getPrevResource());
+            }
 
             // Next, invoke the 'beforeUpdate' or 'beforeCreate' interceptor methods as appropriate.
-            boolean updateCreate = (ior.getPrevResource() == null);
+            boolean updateCreate = (ior.getPrevResource() == null && prevMetadata == null);
             if (updateCreate) {
                 getInterceptorMgr().fireBeforeCreateEvent(event);
             } else {
@@ -525,6 +599,11 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             // write the resource back in case the interceptors modified it in some way
             newResource = event.getFhirResource();
 
+            // pick up the previous resource if an interceptor caused it to be read
+            if (ior.getPrevResource() == null && event.isPrevFhirResourceSet()) {
+                ior.setPrevResource(event.getPrevFhirResource());
+            }
+
             FHIRPersistenceContext persistenceContext =
                     FHIRPersistenceContextFactory.createPersistenceContext(event);
             SingleResourceResult<Resource> result = persistence.update(persistenceContext, id, newResource);
@@ -770,6 +849,26 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return doRead(type, id, throwExcOnNull, includeDeleted, contextResource, queryParameters, true);
     }
 
+    /**
+     * Reads the metadata of the current version of a resource, even if it has been deleted,
+     * without reading its payload. Must be called within a transaction. The read interceptors
+     * are not invoked, because no resource is read.
+     *
+     * @param type
+     *            the resource type
+     * @param id
+     *            the id of the resource
+     * @return the metadata of the current version, or null if the resource does not exist
+     * @throws Exception
+     */
+    private ResourceVersionMetadata doReadVersionMetadata(String type, String id) throws Exception {
+        Class<? extends Resource> resourceType = getResourceType(type);
+        FHIRPersistenceEvent event =
+                new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, id, null, null));
+        FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(event, true);
+        return persistence.readCurrentVersionMetadata(persistenceContext, resourceType, id);
+    }
+
     /**
      * Performs a 'read' operation to retrieve a Resource.
      *
@@ -1101,6 +1200,232 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Prepares a search whose response bundle can be written to the client entry by entry, straight from the stored
+     * payloads of the matching resources, instead of being built from parsed resources by
+     * {@link #doSearch(String, String, String, MultivaluedMap, String, Resource)}. The request is validated and the
+     * 'beforeSearch' interceptor methods are invoked here, but the search itself is performed by
+     * {@link StreamingSearch#writeTo(OutputStream)}.
+     *
+     * @param type
+     *            the resource type associated with the search
+     * @param compartment
+     *            the compartment associated with the search
+     * @param compartmentId
+     *            the ID of the compartment associated with the search
+     * @param queryParameters
+     *            a Map containing the query parameters from the request URL
+     * @param requestUri
+     *            the request URI
+     * @return the prepared search, or null if streaming search responses are not enabled or the search needs the
+     *         parsed resources, in which case doSearch must be used instead
+     * @throws Exception
+     */
+    public StreamingSearch prepareStreamingSearch(String type, String compartment, String compartmentId,
+            MultivaluedMap<String, String> queryParameters, String requestUri) throws Exception {
+        log.entering(this.getClass().getName(), "prepareStreamingSearch");
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            // Interceptors which implement afterSearch expect the bundle to contain the resources, and
+            // unsupported resource types are reported by doSearch
+            if (!FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_STREAM_SEARCH_RESPONSES, false)
+                    || !persistence.isSearchPayloadStreamingSupported()
+                    || getInterceptorMgr().hasAfterSearchInterceptors()
+                    || !ModelSupport.isResourceType(type)
+                    || Resource.class.getSimpleName().equals(type)) {
+                return null;
+            }
+
+            // Validate that interaction is allowed for given resource type
+            validateInteraction(Interaction.SEARCH, type);
+
+            Class<? extends Resource> resourceType = getResourceType(type);
+            FHIRSearchContext searchContext = SearchUtil.parseCompartmentQueryParameters(compartment, compartmentId, resourceType, queryParameters,
+                HTTPHandlingPreference.LENIENT.equals(requestContext.getHandlingPreference()));
+
+            // The stored payloads can only be copied as-is if none of the resources are filtered, no 'include'
+            // resources are needed, and the 'match' resources don't need to be checked
+            List<QueryParameter> chainedSearchParameters = new ArrayList<>();
+            List<QueryParameter> logicalIdReferenceSearchParameters = new ArrayList<>();
+            findReferenceCheckParameters(searchContext, chainedSearchParameters, logicalIdReferenceSearchParameters);
+            if (searchContext.hasElementsParameters()
+                    || (searchContext.hasSummaryParameter() && !SummaryValueSet.FALSE.equals(searchContext.getSummaryParameter()))
+                    || searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()
+                    || !chainedSearchParameters.isEmpty() || !logicalIdReferenceSearchParameters.isEmpty()) {
+                return null;
+            }
+
+            // First, invoke the 'beforeSearch' interceptor methods.
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, searchContext));
+            getInterceptorMgr().fireBeforeSearchEvent(event);
+
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, searchContext);
+            return new StreamingSearch(type, resourceType, requestUri, searchContext, event, persistenceContext);
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            log.exiting(this.getClass().getName(), "prepareStreamingSearch");
+        }
+    }
+
+    /**
+     * A search prepared by {@link FHIRRestHelper#prepareStreamingSearch(String, String, String, MultivaluedMap, String)}
+     * which writes its JSON response bundle while the matching resources are read from the persistence layer. The
+     * 'entry' element comes first and the 'total' and 'link' elements, which are only known once the page has been
+     * read, follow it. Nothing is written until the first entry is available, so errors raised before then can
+     * still be reported with a regular error response.
+     */
+    public final class StreamingSearch {
+        private final String type;
+        private final Class<? extends Resource> resourceType;
+        private final String requestUri;
+        private final FHIRSearchContext searchContext;
+        private final FHIRPersistenceEvent event;
+        private final FHIRPersistenceContext persistenceContext;
+
+        private boolean committed = false;
+        private Bundle bundle = null;
+
+        private StreamingSearch(String type, Class<? extends Resource> resourceType, String requestUri, FHIRSearchContext searchContext,
+                FHIRPersistenceEvent event, FHIRPersistenceContext persistenceContext) {
+            this.type = type;
+            this.resourceType = resourceType;
+            this.requestUri = requestUri;
+            this.searchContext = searchContext;
+            this.event = event;
+            this.persistenceContext = persistenceContext;
+        }
+
+        /**
+         * Performs the search and writes the response bundle to the passed output stream.
+         *
+         * @param out
+         *            the response entity stream
+         * @throws Exception
+         */
+        public void writeTo(OutputStream out) throws Exception {
+            log.entering(FHIRRestHelper.class.getName(), "writeTo");
+
+            FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+            // Start a new txn in the persistence layer if one is not already active.
+            txn.begin();
+
+            // Save the current request context.
+            FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+            try {
+                String fullUrlPrefix = getRequestBaseUri(type) + "/" + type + "/";
+                IOException[] writeFailure = new IOException[1];
+                persistence.searchPayloads(persistenceContext, resourceType, payload -> {
+                    try {
+                        writeEntry(out, fullUrlPrefix, payload);
+                        return true;
+                    } catch (IOException e) {
+                        // stop reading rows; the client has most likely gone away
+                        writeFailure[0] = e;
+                        return false;
+                    }
+                });
+                if (writeFailure[0] != null) {
+                    throw writeFailure[0];
+                }
+
+                bundle = addLinks(searchContext, createSearchBundle(Collections.emptyList(), searchContext, type), requestUri);
+                event.setFhirResource(bundle);
+
+                // Invoke the 'afterSearch' interceptor methods.
+                getInterceptorMgr().fireAfterSearchEvent(event);
+
+                // Commit our transaction if we started one before.
+                txn.commit();
+                txn = null;
+
+                writeEnd(out);
+            } finally {
+                // Restore the original request context.
+                FHIRRequestContext.set(requestContext);
+
+                // If we previously started a transaction and it's still active, we need to rollback due to an error.
+                if (txn != null) {
+                    txn.rollback();
+                }
+
+                log.exiting(FHIRRestHelper.class.getName(), "writeTo");
+            }
+        }
+
+        /**
+         * Writes a 'match' entry for the passed payload, preceded by the start of the bundle if this is the first entry.
+         */
+        private void writeEntry(OutputStream out, String fullUrlPrefix, ResourcePayload payload) throws IOException {
+            StringBuilder entryStart = new StringBuilder();
+            if (committed) {
+                entryStart.append(',');
+            } else {
+                entryStart.append(BUNDLE_JSON_PREFIX).append("\"entry\":[");
+            }
+            String logicalId = payload.getLogicalId();
+            entryStart.append("{\"id\":").append(Json.createValue(logicalId).toString())
+                .append(",\"fullUrl\":").append(Json.createValue(fullUrlPrefix + logicalId).toString())
+                .append(",\"resource\":");
+            committed = true;
+            out.write(entryStart.toString().getBytes(StandardCharsets.UTF_8));
+            payload.transferTo(out);
+            out.write(MATCH_ENTRY_END);
+        }
+
+        /**
+         * Writes the 'outcome' entry, if any, and the remaining elements of the bundle.
+         */
+        private void writeEnd(OutputStream out) throws Exception {
+            String bundleJson = generateJson(bundle);
+            if (!bundleJson.startsWith(BUNDLE_JSON_PREFIX)) {
+                throw new IllegalStateException("Unexpected start of the generated search result bundle");
+            }
+
+            if (committed) {
+                StringBuilder end = new StringBuilder();
+                List<Issue> issues = searchContext.getOutcomeIssues();
+                if (issues != null && !issues.isEmpty()) {
+                    // Add OperationOutcome resource containing issues
+                    end.append(",{\"resource\":").append(generateJson(FHIRUtil.buildOperationOutcome(issues)))
+                        .append(",\"search\":{\"mode\":\"outcome\"}}");
+                }
+                end.append("],").append(bundleJson, BUNDLE_JSON_PREFIX.length(), bundleJson.length());
+                out.write(end.toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                committed = true;
+                out.write(bundleJson.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        private String generateJson(Resource resource) throws FHIRGeneratorException {
+            StringWriter writer = new StringWriter();
+            FHIRGenerator.generator(Format.JSON).generate(resource, writer);
+            return writer.toString();
+        }
+
+        /**
+         * @return true if any part of the response bundle has been written
+         */
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        /**
+         * @return the response bundle without its entries, or null if it has not been completely written
+         */
+        public Bundle getBundle() {
+            return bundle;
+        }
+    }
+
     /**
      * Helper method which invokes a custom operation.
      *
@@ -1458,6 +1783,21 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      *            the current latest version of the resource
      */
     private void performVersionAwareUpdateCheck(Resource currentResource, String ifMatchValue) throws FHIROperationException {
+        String currentVersion = null;
+        if (currentResource.getMeta() != null
+                && currentResource.getMeta().getVersionId() != null) {
+            currentVersion = currentResource.getMeta().getVersionId().getValue();
+        }
+        performVersionAwareUpdateCheck(currentVersion, ifMatchValue);
+    }
+
+    /**
+     * Performs the "version-aware" update check against the given current version
+     * @param currentVersion the version id of the current latest version of the resource
+     * @param ifMatchValue the If-Match header value from the request
+     * @throws FHIROperationException if the versions don't match
+     */
+    private void performVersionAwareUpdateCheck(String currentVersion, String ifMatchValue) throws FHIROperationException {
         if (ifMatchValue != null) {
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Performing a version aware update. ETag value =  " + ifMatchValue);
@@ -1476,13 +1816,6 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 log.fine("Version id from ETag value specified in request: " + ifMatchVersion);
             }
 
-            // Retrieve the version #'s from the current and updated resources.
-            String currentVersion = null;
-            if (currentResource.getMeta() != null
-                    && currentResource.getMeta().getVersionId() != null) {
-                currentVersion = currentResource.getMeta().getVersionId().getValue();
-            }
-
             // Next, make sure that the If-Match version matches the version # found
             // in the current latest version of the resource.
             // If they don't match we'll return an HTTP 412 (Precondition Failed) status code.
@@ -1689,6 +2022,11 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 }
             }
 
+            // The entries of a 'batch' bundle are independent of each other, so they can be processed concurrently
+            // when no transaction has been started for the bundle as a whole.
+            int batchParallelism = persistenceHelper != null ?
+                    FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_BATCH_PARALLELISM, DEFAULT_BATCH_PARALLELISM) : 1;
+
             for (Map.Entry<HTTPVerb.Value, List<Integer>> methodIndices : requestEntriesByMethod.entrySet()) {
                 HTTPVerb.Value httpMethod = methodIndices.getKey();
                 List<Integer> entryIndices = methodIndices.getValue();
@@ -1709,106 +2047,15 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 // Now visit each of the request entries using the list of indices obtained above.
                 // Use hashmap to store both the index and the accordingly updated response bundle entry.
                 Map<Integer, Entry> responseIndexAndEntries = new HashMap<Integer, Entry>();
-                for (Integer entryIndex : entryIndices) {
-                    Entry requestEntry = requestBundle.getEntry().get(entryIndex);
-                    Entry.Request request = requestEntry.getRequest();
-
-                    StringBuilder requestDescription = new StringBuilder();
-                    long initialTime = System.currentTimeMillis();
-
-                    try {
-                        FHIRUrlParser requestURL = new FHIRUrlParser(request.getUrl().getValue());
-
-                        // Log our initial info message for this request.
-                        requestDescription.append("entryIndex:[");
-                        requestDescription.append(entryIndex);
-                        requestDescription.append("] correlationId:[");
-                        requestDescription.append(bundleRequestCorrelationId);
-                        requestDescription.append("] method:[");
-                        requestDescription.append(request.getMethod().getValue());
-                        requestDescription.append("] uri:[");
-                        requestDescription.append(request.getUrl().getValue());
-                        requestDescription.append("]");
-                        if (log.isLoggable(Level.FINE)) {
-                            log.fine("Processing bundled request: " + requestDescription.toString());
-                            if (log.isLoggable(Level.FINER)) {
-                                log.finer("--> path: '" + requestURL.getPath() + "'");
-                                log.finer("--> query: '" + requestURL.getQuery() + "'");
-                            }
-                        }
-
-                        // Construct the absolute requestUri to be used for any response bundles associated
-                        // with history and search requests.
-                        String absoluteUri = getAbsoluteUri(getRequestUri(), request.getUrl().getValue());
-
-                        if (request.getMethod().equals(HTTPVerb.GET)) {
-                            responseEntries[entryIndex] = processEntryForGet(request, requestURL, absoluteUri,
-                                    requestDescription.toString(), initialTime);
-                        } else if (request.getMethod().equals(HTTPVerb.POST)) {
-                            Entry validationResponseEntry = validationResponseEntries.get(entryIndex);
-                            responseEntries[entryIndex] = processEntryForPost(requestEntry, validationResponseEntry, responseIndexAndEntries,
-                                    entryIndex, localRefMap, requestURL, absoluteUri, requestDescription.toString(), initialTime, (bundleType == BundleType.Value.TRANSACTION));
-                        } else if (request.getMethod().equals(HTTPVerb.PUT)) {
-                            Entry validationResponseEntry = validationResponseEntries.get(entryIndex);
-                            responseEntries[entryIndex] = processEntryForPut(requestEntry, validationResponseEntry, responseIndexAndEntries,
-                                    entryIndex, localRefMap, requestURL, absoluteUri, requestDescription.toString(), initialTime, skippableUpdates, (bundleType == BundleType.Value.TRANSACTION));
-                        } else if (request.getMethod().equals(HTTPVerb.PATCH)) {
-                            responseEntries[entryIndex] = processEntryForPatch(requestEntry, requestURL,entryIndex,
-                                    requestDescription.toString(), initialTime, skippableUpdates);
-                        } else if (request.getMethod().equals(HTTPVerb.DELETE)) {
-                            responseEntries[entryIndex] = processEntryForDelete(requestURL, requestDescription.toString(), initialTime);
-                        } else {
-                            // Internal error, should not get here!
-                            throw new IllegalStateException("Internal Server Error: reached an unexpected code location.");
-                        }
-                    } catch (FHIRPersistenceResourceNotFoundException e) {
-                        if (failFast) {
-                            String msg = "Error while processing request bundle.";
-                            throw new FHIRRestBundledRequestException(msg, e).withIssue(e.getIssues());
-                        }
-
-                        responseEntries[entryIndex] = Entry.builder()
-                                .resource(FHIRUtil.buildOperationOutcome(e, false))
-                                .response(Entry.Response.builder()
-                                    .status(SC_NOT_FOUND_STRING)
-                                    .build())
-                                .build();
-                        logBundledRequestCompletedMsg(requestDescription.toString(), initialTime, SC_NOT_FOUND);
-                    } catch (FHIRPersistenceResourceDeletedException e) {
-                        if (failFast) {
-                            String msg = "Error while processing request bundle.";
-                            throw new FHIRRestBundledRequestException(msg, e).withIssue(e.getIssues());
-                        }
-
-                        responseEntries[entryIndex] = Entry.builder()
-                                .resource(FHIRUtil.buildOperationOutcome(e, false))
-                                .response(Entry.Response.builder()
-                                    .status(SC_GONE_STRING)
-                                    .build())
-                                .build();
-                        logBundledRequestCompletedMsg(requestDescription.toString(), initialTime, SC_GONE);
-                    } catch (FHIROperationException e) {
-                        if (failFast) {
-                            String msg = "Error while processing request bundle.";
-                            throw new FHIRRestBundledRequestException(msg, e).withIssue(e.getIssues());
-                        }
-
-                        Status status;
-                        if (e instanceof FHIRSearchException) {
-                            status = Status.BAD_REQUEST;
-                        } else {
-                            status = IssueTypeToHttpStatusMapper.issueListToStatus(e.getIssues());
-                        }
-
-                        responseEntries[entryIndex] = Entry.builder()
-                                .resource(FHIRUtil.buildOperationOutcome(e, false))
-                                .response(Entry.Response.builder()
-                                    .status(string(Integer.toString(status.getStatusCode())))
-                                    .build())
-                                .build();
-                        logBundledRequestCompletedMsg(requestDescription.toString(), initialTime, status.getStatusCode());
+                if (bundleType == BundleType.Value.BATCH && txn == null && batchParallelism > 1 && entryIndices.size() > 1) {
+                    processBatchEntriesConcurrently(requestBundle, entryIndices, responseEntries, validationResponseEntries,
+                            responseIndexAndEntries, localRefMap, bundleRequestCorrelationId, skippableUpdates, batchParallelism);
+                } else {
+                    for (Integer entryIndex : entryIndices) {
+                        responseEntries[entryIndex] = processEntry(requestBundle, entryIndex, validationResponseEntries,
+                                responseIndexAndEntries, failFast, localRefMap, bundleRequestCorrelationId, skippableUpdates);
                     }
-                } // end foreach method entry
+                }
                 if (log.isLoggable(Level.FINER)) {
                     log.finer("Finished processing for method: " + httpMethod);
                 }
@@ -1835,6 +2082,285 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Processes a single request entry of the specified request bundle.
+     *
+     * @param requestBundle
+     *            the bundle containing the request entries
+     * @param entryIndex
+     *            the bundle entry index of the bundle entry to be processed
+     * @param validationResponseEntries
+     *            the response entries with errors/warnings constructed during validation
+     * @param responseIndexAndEntries
+     *            the hashmap containing bundle entry indexes and their associated response entries
+     * @param failFast
+     *            a boolean value indicating if processing should stop on first failure
+     * @param localRefMap
+     *            the map of local references to external references
+     * @param bundleRequestCorrelationId
+     *            the bundle request correlation ID
+     * @param skippableUpdates
+     *            if true, and the bundle contains an update for which the resource content in the update matches the existing
+     *            resource on the server, then skip the update; if false, then always attempt the updates specified in the bundle
+     * @return the bundle entry response
+     * @throws Exception
+     */
+    private Entry processEntry(Bundle requestBundle, int entryIndex, Map<Integer, Entry> validationResponseEntries,
+            Map<Integer, Entry> responseIndexAndEntries, boolean failFast, Map<String, String> localRefMap, String bundleRequestCorrelationId,
+            boolean skippableUpdates) throws Exception {
+        Entry requestEntry = requestBundle.getEntry().get(entryIndex);
+        Entry.Request request = requestEntry.getRequest();
+        BundleType.Value bundleType = requestBundle.getType().getValueAsEnum();
+        Entry responseEntry = null;
+
+        StringBuilder requestDescription = new StringBuilder();
+        long initialTime = System.currentTimeMillis();
+
+        try {
+            FHIRUrlParser requestURL = new FHIRUrlParser(request.getUrl().getValue());
+
+            // Log our initial info message for this request.
+            requestDescription.append("entryIndex:[");
+            requestDescription.append(entryIndex);
+            requestDescription.append("] correlationId:[");
+            requestDescription.append(bundleRequestCorrelationId);
+            requestDescription.append("] method:[");
+            requestDescription.append(request.getMethod().getValue());
+            requestDescription.append("] uri:[");
+            requestDescription.append(request.getUrl().getValue());
+            requestDescription.append("]");
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Processing bundled request: " + requestDescription.toString());
+                if (log.isLoggable(Level.FINER)) {
+                    log.finer("--> path: '" + requestURL.getPath() + "'");
+                    log.finer("--> query: '" + requestURL.getQuery() + "'");
+                }
+            }
+
+            // Construct the absolute requestUri to be used for any response bundles associated
+            // with history and search requests.
+            String absoluteUri = getAbsoluteUri(getRequestUri(), request.getUrl().getValue());
+
+            if (request.getMethod().equals(HTTPVerb.GET)) {
+                responseEntry = processEntryForGet(request, requestURL, absoluteUri,
+                        requestDescription.toString(), initialTime);
+            } else if (request.getMethod().equals(HTTPVerb.POST)) {
+                Entry validationResponseEntry = validationResponseEntries.get(entryIndex);
+                responseEntry = processEntryForPost(requestEntry, validationResponseEntry, responseIndexAndEntries,
+                        entryIndex, localRefMap, requestURL, absoluteUri, requestDescription.toString(), initialTime, (bundleType == BundleType.Value.TRANSACTION));
+            } else if (request.getMethod().equals(HTTPVerb.PUT)) {
+                Entry validationResponseEntry = validationResponseEntries.get(entryIndex);
+                responseEntry = processEntryForPut(requestEntry, validationResponseEntry, responseIndexAndEntries,
+                        entryIndex, localRefMap, requestURL, absoluteUri, requestDescription.toString(), initialTime, skippableUpdates, (bundleType == BundleType.Value.TRANSACTION));
+            } else if (request.getMethod().equals(HTTPVerb.PATCH)) {
+                responseEntry = processEntryForPatch(requestEntry, requestURL,entryIndex,
+                        requestDescription.toString(), initialTime, skippableUpdates);
+            } else if (request.getMethod().equals(HTTPVerb.DELETE)) {
+                responseEntry = processEntryForDelete(requestURL, requestDescription.toString(), initialTime);
+            } else {
+                // Internal error, should not get here!
+                throw new IllegalStateException("Internal Server Error: reached an unexpected code location.");
+            }
+        } catch (FHIRPersistenceResourceNotFoundException e) {
+            if (failFast) {
+                String msg = "Error while processing request bundle.";
+                throw new FHIRRestBundledRequestException(msg, e).withIssue(e.getIssues());
+            }
+
+            responseEntry = Entry.builder()
+                    .resource(FHIRUtil.buildOperationOutcome(e, false))
+                    .response(Entry.Response.builder()
+                        .status(SC_NOT_FOUND_STRING)
+                        .build())
+                    .build();
+            logBundledRequestCompletedMsg(requestDescription.toString(), initialTime, SC_NOT_FOUND);
+        } catch (FHIRPersistenceResourceDeletedException e) {
+            if (failFast) {
+                String msg = "Error while processing request bundle.";
+                throw new FHIRRestBundledRequestException(msg, e).withIssue(e.getIssues());
+            }
+
+            responseEntry = Entry.builder()
+                    .resource(FHIRUtil.buildOperationOutcome(e, false))
+                    .response(Entry.Response.builder()
+                        .status(SC_GONE_STRING)
+                        .build())
+                    .build();
+            logBundledRequestCompletedMsg(requestDescription.toString(), initialTime, SC_GONE);
+        } catch (FHIROperationException e) {
+            if (failFast) {
+                String msg = "Error while processing request bundle.";
+                throw new FHIRRestBundledRequestException(msg, e).withIssue(e.getIssues());
+            }
+
+            Status status;
+            if (e instanceof FHIRSearchException) {
+                status = Status.BAD_REQUEST;
+            } else {
+                status = IssueTypeToHttpStatusMapper.issueListToStatus(e.getIssues());
+            }
+
+            responseEntry = Entry.builder()
+                    .resource(FHIRUtil.buildOperationOutcome(e, false))
+                    .response(Entry.Response.builder()
+                        .status(string(Integer.toString(status.getStatusCode())))
+                        .build())
+                    .build();
+            logBundledRequestCompletedMsg(requestDescription.toString(), initialTime, status.getStatusCode());
+        }
+        return responseEntry;
+    }
+
+    /**
+     * Processes the specified request entries of a 'batch' bundle, which all have the same request method, on up to
+     * <code>batchParallelism</code> threads. Each entry is processed in its own transaction. The calling thread takes part
+     * in the work and additional workers are obtained from the container's managed executor; each worker uses its own
+     * persistence instance. Entries which depend on the outcome of other entries (see {@link #isIndependentBatchEntry})
+     * are processed afterwards by the calling thread, in their original order.
+     *
+     * <p>The state which is shared by the threads is either thread-safe or only read: <code>localRefMap</code> is a
+     * concurrent map (see {@link #buildLocalRefMap}), each response entry is stored at its own index, and the workers run
+     * with the calling thread's {@link FHIRRequestContext}, which is fully populated before the bundle is processed and
+     * must not be modified while the entries are being processed.
+     *
+     * @param requestBundle
+     *            the bundle containing the request entries
+     * @param entryIndices
+     *            the indices of the request entries to be processed
+     * @param responseEntries
+     *            the response entries, by request entry index, to be filled in
+     * @param validationResponseEntries
+     *            the response entries with errors/warnings constructed during validation
+     * @param responseIndexAndEntries
+     *            the hashmap containing bundle entry indexes and their associated response entries
+     * @param localRefMap
+     *            the map of local references to external references
+     * @param bundleRequestCorrelationId
+     *            the bundle request correlation ID
+     * @param skippableUpdates
+     *            if true, and the bundle contains an update for which the resource content in the update matches the existing
+     *            resource on the server, then skip the update; if false, then always attempt the updates specified in the bundle
+     * @param batchParallelism
+     *            the maximum number of entries processed concurrently
+     * @throws Exception
+     */
+    private void processBatchEntriesConcurrently(Bundle requestBundle, List<Integer> entryIndices, Entry[] responseEntries,
+            Map<Integer, Entry> validationResponseEntries, Map<Integer, Entry> responseIndexAndEntries, Map<String, String> localRefMap,
+            String bundleRequestCorrelationId, boolean skippableUpdates, int batchParallelism) throws Exception {
+
+        // Count the update, patch and delete entries for each resource so that entries which modify the same resource keep their order
+        Map<String, Integer> urlPathCounts = new HashMap<>();
+        for (Integer entryIndex : entryIndices) {
+            Entry requestEntry = requestBundle.getEntry().get(entryIndex);
+            if (modifiesExistingResource(requestEntry)) {
+                urlPathCounts.merge(String.valueOf(getUrlPath(requestEntry)), 1, Integer::sum);
+            }
+        }
+
+        List<Integer> independentIndices = new ArrayList<>();
+        List<Integer> dependentIndices = new ArrayList<>();
+        for (Integer entryIndex : entryIndices) {
+            Entry requestEntry = requestBundle.getEntry().get(entryIndex);
+            if ((!modifiesExistingResource(requestEntry) || urlPathCounts.get(String.valueOf(getUrlPath(requestEntry))) == 1)
+                    && isIndependentBatchEntry(requestEntry, localRefMap)) {
+                independentIndices.add(entryIndex);
+            } else {
+                dependentIndices.add(entryIndex);
+            }
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Processing batch request indices " + independentIndices + " on up to " + batchParallelism + " thread(s), then "
+                    + dependentIndices + " in order, request-correlation-id=" + bundleRequestCorrelationId);
+        }
+
+        // Persistence instances are request-scoped, so each worker gets a helper with its own
+        Map<Integer, Entry> synchronizedResponseIndexAndEntries = Collections.synchronizedMap(responseIndexAndEntries);
+        ConcurrentTaskRunner.run("batch", independentIndices.size(), batchParallelism, this,
+            work -> work.accept(new FHIRRestHelper(persistenceHelper.getFHIRPersistenceImplementation())),
+            (helper, index) -> {
+                int entryIndex = independentIndices.get(index);
+                responseEntries[entryIndex] = helper.processEntry(requestBundle, entryIndex, validationResponseEntries,
+                        synchronizedResponseIndexAndEntries, false, localRefMap, bundleRequestCorrelationId, skippableUpdates);
+            });
+
+        for (Integer entryIndex : dependentIndices) {
+            responseEntries[entryIndex] = processEntry(requestBundle, entryIndex, validationResponseEntries,
+                    responseIndexAndEntries, false, localRefMap, bundleRequestCorrelationId, skippableUpdates);
+        }
+    }
+
+    /**
+     * Returns true if the specified request entry updates, patches or deletes a resource.
+     *
+     * @param requestEntry
+     *            the request bundle entry
+     * @return true if the request method is PUT, PATCH or DELETE
+     */
+    private static boolean modifiesExistingResource(Entry requestEntry) {
+        HTTPVerb.Value method = requestEntry.getRequest().getMethod().getValueAsEnum();
+        return method == HTTPVerb.Value.PUT || method == HTTPVerb.Value.PATCH || method == HTTPVerb.Value.DELETE;
+    }
+
+    /**
+     * Determines whether the specified batch request entry can be processed concurrently with the other entries of the
+     * same request method. Conditional interactions and custom operations can depend on the outcome of other entries,
+     * and conditional creates and updates can add local reference mappings, so they are not independent. Neither are
+     * entries which refer to a local identifier which has no mapping yet, because the mapping may be added by one of
+     * those entries.
+     *
+     * @param requestEntry
+     *            the request bundle entry
+     * @param localRefMap
+     *            the map of local references to external references
+     * @return true if the entry can be processed concurrently with other entries
+     */
+    private boolean isIndependentBatchEntry(Entry requestEntry, Map<String, String> localRefMap) {
+        Entry.Request request = requestEntry.getRequest();
+        FHIRUrlParser requestURL = new FHIRUrlParser(request.getUrl().getValue());
+        String[] pathTokens = requestURL.getPathTokens();
+        if (pathTokens.length == 0 || pathTokens[pathTokens.length - 1].startsWith("$")) {
+            return false;
+        }
+
+        switch (request.getMethod().getValueAsEnum()) {
+        case GET:
+            return true;
+        case POST:
+            if (pathTokens.length == 2 && "_search".equals(pathTokens[1])) {
+                return true;
+            }
+            if (pathTokens.length != 1 || (request.getIfNoneExist() != null && request.getIfNoneExist().getValue() != null
+                    && !request.getIfNoneExist().getValue().isEmpty())) {
+                return false;
+            }
+            break;
+        case PUT:
+        case PATCH:
+        case DELETE:
+            if (pathTokens.length != 2) {
+                return false;
+            }
+            break;
+        default:
+            return false;
+        }
+
+        if (requestEntry.getResource() != null) {
+            CollectingVisitor<Reference> visitor = new CollectingVisitor<>(Reference.class);
+            requestEntry.getResource().accept(visitor);
+            for (Reference reference : visitor.getResult()) {
+                if (reference.getReference() != null && reference.getReference().getValue() != null) {
+                    String value = reference.getReference().getValue();
+                    if (value.startsWith(LOCAL_REF_PREFIX) && !localRefMap.containsKey(value)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Processes a request entry with a request method of Patch.
      *
@@ -2432,7 +2958,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      * @return local reference map
      */
     private Map<String, String> buildLocalRefMap(Bundle requestBundle, Map<Integer, Entry> validationResponseEntries) throws Exception {
-        Map<String, String> localRefMap = new HashMap<>();
+        // Batch entries may be processed concurrently (see processBatchEntriesConcurrently), and processing an entry
+        // can add a mapping, so the map must be safe for concurrent use
+        Map<String, String> localRefMap = new ConcurrentHashMap<>();
 
         for (int entryIndex = 0; entryIndex < requestBundle.getEntry().size(); entryIndex++) {
             Entry requestEntry = requestBundle.getEntry().get(entryIndex);
@@ -2539,7 +3067,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      */
     private String retrieveGeneratedIdentifier(Map<String, String> localRefMap, String localIdentifier) {
         String generatedIdentifier = null;
-        String externalIdentifier = localRefMap.get(localIdentifier);
+        String externalIdentifier = localIdentifier != null ? localRefMap.get(localIdentifier) : null;
         if (externalIdentifier != null) {
             int index = externalIdentifier.indexOf("/");
             if (index > -1) {
@@ -2649,22 +3177,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             // Find chained search parameters and find reference search parameters containing only a logical ID
             List<QueryParameter> chainedSearchParameters = new ArrayList<>();
             List<QueryParameter> logicalIdReferenceSearchParameters = new ArrayList<>();
-            for (QueryParameter queryParameter : searchContext.getSearchParameters()) {
-                if (!queryParameter.isReverseChained()) {
-                    if (queryParameter.isChained()) {
-                        chainedSearchParameters.add(queryParameter);
-                    } else if (SearchConstants.Type.REFERENCE == queryParameter.getType()) {
-                        // Look for logical ID-only value
-                        for (QueryParameterValue value : queryParameter.getValues()) {
-                            ReferenceValue refVal = ReferenceUtil.createReferenceValueFrom(value.getValueString(), null, ReferenceUtil.getBaseUrl(null));
-                            if (refVal.getType() == ReferenceType.LITERAL_RELATIVE && refVal.getTargetResourceType() == null) {
-                                logicalIdReferenceSearchParameters.add(queryParameter);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
+            findReferenceCheckParameters(searchContext, chainedSearchParameters, logicalIdReferenceSearchParameters);
             List<Issue> issues = new ArrayList<>();
             if (searchContext.getOutcomeIssues() != null) {
                 issues.addAll(searchContext.getOutcomeIssues());
@@ -2725,6 +3238,38 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return bundle;
     }
 
+    /**
+     * Finds the search parameters for which the 'match' resources must be checked by
+     * {@link #performSearchReferenceChecks(String, List, List, List)}.
+     *
+     * @param searchContext
+     *            the search context
+     * @param chainedSearchParameters
+     *            the list to which the chained search parameters are added
+     * @param logicalIdReferenceSearchParameters
+     *            the list to which the reference search parameters containing only a logical ID are added
+     * @throws Exception
+     */
+    private void findReferenceCheckParameters(FHIRSearchContext searchContext, List<QueryParameter> chainedSearchParameters,
+            List<QueryParameter> logicalIdReferenceSearchParameters) throws Exception {
+        for (QueryParameter queryParameter : searchContext.getSearchParameters()) {
+            if (!queryParameter.isReverseChained()) {
+                if (queryParameter.isChained()) {
+                    chainedSearchParameters.add(queryParameter);
+                } else if (SearchConstants.Type.REFERENCE == queryParameter.getType()) {
+                    // Look for logical ID-only value
+                    for (QueryParameterValue value : queryParameter.getValues()) {
+                        ReferenceValue refVal = ReferenceUtil.createReferenceValueFrom(value.getValueString(), null, ReferenceUtil.getBaseUrl(null));
+                        if (refVal.getType() == ReferenceType.LITERAL_RELATIVE && refVal.getTargetResourceType() == null) {
+                            logicalIdReferenceSearchParameters.add(queryParameter);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * For chained search, check 'match' resources for existence of a versioned reference in the field
      * associated with the chain search parameter.
@@ -2921,7 +3466,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                     && (nextPageNumber == 1 || context.getTotalCount() != null || context.getMatchCount() > 0)) {
 
                 // starting with the self URI
-                String nextLinkUrl = selfUri;
+                String nextLinkUrl = removePageToken(selfUri);
 
                 // remove existing _page parameters from the query string
                 nextLinkUrl = nextLinkUrl.replace("&_page=" + context.getPageNumber(), "").replace("_page="
@@ -2939,6 +3484,12 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 // add new _page parameter to the query string
                 nextLinkUrl += "_page=" + nextPageNumber;
 
+                // add the continuation token (if any) so the next page can be read without an offset;
+                // clients that drop it still get the same page via _page
+                if (context.getNextPageToken() != null) {
+                    nextLinkUrl += "&" + SearchConstants.PAGE_TOKEN + "=" + context.getNextPageToken();
+                }
+
                 // create 'next' link
                 Bundle.Link nextLink =
                         Bundle.Link.builder().relation(string("next")).url(Url.of(nextLinkUrl)).build();
@@ -2949,7 +3500,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             if (prevPageNumber > 0) {
 
                 // starting with the original request URI
-                String prevLinkUrl = requestUri;
+                String prevLinkUrl = removePageToken(requestUri);
 
                 // remove existing _page parameters from the query string
                 prevLinkUrl =
@@ -2979,6 +3530,18 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return bundleBuilder.build();
     }
 
+    /**
+     * Remove the _pageToken parameter from the query string of the passed URI; continuation tokens
+     * are only valid for the page they were issued for.
+     */
+    private String removePageToken(String uri) {
+        if (!uri.contains(SearchConstants.PAGE_TOKEN + "=")) {
+            return uri;
+        }
+        return uri.replaceAll("&" + SearchConstants.PAGE_TOKEN + "=[^&]*", "")
+                .replaceAll("\\?" + SearchConstants.PAGE_TOKEN + "=[^&]*&?", "?");
+    }
+
     /**
      * Get the original request URI from either the HttpServletRequest or a configured Header (in case of re-writing proxies).
      *
@@ -3114,6 +3677,34 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return result;
     }
 
+    @Override
+    public int doReindexBatch(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp,
+        String resourceLogicalId, int maxCount) throws Exception {
+        int result = 0;
+        // handle some retries in case of deadlock exceptions
+        final int TX_ATTEMPTS = 5;
+        int attempt = 1;
+        do {
+            FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+            txn.begin();
+            try {
+                FHIRPersistenceContext persistenceContext = null;
+                result = persistence.reindexBatch(persistenceContext, operationOutcomeResult, tstamp, resourceLogicalId, maxCount);
+                attempt = TX_ATTEMPTS; // end the retry loop
+            } catch (FHIRPersistenceDataAccessException x) {
+                if (x.isTransactionRetryable() && attempt < TX_ATTEMPTS) {
+                    log.info("attempt #" + attempt + " failed, retrying transaction");
+                } else {
+                    throw x;
+                }
+            } finally {
+                txn.end();
+            }
+        } while (attempt++ < TX_ATTEMPTS);
+
+        return result;
+    }
+
     /**
      * Validate a resource. First validate profile assertions for the resource if configured to do so,
      * then validate the resource itself.
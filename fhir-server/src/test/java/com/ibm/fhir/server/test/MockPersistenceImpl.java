@@ -21,6 +21,7 @@ import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.MultiResourceResult;
 import com.ibm.fhir.persistence.ResourceChangeLogRecord;
 import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.ResourceVersionMetadata;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
@@ -78,6 +79,21 @@ public class MockPersistenceImpl implements FHIRPersistence {
         }
     }
 
+    @Override
+    public boolean isVersionMetadataSupported() {
+        return true;
+    }
+
+    @Override
+    public ResourceVersionMetadata readCurrentVersionMetadata(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+        String logicalId) throws FHIRPersistenceException {
+        if (logicalId.startsWith("generated")) {
+            return null;
+        } else {
+            return new ResourceVersionMetadata("test", 1, false, java.time.Instant.now(), null);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId, T resource) throws FHIRPersistenceException {
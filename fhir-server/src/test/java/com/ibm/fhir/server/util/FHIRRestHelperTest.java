@@ -11,18 +11,31 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.function.Function;
 
+import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.Response;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.annotations.Test;
 
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.core.HTTPReturnPreference;
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.Condition;
 import com.ibm.fhir.model.resource.Encounter;
@@ -52,14 +65,20 @@ import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.NarrativeStatus;
 import com.ibm.fhir.model.type.code.ProcedureStatus;
+import com.ibm.fhir.model.type.code.SearchEntryMode;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourcePayload;
 import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.helper.PersistenceHelper;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptorException;
 import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.context.FHIRSearchContextFactory;
+import com.ibm.fhir.server.operation.spi.FHIRRestOperationResponse;
 import com.ibm.fhir.server.test.MockPersistenceImpl;
 import com.ibm.fhir.server.test.MockTransactionAdapter;
 
@@ -1993,6 +2012,99 @@ public class FHIRRestHelperTest {
         assertEquals("A resource with no id was found.", operationOutcome.getIssue().get(1).getDetails().getText().getValue());
     }
 
+    /**
+     * Test batch bundle processing with more than one thread. Entries which depend on other entries
+     * are processed after the independent entries, and the response entries stay in request order.
+     */
+    @Test
+    public void testBatchBundleConcurrent() throws Exception {
+        FHIRPersistence persistence = new MockPersistenceImpl();
+        PersistenceHelper persistenceHelper = Mockito.mock(PersistenceHelper.class);
+        when(persistenceHelper.getFHIRPersistenceImplementation()).thenReturn(new MockPersistenceImpl());
+        FHIRRestHelper helper = new FHIRRestHelper(persistence, persistenceHelper);
+
+        Bundle.Entry patientEntry = Bundle.Entry.builder()
+                .fullUrl(Uri.of("urn:1"))
+                .resource(Patient.builder().build())
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.POST)
+                    .url(Uri.of("Patient"))
+                    .build())
+                .build();
+        Bundle.Entry procedureEntry = Bundle.Entry.builder()
+                .resource(Procedure.builder()
+                    .status(ProcedureStatus.COMPLETED)
+                    .subject(Reference.builder()
+                        .reference(string("urn:1"))
+                        .build())
+                    .build())
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.POST)
+                    .url(Uri.of("Procedure"))
+                    .build())
+                .build();
+        // the same resource is updated twice, so these two entries must keep their order
+        Bundle.Entry updateEntry = Bundle.Entry.builder()
+                .resource(Patient.builder()
+                    .id("1")
+                    .build())
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.PUT)
+                    .url(Uri.of("Patient/1"))
+                    .build())
+                .build();
+        // the local reference is not defined in this bundle
+        Bundle.Entry unresolvedEntry = Bundle.Entry.builder()
+                .resource(Procedure.builder()
+                    .status(ProcedureStatus.COMPLETED)
+                    .subject(Reference.builder()
+                        .reference(string("urn:2"))
+                        .build())
+                    .build())
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.POST)
+                    .url(Uri.of("Procedure"))
+                    .build())
+                .build();
+
+        Bundle requestBundle = Bundle.builder()
+                .id("bundle1")
+                .type(BundleType.BATCH)
+                .entry(unresolvedEntry, patientEntry, updateEntry, procedureEntry, updateEntry)
+                .build();
+
+        // Process bundle
+        FHIRConfiguration.setConfigHome("src/test/resources");
+        FHIRConfiguration.getInstance().clearConfiguration();
+        try {
+            FHIRRequestContext.get().setOriginalRequestUri("test");
+            FHIRRequestContext.get().setReturnPreference(HTTPReturnPreference.REPRESENTATION);
+            Bundle responseBundle = helper.doBundle(requestBundle, false);
+
+            // Validate results
+            assertNotNull(responseBundle);
+            assertEquals(responseBundle.getType(), BundleType.BATCH_RESPONSE);
+            assertEquals(responseBundle.getEntry().size(), 5);
+            // the independent creates are processed first
+            assertEquals(responseBundle.getEntry().get(1).getResponse().getLocation().getValue(), "Patient/generated-0/_history/1");
+            assertEquals(responseBundle.getEntry().get(3).getResponse().getLocation().getValue(), "Procedure/generated-1/_history/1");
+            Procedure returnedProcedure = (Procedure) responseBundle.getEntry().get(3).getResource();
+            assertEquals(returnedProcedure.getSubject().getReference().getValue(), "Patient/generated-0");
+            assertEquals(responseBundle.getEntry().get(0).getResponse().getLocation().getValue(), "Procedure/generated-2/_history/1");
+            for (int i : new int[] { 0, 1, 3 }) {
+                assertEquals(responseBundle.getEntry().get(i).getResponse().getStatus().getValue(),
+                        Integer.toString(Response.Status.CREATED.getStatusCode()));
+            }
+            for (int i : new int[] { 2, 4 }) {
+                assertEquals(responseBundle.getEntry().get(i).getResponse().getStatus().getValue(),
+                        Integer.toString(Response.Status.OK.getStatusCode()));
+            }
+        } finally {
+            FHIRConfiguration.setConfigHome("");
+            FHIRConfiguration.getInstance().clearConfiguration();
+        }
+    }
+
     /**
      * Test an interceptor that modifies the resource
      */
@@ -2062,4 +2174,96 @@ public class FHIRRestHelperTest {
         Mockito.verify(persistence).update(any(), any(), patientCaptor.capture());
         assertEquals(patientCaptor.getValue().getMeta().getTag().get(0), TAG);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that a plain update checks the If-Match version against the version metadata
+     * without reading the previous version of the resource.
+     */
+    @Test
+    public void testUpdateWithVersionMetadata() throws Exception {
+        FHIRPersistence persistence = Mockito.spy(new MockPersistenceImpl());
+        FHIRRestHelper helper = new FHIRRestHelper(persistence);
+        Patient patient = Patient.builder()
+                .id("1")
+                .build();
+
+        FHIRRestOperationResponse response = helper.doUpdate("Patient", "1", patient, "W/\"1\"", null, false, true);
+        assertEquals(response.getStatus(), Response.Status.OK);
+
+        try {
+            helper.doUpdate("Patient", "1", patient, "W/\"2\"", null, false, true);
+            fail();
+        } catch (FHIROperationException e) {
+            // expected: the If-Match version is not the current version
+        }
+        Mockito.verify(persistence, Mockito.never()).read(any(), any(), any());
+
+        // A skippable update still needs the previous resource while no fingerprint is stored
+        helper.doUpdate("Patient", "1", patient, null, null, true, true);
+        Mockito.verify(persistence).read(any(), any(), any());
+    }
+
+    /**
+     * Test that a streamed search response bundle contains the stored payloads of the 'match' resources
+     * and the envelope of a regular search response bundle.
+     */
+    @Test
+    public void testStreamingSearch() throws Exception {
+        FHIRPersistence persistence = Mockito.spy(new MockPersistenceImpl());
+        when(persistence.isSearchPayloadStreamingSupported()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            FHIRPersistenceContext context = invocation.getArgument(0);
+            Function<ResourcePayload, Boolean> process = invocation.getArgument(2);
+            context.getSearchContext().setTotalCount(2);
+            for (String id : new String[] { "1", "2" }) {
+                Patient patient = Patient.builder()
+                        .id(id)
+                        .meta(Meta.builder()
+                            .versionId(Id.of("1"))
+                            .build())
+                        .build();
+                StringWriter payload = new StringWriter();
+                FHIRGenerator.generator(Format.JSON).generate(patient, payload);
+                process.apply(new ResourcePayload(id, java.time.Instant.now(), Long.parseLong(id),
+                        new ByteArrayInputStream(payload.toString().getBytes(StandardCharsets.UTF_8))));
+            }
+            context.getSearchContext().setMatchCount(2);
+            return new MultiResourceResult.Builder<Resource>().success(true).build();
+        }).when(persistence).searchPayloads(any(), any(), any());
+        FHIRRestHelper helper = new FHIRRestHelper(persistence);
+
+        FHIRConfiguration.setConfigHome("src/test/resources");
+        FHIRConfiguration.getInstance().clearConfiguration();
+        try {
+            String requestUri = "https://localhost:9443/fhir-server/api/v4/Patient";
+            FHIRRequestContext.get().setOriginalRequestUri(requestUri);
+            FHIRRestHelper.StreamingSearch streamingSearch =
+                    helper.prepareStreamingSearch("Patient", null, null, new MultivaluedHashMap<>(), requestUri);
+            assertNotNull(streamingSearch);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            streamingSearch.writeTo(out);
+            assertTrue(streamingSearch.isCommitted());
+
+            // Validate results
+            Bundle responseBundle = FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(responseBundle.getType(), BundleType.SEARCHSET);
+            assertEquals(responseBundle.getTotal().getValue().intValue(), 2);
+            assertEquals(responseBundle.getLink().get(0).getRelation().getValue(), "self");
+            assertEquals(responseBundle.getEntry().size(), 2);
+            Bundle.Entry entry = responseBundle.getEntry().get(1);
+            assertEquals(entry.getFullUrl().getValue(), "https://localhost:9443/fhir-server/api/v4/Patient/2");
+            assertEquals(entry.getResource().getId(), "2");
+            assertEquals(entry.getSearch().getMode(), SearchEntryMode.MATCH);
+            assertEquals(streamingSearch.getBundle().getTotal(), responseBundle.getTotal());
+
+            // The regular search is used when the resources must be filtered
+            MultivaluedHashMap<String, String> queryParameters = new MultivaluedHashMap<>();
+            queryParameters.putSingle("_elements", "id");
+            assertNull(helper.prepareStreamingSearch("Patient", null, null, queryParameters, requestUri));
+        } finally {
+            FHIRConfiguration.setConfigHome("");
+            FHIRConfiguration.getInstance().clearConfiguration();
+        }
+    }
+}
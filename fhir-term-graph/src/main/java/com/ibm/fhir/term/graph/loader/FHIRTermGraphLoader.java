@@ -33,7 +33,10 @@ public interface FHIRTermGraphLoader {
                     .addRequiredOption("relation", null, true, "SNOMED-CT relationship file")
                     .addRequiredOption("desc", null, true, "SNOMED-CT description file")
                     .addRequiredOption("lang", null, true, "SNOMED-CT language refset file")
-                    .addOption("labels", null, true, "labels");
+                    .addOption("labels", null, true, "labels")
+                    .addOption("bulk", null, false, "Bulk load mode (parallel, batch loading transactions)")
+                    .addOption("threads", null, true, "Number of threads (bulk load mode)")
+                    .addOption("batch", null, true, "Number of concepts or relationships per transaction (bulk load mode)");
             }
         },
         UMLS {
@@ -10,6 +10,7 @@ import java.util.Map;
 
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader.Type;
+import com.ibm.fhir.term.graph.loader.impl.BulkSnomedTermGraphLoader;
 import com.ibm.fhir.term.graph.loader.impl.CodeSystemTermGraphLoader;
 import com.ibm.fhir.term.graph.loader.impl.SnomedTermGraphLoader;
 import com.ibm.fhir.term.graph.loader.impl.UMLSTermGraphLoader;
@@ -33,7 +34,7 @@ public class FHIRTermGraphLoaderFactory {
         case CODESYSTEM:
             return new CodeSystemTermGraphLoader(options);
         case SNOMED:
-            return new SnomedTermGraphLoader(options);
+            return options.containsKey("bulk") ? new BulkSnomedTermGraphLoader(options) : new SnomedTermGraphLoader(options);
         case UMLS:
             return new UMLSTermGraphLoader(options);
         default:
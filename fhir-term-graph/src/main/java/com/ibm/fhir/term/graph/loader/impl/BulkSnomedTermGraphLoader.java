@@ -0,0 +1,550 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.graph.loader.impl;
+
+import static com.ibm.fhir.term.graph.loader.util.FHIRTermGraphLoaderUtil.toLabel;
+import static com.ibm.fhir.term.graph.loader.util.FHIRTermGraphLoaderUtil.toMap;
+import static com.ibm.fhir.term.util.CodeSystemSupport.normalize;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.MissingOptionException;
+import org.apache.commons.cli.Options;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.janusgraph.core.JanusGraphEdge;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.idmanagement.IDManager;
+
+import com.ibm.fhir.term.graph.FHIRTermGraph;
+import com.ibm.fhir.term.graph.factory.FHIRTermGraphFactory;
+import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
+import com.ibm.fhir.term.graph.loader.util.ProgressMonitor;
+
+/**
+ * Bulk mode SNOMED-CT loader that produces the same graph as {@link SnomedTermGraphLoader} from the same release files.
+ *
+ * <p>The release files are parsed in parallel and every active concept is given a dense index up front. Vertices
+ * (concepts with their designations) are then written by a pool of threads using batch loading transactions that commit
+ * every {@code batch} concepts; each concept and designation vertex is created by exactly one thread. The edges from
+ * the code system vertex to the concepts are added afterwards by a single thread. Relationship edges are written in a
+ * last pass that is partitioned by source concept, so the target of an edge may be modified by several threads at
+ * once. That is safe because the edge labels have the default (MULTI) multiplicity and no uniqueness constraints:
+ * each new edge is stored under its own relation id on both of its vertices, so concurrent transactions never update
+ * the same entry and don't need locks (batch loading transactions don't acquire any).
+ *
+ * <p>If the graph was created with {@code graph.set-vertex-id=true} the vertex ids are pre-assigned from the concept
+ * and designation indexes (the graph must be empty); otherwise the ids assigned by JanusGraph are recorded during the
+ * vertex pass. In both cases the edge pass looks up vertices by id without reading them from storage. The graph should
+ * be opened with {@code storage.batch-loading=true} and a large {@code ids.block-size} for best throughput.
+ */
+public class BulkSnomedTermGraphLoader extends AbstractTermGraphLoader {
+    private static final Logger log = Logger.getLogger(BulkSnomedTermGraphLoader.class.getName());
+
+    private static final String URL = "http://snomed.info/sct";
+    private static final String PREFERRED = "900000000000548007";
+    private static final String FULLY_SPECIFIED_NAME = "900000000000003001";
+
+    private static final int DEFAULT_BATCH_SIZE = 50000;
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    private final String conceptFile;
+    private final String relationshipFile;
+    private final String descriptionFile;
+    private final String languageRefsetFile;
+
+    private final int threads;
+    private final int batchSize;
+
+    public BulkSnomedTermGraphLoader(Map<String, String> options) {
+        this(options, FHIRTermGraphFactory.open(options.get("config")));
+    }
+
+    public BulkSnomedTermGraphLoader(Map<String, String> options, FHIRTermGraph graph) {
+        super(options, graph);
+
+        String baseDir = options.get("base");
+        conceptFile = baseDir + "/" + options.get("concept");
+        descriptionFile = baseDir + "/" + options.get("desc");
+        relationshipFile = baseDir + "/" + options.get("relation");
+        languageRefsetFile = baseDir + "/../Refset/Language/" + options.get("lang");
+
+        threads = getIntOption(options, "threads", Runtime.getRuntime().availableProcessors());
+        batchSize = getIntOption(options, "batch", DEFAULT_BATCH_SIZE);
+    }
+
+    @Override
+    public void load() {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ReleaseData data = parse(executor);
+            createEdgeLabels(data);
+            long codeSystemVertexId = writeCodeSystemVertex(data);
+            long[] vertexIds = writeVertices(executor, data);
+            writeCodeSystemEdges(codeSystemVertexId, vertexIds);
+            writeEdges(executor, data, vertexIds);
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Bulk loading time (milliseconds): " + (System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Parse the release files in parallel and resolve concept ids to dense concept indexes
+     */
+    private ReleaseData parse(ExecutorService executor) {
+        CompletableFuture<List<String>> conceptRows = CompletableFuture.supplyAsync(() -> readLatest(conceptFile), executor);
+        CompletableFuture<List<String>> languageRefsetRows = CompletableFuture.supplyAsync(() -> readLatest(languageRefsetFile), executor);
+        CompletableFuture<List<String>> descriptionRows = CompletableFuture.supplyAsync(() -> readLatest(descriptionFile), executor);
+        CompletableFuture<List<String>> relationshipRows = CompletableFuture.supplyAsync(() -> readLatest(relationshipFile), executor);
+
+        ReleaseData data = new ReleaseData();
+
+        // concepts: the code system count is the number of (latest) concept rows, active or not
+        List<String> rows = join(conceptRows);
+        data.count = rows.size();
+        List<String> activeIds = rows.parallelStream()
+                .map(line -> line.split("\\t"))
+                .filter(tokens -> "1".equals(tokens[2]))
+                .map(tokens -> tokens[0])
+                .collect(Collectors.toList());
+        Map<String, Integer> conceptIndex = new HashMap<>(activeIds.size() * 2);
+        List<String> codes = new ArrayList<>(activeIds.size());
+        for (String id : activeIds) {
+            if (conceptIndex.putIfAbsent(id, codes.size()) == null) {
+                codes.add(id);
+            }
+        }
+        data.codes = codes.toArray(new String[codes.size()]);
+        data.display = new String[data.codes.length];
+
+        // language refset
+        Set<String> preferred = join(languageRefsetRows).parallelStream()
+                .map(line -> line.split("\\t"))
+                .filter(tokens -> "1".equals(tokens[2]) && PREFERRED.equals(tokens[6]))
+                .map(tokens -> tokens[5])
+                .collect(Collectors.toSet());
+
+        // descriptions: the last preferred, non fully specified name in file order is the display
+        List<String[]> descriptions = join(descriptionRows).parallelStream()
+                .map(line -> line.split("\\t"))
+                .filter(tokens -> "1".equals(tokens[2]) && conceptIndex.containsKey(tokens[4]))
+                .collect(Collectors.toList());
+        int[] conceptOf = new int[descriptions.size()];
+        data.designationStart = new int[data.codes.length + 1];
+        for (int i = 0; i < descriptions.size(); i++) {
+            String[] tokens = descriptions.get(i);
+            int concept = conceptIndex.get(tokens[4]);
+            if (preferred.contains(tokens[0]) && !FULLY_SPECIFIED_NAME.equals(tokens[6])) {
+                data.display[concept] = tokens[7];
+            }
+            conceptOf[i] = concept;
+            data.designationStart[concept + 1]++;
+        }
+        // group designations by concept (stable counting sort)
+        for (int i = 0; i < data.codes.length; i++) {
+            data.designationStart[i + 1] += data.designationStart[i];
+        }
+        int[] next = new int[data.codes.length];
+        data.designationUse = new String[descriptions.size()];
+        data.designationValue = new String[descriptions.size()];
+        for (int i = 0; i < descriptions.size(); i++) {
+            int concept = conceptOf[i];
+            int j = data.designationStart[concept] + next[concept]++;
+            data.designationUse[j] = descriptions.get(i)[6];
+            data.designationValue[j] = descriptions.get(i)[7];
+        }
+
+        // relationships: partitioned by source concept
+        List<String[]> relationships = join(relationshipRows).parallelStream()
+                .map(line -> line.split("\\t"))
+                .filter(tokens -> "1".equals(tokens[2]))
+                .collect(Collectors.toList());
+        data.partitions = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            data.partitions.add(new ArrayList<>());
+        }
+        Map<Integer, String> typeLabels = new HashMap<>();
+        int skipped = 0;
+        for (String[] tokens : relationships) {
+            Integer source = conceptIndex.get(tokens[4]);
+            Integer target = conceptIndex.get(tokens[5]);
+            Integer type = conceptIndex.get(tokens[7]);
+            if (source == null || target == null || type == null) {
+                continue;
+            }
+            if (data.display[type] == null) {
+                skipped++;
+                continue;
+            }
+            String label = typeLabels.computeIfAbsent(type, t -> toLabel(data.display[t]));
+            if (labelFilter.accept(label)) {
+                data.labels.add(label);
+                String group = "0".equals(tokens[6]) ? null : tokens[6];
+                data.partitions.get(source % threads).add(new Relationship(source, target, label, group));
+            }
+        }
+        if (skipped > 0) {
+            log.warning("Skipped " + skipped + " relationship(s) with a type concept that has no preferred term");
+        }
+
+        log.info("Parsed " + data.codes.length + " concepts, " + data.designationUse.length + " designations and " + data.relationshipCount() + " relationships");
+
+        return data;
+    }
+
+    /**
+     * Create the edge labels that are missing from the schema before any thread writes an edge
+     */
+    private void createEdgeLabels(ReleaseData data) {
+        JanusGraphManagement management = janusGraph.openManagement();
+        for (String label : data.labels) {
+            if (!management.containsEdgeLabel(label)) {
+                log.info("Adding label: " + label);
+                management.makeEdgeLabel(label).make();
+            }
+        }
+        management.commit();
+    }
+
+    /**
+     * Write the code system vertex; its pre-assigned id (if any) is 1
+     *
+     * @return
+     *     the vertex id of the code system
+     */
+    private long writeCodeSystemVertex(ReleaseData data) {
+        IDManager idManager = getIDManager();
+        JanusGraphTransaction tx = newTransaction();
+        try {
+            JanusGraphVertex codeSystemVertex = addVertex(tx, (idManager != null) ? idManager.toVertexId(1) : null, "CodeSystem", "url", URL, "count", data.count);
+            tx.commit();
+            return codeSystemVertex.longId();
+        } catch (RuntimeException e) {
+            rollback(tx);
+            throw e;
+        }
+    }
+
+    /**
+     * Write the concept and designation vertices with the edges between them in parallel; each concept, along with
+     * its designations, is written by a single thread
+     *
+     * @return
+     *     the vertex id of each concept by concept index
+     */
+    private long[] writeVertices(ExecutorService executor, ReleaseData data) {
+        int conceptCount = data.codes.length;
+        long[] vertexIds = new long[conceptCount];
+        IDManager idManager = getIDManager();
+
+        // pre-assigned ids: 1 for the code system, then the concepts, then the designations (grouped by concept)
+        if (idManager != null) {
+            for (int i = 0; i < conceptCount; i++) {
+                vertexIds[i] = idManager.toVertexId(2L + i);
+            }
+        }
+
+        ProgressMonitor monitor = new ProgressMonitor(log, "Writing concept vertices", conceptCount, PROGRESS_INTERVAL);
+        int chunkSize = Math.max(1, (conceptCount + threads * 4 - 1) / (threads * 4));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < conceptCount; from += chunkSize) {
+            int begin = from;
+            int end = Math.min(conceptCount, from + chunkSize);
+            futures.add(executor.submit(() -> {
+                List<JanusGraphVertex> pending = new ArrayList<>(Math.min(batchSize, end - begin));
+                JanusGraphTransaction chunkTx = newTransaction();
+                try {
+                    for (int i = begin; i < end; i++) {
+                        JanusGraphVertex v = (data.display[i] != null) ?
+                                addVertex(chunkTx, (idManager != null) ? vertexIds[i] : null, "Concept", "code", data.codes[i], "codeLowerCase", normalize(data.codes[i]), "display", data.display[i]) :
+                                    addVertex(chunkTx, (idManager != null) ? vertexIds[i] : null, "Concept", "code", data.codes[i], "codeLowerCase", normalize(data.codes[i]));
+                        for (int j = data.designationStart[i]; j < data.designationStart[i + 1]; j++) {
+                            JanusGraphVertex w = addVertex(chunkTx, (idManager != null) ? idManager.toVertexId(2L + conceptCount + j) : null,
+                                "Designation", "language", "en", "use", data.designationUse[j], "value", data.designationValue[j]);
+                            v.addEdge("designation", w);
+                        }
+                        pending.add(v);
+                        if (pending.size() == batchSize) {
+                            chunkTx.commit();
+                            record(pending, vertexIds, i + 1 - pending.size());
+                            monitor.add(pending.size());
+                            pending.clear();
+                            chunkTx = newTransaction();
+                        }
+                    }
+                    chunkTx.commit();
+                    record(pending, vertexIds, end - pending.size());
+                    monitor.add(pending.size());
+                } catch (RuntimeException e) {
+                    rollback(chunkTx);
+                    throw e;
+                }
+            }));
+        }
+        await(futures);
+        monitor.done();
+
+        return vertexIds;
+    }
+
+    /**
+     * Write the edges from the code system vertex to every concept vertex on the calling thread, so that the code
+     * system vertex is only modified by one transaction at a time
+     */
+    private void writeCodeSystemEdges(long codeSystemVertexId, long[] vertexIds) {
+        ProgressMonitor monitor = new ProgressMonitor(log, "Writing code system edges", vertexIds.length, PROGRESS_INTERVAL);
+        JanusGraphTransaction tx = newTransaction();
+        try {
+            JanusGraphVertex codeSystemVertex = tx.getVertex(codeSystemVertexId);
+            int uncommitted = 0;
+            for (long vertexId : vertexIds) {
+                codeSystemVertex.addEdge("concept", tx.getVertex(vertexId));
+                if (++uncommitted == batchSize) {
+                    tx.commit();
+                    monitor.add(uncommitted);
+                    uncommitted = 0;
+                    tx = newTransaction();
+                    codeSystemVertex = tx.getVertex(codeSystemVertexId);
+                }
+            }
+            tx.commit();
+            monitor.add(uncommitted);
+        } catch (RuntimeException e) {
+            rollback(tx);
+            throw e;
+        }
+        monitor.done();
+    }
+
+    /**
+     * Write the relationship edges with one task per partition (source concept index modulo the number of threads)
+     */
+    private void writeEdges(ExecutorService executor, ReleaseData data, long[] vertexIds) {
+        ProgressMonitor monitor = new ProgressMonitor(log, "Writing relationship edges", data.relationshipCount(), PROGRESS_INTERVAL);
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<Relationship> partition : data.partitions) {
+            futures.add(executor.submit(() -> {
+                JanusGraphTransaction tx = newTransaction();
+                try {
+                    int uncommitted = 0;
+                    for (Relationship relationship : partition) {
+                        JanusGraphVertex u = tx.getVertex(vertexIds[relationship.source]);
+                        JanusGraphVertex v = tx.getVertex(vertexIds[relationship.target]);
+                        JanusGraphEdge e = u.addEdge(relationship.label, v);
+                        if (relationship.group != null) {
+                            e.property("group", relationship.group);
+                        }
+                        if (++uncommitted == batchSize) {
+                            tx.commit();
+                            monitor.add(uncommitted);
+                            uncommitted = 0;
+                            tx = newTransaction();
+                        }
+                    }
+                    tx.commit();
+                    monitor.add(uncommitted);
+                } catch (RuntimeException e) {
+                    rollback(tx);
+                    throw e;
+                }
+            }));
+        }
+        await(futures);
+        monitor.done();
+    }
+
+    private JanusGraphTransaction newTransaction() {
+        return janusGraph.buildTransaction()
+                .enableBatchLoading()
+                .consistencyChecks(false)
+                .checkExternalVertexExistence(false)
+                .start();
+    }
+
+    /**
+     * @return
+     *     the id manager used to pre-assign vertex ids, or null if the graph doesn't allow setting vertex ids
+     */
+    private IDManager getIDManager() {
+        if ((janusGraph instanceof StandardJanusGraph) && ((StandardJanusGraph) janusGraph).getConfiguration().allowVertexIdSetting()) {
+            return ((StandardJanusGraph) janusGraph).getIDManager();
+        }
+        return null;
+    }
+
+    private static JanusGraphVertex addVertex(JanusGraphTransaction tx, Long id, String label, Object... keyValues) {
+        List<Object> list = new ArrayList<>(keyValues.length + 4);
+        if (id != null) {
+            list.add(T.id);
+            list.add(id);
+        }
+        list.add(T.label);
+        list.add(label);
+        Collections.addAll(list, keyValues);
+        return tx.addVertex(list.toArray());
+    }
+
+    /**
+     * Record the ids of committed concept vertices, the first of which has the given concept index
+     */
+    private static void record(List<JanusGraphVertex> committed, long[] vertexIds, int first) {
+        for (int i = 0; i < committed.size(); i++) {
+            vertexIds[first + i] = committed.get(i).longId();
+        }
+    }
+
+    private static void rollback(JanusGraphTransaction tx) {
+        if (tx.isOpen()) {
+            tx.rollback();
+        }
+    }
+
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Read the last row of each run of rows with the same component id, skipping the header
+     */
+    private static List<String> readLatest(String file) {
+        List<String> rows = new ArrayList<>();
+        ProgressMonitor monitor = new ProgressMonitor(log, "Reading " + file, -1, PROGRESS_INTERVAL * 10);
+        try (BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16)) {
+            reader.readLine();
+            String previous = null;
+            String previousId = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String id = line.substring(0, Math.max(0, line.indexOf('\t')));
+                if (previous != null && !previousId.equals(id)) {
+                    rows.add(previous);
+                }
+                previous = line;
+                previousId = id;
+                monitor.increment();
+            }
+            if (previous != null) {
+                rows.add(previous);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        monitor.done();
+        return rows;
+    }
+
+    private static int getIntOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        int result = (value != null) ? Integer.parseInt(value) : defaultValue;
+        if (result <= 0) {
+            throw new IllegalArgumentException("Option '" + name + "' must be positive: " + result);
+        }
+        return result;
+    }
+
+    private static class ReleaseData {
+        private int count;
+        private String[] codes;
+        private String[] display;
+        private int[] designationStart;
+        private String[] designationUse;
+        private String[] designationValue;
+        private final Set<String> labels = new LinkedHashSet<>();
+        private List<List<Relationship>> partitions;
+
+        private long relationshipCount() {
+            return partitions.stream().mapToLong(List::size).sum();
+        }
+    }
+
+    private static class Relationship {
+        private final int source;
+        private final int target;
+        private final String label;
+        private final String group;
+
+        private Relationship(int source, int target, String label, String group) {
+            this.source = source;
+            this.target = target;
+            this.label = label;
+            this.group = group;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = null;
+        BulkSnomedTermGraphLoader loader = null;
+        try {
+            long start = System.currentTimeMillis();
+
+            options = FHIRTermGraphLoader.Type.SNOMED.options();
+
+            CommandLineParser parser = new DefaultParser();
+            CommandLine commandLine = parser.parse(options, args);
+
+            loader = new BulkSnomedTermGraphLoader(toMap(commandLine));
+            loader.load();
+
+            long end = System.currentTimeMillis();
+
+            log.info("Loading time (milliseconds): " + (end - start));
+        } catch (MissingOptionException e) {
+            System.out.println("MissingOptionException: " + e.getMessage());
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("BulkSnomedTermGraphLoader", options);
+        } catch (Exception e) {
+            System.out.println("An error occurred: " + e.getMessage());
+        } finally {
+            if (loader != null) {
+                loader.close();
+            }
+        }
+    }
+}
@@ -35,6 +35,8 @@ import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.janusgraph.core.schema.JanusGraphManagement;
 
+import com.ibm.fhir.term.graph.FHIRTermGraph;
+import com.ibm.fhir.term.graph.factory.FHIRTermGraphFactory;
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
 
 public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
@@ -54,7 +56,11 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
     private Set<String> preferred = null;
 
     public SnomedTermGraphLoader(Map<String, String> options) {
-        super(options);
+        this(options, FHIRTermGraphFactory.open(options.get("config")));
+    }
+
+    public SnomedTermGraphLoader(Map<String, String> options, FHIRTermGraph graph) {
+        super(options, graph);
 
         String baseDir = options.get("base");
         conceptFile = baseDir + "/" + options.get("concept");
@@ -91,7 +97,7 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
         // concept file
         log.info("Processing concepts file...");
         try (BufferedReader reader = new BufferedReader(new FileReader(conceptFile))) {
-            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
+            SnomedReleaseFileConsumer consumer = new SnomedReleaseFileConsumer() {
                 @Override
                 public void processLine(String line) {
                     String[] tokens = line.split("\\t");
@@ -116,7 +122,9 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
 
                     counter.getAndIncrement();
                 }
-            });
+            };
+            reader.lines().skip(1).forEach(consumer);
+            consumer.flush();
 
             // commit any uncommitted work
             g.tx().commit();
@@ -132,7 +140,7 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
         log.info("Processing language refset file...");
 
         try (BufferedReader reader = new BufferedReader(new FileReader(languageRefsetFile))) {
-            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
+            SnomedReleaseFileConsumer consumer = new SnomedReleaseFileConsumer() {
                 @Override
                 public void processLine(String line) {
                     String[] tokens = line.split("\\t");
@@ -144,7 +152,9 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
                         preferred.add(referencedComponentId);
                     }
                 }
-            });
+            };
+            reader.lines().skip(1).forEach(consumer);
+            consumer.flush();
         }
     }
 
@@ -154,7 +164,7 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
         // description file
         log.info("Processing description file...");
         try (BufferedReader reader = new BufferedReader(new FileReader(descriptionFile))) {
-            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
+            SnomedReleaseFileConsumer consumer = new SnomedReleaseFileConsumer() {
                 @Override
                 public void processLine(String line) {
                     String[] tokens = line.split("\\t");
@@ -190,7 +200,9 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
 
                     counter.getAndIncrement();
                 }
-            });
+            };
+            reader.lines().skip(1).forEach(consumer);
+            consumer.flush();
 
             // commit any uncommitted work
             g.tx().commit();
@@ -203,7 +215,7 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
         // relationship file
         log.info("Processing relationship file...");
         try (BufferedReader reader = new BufferedReader(new FileReader(relationshipFile))) {
-            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
+            SnomedReleaseFileConsumer consumer = new SnomedReleaseFileConsumer() {
                 @Override
                 public void processLine(String line) {
                     String[] tokens = line.split("\\t");
@@ -246,7 +258,9 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
 
                     counter.getAndIncrement();
                 }
-            });
+            };
+            reader.lines().skip(1).forEach(consumer);
+            consumer.flush();
 
             // commit any uncommitted work
             g.tx().commit();
@@ -278,6 +292,16 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
             return true;
         }
 
+        /**
+         * Process the last group of lines (there is no following line with a different id to trigger it)
+         */
+        public void flush() {
+            if (!lines.isEmpty()) {
+                processLines(Collections.unmodifiableList(lines));
+                lines.clear();
+            }
+        }
+
         private void processLines(List<String> lines) {
             processLine(lines.get(lines.size() - 1));
         }
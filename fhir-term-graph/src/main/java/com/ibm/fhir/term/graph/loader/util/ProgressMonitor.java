@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.graph.loader.util;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A thread-safe counter that logs the progress and throughput (items per second) of a loader phase
+ */
+public class ProgressMonitor {
+    private final Logger log;
+    private final String phase;
+    private final long total;
+    private final long interval;
+    private final AtomicLong count = new AtomicLong();
+    private final long start;
+
+    /**
+     * @param log
+     *     the logger used to report progress
+     * @param phase
+     *     the name of the phase
+     * @param total
+     *     the expected number of items or -1 if unknown
+     * @param interval
+     *     the number of items between progress messages
+     */
+    public ProgressMonitor(Logger log, String phase, long total, long interval) {
+        this.log = Objects.requireNonNull(log, "log");
+        this.phase = Objects.requireNonNull(phase, "phase");
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.total = total;
+        this.interval = interval;
+        start = System.nanoTime();
+        log.info(phase + ": started" + (total >= 0 ? " (total: " + total + ")" : ""));
+    }
+
+    /**
+     * Add the given number of processed items, logging progress each time an interval boundary is crossed
+     *
+     * @param n
+     *     the number of processed items
+     */
+    public void add(long n) {
+        long after = count.addAndGet(n);
+        if ((after - n) / interval != after / interval) {
+            log.info(phase + ": " + format(after));
+        }
+    }
+
+    /**
+     * Equivalent to {@code add(1)}
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @return
+     *     the number of processed items
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Log the final count and throughput for this phase
+     *
+     * @return
+     *     the elapsed time in milliseconds
+     */
+    public long done() {
+        log.info(phase + ": done, " + format(count.get()) + ", elapsed (milliseconds): " + elapsedMillis());
+        return elapsedMillis();
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    private String format(long count) {
+        long elapsed = Math.max(1, elapsedMillis());
+        StringBuilder sb = new StringBuilder("count: ").append(count);
+        if (total > 0) {
+            sb.append("/").append(total).append(" (").append(count * 100 / total).append("%)");
+        }
+        return sb.append(", rate: ").append(count * 1000 / elapsed).append("/s").toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.graph.loader.util;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.term.util.CodeSystemIndex;
+
+/**
+ * Builds a {@link CodeSystemIndex} from the same SNOMED-CT release files (and options) as the SNOMED-CT graph loader,
+ * for use with the in-memory term service provider. Only active concepts, their preferred terms and the active
+ * "Is a" relationships are read.
+ */
+public class SnomedCodeSystemIndexReader {
+    private static final Logger log = Logger.getLogger(SnomedCodeSystemIndexReader.class.getName());
+
+    private static final String URL = "http://snomed.info/sct";
+    private static final String PREFERRED = "900000000000548007";
+    private static final String FULLY_SPECIFIED_NAME = "900000000000003001";
+    private static final String IS_A = "116680003";
+
+    private SnomedCodeSystemIndexReader() { }
+
+    /**
+     * Read the release files named by the given options (base, concept, desc, relation, lang)
+     *
+     * @param options
+     *     the SNOMED-CT loader options
+     * @return
+     *     the code system index
+     * @throws IOException
+     *     if a release file could not be read
+     */
+    public static CodeSystemIndex read(Map<String, String> options) throws IOException {
+        String baseDir = options.get("base");
+        String conceptFile = baseDir + "/" + options.get("concept");
+        String descriptionFile = baseDir + "/" + options.get("desc");
+        String relationshipFile = baseDir + "/" + options.get("relation");
+        String languageRefsetFile = baseDir + "/../Refset/Language/" + options.get("lang");
+
+        CodeSystemIndex.Builder builder = CodeSystemIndex.builder(URL, null);
+
+        log.info("Processing concepts file...");
+        forEachLatest(conceptFile, tokens -> {
+            if ("1".equals(tokens[2])) {
+                builder.concept(tokens[0], null);
+            }
+        });
+
+        log.info("Processing language refset file...");
+        Set<String> preferred = new HashSet<>(500000);
+        forEachLatest(languageRefsetFile, tokens -> {
+            if ("1".equals(tokens[2]) && PREFERRED.equals(tokens[6])) {
+                preferred.add(tokens[5]);
+            }
+        });
+
+        log.info("Processing description file...");
+        forEachLatest(descriptionFile, tokens -> {
+            String conceptId = tokens[4];
+            if ("1".equals(tokens[2]) && builder.hasConcept(conceptId) && preferred.contains(tokens[0]) && !FULLY_SPECIFIED_NAME.equals(tokens[6])) {
+                builder.concept(conceptId, tokens[7]);
+            }
+        });
+
+        log.info("Processing relationship file...");
+        forEachLatest(relationshipFile, tokens -> {
+            String sourceId = tokens[4];
+            String destinationId = tokens[5];
+            if ("1".equals(tokens[2]) && IS_A.equals(tokens[7]) && builder.hasConcept(sourceId) && builder.hasConcept(destinationId)) {
+                builder.isA(sourceId, destinationId);
+            }
+        });
+
+        log.info("Building index...");
+        return builder.build();
+    }
+
+    /**
+     * Pass the tokens of the last row of each run of rows with the same component id to the consumer, skipping the header
+     */
+    private static void forEachLatest(String file, Consumer<String[]> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            reader.readLine();
+            String[] previous = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\\t");
+                if (previous != null && !previous[0].equals(tokens[0])) {
+                    consumer.accept(previous);
+                }
+                previous = tokens;
+            }
+            if (previous != null) {
+                consumer.accept(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.graph.loader.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
+
+import com.ibm.fhir.term.graph.FHIRTermGraph;
+
+/**
+ * An order independent summary (counts and checksums) of the concepts, designations and relationships loaded into a
+ * {@link FHIRTermGraph} for a code system. Two loaders that produce equal summaries from the same input loaded the same
+ * content, regardless of the order in which it was written or the vertex ids that were assigned.
+ */
+public final class TermGraphSummary {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String url;
+    private final Object count;
+    private final Checksum concepts = new Checksum();
+    private final Checksum designations = new Checksum();
+    private final Map<String, Checksum> edges = new TreeMap<>();
+
+    private TermGraphSummary(String url, Object count) {
+        this.url = url;
+        this.count = count;
+    }
+
+    /**
+     * Summarize the content loaded into the given graph for the code system with the given url
+     *
+     * @param graph
+     *     the graph
+     * @param url
+     *     the code system url
+     * @return
+     *     the summary
+     */
+    public static TermGraphSummary of(FHIRTermGraph graph, String url) {
+        Objects.requireNonNull(graph, "graph");
+        Objects.requireNonNull(url, "url");
+
+        GraphTraversalSource g = graph.traversal();
+
+        TermGraphSummary summary = new TermGraphSummary(url, g.V().has("CodeSystem", "url", url).values("count").tryNext().orElse(null));
+
+        g.V().has("CodeSystem", "url", url).out("concept")
+            .project("code", "codeLowerCase", "display")
+                .by(__.values("code"))
+                .by(__.coalesce(__.values("codeLowerCase"), __.constant("")))
+                .by(__.coalesce(__.values("display"), __.constant("")))
+            .forEachRemaining(map -> summary.concepts.add(map.get("code"), map.get("codeLowerCase"), map.get("display")));
+
+        g.V().has("CodeSystem", "url", url).out("concept").as("c").out("designation")
+            .project("code", "language", "use", "value")
+                .by(__.select("c").values("code"))
+                .by(__.coalesce(__.values("language"), __.constant("")))
+                .by(__.coalesce(__.values("use"), __.constant("")))
+                .by(__.coalesce(__.values("value"), __.constant("")))
+            .forEachRemaining(map -> summary.designations.add(map.get("code"), map.get("language"), map.get("use"), map.get("value")));
+
+        g.V().has("CodeSystem", "url", url).out("concept").outE().not(__.hasLabel("designation"))
+            .project("label", "source", "target", "group")
+                .by(__.label())
+                .by(__.outV().values("code"))
+                .by(__.inV().values("code"))
+                .by(__.coalesce(__.values("group"), __.constant("")))
+            .forEachRemaining(map -> summary.edges.computeIfAbsent((String) map.get("label"), k -> new Checksum())
+                .add(map.get("source"), map.get("target"), map.get("group")));
+
+        return summary;
+    }
+
+    /**
+     * @return
+     *     the number of concept vertices
+     */
+    public long getConceptCount() {
+        return concepts.count;
+    }
+
+    /**
+     * @return
+     *     the number of designation vertices
+     */
+    public long getDesignationCount() {
+        return designations.count;
+    }
+
+    /**
+     * @return
+     *     the number of relationship edges (all labels other than designation) between concepts
+     */
+    public long getEdgeCount() {
+        return edges.values().stream().mapToLong(checksum -> checksum.count).sum();
+    }
+
+    /**
+     * Describe the differences between this summary and another summary
+     *
+     * @param other
+     *     the other summary
+     * @return
+     *     a description of each difference or an empty list if the summaries are equal
+     */
+    public List<String> diff(TermGraphSummary other) {
+        Objects.requireNonNull(other, "other");
+        List<String> differences = new ArrayList<>();
+        if (!Objects.equals(url, other.url)) {
+            differences.add("url: " + url + " != " + other.url);
+        }
+        if (!Objects.equals(count, other.count)) {
+            differences.add("count: " + count + " != " + other.count);
+        }
+        if (!concepts.equals(other.concepts)) {
+            differences.add("concepts: " + concepts + " != " + other.concepts);
+        }
+        if (!designations.equals(other.designations)) {
+            differences.add("designations: " + designations + " != " + other.designations);
+        }
+        Map<String, Checksum> labels = new TreeMap<>(edges);
+        other.edges.keySet().forEach(label -> labels.putIfAbsent(label, new Checksum()));
+        for (String label : labels.keySet()) {
+            Checksum checksum = edges.getOrDefault(label, new Checksum());
+            Checksum otherChecksum = other.edges.getOrDefault(label, new Checksum());
+            if (!checksum.equals(otherChecksum)) {
+                differences.add("edges[" + label + "]: " + checksum + " != " + otherChecksum);
+            }
+        }
+        return differences.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(differences);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return diff((TermGraphSummary) obj).isEmpty();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(url, count, concepts, designations, edges);
+    }
+
+    @Override
+    public String toString() {
+        return "TermGraphSummary [url=" + url + ", count=" + count + ", concepts=" + concepts + ", designations=" + designations + ", edges=" + edges + "]";
+    }
+
+    /**
+     * A multiset checksum: the sum of the 64-bit FNV-1a hashes of the items added
+     */
+    private static class Checksum {
+        private long count;
+        private long sum;
+
+        void add(Object... values) {
+            long hash = FNV_OFFSET_BASIS;
+            for (Object value : values) {
+                for (byte b : String.valueOf(value).getBytes(StandardCharsets.UTF_8)) {
+                    hash ^= (b & 0xff);
+                    hash *= FNV_PRIME;
+                }
+                // field separator
+                hash *= FNV_PRIME;
+            }
+            count++;
+            sum += hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Checksum)) {
+                return false;
+            }
+            Checksum other = (Checksum) obj;
+            return count == other.count && sum == other.sum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, sum);
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", checksum=" + Long.toHexString(sum) + "}";
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.graph.test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.term.graph.FHIRTermGraph;
+import com.ibm.fhir.term.graph.factory.FHIRTermGraphFactory;
+import com.ibm.fhir.term.graph.loader.impl.BulkSnomedTermGraphLoader;
+import com.ibm.fhir.term.graph.loader.impl.SnomedTermGraphLoader;
+import com.ibm.fhir.term.graph.loader.util.TermGraphSummary;
+import com.ibm.fhir.term.graph.provider.GraphTermServiceProvider;
+import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
+
+public class BulkSnomedTermGraphLoaderTest {
+    private static final String URL = "http://snomed.info/sct";
+
+    @Test
+    public void testBulkSnomedTermGraphLoader() throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("base", "src/test/resources/snomed/Snapshot/Terminology");
+        options.put("concept", "sct2_Concept_Snapshot_INT_Test.txt");
+        options.put("desc", "sct2_Description_Snapshot-en_INT_Test.txt");
+        options.put("relation", "sct2_Relationship_Snapshot_INT_Test.txt");
+        options.put("lang", "der2_cRefset_LanguageSnapshot-en_INT_Test.txt");
+        // small batches and several threads so that the partitioning and intermediate commits are exercised
+        options.put("threads", "3");
+        options.put("batch", "2");
+
+        FHIRTermGraph expectedGraph = FHIRTermGraphFactory.open(createConfiguration("target/data/snomed", false));
+        FHIRTermGraph actualGraph = FHIRTermGraphFactory.open(createConfiguration("target/data/snomed-bulk", true));
+        try {
+            expectedGraph.dropAllVertices();
+            actualGraph.dropAllVertices();
+
+            new SnomedTermGraphLoader(options, expectedGraph).load();
+            new BulkSnomedTermGraphLoader(options, actualGraph).load();
+
+            TermGraphSummary expected = TermGraphSummary.of(expectedGraph, URL);
+            TermGraphSummary actual = TermGraphSummary.of(actualGraph, URL);
+
+            Assert.assertEquals(actual.diff(expected), Collections.emptyList());
+            Assert.assertEquals(actual.getConceptCount(), 9);
+            Assert.assertEquals(actual.getDesignationCount(), 19);
+            Assert.assertEquals(actual.getEdgeCount(), 9);
+
+            CodeSystem codeSystem = CodeSystem.builder()
+                    .url(Uri.of(URL))
+                    .status(PublicationStatus.ACTIVE)
+                    .content(CodeSystemContentMode.NOT_PRESENT)
+                    .build();
+
+            FHIRTermServiceProvider provider = new GraphTermServiceProvider(actualGraph);
+
+            Assert.assertTrue(provider.subsumes(codeSystem, Code.of("404684003"), Code.of("56786000")));
+            Assert.assertFalse(provider.subsumes(codeSystem, Code.of("56786000"), Code.of("404684003")));
+            Assert.assertEquals(provider.getConcept(codeSystem, Code.of("56786000")).getDisplay().getValue(), "Pulmonic valve stenosis");
+        } finally {
+            expectedGraph.close();
+            actualGraph.close();
+        }
+    }
+
+    private Configuration createConfiguration(String directory, boolean batchLoading) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("storage.backend", "berkeleyje");
+        map.put("storage.directory", directory + "/graph");
+        map.put("storage.batch-loading", batchLoading);
+        map.put("index.search.backend", "lucene");
+        map.put("index.search.directory", directory + "/searchindex");
+        return new MapConfiguration(map);
+    }
+}
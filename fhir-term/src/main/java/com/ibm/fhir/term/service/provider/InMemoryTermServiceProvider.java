@@ -0,0 +1,292 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.provider;
+
+import static com.ibm.fhir.model.type.String.string;
+import static com.ibm.fhir.term.util.CodeSystemSupport.isCaseSensitive;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.OperationOutcome.Issue;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include.Filter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
+import com.ibm.fhir.model.type.code.FilterOperator;
+import com.ibm.fhir.model.type.code.IssueSeverity;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.term.exception.FHIRTermException;
+import com.ibm.fhir.term.service.exception.FHIRTermServiceException;
+import com.ibm.fhir.term.spi.AbstractTermServiceProvider;
+import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
+import com.ibm.fhir.term.util.CodeSystemIndex;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+
+/**
+ * In-memory implementation of the {@link FHIRTermServiceProvider} interface using {@link CodeSystemIndex}
+ *
+ * <p>Subsumption, closure and the hierarchy filters (is-a, descendent-of, generalizes, is-not-a, parent / child equals)
+ * are answered from the index. Property filters are only supported for code systems indexed from a {@link CodeSystem}
+ * resource and are evaluated with {@link CodeSystemSupport}.
+ */
+public class InMemoryTermServiceProvider extends AbstractTermServiceProvider {
+    private final Map<String, List<CodeSystemIndex>> indexMap = new ConcurrentHashMap<>();
+
+    public InMemoryTermServiceProvider(CodeSystemIndex... indexes) {
+        this(Arrays.asList(indexes));
+    }
+
+    public InMemoryTermServiceProvider(Collection<CodeSystemIndex> indexes) {
+        requireNonNull(indexes, "indexes");
+        indexes.forEach(this::addIndex);
+    }
+
+    /**
+     * Add an index to this provider
+     *
+     * @param index
+     *     the index
+     */
+    public void addIndex(CodeSystemIndex index) {
+        requireNonNull(index, "index");
+        indexMap.computeIfAbsent(index.getUrl(), k -> new CopyOnWriteArrayList<>()).add(index);
+    }
+
+    @Override
+    public Set<Concept> closure(CodeSystem codeSystem, Code code) {
+        checkArguments(codeSystem, code);
+        CodeSystemIndex index = getIndex(codeSystem);
+        int id = index.getId(code.getValue(), isCaseSensitive(codeSystem));
+        if (id == -1) {
+            return Collections.emptySet();
+        }
+        return toSet(index, index.getDescendantsAndSelf(id), Function.identity());
+    }
+
+    @Override
+    public Concept getConcept(CodeSystem codeSystem, Code code) {
+        checkArguments(codeSystem, code);
+        CodeSystemIndex index = getIndex(codeSystem);
+        int id = index.getId(code.getValue(), isCaseSensitive(codeSystem));
+        if (id == -1) {
+            return null;
+        }
+        // child concepts are removed for consistency with the other providers
+        return CodeSystemSupport.CONCEPT_NO_CHILDREN_FUNCTION.apply(index.getConcept(id));
+    }
+
+    @Override
+    public Set<Concept> getConcepts(CodeSystem codeSystem) {
+        return getConcepts(codeSystem, CodeSystemSupport.SIMPLE_CONCEPT_FUNCTION);
+    }
+
+    @Override
+    public <R> Set<R> getConcepts(CodeSystem codeSystem, Function<Concept, ? extends R> function) {
+        checkArguments(codeSystem, function);
+        CodeSystemIndex index = getIndex(codeSystem);
+        BitSet all = new BitSet(index.size());
+        all.set(0, index.size());
+        return toSet(index, all, function);
+    }
+
+    @Override
+    public Set<Concept> getConcepts(CodeSystem codeSystem, List<Filter> filters) {
+        return getConcepts(codeSystem, filters, CodeSystemSupport.SIMPLE_CONCEPT_FUNCTION);
+    }
+
+    @Override
+    public <R> Set<R> getConcepts(CodeSystem codeSystem, List<Filter> filters, Function<Concept, ? extends R> function) {
+        checkArguments(codeSystem, filters, function);
+        CodeSystemIndex index = getIndex(codeSystem);
+        BitSet result = new BitSet(index.size());
+        result.set(0, index.size());
+        for (Filter filter : filters) {
+            result.and(apply(codeSystem, index, filter));
+        }
+        return toSet(index, result, function);
+    }
+
+    @Override
+    public boolean hasConcept(CodeSystem codeSystem, Code code) {
+        checkArguments(codeSystem, code);
+        return getIndex(codeSystem).getId(code.getValue(), isCaseSensitive(codeSystem)) != -1;
+    }
+
+    @Override
+    public boolean isSupported(CodeSystem codeSystem) {
+        checkArgument(codeSystem);
+        return findIndex(codeSystem) != null;
+    }
+
+    @Override
+    public boolean subsumes(CodeSystem codeSystem, Code codeA, Code codeB) {
+        checkArguments(codeSystem, codeA, codeB);
+        CodeSystemIndex index = getIndex(codeSystem);
+        boolean caseSensitive = isCaseSensitive(codeSystem);
+        int a = index.getId(codeA.getValue(), caseSensitive);
+        int b = index.getId(codeB.getValue(), caseSensitive);
+        return a != -1 && b != -1 && index.subsumes(a, b);
+    }
+
+    private BitSet apply(CodeSystem codeSystem, CodeSystemIndex index, Filter filter) {
+        boolean caseSensitive = isCaseSensitive(codeSystem);
+        String property = filter.getProperty().getValue();
+        String value = filter.getValue().getValue();
+        CodeSystemHierarchyMeaning hierarchyMeaning = codeSystem.getHierarchyMeaning();
+        boolean isA = CodeSystemHierarchyMeaning.IS_A.equals(hierarchyMeaning);
+
+        switch (filter.getOp().getValueAsEnum()) {
+        case DESCENDENT_OF:
+            if ("concept".equals(property) && isA) {
+                int id = getId(index, value, caseSensitive, filter);
+                BitSet result = index.getDescendantsAndSelf(id);
+                result.clear(id);
+                return result;
+            }
+            break;
+        case EQUALS:
+            if (("parent".equals(property) || "child".equals(property)) && isA) {
+                int id = index.getId(value, caseSensitive);
+                if (id == -1) {
+                    return new BitSet(index.size());
+                }
+                return toBitSet(index, "parent".equals(property) ? index.getChildren(id) : index.getParents(id));
+            }
+            return applyPropertyFilter(codeSystem, index, filter);
+        case GENERALIZES:
+            if ("concept".equals(property) && (isA || hierarchyMeaning == null)) {
+                return index.getAncestorsAndSelf(getId(index, value, caseSensitive, filter));
+            }
+            break;
+        case IN:
+        case NOT_IN:
+            if ("concept".equals(property)) {
+                BitSet result = new BitSet(index.size());
+                for (String code : value.split(",")) {
+                    for (int id : index.getIds(code, caseSensitive)) {
+                        result.set(id);
+                    }
+                }
+                if (filter.getOp().getValueAsEnum() == FilterOperator.Value.NOT_IN) {
+                    result.flip(0, index.size());
+                }
+                return result;
+            }
+            return applyPropertyFilter(codeSystem, index, filter);
+        case IS_A:
+        case IS_NOT_A:
+            if ("concept".equals(property) && (isA || hierarchyMeaning == null)) {
+                BitSet result = index.getDescendantsAndSelf(getId(index, value, caseSensitive, filter));
+                if (filter.getOp().getValueAsEnum() == FilterOperator.Value.IS_NOT_A) {
+                    result.flip(0, index.size());
+                }
+                return result;
+            }
+            break;
+        case EXISTS:
+        case REGEX:
+            return applyPropertyFilter(codeSystem, index, filter);
+        }
+        throw filterNotApplied(filter);
+    }
+
+    /**
+     * Evaluate a property filter against the concepts of the code system resource and map the matches to concept ids
+     */
+    private BitSet applyPropertyFilter(CodeSystem codeSystem, CodeSystemIndex index, Filter filter) {
+        if (!index.hasConcepts()) {
+            throw filterNotApplied(filter);
+        }
+        boolean caseSensitive = isCaseSensitive(codeSystem);
+        Set<String> codeValues;
+        try {
+            codeValues = CodeSystemSupport.getConcepts(codeSystem, Collections.singletonList(filter), CodeSystemSupport.getCodeValueFunction(codeSystem));
+        } catch (FHIRTermException e) {
+            throw new FHIRTermServiceException(e.getMessage(), e, e.getIssues());
+        }
+        BitSet result = new BitSet(index.size());
+        for (int id = 0; id < index.size(); id++) {
+            if (codeValues.contains(index.getCodeValue(id, caseSensitive))) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    private int getId(CodeSystemIndex index, String code, boolean caseSensitive, Filter filter) {
+        int id = index.getId(code, caseSensitive);
+        if (id == -1) {
+            throw filterNotApplied(filter);
+        }
+        return id;
+    }
+
+    private CodeSystemIndex findIndex(CodeSystem codeSystem) {
+        List<CodeSystemIndex> indexes = indexMap.get(codeSystem.getUrl().getValue());
+        if (indexes == null) {
+            return null;
+        }
+        String version = (codeSystem.getVersion() != null) ? codeSystem.getVersion().getValue() : null;
+        for (CodeSystemIndex index : indexes) {
+            if (version == null || version.equals(index.getVersion())) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private CodeSystemIndex getIndex(CodeSystem codeSystem) {
+        CodeSystemIndex index = findIndex(codeSystem);
+        if (index == null) {
+            throw new IllegalArgumentException("Code system is not supported: " + codeSystem.getUrl().getValue());
+        }
+        return index;
+    }
+
+    private BitSet toBitSet(CodeSystemIndex index, int[] ids) {
+        BitSet result = new BitSet(index.size());
+        for (int id : ids) {
+            result.set(id);
+        }
+        return result;
+    }
+
+    private <R> Set<R> toSet(CodeSystemIndex index, BitSet ids, Function<Concept, ? extends R> function) {
+        Set<R> result = new LinkedHashSet<>(Math.max(16, ids.cardinality() * 4 / 3 + 1));
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(function.apply(index.getConcept(id)));
+        }
+        return result;
+    }
+
+    private FHIRTermServiceException filterNotApplied(Filter filter) {
+        String message = String.format("Filter not applied (property: %s, op: %s, value: %s)",
+            filter.getProperty().getValue(),
+            filter.getOp().getValue(),
+            filter.getValue().getValue());
+        throw new FHIRTermServiceException(message, Collections.singletonList(Issue.builder()
+            .severity(IssueSeverity.ERROR)
+            .code(IssueType.NOT_SUPPORTED)
+            .details(CodeableConcept.builder()
+                .text(string(message))
+                .build())
+            .build()));
+    }
+}
@@ -0,0 +1,635 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util;
+
+import static com.ibm.fhir.model.type.String.string;
+import static com.ibm.fhir.term.util.CodeSystemSupport.normalize;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Code;
+
+/**
+ * A compact, read-only index over the concepts and is-a hierarchy of a single code system.
+ *
+ * <p>Concepts are identified by an int id that is their position in a depth-first, pre-order walk of the hierarchy
+ * (document order for a {@link CodeSystem} resource). All state is kept in primitive arrays:
+ * <ul>
+ * <li>a code dictionary: the ids sorted by code and by normalized code, searched with a binary search</li>
+ * <li>the parent and child adjacency in compressed sparse row (CSR) form</li>
+ * <li>for each concept, the sorted, merged intervals of ids that make up its descendants-and-self</li>
+ * </ul>
+ *
+ * <p>In a tree, the descendants-and-self of a concept are the ids from its pre-order number to the last pre-order number
+ * of its subtree, so each concept has exactly one interval: subsumption is a single range check and the closure of a
+ * concept is a range scan. When a concept has more than one parent, the intervals of the descendants that are reached
+ * through other parents are merged into the intervals of each ancestor, which keeps subsumption a binary search over a
+ * (usually very short) list of intervals.
+ */
+public final class CodeSystemIndex {
+    private final String url;
+    private final String version;
+    private final int size;
+
+    // code dictionary
+    private final String[] codes;
+    private final String[] normalizedCodes;
+    private final String[] displays;
+    private final int[] codeOrder;
+    private final int[] normalizedCodeOrder;
+
+    // the source concepts (with child concepts), if the index was built from a CodeSystem resource
+    private final Concept[] concepts;
+
+    // CSR adjacency
+    private final int[] parentOffsets;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] children;
+
+    // descendants-and-self intervals, CSR by concept id
+    private final int[] intervalOffsets;
+    private final int[] intervalStarts;
+    private final int[] intervalEnds;
+
+    private CodeSystemIndex(Builder builder, int[] order, int[] parentOffsets, int[] parents, int[] childOffsets, int[] children) {
+        url = builder.url;
+        version = builder.version;
+        size = order.length;
+
+        codes = new String[size];
+        normalizedCodes = new String[size];
+        displays = new String[size];
+        concepts = builder.hasConcepts ? new Concept[size] : null;
+        for (int id = 0; id < size; id++) {
+            int i = order[id];
+            codes[id] = builder.codes[i];
+            normalizedCodes[id] = normalize(builder.codes[i]);
+            displays[id] = builder.displays[i];
+            if (concepts != null) {
+                concepts[id] = builder.concepts[i];
+            }
+        }
+        codeOrder = sortedIds(codes);
+        normalizedCodeOrder = sortedIds(normalizedCodes);
+
+        this.parentOffsets = parentOffsets;
+        this.parents = parents;
+        this.childOffsets = childOffsets;
+        this.children = children;
+
+        intervalOffsets = new int[size + 1];
+        int[][] intervals = computeIntervals();
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            intervalOffsets[id] = count;
+            count += intervals[id].length / 2;
+        }
+        intervalOffsets[size] = count;
+        intervalStarts = new int[count];
+        intervalEnds = new int[count];
+        for (int id = 0; id < size; id++) {
+            int offset = intervalOffsets[id];
+            for (int k = 0; k < intervals[id].length / 2; k++) {
+                intervalStarts[offset + k] = intervals[id][2 * k];
+                intervalEnds[offset + k] = intervals[id][2 * k + 1];
+            }
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * The number of concepts in this index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Indicates whether this index was built from a {@link CodeSystem} resource and holds its concepts
+     */
+    public boolean hasConcepts() {
+        return concepts != null;
+    }
+
+    /**
+     * Get the id of the concept with the given code
+     *
+     * @param code
+     *     the code
+     * @param caseSensitive
+     *     whether the code should be matched case sensitively
+     * @return
+     *     the id of the concept, or -1 if no such concept exists; for a case insensitive match of more than one concept,
+     *     the first in document order
+     */
+    public int getId(String code, boolean caseSensitive) {
+        if (caseSensitive) {
+            int index = search(codes, codeOrder, code);
+            return (index < codeOrder.length && codes[codeOrder[index]].equals(code)) ? codeOrder[index] : -1;
+        }
+        String normalized = normalize(code);
+        int index = search(normalizedCodes, normalizedCodeOrder, normalized);
+        return (index < normalizedCodeOrder.length && normalizedCodes[normalizedCodeOrder[index]].equals(normalized)) ? normalizedCodeOrder[index] : -1;
+    }
+
+    /**
+     * Get the ids of all concepts with the given code; more than one only for a case insensitive match
+     */
+    public int[] getIds(String code, boolean caseSensitive) {
+        String[] keys = caseSensitive ? codes : normalizedCodes;
+        int[] order = caseSensitive ? codeOrder : normalizedCodeOrder;
+        String key = caseSensitive ? code : normalize(code);
+        int from = search(keys, order, key);
+        int to = from;
+        while (to < order.length && keys[order[to]].equals(key)) {
+            to++;
+        }
+        return Arrays.copyOfRange(order, from, to);
+    }
+
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+    /**
+     * Get the code value of the concept with the given id as used for comparisons: the code itself, or its normalized
+     * form when the code system is case insensitive
+     */
+    public String getCodeValue(int id, boolean caseSensitive) {
+        return caseSensitive ? codes[id] : normalizedCodes[id];
+    }
+
+    public String getDisplay(int id) {
+        return displays[id];
+    }
+
+    /**
+     * Get the concept with the given id: the source concept (including its child concepts) if the index was built from
+     * a {@link CodeSystem} resource, otherwise a concept with only a code and display value
+     */
+    public Concept getConcept(int id) {
+        if (concepts != null) {
+            return concepts[id];
+        }
+        return Concept.builder()
+                .code(Code.of(codes[id]))
+                .display((displays[id] != null) ? string(displays[id]) : null)
+                .build();
+    }
+
+    public int[] getParents(int id) {
+        return Arrays.copyOfRange(parents, parentOffsets[id], parentOffsets[id + 1]);
+    }
+
+    public int[] getChildren(int id) {
+        return Arrays.copyOfRange(children, childOffsets[id], childOffsets[id + 1]);
+    }
+
+    /**
+     * Indicates whether the concept with id {@code a} subsumes (or is) the concept with id {@code b}
+     */
+    public boolean subsumes(int a, int b) {
+        int from = intervalOffsets[a];
+        int to = intervalOffsets[a + 1];
+        if (to - from == 1) {
+            return intervalStarts[from] <= b && b <= intervalEnds[from];
+        }
+        // last interval that starts at or before b
+        int low = from, high = to - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (intervalStarts[mid] <= b) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found != -1 && b <= intervalEnds[found];
+    }
+
+    /**
+     * Get the descendants-and-self of the concept with the given id
+     *
+     * @return
+     *     the set of concept ids, which iterates in document order
+     */
+    public BitSet getDescendantsAndSelf(int id) {
+        BitSet result = new BitSet(size);
+        for (int k = intervalOffsets[id]; k < intervalOffsets[id + 1]; k++) {
+            result.set(intervalStarts[k], intervalEnds[k] + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Get the ancestors-and-self of the concept with the given id
+     *
+     * @return
+     *     the set of concept ids, which iterates in document order
+     */
+    public BitSet getAncestorsAndSelf(int id) {
+        BitSet result = new BitSet(size);
+        Deque<Integer> stack = new ArrayDeque<>();
+        result.set(id);
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            for (int k = parentOffsets[current]; k < parentOffsets[current + 1]; k++) {
+                int parent = parents[k];
+                if (!result.get(parent)) {
+                    result.set(parent);
+                    stack.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build an index over the concepts of the given code system, using the nesting of concepts as the hierarchy
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     the index
+     */
+    public static CodeSystemIndex from(CodeSystem codeSystem) {
+        requireNonNull(codeSystem, "codeSystem");
+        requireNonNull(codeSystem.getUrl(), "CodeSystem.url");
+        Builder builder = builder(codeSystem.getUrl().getValue(),
+            (codeSystem.getVersion() != null) ? codeSystem.getVersion().getValue() : null);
+        add(builder, codeSystem.getConcept(), -1);
+        return builder.build();
+    }
+
+    private static void add(Builder builder, List<Concept> concepts, int parent) {
+        for (Concept concept : concepts) {
+            int id = builder.concept(concept);
+            if (parent != -1) {
+                builder.isA(id, parent);
+            }
+            add(builder, concept.getConcept(), id);
+        }
+    }
+
+    public static Builder builder(String url, String version) {
+        return new Builder(url, version);
+    }
+
+    private int[][] computeIntervals() {
+        // reverse topological order (children before parents) with Kahn's algorithm
+        int[] remaining = new int[size];
+        int[] queue = new int[size];
+        int head = 0, tail = 0;
+        for (int id = 0; id < size; id++) {
+            remaining[id] = childOffsets[id + 1] - childOffsets[id];
+            if (remaining[id] == 0) {
+                queue[tail++] = id;
+            }
+        }
+
+        int[] treeEnds = computeTreeEnds();
+        int[][] intervals = new int[size][];
+        while (head < tail) {
+            int id = queue[head++];
+            intervals[id] = mergeIntervals(id, treeEnds[id], intervals);
+            for (int k = parentOffsets[id]; k < parentOffsets[id + 1]; k++) {
+                if (--remaining[parents[k]] == 0) {
+                    queue[tail++] = parents[k];
+                }
+            }
+        }
+        if (tail != size) {
+            throw new IllegalArgumentException("The is-a hierarchy of code system '" + url + "' contains a cycle");
+        }
+        return intervals;
+    }
+
+    /**
+     * The last pre-order id of the depth-first spanning tree rooted by each concept; the ids were assigned in that order,
+     * so a tree child is a child whose id is greater than that of all preceding tree siblings
+     */
+    private int[] computeTreeEnds() {
+        int[] treeEnds = new int[size];
+        int[] treeParents = new int[size];
+        Arrays.fill(treeParents, -1);
+        for (int id = 0; id < size; id++) {
+            treeEnds[id] = id;
+        }
+        // the tree parent of a concept is the parent it was first reached from, which is the one with the greatest id
+        // smaller than its own among the parents whose tree interval covers it; computed in pre-order
+        for (int id = 1; id < size; id++) {
+            int best = -1;
+            for (int k = parentOffsets[id]; k < parentOffsets[id + 1]; k++) {
+                int parent = parents[k];
+                if (parent < id && parent > best) {
+                    best = parent;
+                }
+            }
+            treeParents[id] = best;
+        }
+        for (int id = size - 1; id > 0; id--) {
+            int parent = treeParents[id];
+            if (parent != -1 && treeEnds[id] > treeEnds[parent]) {
+                treeEnds[parent] = treeEnds[id];
+            }
+        }
+        return treeEnds;
+    }
+
+    private int[] mergeIntervals(int id, int treeEnd, int[][] intervals) {
+        int count = 1;
+        for (int k = childOffsets[id]; k < childOffsets[id + 1]; k++) {
+            count += intervals[children[k]].length / 2;
+        }
+        if (count == 1) {
+            return new int[] { id, treeEnd };
+        }
+
+        long[] pairs = new long[count];
+        int n = 0;
+        pairs[n++] = ((long) id << 32) | treeEnd;
+        for (int k = childOffsets[id]; k < childOffsets[id + 1]; k++) {
+            int[] childIntervals = intervals[children[k]];
+            for (int j = 0; j < childIntervals.length; j += 2) {
+                pairs[n++] = ((long) childIntervals[j] << 32) | childIntervals[j + 1];
+            }
+        }
+        Arrays.sort(pairs);
+
+        int[] merged = new int[2 * count];
+        int m = 0;
+        for (long pair : pairs) {
+            int start = (int) (pair >>> 32);
+            int end = (int) pair;
+            if (m > 0 && start <= merged[m - 1] + 1) {
+                merged[m - 1] = Math.max(merged[m - 1], end);
+            } else {
+                merged[m++] = start;
+                merged[m++] = end;
+            }
+        }
+        return Arrays.copyOf(merged, m);
+    }
+
+    private static int[] sortedIds(String[] keys) {
+        Integer[] ids = new Integer[keys.length];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        // stable, so equal keys stay in document order
+        Arrays.sort(ids, Comparator.comparing((Integer id) -> keys[id]));
+        int[] result = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = ids[i];
+        }
+        return result;
+    }
+
+    /**
+     * The position of the first entry of {@code order} whose key is not less than {@code key}
+     */
+    private static int search(String[] keys, int[] order, String key) {
+        int low = 0, high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[order[mid]].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Builds a {@link CodeSystemIndex} from concepts and is-a relationships, for example while reading the release
+     * files of a code system. Concepts may be added in any order; relationships may only refer to concepts that were
+     * already added.
+     */
+    public static class Builder {
+        private final String url;
+        private final String version;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final Set<Long> edges = new HashSet<>();
+
+        private String[] codes = new String[1024];
+        private String[] displays = new String[1024];
+        private Concept[] concepts = null;
+        private boolean hasConcepts = false;
+        private int count = 0;
+
+        private int[] edgeChildren = new int[1024];
+        private int[] edgeParents = new int[1024];
+        private int edgeCount = 0;
+
+        private Builder(String url, String version) {
+            this.url = requireNonNull(url, "url");
+            this.version = version;
+        }
+
+        /**
+         * Add a concept, or set the display of a concept that was already added
+         *
+         * @return
+         *     this builder
+         */
+        public Builder concept(String code, String display) {
+            requireNonNull(code, "code");
+            Integer id = ids.get(code);
+            if (id == null) {
+                add(code, display);
+            } else if (display != null) {
+                displays[id] = display;
+            }
+            return this;
+        }
+
+        private int concept(Concept concept) {
+            String code = concept.getCode().getValue();
+            Integer existing = ids.get(code);
+            if (existing != null) {
+                return existing;
+            }
+            int id = add(code, (concept.getDisplay() != null) ? concept.getDisplay().getValue() : null);
+            if (concepts == null) {
+                concepts = new Concept[codes.length];
+                hasConcepts = true;
+            }
+            concepts[id] = concept;
+            return id;
+        }
+
+        private int add(String code, String display) {
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, 2 * count);
+                displays = Arrays.copyOf(displays, 2 * count);
+                if (concepts != null) {
+                    concepts = Arrays.copyOf(concepts, 2 * count);
+                }
+            }
+            codes[count] = code;
+            displays[count] = display;
+            ids.put(code, count);
+            return count++;
+        }
+
+        public boolean hasConcept(String code) {
+            return ids.containsKey(code);
+        }
+
+        /**
+         * Add an is-a relationship between two concepts that were already added; duplicates are ignored
+         *
+         * @return
+         *     this builder
+         * @throws IllegalArgumentException
+         *     if either concept has not been added
+         */
+        public Builder isA(String child, String parent) {
+            Integer childId = ids.get(child);
+            Integer parentId = ids.get(parent);
+            if (childId == null || parentId == null) {
+                throw new IllegalArgumentException("Unknown concept: " + ((childId == null) ? child : parent));
+            }
+            isA(childId, parentId);
+            return this;
+        }
+
+        private void isA(int child, int parent) {
+            if (!edges.add(((long) child << 32) | parent)) {
+                return;
+            }
+            if (edgeCount == edgeChildren.length) {
+                edgeChildren = Arrays.copyOf(edgeChildren, 2 * edgeCount);
+                edgeParents = Arrays.copyOf(edgeParents, 2 * edgeCount);
+            }
+            edgeChildren[edgeCount] = child;
+            edgeParents[edgeCount] = parent;
+            edgeCount++;
+        }
+
+        /**
+         * Build the index
+         *
+         * @throws IllegalArgumentException
+         *     if the is-a relationships contain a cycle
+         */
+        public CodeSystemIndex build() {
+            if (hasConcepts) {
+                for (int i = 0; i < count; i++) {
+                    if (concepts[i] == null) {
+                        // concepts were added both with and without a source concept
+                        hasConcepts = false;
+                        break;
+                    }
+                }
+            }
+
+            // child adjacency in insertion order, by insertion id
+            int[] childOffsets = new int[count + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                childOffsets[edgeParents[e] + 1]++;
+            }
+            for (int i = 0; i < count; i++) {
+                childOffsets[i + 1] += childOffsets[i];
+            }
+            int[] children = new int[edgeCount];
+            int[] next = Arrays.copyOf(childOffsets, count);
+            boolean[] hasParent = new boolean[count];
+            for (int e = 0; e < edgeCount; e++) {
+                children[next[edgeParents[e]]++] = edgeChildren[e];
+                hasParent[edgeChildren[e]] = true;
+            }
+
+            // depth-first pre-order from the roots, in insertion order
+            int[] order = new int[count];
+            int[] newIds = new int[count];
+            Arrays.fill(newIds, -1);
+            int n = 0;
+            int[] stack = new int[Math.max(count, 1)];
+            int[] cursor = new int[count];
+            for (int root = 0; root < count; root++) {
+                if (hasParent[root]) {
+                    continue;
+                }
+                int top = 0;
+                stack[top++] = root;
+                newIds[root] = n;
+                order[n++] = root;
+                cursor[root] = childOffsets[root];
+                while (top > 0) {
+                    int current = stack[top - 1];
+                    if (cursor[current] < childOffsets[current + 1]) {
+                        int child = children[cursor[current]++];
+                        if (newIds[child] == -1) {
+                            newIds[child] = n;
+                            order[n++] = child;
+                            cursor[child] = childOffsets[child];
+                            stack[top++] = child;
+                        }
+                    } else {
+                        top--;
+                    }
+                }
+            }
+            if (n != count) {
+                throw new IllegalArgumentException("The is-a hierarchy of code system '" + url + "' contains a cycle");
+            }
+
+            // adjacency by new id
+            int[] newChildOffsets = new int[count + 1];
+            int[] newChildren = new int[edgeCount];
+            int[] newParentOffsets = new int[count + 1];
+            int[] newParents = new int[edgeCount];
+            for (int id = 0; id < count; id++) {
+                int i = order[id];
+                int from = childOffsets[i], to = childOffsets[i + 1];
+                newChildOffsets[id + 1] = newChildOffsets[id] + (to - from);
+                for (int k = from; k < to; k++) {
+                    newChildren[newChildOffsets[id] + (k - from)] = newIds[children[k]];
+                }
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                newParentOffsets[newIds[edgeChildren[e]] + 1]++;
+            }
+            for (int id = 0; id < count; id++) {
+                newParentOffsets[id + 1] += newParentOffsets[id];
+            }
+            int[] nextParent = Arrays.copyOf(newParentOffsets, count);
+            for (int e = 0; e < edgeCount; e++) {
+                newParents[nextParent[newIds[edgeChildren[e]]]++] = newIds[edgeParents[e]];
+            }
+            for (int id = 0; id < count; id++) {
+                Arrays.sort(newParents, newParentOffsets[id], newParentOffsets[id + 1]);
+            }
+
+            return new CodeSystemIndex(this, order, newParentOffsets, newParents, newChildOffsets, newChildren);
+        }
+    }
+}
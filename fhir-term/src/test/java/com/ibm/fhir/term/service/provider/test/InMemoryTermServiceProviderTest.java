@@ -0,0 +1,18 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.provider.test;
+
+import com.ibm.fhir.term.service.provider.InMemoryTermServiceProvider;
+import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
+import com.ibm.fhir.term.util.CodeSystemIndex;
+
+public class InMemoryTermServiceProviderTest extends FHIRTermServiceProviderTest {
+    @Override
+    public FHIRTermServiceProvider createProvider() throws Exception {
+        return new InMemoryTermServiceProvider(CodeSystemIndex.from(codeSystem));
+    }
+}
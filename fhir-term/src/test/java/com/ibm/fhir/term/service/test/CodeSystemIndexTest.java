@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.term.util.CodeSystemIndex;
+
+public class CodeSystemIndexTest {
+    @Test
+    public void testTree() {
+        CodeSystemIndex index = CodeSystemIndex.builder("http://example.com/fhir/CodeSystem/tree", null)
+                .concept("a", "A")
+                .concept("b", "B")
+                .concept("c", "C")
+                .concept("d", "D")
+                .isA("b", "a")
+                .isA("c", "b")
+                .isA("d", "a")
+                .build();
+
+        int a = index.getId("a", true), b = index.getId("b", true), c = index.getId("c", true), d = index.getId("d", true);
+        Assert.assertTrue(index.subsumes(a, c));
+        Assert.assertTrue(index.subsumes(b, c));
+        Assert.assertTrue(index.subsumes(c, c));
+        Assert.assertFalse(index.subsumes(d, c));
+        Assert.assertFalse(index.subsumes(c, a));
+        Assert.assertEquals(codes(index, index.getDescendantsAndSelf(b)), Arrays.asList("b", "c"));
+        Assert.assertEquals(codes(index, index.getAncestorsAndSelf(c)), Arrays.asList("a", "b", "c"));
+        Assert.assertEquals(index.getDisplay(d), "D");
+        Assert.assertEquals(index.getId("A", true), -1);
+        Assert.assertEquals(index.getId("A", false), a);
+    }
+
+    @Test
+    public void testMultipleParents() {
+        // e has two parents, so the descendants of c are not contiguous in pre-order
+        CodeSystemIndex index = CodeSystemIndex.builder("http://example.com/fhir/CodeSystem/dag", null)
+                .concept("a", null)
+                .concept("b", null)
+                .concept("c", null)
+                .concept("d", null)
+                .concept("e", null)
+                .concept("f", null)
+                .isA("b", "a")
+                .isA("e", "b")
+                .isA("f", "e")
+                .isA("c", "a")
+                .isA("d", "c")
+                .isA("e", "c")
+                .build();
+
+        int c = index.getId("c", true);
+        Assert.assertEquals(codes(index, index.getDescendantsAndSelf(c)), Arrays.asList("e", "f", "c", "d"));
+        Assert.assertTrue(index.subsumes(c, index.getId("f", true)));
+        Assert.assertFalse(index.subsumes(c, index.getId("b", true)));
+        Assert.assertEquals(codes(index, index.getAncestorsAndSelf(index.getId("f", true))), Arrays.asList("a", "b", "e", "f", "c"));
+    }
+
+    @Test
+    public void testRandomDag() {
+        Random random = new Random(42);
+        int size = 500;
+        CodeSystemIndex.Builder builder = CodeSystemIndex.builder("http://example.com/fhir/CodeSystem/random", null);
+        List<List<Integer>> parents = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            builder.concept("c" + i, null);
+            List<Integer> list = new ArrayList<>();
+            // edges only point to earlier concepts, so there are no cycles
+            for (int k = 0; i > 0 && k < 1 + random.nextInt(3); k++) {
+                int parent = random.nextInt(i);
+                builder.isA("c" + i, "c" + parent);
+                list.add(parent);
+            }
+            parents.add(list);
+        }
+        CodeSystemIndex index = builder.build();
+
+        for (int i = 0; i < size; i++) {
+            BitSet ancestors = new BitSet();
+            collect(parents, i, ancestors);
+            for (int j = 0; j < size; j++) {
+                Assert.assertEquals(index.subsumes(index.getId("c" + j, true), index.getId("c" + i, true)), ancestors.get(j), j + " subsumes " + i);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCycle() {
+        CodeSystemIndex.builder("http://example.com/fhir/CodeSystem/cycle", null)
+                .concept("a", null)
+                .concept("b", null)
+                .concept("c", null)
+                .isA("b", "a")
+                .isA("c", "b")
+                .isA("b", "c")
+                .build();
+    }
+
+    private void collect(List<List<Integer>> parents, int i, BitSet result) {
+        if (!result.get(i)) {
+            result.set(i);
+            for (int parent : parents.get(i)) {
+                collect(parents, parent, result);
+            }
+        }
+    }
+
+    private List<String> codes(CodeSystemIndex index, BitSet ids) {
+        List<String> codes = new ArrayList<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            codes.add(index.getCode(id));
+        }
+        return codes;
+    }
+}
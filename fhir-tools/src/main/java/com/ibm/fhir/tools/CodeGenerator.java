@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import javax.lang.model.SourceVersion;
@@ -58,6 +59,8 @@ public class CodeGenerator {
     private final List<String> integerSubtypeClassNames = new ArrayList<>();
     private final List<String> uriSubtypeClassNames = new ArrayList<>();
     private final Map<String, String> superClassMap = new HashMap<>();
+    // the element info lines for the fields declared by each generated class, keyed by generated class name
+    private final Map<String, List<String[]>> declaredElementInfoMap = new HashMap<>();
     private final Map<String, JsonObject> modifierExtensionDefinitionMap = new HashMap<>();
     private static final List<String> DATA_TYPE_NAMES = Arrays.asList(
         "Base64Binary",
@@ -266,6 +269,7 @@ public class CodeGenerator {
         generateCodeSubtypeClass("ConceptSubsumptionOutcome", "http://hl7.org/fhir/ValueSet/concept-subsumption-outcome", basePath);
         generateCodeSubtypeClass("DataAbsentReason", "http://hl7.org/fhir/ValueSet/data-absent-reason", basePath);
         generateCodeSubtypeClass("StandardsStatus", "http://hl7.org/fhir/ValueSet/standards-status", basePath);
+        generateModelClassElementInfoFile(basePath);
     }
 
     private void generateModelClassesFile(String basePath) {
@@ -304,6 +308,98 @@ public class CodeGenerator {
         }
     }
 
+    /**
+     * Write the element info of each model class to a file which ModelSupport reads at class initialization, instead of
+     * reflecting over the fields and annotations of every model class.
+     * @see com.ibm.fhir.model.util.ModelSupport
+     */
+    private void generateModelClassElementInfoFile(String basePath) {
+        // Work around the pseudo hardcoding
+        String baseDir = ".";
+        if (System.getProperty("TargetBaseDir") != null) {
+            baseDir = System.getProperty("TargetBaseDir");
+        }
+
+        Map<String, String> qualifiedClassNameMap = new TreeMap<>();
+        for (String generatedClassName : generatedClassNames) {
+            qualifiedClassNameMap.put(getQualifiedClassName(generatedClassName), generatedClassName);
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, String> entry : qualifiedClassNameMap.entrySet()) {
+            String generatedClassName = entry.getValue();
+            String superClassName = superClassMap.get(generatedClassName);
+            lines.add(entry.getKey() + "\t" + (superClassName != null ? getQualifiedClassName(superClassName) : ""));
+            for (String[] elementInfo : declaredElementInfoMap.getOrDefault(generatedClassName, Collections.emptyList())) {
+                String fieldType = elementInfo[1].startsWith("List<") ?
+                        elementInfo[1].substring("List<".length(), elementInfo[1].length() - 1) :
+                        elementInfo[1];
+                String choiceTypes = elementInfo[3].isEmpty() ? "" :
+                        Arrays.stream(elementInfo[3].split(",")).map(t -> resolveFieldType(t, generatedClassName)).collect(Collectors.joining(","));
+                lines.add("\t" + elementInfo[0] + "\t" + resolveFieldType(fieldType, generatedClassName) + "\t" + elementInfo[2] + "\t" + choiceTypes + "\t" + elementInfo[4]);
+            }
+        }
+
+        try {
+            File file = new File(baseDir + "/src/main/resources/modelClassElementInfo");
+            Files.write(file.toPath(), lines);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * @param generatedClassName a generated class name, using '.' to separate the names of nested classes
+     * @return the binary name of the generated class
+     */
+    private String getQualifiedClassName(String generatedClassName) {
+        String enclosingClassName = generatedClassName.contains(".") ?
+                generatedClassName.substring(0, generatedClassName.indexOf(".")) :
+                generatedClassName;
+        String packageName = typeClassNames.contains(enclosingClassName) ?
+                "com.ibm.fhir.model.type" :
+                "com.ibm.fhir.model.resource";
+        return packageName + "." + generatedClassName.replace(".", "$");
+    }
+
+    /**
+     * Resolve the type of a field the way the compiler does for the generated source
+     * @param fieldType the type name used in the field declaration
+     * @param generatedClassName the class which declares the field
+     * @return the binary name of the field type
+     */
+    private String resolveFieldType(String fieldType, String generatedClassName) {
+        switch (fieldType) {
+        case "byte[]":
+            return "[B";
+        case "BigDecimal":
+            return "java.math.BigDecimal";
+        case "LocalTime":
+        case "ZonedDateTime":
+            return "java.time." + fieldType;
+        case "TemporalAccessor":
+            return "java.time.temporal.TemporalAccessor";
+        default:
+            break;
+        }
+        if (fieldType.startsWith("java.")) {
+            return fieldType;
+        }
+
+        // member classes of the declaring class and its enclosing classes come first
+        String scope = generatedClassName;
+        while (scope != null) {
+            if (generatedClassNames.contains(scope + "." + fieldType)) {
+                return getQualifiedClassName(scope + "." + fieldType);
+            }
+            scope = scope.contains(".") ? scope.substring(0, scope.lastIndexOf(".")) : null;
+        }
+        if (codeSubtypeClassNames.contains(fieldType)) {
+            return "com.ibm.fhir.model.type.code." + fieldType;
+        }
+        return getQualifiedClassName(fieldType);
+    }
+
     private void generateDefaultVisitorClass(String basePath) {
         CodeBuilder cb = new CodeBuilder();
 
@@ -1136,8 +1232,10 @@ public class CodeGenerator {
             cb.javadoc(javadocLines);
 
             String className = nested ? titleCase(path.substring(path.lastIndexOf(".") + 1)) : titleCase(structureDefinition.getString("name"));
+            String generatedClassName = className;
             if (nested) {
                 String nestedClassName = Arrays.asList(path.split("\\.")).stream().map(s -> titleCase(s)).collect(Collectors.joining("."));
+                generatedClassName = nestedClassName;
                 generatedClassNames.add(nestedClassName);
                 superClassMap.put(nestedClassName, "BackboneElement");
             } else {
@@ -1234,12 +1332,17 @@ public class CodeGenerator {
 
             String visibility = nested ? "private" : visibility(structureDefinition);
 
+            List<String[]> declaredElementInfo = new ArrayList<>();
+            declaredElementInfoMap.put(generatedClassName, declaredElementInfo);
+
             int fieldCount = 0;
             for (JsonObject elementDefinition : elementDefinitions) {
                 String basePath = elementDefinition.getJsonObject("base").getString("path");
                 if (elementDefinition.getString("path").equals(basePath)) {
                     String fieldName = getFieldName(elementDefinition, path);
                     String fieldType = getFieldType(structureDefinition, elementDefinition);
+                    String choiceTypes = "";
+                    String referenceTarget = "";
                     if (isSummary(elementDefinition)) {
                         cb.annotation("Summary");
                     }
@@ -1249,6 +1352,7 @@ public class CodeGenerator {
                             if (!referenceTypes.isEmpty()) {
                                 String referenceTypesString = getReferenceTypes(elementDefinition).stream().collect(Collectors.joining("\", \""));
                                 cb.annotation("ReferenceTarget", "{ \"" + referenceTypesString + "\" }");
+                                referenceTarget = String.join(",", referenceTypes);
                             }
                         }
                     }
@@ -1259,15 +1363,18 @@ public class CodeGenerator {
                             if (!referenceTypes.isEmpty()) {
                                 String referenceTypesString = getReferenceTypes(elementDefinition).stream().collect(Collectors.joining("\", \""));
                                 cb.annotation("ReferenceTarget", "{ \"" + referenceTypesString + "\" }");
+                                referenceTarget = String.join(",", referenceTypes);
                             }
                         }
                         cb.annotation("Choice", "{ " + types + " }");
+                        choiceTypes = String.join(",", getChoiceTypeNames(elementDefinition));
                     }
                     if (isReferenceElement(structureDefinition, elementDefinition)) {
                         List<String> referenceTypes = getReferenceTypes(elementDefinition);
                         if (!referenceTypes.isEmpty()) {
                             String referenceTypesString = getReferenceTypes(elementDefinition).stream().collect(Collectors.joining("\", \""));
                             cb.annotation("ReferenceTarget", "{ \"" + referenceTypesString + "\" }");
+                            referenceTarget = String.join(",", referenceTypes);
                         }
                     }
                     generateBindingAnnotation(structureDefinition, cb, className, elementDefinition);
@@ -1275,6 +1382,25 @@ public class CodeGenerator {
                         cb.annotation("Required");
                     }
                     cb.field(mods(visibility, "final"), fieldType, fieldName);
+
+                    // remember what ModelSupport would otherwise have to discover by reflection
+                    StringBuilder flags = new StringBuilder();
+                    if (isRequired(elementDefinition)) {
+                        flags.append("R");
+                    }
+                    if (isSummary(elementDefinition)) {
+                        flags.append("S");
+                    }
+                    if (fieldType.startsWith("List<")) {
+                        flags.append("M");
+                    }
+                    if (!choiceTypes.isEmpty()) {
+                        flags.append("C");
+                    }
+                    if (!referenceTarget.isEmpty()) {
+                        flags.append("F");
+                    }
+                    declaredElementInfo.add(new String[] { getElementName(elementDefinition, path), fieldType, flags.toString(), choiceTypes, referenceTarget });
                     if (isBackboneElement(elementDefinition)) {
                         nestedPaths.add(elementDefinition.getString("path"));
                     }
@@ -2957,6 +3083,7 @@ public class CodeGenerator {
         cb._import("jakarta.json.JsonReaderFactory");
         cb._import("jakarta.json.JsonString");
         cb._import("jakarta.json.JsonValue");
+        cb._import("jakarta.json.stream.JsonParser");
         cb.newLine();
 
         cb._import("com.ibm.fhir.model.parser.exception.FHIRParserException");
@@ -2974,6 +3101,11 @@ public class CodeGenerator {
         cb.annotation("Generated", quote("com.ibm.fhir.tools.CodeGenerator"));
         cb._class(mods("public"), "FHIRJsonParser", "FHIRAbstractParser");
         cb.field(mods("public", "static"), "boolean", "DEBUG", "false");
+        cb.javadocStart();
+        cb.javadoc("Property name for a property that controls whether the parser reads JSON events straight into the model builders");
+        cb.javadoc("instead of first reading the input into a JsonObject");
+        cb.javadocEnd();
+        cb.field(mods("public", "static", "final"), "java.lang.String", "PROPERTY_STREAMING", quote("com.ibm.fhir.model.parser.json.streaming"));
         cb.field(mods("private", "static", "final"), "JsonReaderFactory", "JSON_READER_FACTORY", "Json.createReaderFactory(Collections.singletonMap(JsonConfig.REJECT_DUPLICATE_KEYS, true))");
         cb.newLine();
 
@@ -2994,6 +3126,15 @@ public class CodeGenerator {
 
         // public <T extends Resource> T parseAndFilter(InputStream in, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
         cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("InputStream in", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            ._if("elementsToInclude == null && isStreaming()")
+                ._try("JsonParser jsonParser = FHIRJsonStreamingParser.JSON_PARSER_FACTORY.createParser(nonClosingInputStream(in), StandardCharsets.UTF_8)")
+                    ._return("parse(jsonParser)")
+                ._catch("FHIRParserException e")
+                    ._throw("e")
+                ._catch("Exception e")
+                    ._throw("new FHIRParserException(e.getMessage(), getPath(), e)")
+                ._end()
+            ._end()
             ._try("JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingInputStream(in), StandardCharsets.UTF_8)")
                 .assign("JsonObject jsonObject", "jsonReader.readObject()")
                 ._return("parseAndFilter(jsonObject, elementsToInclude)")
@@ -3014,6 +3155,15 @@ public class CodeGenerator {
 
         // public <T extends Resource> T parseAndFilter(Reader reader, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
         cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("Reader reader", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            ._if("elementsToInclude == null && isStreaming()")
+                ._try("JsonParser jsonParser = FHIRJsonStreamingParser.JSON_PARSER_FACTORY.createParser(nonClosingReader(reader))")
+                    ._return("parse(jsonParser)")
+                ._catch("FHIRParserException e")
+                    ._throw("e")
+                ._catch("Exception e")
+                    ._throw("new FHIRParserException(e.getMessage(), getPath(), e)")
+                ._end()
+            ._end()
             ._try("JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingReader(reader))")
                 .assign("JsonObject jsonObject", "jsonReader.readObject()")
                 ._return("parseAndFilter(jsonObject, elementsToInclude)")
@@ -3025,6 +3175,27 @@ public class CodeGenerator {
         .end();
         cb.newLine();
 
+        cb.method(mods("public"), "<T extends Resource> T", "parse", args("JsonParser jsonParser"), throwsExceptions("FHIRParserException"))
+            ._try()
+                .invoke("reset", args())
+                ._return("new FHIRJsonStreamingParser(stack, validating, ignoringUnrecognizedElements).parse(jsonParser)")
+            ._catch("Exception e")
+                ._throw("new FHIRParserException(e.getMessage(), getPath(), e)")
+            ._end()
+        .end();
+        cb.newLine();
+
+        cb.override();
+        cb.method(mods("public"), "boolean", "isPropertySupported", args("java.lang.String name"))
+            ._return("PROPERTY_STREAMING.equals(name)")
+        .end();
+        cb.newLine();
+
+        cb.method(mods("private"), "boolean", "isStreaming")
+            ._return("getPropertyOrDefault(PROPERTY_STREAMING, java.lang.Boolean.FALSE, java.lang.Boolean.class)")
+        .end();
+        cb.newLine();
+
         cb.method(mods("public"), "<T extends Resource> T", "parse", args("JsonObject jsonObject"), throwsExceptions("FHIRParserException"))
             ._return("parseAndFilter(jsonObject, null)")
         .end();
@@ -22,12 +22,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.cache.util.CacheSupport;
 import com.ibm.fhir.model.annotation.Constraint;
+import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.OperationOutcome.Issue;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.StructureDefinition;
@@ -37,12 +45,15 @@ import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.path.FHIRPathElementNode;
+import com.ibm.fhir.path.FHIRPathParser.ExpressionContext;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.FHIRPathResourceNode;
 import com.ibm.fhir.path.FHIRPathTree;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.path.exception.FHIRPathException;
 import com.ibm.fhir.path.util.DiagnosticsEvaluationListener;
+import com.ibm.fhir.path.util.FHIRPathUtil;
 import com.ibm.fhir.path.visitor.FHIRPathDefaultNodeVisitor;
 import com.ibm.fhir.profile.ProfileSupport;
 import com.ibm.fhir.registry.FHIRRegistry;
@@ -62,16 +73,22 @@ public class FHIRValidator {
 
     private static final Logger log = Logger.getLogger(FHIRValidator.class.getName());
 
+    // The compiled constraints for each combination of type and profiles seen so far
+    private static final int CONSTRAINT_SET_CACHE_MAX_ENTRIES = 2048;
+    private static final Map<List<Object>, List<CompiledConstraint>> CONSTRAINT_SET_CACHE = CacheSupport.createCacheAsMap(CONSTRAINT_SET_CACHE_MAX_ENTRIES);
+
     private final ValidatingNodeVisitor visitor;
     private final boolean failFast;
+    private final boolean parallel;
 
     private FHIRValidator() {
-        this(false);
+        this(false, false);
     }
 
-    private FHIRValidator(boolean failFast) {
-        visitor = new ValidatingNodeVisitor(failFast);
+    private FHIRValidator(boolean failFast, boolean parallel) {
+        visitor = new ValidatingNodeVisitor(failFast, parallel);
         this.failFast = failFast;
+        this.parallel = parallel;
     }
 
     /**
@@ -86,6 +103,23 @@ public class FHIRValidator {
         return failFast;
     }
 
+    /**
+     * Indicates whether this validator is parallel
+     *
+     * <p>A parallel validator validates the resources in the entries of a Bundle concurrently, using the common
+     * {@link ForkJoinPool}. The issues are the same, and in the same order, as those of a validator which is not parallel.
+     * Parallel validation has no effect when the validator is also fail-fast.
+     *
+     * <p>Because constraints are evaluated on pool threads, parallel validation should only be used when the
+     * {@link FHIRRegistry} and terminology providers do not depend on thread-local state of the calling thread.
+     *
+     * @return
+     *     true if this validator is parallel, false otherwise
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
     /**
      * Validate a {@link Resource} against constraints in the base specification and
      * resource-asserted profile references or specific profile references but not both.
@@ -213,7 +247,90 @@ public class FHIRValidator {
     }
 
     public static FHIRValidator validator(boolean failFast) {
-        return new FHIRValidator(failFast);
+        return new FHIRValidator(failFast, false);
+    }
+
+    /**
+     * Create a validator, optionally validating the entries of Bundle resources in parallel
+     *
+     * @param failFast
+     *     whether the validator terminates on the first issue with a severity of ERROR
+     * @param parallel
+     *     whether the validator validates the resources in the entries of a Bundle concurrently
+     * @return
+     *     a new FHIRValidator instance
+     * @see #isParallel()
+     */
+    public static FHIRValidator validator(boolean failFast, boolean parallel) {
+        return new FHIRValidator(failFast, parallel);
+    }
+
+    /**
+     * Get the compiled constraints for the given key, computing them if necessary
+     */
+    private static List<CompiledConstraint> getCompiledConstraints(List<Object> key, Supplier<List<Constraint>> constraints) {
+        List<CompiledConstraint> compiledConstraints = CONSTRAINT_SET_CACHE.get(key);
+        if (compiledConstraints == null) {
+            compiledConstraints = CONSTRAINT_SET_CACHE.computeIfAbsent(key, k -> compile(constraints.get()));
+        }
+        return compiledConstraints;
+    }
+
+    private static List<CompiledConstraint> compile(List<Constraint> constraints) {
+        List<CompiledConstraint> compiledConstraints = new ArrayList<>(constraints.size());
+        for (Constraint constraint : constraints) {
+            if (constraint.modelChecked()) {
+                if (log.isLoggable(Level.FINER)) {
+                    log.finer("    Constraint: " + constraint.id() + " is model-checked");
+                }
+                continue;
+            }
+            compiledConstraints.add(new CompiledConstraint(constraint));
+        }
+        return Collections.unmodifiableList(compiledConstraints);
+    }
+
+    /**
+     * A constraint along with its compiled location and expression
+     */
+    private static class CompiledConstraint {
+        private final Constraint constraint;
+        private final IssueSeverity severity;
+        // null for constraints on the base location
+        private final ExpressionContext location;
+        // null if the expression could not be compiled; it is then evaluated (and the error reported) as a string
+        private final ExpressionContext expression;
+
+        private CompiledConstraint(Constraint constraint) {
+            this.constraint = constraint;
+            this.severity = Constraint.LEVEL_WARNING.equals(constraint.level()) ? IssueSeverity.WARNING : IssueSeverity.ERROR;
+            this.location = Constraint.LOCATION_BASE.equals(constraint.location()) ? null : compileOrNull(constraint.location());
+            this.expression = compileOrNull(constraint.expression());
+        }
+
+        private static ExpressionContext compileOrNull(String expr) {
+            try {
+                return FHIRPathUtil.compile(expr);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private Collection<FHIRPathNode> evaluateLocation(FHIRPathEvaluator evaluator, EvaluationContext evaluationContext, Collection<FHIRPathNode> initialContext) throws FHIRPathException {
+            return (location != null) ?
+                    evaluator.evaluate(evaluationContext, location, initialContext) :
+                    evaluator.evaluate(evaluationContext, constraint.location(), initialContext);
+        }
+
+        private Collection<FHIRPathNode> evaluateExpression(FHIRPathEvaluator evaluator, EvaluationContext evaluationContext, Collection<FHIRPathNode> initialContext) throws FHIRPathException {
+            return (expression != null) ?
+                    evaluator.evaluate(evaluationContext, expression, initialContext) :
+                    evaluator.evaluate(evaluationContext, constraint.expression(), initialContext);
+        }
+
+        private boolean isBaseLocation() {
+            return Constraint.LOCATION_BASE.equals(constraint.location());
+        }
     }
 
     private static Issue issue(IssueSeverity severity, IssueType code, String description, FHIRPathNode node) {
@@ -234,6 +351,7 @@ public class FHIRValidator {
 
     private static class ValidatingNodeVisitor extends FHIRPathDefaultNodeVisitor {
         private final boolean failFast;
+        private final boolean parallel;
 
         private FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
         private EvaluationContext evaluationContext;
@@ -243,8 +361,13 @@ public class FHIRValidator {
         private DiagnosticsEvaluationListener diagnosticsEvaluationListener = new DiagnosticsEvaluationListener();
         private boolean aborted = false;
 
-        private ValidatingNodeVisitor(boolean failFast) {
+        // The Bundle entry resources which are validated by other threads, and the resulting tasks
+        private Set<FHIRPathNode> forkNodes = Collections.emptySet();
+        private List<Fork> forks = new ArrayList<>();
+
+        private ValidatingNodeVisitor(boolean failFast, boolean parallel) {
             this.failFast = failFast;
+            this.parallel = parallel;
         }
 
         private List<Issue> validate(EvaluationContext evaluationContext, boolean includeResourceAssertedProfiles, List<String> profiles) {
@@ -252,15 +375,80 @@ public class FHIRValidator {
             this.evaluationContext = evaluationContext;
             this.includeResourceAssertedProfiles = includeResourceAssertedProfiles;
             this.profiles = profiles;
-            this.evaluationContext.getTree().getRoot().accept(this);
+            FHIRPathNode root = evaluationContext.getTree().getRoot();
+            if (parallel && !failFast && root.asResourceNode().resource() instanceof Bundle) {
+                forkNodes = getEntryResourceNodes(root);
+            }
+            root.accept(this);
+            join();
             Collections.sort(issues, ISSUE_COMPARATOR);
             return Collections.unmodifiableList(issues);
         }
 
+        /**
+         * Validate a subtree of the evaluation context, without sorting the resulting issues
+         */
+        private List<Issue> validate(EvaluationContext evaluationContext, boolean includeResourceAssertedProfiles, List<String> profiles, FHIRPathNode node) {
+            reset();
+            this.evaluationContext = evaluationContext;
+            this.includeResourceAssertedProfiles = includeResourceAssertedProfiles;
+            this.profiles = profiles;
+            node.accept(this);
+            return issues;
+        }
+
         private void reset() {
             issues.clear();
             diagnosticsEvaluationListener.reset();
             aborted = false;
+            forkNodes = Collections.emptySet();
+            forks.clear();
+        }
+
+        private Set<FHIRPathNode> getEntryResourceNodes(FHIRPathNode root) {
+            Set<FHIRPathNode> result = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (FHIRPathNode child : root.children()) {
+                if ("entry".equals(child.name())) {
+                    for (FHIRPathNode entryChild : child.children()) {
+                        if (entryChild.isResourceNode()) {
+                            result.add(entryChild);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Validate the given node and its descendants with a new visitor and evaluation context on the common fork-join pool.
+         * The issues are merged back into this visitor's issues, at the current position, by {@link #join()}.
+         */
+        private void fork(FHIRPathNode node) {
+            EvaluationContext parent = evaluationContext;
+            boolean includeResourceAssertedProfiles = this.includeResourceAssertedProfiles;
+            List<String> profiles = this.profiles;
+            ForkJoinTask<List<Issue>> task = ForkJoinPool.commonPool().submit(() -> {
+                EvaluationContext context = new EvaluationContext(parent.getTree());
+                context.setResolveRelativeReferences(parent.resolveRelativeReferences());
+                return new ValidatingNodeVisitor(false, false).validate(context, includeResourceAssertedProfiles, profiles, node);
+            });
+            forks.add(new Fork(issues.size(), task));
+        }
+
+        private void join() {
+            if (forks.isEmpty()) {
+                return;
+            }
+            List<Issue> merged = new ArrayList<>(issues.size());
+            int index = 0;
+            for (Fork fork : forks) {
+                merged.addAll(issues.subList(index, fork.index));
+                merged.addAll(fork.task.join());
+                index = fork.index;
+            }
+            merged.addAll(issues.subList(index, issues.size()));
+            issues = merged;
+            forks.clear();
         }
 
         @Override
@@ -269,7 +457,11 @@ public class FHIRValidator {
                 if (aborted) {
                     break;
                 }
-                child.accept(this);
+                if (forkNodes.contains(child)) {
+                    fork(child);
+                } else {
+                    child.accept(this);
+                }
             }
         }
 
@@ -285,12 +477,16 @@ public class FHIRValidator {
 
         private void validate(FHIRPathElementNode elementNode) {
             Class<?> elementType = elementNode.element().getClass();
-            List<Constraint> constraints = new ArrayList<>(ModelSupport.getConstraints(elementType));
+            List<CompiledConstraint> constraints = getCompiledConstraints(Arrays.asList(elementType), () -> ModelSupport.getConstraints(elementType));
             if (Extension.class.equals(elementType)) {
                 String url = elementNode.element().as(Extension.class).getUrl();
                 if (isAbsolute(url)) {
                     if (FHIRRegistry.getInstance().hasResource(url, StructureDefinition.class)) {
-                        constraints.add(createConstraint("generated-ext-1", Constraint.LEVEL_RULE, Constraint.LOCATION_BASE, "Extension must conform to definition '" + url + "'", "conformsTo('" + url + "')", SOURCE_VALIDATOR, false, true));
+                        constraints = getCompiledConstraints(Arrays.asList(elementType, url), () -> {
+                            List<Constraint> extensionConstraints = new ArrayList<>(ModelSupport.getConstraints(elementType));
+                            extensionConstraints.add(createConstraint("generated-ext-1", Constraint.LEVEL_RULE, Constraint.LOCATION_BASE, "Extension must conform to definition '" + url + "'", "conformsTo('" + url + "')", SOURCE_VALIDATOR, false, true));
+                            return extensionConstraints;
+                        });
                     } else {
                         issues.add(issue(IssueSeverity.WARNING, IssueType.NOT_SUPPORTED, "Extension definition '" + url + "' is not supported", elementNode));
                     }
@@ -301,17 +497,24 @@ public class FHIRValidator {
 
         private void validate(FHIRPathResourceNode resourceNode) {
             Class<?> resourceType = resourceNode.resource().getClass();
-            List<Constraint> constraints = new ArrayList<>(ModelSupport.getConstraints(resourceType));
+            List<String> resourceAssertedProfiles = Collections.emptyList();
             if (includeResourceAssertedProfiles) {
-                List<String> resourceAssertedProfiles = ProfileSupport.getResourceAssertedProfiles(resourceNode.resource());
+                resourceAssertedProfiles = ProfileSupport.getResourceAssertedProfiles(resourceNode.resource());
                 validateProfileReferences(resourceNode, resourceAssertedProfiles, true);
-                constraints.addAll(ProfileSupport.getConstraints(resourceAssertedProfiles, resourceType));
             }
+            List<String> specifiedProfiles = Collections.emptyList();
             if (!profiles.isEmpty() && !resourceNode.path().contains(".")) {
-                validateProfileReferences(resourceNode, profiles, false);
-                constraints.addAll(ProfileSupport.getConstraints(profiles, resourceType));
+                specifiedProfiles = profiles;
+                validateProfileReferences(resourceNode, specifiedProfiles, false);
             }
-            validate(resourceNode, constraints);
+            List<String> assertedProfiles = resourceAssertedProfiles;
+            List<String> explicitProfiles = specifiedProfiles;
+            validate(resourceNode, getCompiledConstraints(Arrays.asList(resourceType, assertedProfiles, explicitProfiles), () -> {
+                List<Constraint> constraints = new ArrayList<>(ModelSupport.getConstraints(resourceType));
+                constraints.addAll(ProfileSupport.getConstraints(assertedProfiles, resourceType));
+                constraints.addAll(ProfileSupport.getConstraints(explicitProfiles, resourceType));
+                return constraints;
+            }));
         }
 
         private void validateProfileReferences(FHIRPathResourceNode resourceNode, List<String> profiles, boolean resourceAsserted) {
@@ -330,24 +533,19 @@ public class FHIRValidator {
             }
         }
 
-        private void validate(FHIRPathNode node, Collection<Constraint> constraints) {
-            for (Constraint constraint : constraints) {
+        private void validate(FHIRPathNode node, List<CompiledConstraint> constraints) {
+            for (CompiledConstraint constraint : constraints) {
                 if (aborted) {
                     break;
                 }
-                if (constraint.modelChecked()) {
-                    if (log.isLoggable(Level.FINER)) {
-                        log.finer("    Constraint: " + constraint.id() + " is model-checked");
-                    }
-                    continue;
-                }
-                evaluationContext.setConstraint(constraint);
+                evaluationContext.setConstraint(constraint.constraint);
                 validate(node, constraint);
                 evaluationContext.unsetConstraint();
             }
         }
 
-        private void validate(FHIRPathNode node, Constraint constraint) {
+        private void validate(FHIRPathNode node, CompiledConstraint compiledConstraint) {
+            Constraint constraint = compiledConstraint.constraint;
             String path = node.path();
             try {
                 if (log.isLoggable(Level.FINER)) {
@@ -355,13 +553,13 @@ public class FHIRValidator {
                 }
 
                 Collection<FHIRPathNode> initialContext = singleton(node);
-                if (!Constraint.LOCATION_BASE.equals(constraint.location())) {
-                    initialContext = evaluator.evaluate(evaluationContext, constraint.location(), initialContext);
+                if (!compiledConstraint.isBaseLocation()) {
+                    initialContext = compiledConstraint.evaluateLocation(evaluator, evaluationContext, initialContext);
                     issues.addAll(evaluationContext.getIssues());
                     evaluationContext.clearIssues();
                 }
 
-                IssueSeverity severity = Constraint.LEVEL_WARNING.equals(constraint.level()) ? IssueSeverity.WARNING : IssueSeverity.ERROR;
+                IssueSeverity severity = compiledConstraint.severity;
 
                 if (constraint.generated()) {
                     evaluationContext.addEvaluationListener(diagnosticsEvaluationListener);
@@ -376,7 +574,7 @@ public class FHIRValidator {
                     evaluationContext.setExternalConstant("rootResource", getRootResourceNode(evaluationContext.getTree(), contextNode));
                     evaluationContext.setExternalConstant("resource", getResourceNode(evaluationContext.getTree(), contextNode));
 
-                    Collection<FHIRPathNode> result = evaluator.evaluate(evaluationContext, constraint.expression(), singleton(contextNode));
+                    Collection<FHIRPathNode> result = compiledConstraint.evaluateExpression(evaluator, evaluationContext, singleton(contextNode));
 
                     issues.addAll(evaluationContext.getIssues());
                     evaluationContext.clearIssues();
@@ -409,5 +607,18 @@ public class FHIRValidator {
             }
             return false;
         }
+
+        /**
+         * A Bundle entry resource being validated by another thread, along with the position of its issues
+         */
+        private static class Fork {
+            private final int index;
+            private final ForkJoinTask<List<Issue>> task;
+
+            private Fork(int index, ForkJoinTask<List<Issue>> task) {
+                this.index = index;
+                this.task = task;
+            }
+        }
     }
 }
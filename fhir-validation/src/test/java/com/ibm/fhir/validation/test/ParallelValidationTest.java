@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.validation.test;
+
+import static com.ibm.fhir.validation.util.FHIRValidationUtil.countErrors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Observation.Component;
+import com.ibm.fhir.model.resource.OperationOutcome.Issue;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.validation.FHIRValidator;
+
+/**
+ * Verifies that parallel validation produces the same issues, in the same order, as sequential validation
+ */
+public class ParallelValidationTest {
+    @Test
+    public void testParallelValidation() throws Exception {
+        Observation observation = parse("json/spec/observation-example-bloodpressure.json");
+        List<Component> component = new ArrayList<>(observation.getComponent());
+        component.set(0, component.get(0).toBuilder()
+            .value(null)
+            .build());
+        Observation invalid = observation.toBuilder()
+            .meta(observation.getMeta().toBuilder()
+                .profile(Collections.singletonList(Canonical.of("http://hl7.org/fhir/StructureDefinition/bp")))
+                .build())
+            .component(component)
+            .extension(Extension.builder()
+                .url("http://example.com/StructureDefinition/unknown")
+                .value(com.ibm.fhir.model.type.String.of("test"))
+                .build())
+            .build();
+
+        Bundle.Builder builder = Bundle.builder().type(BundleType.COLLECTION);
+        for (Resource resource : new Resource[] { invalid, observation, parse("json/spec/patient-example.json"), invalid }) {
+            builder.entry(Bundle.Entry.builder()
+                .fullUrl(Uri.of("urn:uuid:" + java.util.UUID.randomUUID()))
+                .resource(resource)
+                .build());
+        }
+        Bundle bundle = builder.build();
+
+        List<Issue> expected = FHIRValidator.validator().validate(bundle);
+        List<Issue> actual = FHIRValidator.validator(false, true).validate(bundle);
+        assertEquals(countErrors(expected), 4);
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testParallelValidationExamples() throws Exception {
+        FHIRValidator sequential = FHIRValidator.validator();
+        FHIRValidator parallel = FHIRValidator.validator(false, true);
+        assertTrue(parallel.isParallel());
+        for (String example : new String[] {
+                "json/spec/bundle-transaction.json",
+                "json/spec/document-example-dischargesummary.json",
+                "json/spec/diagnosticreport-examples-general.json" }) {
+            Resource resource = parse(example);
+            assertEquals(parallel.validate(resource), sequential.validate(resource), example);
+            // the same validator instance can be reused
+            assertEquals(parallel.validate(resource), sequential.validate(resource), example);
+        }
+    }
+
+    private <T extends Resource> T parse(String path) throws Exception {
+        try (Reader reader = ExamplesUtil.resourceReader(path)) {
+            return FHIRParser.parser(Format.JSON).parse(reader);
+        }
+    }
+}
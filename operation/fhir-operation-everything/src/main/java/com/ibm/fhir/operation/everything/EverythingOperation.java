@@ -11,10 +11,12 @@ import static com.ibm.fhir.model.util.ModelSupport.FHIR_STRING;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.ws.rs.core.MultivaluedHashMap;
@@ -40,6 +42,7 @@ import com.ibm.fhir.model.type.code.BundleType;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.SearchEntryMode;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+import com.ibm.fhir.persistence.util.ConcurrentTaskRunner;
 import com.ibm.fhir.registry.FHIRRegistry;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.compartment.CompartmentUtil;
@@ -106,6 +109,13 @@ public class EverythingOperation extends AbstractOperation {
      */
     private static final int MAX_OVERALL_RESOURCES = 10000;
 
+    /**
+     * The configuration property for the maximum number of resource types which are searched concurrently.
+     */
+    private static final String PROPERTY_MAX_PARALLELISM = "fhirServer/operations/everything/maxParallelism";
+
+    private static final int DEFAULT_MAX_PARALLELISM = 4;
+
     /**
      * The list of resources for which the <code>date</code> query parameter can be used
      */
@@ -194,68 +204,155 @@ public class EverythingOperation extends AbstractOperation {
         List<String> resourceTypesOverride = getOverridenIncludedResourceTypes(parameters);
         List<String> resourceTypes = resourceTypesOverride.isEmpty() ? defaultResourceTypes : resourceTypesOverride;
 
-        int totalResourceCount = 0;
-        for (String compartmentType : resourceTypes) {
-            MultivaluedMap<String, String> searchParameters = queryParameters;
-            if (startOrEndProvided  && !SUPPORT_CLINICAL_DATE_QUERY.contains(compartmentType)) {
+        List<List<Entry>> compartmentEntries = searchCompartments(resourceTypes, logicalId, queryParameters,
+                startOrEndProvided ? queryParametersWithoutDates : queryParameters, maxPageSize, resourceHelper);
+        for (List<Entry> entries : compartmentEntries) {
+            allEntries.addAll(entries);
+        }
+
+        Bundle.Builder bundleBuilder = Bundle.builder()
+                .type(BundleType.SEARCHSET)
+                .id(UUID.randomUUID().toString())
+                .entry(allEntries)
+                .total(UnsignedInt.of(allEntries.size()));
+
+        Parameters outputParameters;
+        try {
+            outputParameters = FHIROperationUtil.getOutputParameters(bundleBuilder.build());
+        } catch (Exception e) {
+            FHIROperationException exceptionWithIssue = buildExceptionWithIssue("An unexpected error occurred while creating the operation output parameters for the resulting Bundle.", IssueType.EXCEPTION);
+            LOG.throwing(this.getClass().getName(), "doInvoke", exceptionWithIssue);
+            throw exceptionWithIssue;
+        }
+        LOG.exiting(this.getClass().getName(), "doInvoke", outputParameters);
+        return outputParameters;
+    }
+
+    /**
+     * Retrieve the compartment resources of each of the given resource types. Up to <code>maxParallelism</code> resource
+     * types are searched concurrently; the calling thread takes part in the work and additional workers are obtained from
+     * the container's managed executor so that they have access to the application's naming context. Each worker uses its
+     * own resource helper (and so its own persistence instance) and each search runs in its own persistence transaction. If no
+     * managed executor is available, or the resource helper does not support concurrent use, the resource types are searched
+     * one after another.
+     *
+     * @param resourceTypes the compartment resource types to search
+     * @param logicalId the patient id
+     * @param queryParameters the query parameters for resource types which support the clinical date query
+     * @param queryParametersWithoutDates the query parameters for the other resource types
+     * @param maxPageSize the max page size
+     * @param resourceHelper the resource helper
+     * @return the entries found for each resource type, in the same order as resourceTypes
+     * @throws FHIROperationException if one of the searches fails or the maximum number of resources is exceeded
+     */
+    private List<List<Entry>> searchCompartments(List<String> resourceTypes, String logicalId, MultivaluedMap<String, String> queryParameters,
+            MultivaluedMap<String, String> queryParametersWithoutDates, int maxPageSize, FHIRResourceHelpers resourceHelper) throws FHIROperationException {
+        CompartmentSearch search = new CompartmentSearch(resourceTypes, logicalId, queryParameters, queryParametersWithoutDates, maxPageSize);
+
+        int maxParallelism = Math.max(1, FHIRConfigHelper.getIntProperty(PROPERTY_MAX_PARALLELISM, DEFAULT_MAX_PARALLELISM));
+        try {
+            ConcurrentTaskRunner.run("$everything search", resourceTypes.size(), maxParallelism, resourceHelper,
+                work -> {
+                    // persistence instances are request-scoped, so each worker gets a helper with its own
+                    FHIRResourceHelpers workerHelper = resourceHelper.createConcurrentHelper();
+                    if (workerHelper != null) {
+                        work.accept(workerHelper);
+                    }
+                },
+                search::run);
+        } catch (FHIROperationException e) {
+            LOG.throwing(this.getClass().getName(), "doInvoke", e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw buildExceptionWithIssue("Interrupted while retrieving $everything resources for patient " + logicalId, IssueType.EXCEPTION);
+        } catch (Exception e) {
+            throw buildExceptionWithIssue("Error retrieving $everything resources for patient " + logicalId, IssueType.EXCEPTION);
+        }
+        return Arrays.asList(search.results);
+    }
+
+    /**
+     * The state shared by the threads which search the patient compartment. Each thread takes the next resource type
+     * which has not been searched yet until there are none left or one of the threads fails.
+     */
+    private class CompartmentSearch {
+        private final List<String> resourceTypes;
+        private final String logicalId;
+        private final MultivaluedMap<String, String> queryParameters;
+        private final MultivaluedMap<String, String> queryParametersWithoutDates;
+        private final int maxPageSize;
+
+        private final AtomicInteger totalResourceCount = new AtomicInteger();
+        private final List<Entry>[] results;
+        private volatile boolean failed;
+
+        @SuppressWarnings("unchecked")
+        private CompartmentSearch(List<String> resourceTypes, String logicalId, MultivaluedMap<String, String> queryParameters,
+                MultivaluedMap<String, String> queryParametersWithoutDates, int maxPageSize) {
+            this.resourceTypes = resourceTypes;
+            this.logicalId = logicalId;
+            this.queryParameters = queryParameters;
+            this.queryParametersWithoutDates = queryParametersWithoutDates;
+            this.maxPageSize = maxPageSize;
+            this.results = new List[resourceTypes.size()];
+            Arrays.fill(results, Collections.emptyList());
+        }
+
+        private void run(FHIRResourceHelpers resourceHelper, int index) throws FHIROperationException {
+            try {
+                results[index] = search(resourceHelper, resourceTypes.get(index));
+            } catch (FHIROperationException e) {
+                // stop paging through the results of the other resource types
+                failed = true;
+                throw e;
+            }
+        }
+
+        private List<Entry> search(FHIRResourceHelpers resourceHelper, String compartmentType) throws FHIROperationException {
+            // Each resource type gets its own copy because the paging loop below modifies the parameters
+            MultivaluedMap<String, String> searchParameters;
+            if (queryParameters != queryParametersWithoutDates && !SUPPORT_CLINICAL_DATE_QUERY.contains(compartmentType)) {
                 LOG.finest("The request specified a '" + START_QUERY_PARAMETER + "' and/or '" + END_QUERY_PARAMETER + "' query parameter. They are not valid for resource type '" + compartmentType + "', so will be ignored.");
-                searchParameters = queryParametersWithoutDates;
+                searchParameters = new MultivaluedHashMap<>(queryParametersWithoutDates);
+            } else {
+                searchParameters = new MultivaluedHashMap<>(queryParameters);
             }
             Bundle results = null;
             int currentResourceCount = 0;
             try {
                 results = resourceHelper.doSearch(compartmentType, PATIENT, logicalId, searchParameters, null, null);
-                currentResourceCount = results.getTotal().getValue();
-                totalResourceCount += currentResourceCount;
-                LOG.finest("Got " + compartmentType + " resources " + currentResourceCount + " for a total of " + totalResourceCount);
             } catch (Exception e) {
-                FHIROperationException exceptionWithIssue = buildExceptionWithIssue("Error retrieving $everything resources of type '" + compartmentType + "' for patient " + logicalId, IssueType.EXCEPTION);
-                LOG.throwing(this.getClass().getName(), "doInvoke", exceptionWithIssue);
-                throw exceptionWithIssue;
+                throw buildExceptionWithIssue("Error retrieving $everything resources of type '" + compartmentType + "' for patient " + logicalId, IssueType.EXCEPTION);
             }
+            currentResourceCount = results.getTotal().getValue();
+            int total = totalResourceCount.addAndGet(currentResourceCount);
+            LOG.finest("Got " + compartmentType + " resources " + currentResourceCount + " for a total of " + total);
+
             // If retrieving all these resources exceeds the maximum number of resources allowed for this operation the operation is failed
-            if (totalResourceCount > MAX_OVERALL_RESOURCES) {
-                FHIROperationException exceptionWithIssue = buildExceptionWithIssue("The maximum number of resources allowed for the $everything operation (" + MAX_OVERALL_RESOURCES + ") has been exceeded for patient '" + logicalId + "'. Try using the bulkexport feature.", IssueType.TOO_COSTLY);
-                LOG.throwing(this.getClass().getName(), "doInvoke", exceptionWithIssue);
-                throw exceptionWithIssue;
+            // without waiting for the searches of the other resource types to finish
+            if (total > MAX_OVERALL_RESOURCES) {
+                throw buildExceptionWithIssue("The maximum number of resources allowed for the $everything operation (" + MAX_OVERALL_RESOURCES + ") has been exceeded for patient '" + logicalId + "'. Try using the bulkexport feature.", IssueType.TOO_COSTLY);
             }
-            allEntries.addAll(results.getEntry());
+            List<Entry> entries = new ArrayList<>(results.getEntry());
 
             // We are retrieving sub-resources MAX_PAGE_SIZE items at a time, but there could be more so we need to retrieve the rest of the pages for the last resource if needed
             if (currentResourceCount > maxPageSize) {
                 // We already retrieved page 1 so we account for that and start retrieving the rest of the pages
                 int page = 2;
-                while ((currentResourceCount -= maxPageSize) > 0) {
+                while ((currentResourceCount -= maxPageSize) > 0 && !failed) {
                     LOG.finest("Retrieving page " + page + " of the " + compartmentType + " resources for patient " + logicalId);
                     try {
                         searchParameters.putSingle(SearchConstants.PAGE, page++ + "");
                         results = resourceHelper.doSearch(compartmentType, PATIENT, logicalId, searchParameters, null, null);
                     } catch (Exception e) {
-                        FHIROperationException exceptionWithIssue = buildExceptionWithIssue("Error retrieving $everything resources page '" + page + "' of type '" + compartmentType + "' for patient " + logicalId, IssueType.EXCEPTION);
-                        LOG.throwing(this.getClass().getName(), "doInvoke", exceptionWithIssue);
-                        throw exceptionWithIssue;
+                        throw buildExceptionWithIssue("Error retrieving $everything resources page '" + page + "' of type '" + compartmentType + "' for patient " + logicalId, IssueType.EXCEPTION);
                     }
-                    allEntries.addAll(results.getEntry());
+                    entries.addAll(results.getEntry());
                 }
             }
+            return entries;
         }
-
-        Bundle.Builder bundleBuilder = Bundle.builder()
-                .type(BundleType.SEARCHSET)
-                .id(UUID.randomUUID().toString())
-                .entry(allEntries)
-                .total(UnsignedInt.of(allEntries.size()));
-
-        Parameters outputParameters;
-        try {
-            outputParameters = FHIROperationUtil.getOutputParameters(bundleBuilder.build());
-        } catch (Exception e) {
-            FHIROperationException exceptionWithIssue = buildExceptionWithIssue("An unexpected error occurred while creating the operation output parameters for the resulting Bundle.", IssueType.EXCEPTION);
-            LOG.throwing(this.getClass().getName(), "doInvoke", exceptionWithIssue);
-            throw exceptionWithIssue;
-        }
-        LOG.exiting(this.getClass().getName(), "doInvoke", outputParameters);
-        return outputParameters;
     }
 
     /**
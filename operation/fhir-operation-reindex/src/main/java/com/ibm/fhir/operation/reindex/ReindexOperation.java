@@ -19,6 +19,7 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.parser.FHIRParser;
@@ -49,6 +50,10 @@ public class ReindexOperation extends AbstractOperation {
     // The max number of resources we allow to be processed by one request
     private static final int MAX_RESOURCE_COUNT = 1000;
 
+    // The configuration property for the max number of resources claimed and reindexed in one transaction
+    private static final String PROPERTY_BATCH_SIZE = "fhirServer/operations/reindex/batchSize";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     static final DateTimeFormatter DAY_FORMAT = new DateTimeFormatterBuilder()
             .appendPattern("yyyy-MM-dd")
             .parseDefaulting(ChronoField.NANO_OF_DAY, 0)
@@ -164,19 +169,30 @@ public class ReindexOperation extends AbstractOperation {
             // Delegate the heavy lifting to the helper
             OperationOutcome.Builder result = OperationOutcome.builder();
             int totalProcessed = 0;
+            long start = System.nanoTime();
             if (indexIds != null) {
                 // All resources in one transaction
                 totalProcessed = resourceHelper.doReindex(operationContext, result, tstamp, indexIds, null);
             } else {
+                int batchSize = Math.max(1, FHIRConfigHelper.getIntProperty(PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE));
                 int processed = 1;
-                // One resource per transaction
-                for (int i=0; i<resourceCount && processed > 0; i++) {
-                    processed = resourceHelper.doReindex(operationContext, result, tstamp, null, resourceLogicalId);
+                // One batch of resources per transaction
+                while (totalProcessed < resourceCount && processed > 0) {
+                    processed = resourceHelper.doReindexBatch(operationContext, result, tstamp, resourceLogicalId, Math.min(batchSize, resourceCount - totalProcessed));
                     totalProcessed += processed;
                 }
             }
+            double elapsed = (System.nanoTime() - start) / 1e6;
 
-            if (totalProcessed == 0) {
+            if (totalProcessed > 0) {
+                // let the caller track progress and throughput
+                final String diag = String.format("Reindexed %d resources in %.3f ms (%.1f resources/s)", totalProcessed, elapsed, totalProcessed * 1000 / elapsed);
+                result.issue(Issue.builder()
+                    .code(IssueType.INFORMATIONAL)
+                    .severity(IssueSeverity.INFORMATION)
+                    .diagnostics(com.ibm.fhir.model.type.String.of(diag))
+                    .build());
+            } else {
                 // must have at least one issue for a valid OperationOutcome resource
                 final String diag = "Reindex complete";
                 result.issue(Issue.builder()